@@ -25,6 +25,7 @@ import java.util.Iterator;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import org.jetbrains.annotations.NotNull;
@@ -270,6 +271,60 @@ public class FutureCallbackExecutor implements Executor {
     }
   }
 
+  /**
+   * Execute a task from the {@code taskFactory} for each element of the {@code iterator}, with
+   * at most {@code maxConcurrency} tasks running at the same time: a new task is started
+   * when the {@link ListenableFuture} returned by a previous task completes.
+   *
+   * <p>This is a generalization of {@link #executeFuturesInSequence}, which is equivalent to
+   * a {@code maxConcurrency} of 1, for tasks that can run in parallel but should still be throttled.
+   *
+   * <p>Returns a {@link ListenableFuture} that completes when all tasks have completed.
+   *
+   * @param iterator       The source of elements to process
+   * @param taskFactory    A factory {@link Function} that returns a {@link ListenableFuture} for a given element
+   * @param maxConcurrency The maximum number of tasks running at the same time
+   * @param <T>            The type of the elements to process
+   */
+  @NotNull
+  public <T> ListenableFuture<Void> executeFuturesInParallel(@NotNull Iterator<T> iterator,
+                                                             @NotNull Function<T, ListenableFuture<Void>> taskFactory,
+                                                             int maxConcurrency) {
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("maxConcurrency must be at least 1");
+    }
+    SettableFuture<Void> finalResult = SettableFuture.create();
+    AtomicInteger runningCount = new AtomicInteger(1);
+    for (int i = 0; i < maxConcurrency; i++) {
+      runningCount.incrementAndGet();
+      executeFuturesInParallelWorker(iterator, taskFactory, runningCount, finalResult);
+    }
+    // Account for the initial count, so that the final result is not set before all workers are started
+    if (runningCount.decrementAndGet() == 0) {
+      finalResult.set(null);
+    }
+    return finalResult;
+  }
+
+  private <T> void executeFuturesInParallelWorker(@NotNull Iterator<T> iterator,
+                                                  @NotNull Function<T, ListenableFuture<Void>> taskFactory,
+                                                  @NotNull AtomicInteger runningCount,
+                                                  @NotNull SettableFuture<Void> finalResult) {
+    T element;
+    // Workers may run concurrently if this executor is multi-threaded
+    synchronized (iterator) {
+      if (!iterator.hasNext()) {
+        if (runningCount.decrementAndGet() == 0) {
+          finalResult.set(null);
+        }
+        return;
+      }
+      element = iterator.next();
+    }
+    ListenableFuture<Void> future = taskFactory.apply(element);
+    addConsumer(future, (aVoid, throwable) -> executeFuturesInParallelWorker(iterator, taskFactory, runningCount, finalResult));
+  }
+
   /**
    * Wrap a {@link ThrowableFunction} into a {@link Function} using a {@link UndeclaredThrowableException}.
    *
@@ -855,6 +855,11 @@ public final class StudioFlags {
     "render correctly.",
     false);
 
+  public static final Flag<Integer> COMPOSE_PREVIEW_MAX_PARALLEL_RENDERS = Flag.create(
+    COMPOSE, "preview.max.parallel.renders", "Maximum number of Compose previews rendered at the same time",
+    "Limits the number of render requests sent to Layoutlib at the same time when refreshing a file with many previews.",
+    4);
+
   public static final Flag<Boolean> COMPOSE_PREVIEW_DATA_SOURCES = Flag.create(
     COMPOSE, "preview.data.sources", "Enable the Compose Data Source handling",
     "If enable, the preview will support Preview data sources",
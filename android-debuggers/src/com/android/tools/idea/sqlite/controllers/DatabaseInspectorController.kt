@@ -36,6 +36,7 @@ import com.android.tools.idea.sqlite.model.SqliteTable
 import com.android.tools.idea.sqlite.model.createSqliteStatement
 import com.android.tools.idea.sqlite.model.getAllDatabaseIds
 import com.android.tools.idea.sqlite.repository.DatabaseRepository
+import com.android.tools.idea.sqlite.sqlLanguage.getModifiedTableNames
 import com.android.tools.idea.sqlite.ui.DatabaseInspectorViewsFactory
 import com.android.tools.idea.sqlite.ui.mainView.AddColumns
 import com.android.tools.idea.sqlite.ui.mainView.AddTable
@@ -61,6 +62,7 @@ import kotlinx.coroutines.ensureActive
 import kotlinx.coroutines.guava.await
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import java.util.Locale
 import java.util.concurrent.Executor
 import javax.swing.JComponent
 
@@ -256,9 +258,11 @@ class DatabaseInspectorControllerImpl(
 
   override suspend fun databasePossiblyChanged() = withContext(uiThread) {
     // update schemas
-    model.getOpenDatabaseIds().forEach { updateDatabaseSchema(it) }
-    // update tabs
-    resultSetControllers.values.forEach { it.notifyDataMightBeStale() }
+    val openDatabaseIds = model.getOpenDatabaseIds()
+    openDatabaseIds.forEach { updateDatabaseSchema(it) }
+    // update tabs, the event doesn't say which database changed but only live databases send it
+    val liveDatabaseIds = openDatabaseIds.filterIsInstance<SqliteDatabaseId.LiveSqliteDatabaseId>().toSet()
+    resultSetControllers.values.forEach { it.notifyDatabasesMightBeStale(liveDatabaseIds) }
   }
 
   override fun dispose() = invokeAndWaitIfNeeded {
@@ -477,7 +481,17 @@ class DatabaseInspectorControllerImpl(
   }
 
   inner class SqliteEvaluatorControllerListenerImpl : SqliteEvaluatorController.Listener {
-    override fun onSqliteStatementExecuted(databaseId: SqliteDatabaseId) {
+    override fun onSqliteStatementExecuted(databaseId: SqliteDatabaseId, sqliteStatement: SqliteStatement) {
+      // Live databases notify that they might have changed after the statement is executed, which refreshes their tabs.
+      // File databases don't, refresh right away the tabs that read from the modified tables.
+      val modifiedTableNames = getModifiedTableNames(project, sqliteStatement.sqliteStatementText)
+      if (databaseId !is SqliteDatabaseId.LiveSqliteDatabaseId && modifiedTableNames != null) {
+        // Views might read from any of the modified tables.
+        val viewNames = model.getDatabaseSchema(databaseId)?.tables?.filter { it.isView }?.map { it.name.toLowerCase(Locale.ROOT) }
+        val tableNames = modifiedTableNames + viewNames.orEmpty()
+        resultSetControllers.values.forEach { it.notifyTablesMightBeStale(databaseId, tableNames) }
+      }
+
       projectScope.launch {
         updateDatabaseSchema(databaseId)
       }
@@ -558,6 +572,18 @@ interface DatabaseInspectorController : Disposable {
      * Notify this tab that its data might be stale.
      */
     fun notifyDataMightBeStale()
+
+    /**
+     * Notify this tab that the data in the tables [tableNames] of [databaseId] might be stale.
+     * Table names are lower case. Tabs that don't read from any of those tables don't need to refresh their data.
+     */
+    fun notifyTablesMightBeStale(databaseId: SqliteDatabaseId, tableNames: Set<String>) = notifyDataMightBeStale()
+
+    /**
+     * Notify this tab that the data in any of the databases [databaseIds] might be stale.
+     * Tabs that don't read from any of those databases don't need to refresh their data.
+     */
+    fun notifyDatabasesMightBeStale(databaseIds: Set<SqliteDatabaseId>) = notifyDataMightBeStale()
   }
 
   /**
@@ -109,6 +109,14 @@ class SqliteEvaluatorController(
     currentTableController?.notifyDataMightBeStale()
   }
 
+  override fun notifyTablesMightBeStale(databaseId: SqliteDatabaseId, tableNames: Set<String>) {
+    currentTableController?.notifyTablesMightBeStale(databaseId, tableNames)
+  }
+
+  override fun notifyDatabasesMightBeStale(databaseIds: Set<SqliteDatabaseId>) {
+    currentTableController?.notifyDatabasesMightBeStale(databaseIds)
+  }
+
   override fun dispose() {
     view.removeListener(sqliteEvaluatorViewListener)
     listeners.clear()
@@ -197,7 +205,7 @@ class SqliteEvaluatorController(
       .transform(edtExecutor) {
         view.tableView.setEmptyText(DatabaseInspectorBundle.message("statement.run.successfully"))
         showSuccessfulExecutionNotification(DatabaseInspectorBundle.message("statement.run.successfully"))
-        listeners.forEach { it.onSqliteStatementExecuted(databaseId) }
+        listeners.forEach { it.onSqliteStatementExecuted(databaseId, sqliteStatement) }
       }.catching(edtExecutor, Throwable::class.java) { throwable ->
         view.tableView.setEmptyText(DatabaseInspectorBundle.message("error.running.statement"))
         view.tableView.reportError(DatabaseInspectorBundle.message("error.running.statement"), throwable)
@@ -226,8 +234,9 @@ class SqliteEvaluatorController(
     /**
      * Called when an user-defined SQLite statement is successfully executed
      * @param databaseId The database on which the statement was executed.
+     * @param sqliteStatement The statement that was executed.
      * */
-    fun onSqliteStatementExecuted(databaseId: SqliteDatabaseId)
+    fun onSqliteStatementExecuted(databaseId: SqliteDatabaseId, sqliteStatement: SqliteStatement)
   }
 
   data class EvaluationParams(val databaseId: SqliteDatabaseId?, val statementText: String)
@@ -34,11 +34,13 @@ import com.android.tools.idea.sqlite.model.SqliteTable
 import com.android.tools.idea.sqlite.model.SqliteValue
 import com.android.tools.idea.sqlite.model.transform
 import com.android.tools.idea.sqlite.repository.DatabaseRepository
+import com.android.tools.idea.sqlite.sqlLanguage.getReadTableNames
 import com.android.tools.idea.sqlite.ui.tableView.OrderBy
 import com.android.tools.idea.sqlite.ui.tableView.RowDiffOperation
 import com.android.tools.idea.sqlite.ui.tableView.TableView
 import com.android.tools.idea.sqlite.ui.tableView.ViewColumn
 import com.google.common.base.Functions
+import com.google.common.hash.Hashing
 import com.google.common.util.concurrent.FutureCallback
 import com.google.common.util.concurrent.Futures
 import com.google.common.util.concurrent.ListenableFuture
@@ -47,17 +49,24 @@ import com.google.wireless.android.sdk.stats.AppInspectionEvent
 import com.intellij.openapi.progress.ProcessCanceledException
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.util.Disposer
+import com.intellij.util.concurrency.AppExecutorUtil
 import com.intellij.util.containers.ComparatorUtil.max
 import java.util.concurrent.CancellationException
 import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
 import kotlin.math.min
 
+/**
+ * Minimum delay between the end of a refresh and the refresh caused by notifications received while it was running.
+ */
+private const val FOLLOW_UP_REFRESH_DELAY_MS = 500L
+
 /**
  * Controller responsible for displaying data from a SQLite table.
  */
 @UiThread
 class TableController(
-  project: Project,
+  private val project: Project,
   private var rowBatchSize: Int = 50,
   private val view: TableView,
   private val databaseId: SqliteDatabaseId,
@@ -85,6 +94,11 @@ class TableController(
    */
   private var currentRows = emptyList<SqliteRow>()
 
+  /**
+   * The hash of each row in [currentRows], see [contentHash].
+   */
+  private var currentRowHashes = LongArray(0)
+
   /**
    * Future corresponding to a [refreshData] operation. If the future is done, the refresh operation is over.
    */
@@ -92,6 +106,22 @@ class TableController(
 
   private var liveUpdatesEnabled = false
 
+  /**
+   * True if [notifyDataMightBeStale] was called while a refresh was running. The data is refreshed again once that refresh is done,
+   * after [FOLLOW_UP_REFRESH_DELAY_MS].
+   */
+  private var dataMightBeStale = false
+
+  /**
+   * True while a follow-up refresh is scheduled. Notifications received meanwhile are coalesced into it.
+   */
+  private var followUpRefreshScheduled = false
+
+  /**
+   * Lower case names of the tables read by [sqliteStatement], or null if they are not known.
+   */
+  private val readTableNames: Set<String>? by lazy { getReadTableNames(project, sqliteStatement.sqliteStatementText) }
+
   fun setUp(): ListenableFuture<Unit> {
     view.startTableLoading()
     return databaseRepository.runQuery(databaseId, sqliteStatement).transformAsync(edtExecutor) { newResultSet ->
@@ -109,17 +139,64 @@ class TableController(
   override fun refreshData(): ListenableFuture<Unit> {
     if (!refreshDataFuture.isDone) return refreshDataFuture
     view.startTableLoading()
-    refreshDataFuture = fetchAndDisplayTableData()
-    return refreshDataFuture
+    return startRefresh()
   }
 
   override fun notifyDataMightBeStale() {
-    // refresh the table, without showing a loading screen.
-    if (liveUpdatesEnabled && refreshDataFuture.isDone) {
-      refreshDataFuture = fetchAndDisplayTableData()
+    if (!liveUpdatesEnabled) return
+
+    if (refreshDataFuture.isDone && !followUpRefreshScheduled) {
+      // refresh the table, without showing a loading screen.
+      startRefresh()
+    }
+    else {
+      // the running refresh might have read the data before it changed, coalesce all the notifications into one more refresh.
+      dataMightBeStale = true
+    }
+  }
+
+  override fun notifyTablesMightBeStale(databaseId: SqliteDatabaseId, tableNames: Set<String>) {
+    if (databaseId != this.databaseId) return
+
+    val readTableNames = readTableNames
+    if (readTableNames == null || readTableNames.any { it in tableNames }) {
+      notifyDataMightBeStale()
+    }
+  }
+
+  override fun notifyDatabasesMightBeStale(databaseIds: Set<SqliteDatabaseId>) {
+    if (databaseId in databaseIds) {
+      notifyDataMightBeStale()
     }
   }
 
+  private fun startRefresh(): ListenableFuture<Unit> {
+    dataMightBeStale = false
+    resultSet.invalidateRows()
+    val future = fetchAndDisplayTableData()
+    refreshDataFuture = future
+    future.addCallback(edtExecutor, success = { if (dataMightBeStale) scheduleFollowUpRefresh() }, failure = { })
+    return future
+  }
+
+  /**
+   * Refreshes the data again after a delay, so that a database changing continuously isn't queried back-to-back.
+   */
+  private fun scheduleFollowUpRefresh() {
+    if (followUpRefreshScheduled) return
+    followUpRefreshScheduled = true
+    AppExecutorUtil.getAppScheduledExecutorService().schedule(
+      {
+        edtExecutor.execute {
+          followUpRefreshScheduled = false
+          if (!Disposer.isDisposed(this) && dataMightBeStale) notifyDataMightBeStale()
+        }
+      },
+      FOLLOW_UP_REFRESH_DELAY_MS,
+      TimeUnit.MILLISECONDS
+    )
+  }
+
   override fun dispose() {
     view.stopTableLoading()
     view.removeListener(listener)
@@ -136,10 +213,12 @@ class TableController(
       if (columns != currentCols) {
         // if the columns changed we cannot use the old list of rows as reference for doing the diff.
         currentRows = emptyList()
+        currentRowHashes = LongArray(0)
       }
       currentCols = columns
 
       val table = tableSupplier()
+      usePagingKeyColumn(table, columns)
       view.showTableColumns(columns.filter { it.name != table?.rowIdName?.stringName }.toViewColumns(table))
       view.setEditable(isEditable())
 
@@ -184,18 +263,33 @@ class TableController(
     return handleFetchRowsError(future)
   }
 
+  /**
+   * Shows the rows at [rowOffset] after the user navigated to them, and prefetches the rows the user is likely to navigate to next.
+   * Refreshes don't prefetch, as they run again and again while live updates are on.
+   */
+  private fun navigate(): ListenableFuture<Unit> {
+    val future = updateDataAndButtonsWithLoadingScreens()
+    future.addCallback(edtExecutor, success = { resultSet.prefetchAdjacentRowBatches(rowOffset, rowBatchSize) }, failure = { })
+    return future
+  }
+
   /**
    * Fetches rows through the [resultSet] using [rowOffset] and [rowBatchSize].
    * The view is updated through a list of [RowDiffOperation]. Compared to just recreating the view
    * this approach has the advantage that the state is not lost. Eg. if the user is navigating the table
    * using the keyboard we don't want to lose the navigation each time the data has to be updated.
+   *
+   * Rows are compared by their [contentHash] first, so that the cells of the rows that didn't change, usually most of them when live
+   * updates are on, are not compared one by one.
    */
   private fun fetchAndDisplayRows() : ListenableFuture<Unit> {
     return resultSet.getRowBatch(rowOffset, rowBatchSize).transform(edtExecutor) { newRows ->
+      val newRowHashes = LongArray(newRows.size) { newRows[it].contentHash() }
       val rowDiffOperations = mutableListOf<RowDiffOperation>()
 
       // Update the cells that already exist
       for (rowIndex in 0 until min(currentRows.size, newRows.size)) {
+        if (currentRowHashes[rowIndex] == newRowHashes[rowIndex]) continue
         val rowCellUpdates = performRowsDiff(currentRows[rowIndex], newRows[rowIndex], rowIndex)
         rowDiffOperations.addAll(rowCellUpdates)
       }
@@ -214,6 +308,7 @@ class TableController(
       view.setEditable(isEditable())
 
       currentRows = newRows
+      currentRowHashes = newRowHashes
     }.cancelOnDispose(this)
   }
 
@@ -233,6 +328,21 @@ class TableController(
     return cellUpdates
   }
 
+  /**
+   * Returns a 64 bit hash of the column names and values of this row. Two rows with the same hash are considered equal.
+   */
+  private fun SqliteRow.contentHash(): Long {
+    val hasher = Hashing.murmur3_128().newHasher()
+    for (columnValue in values) {
+      hasher.putInt(columnValue.columnName.length).putUnencodedChars(columnValue.columnName)
+      when (val value = columnValue.value) {
+        is SqliteValue.StringValue -> hasher.putByte(1).putInt(value.value.length).putUnencodedChars(value.value)
+        is SqliteValue.NullValue -> hasher.putByte(0)
+      }
+    }
+    return hasher.hash().asLong()
+  }
+
   private fun handleFetchRowsError(future: ListenableFuture<Unit>): ListenableFuture<Unit> {
     future.addCallback(edtExecutor, success = {}) { error ->
       if (Disposer.isDisposed(this)) return@addCallback
@@ -244,6 +354,17 @@ class TableController(
     return future
   }
 
+  /**
+   * Lets [resultSet] page through the rows of the table by rowid rather than by offset, so that the last pages of large tables are
+   * as fast to fetch as the first ones. Only possible when the rows are not sorted by another column.
+   */
+  private fun usePagingKeyColumn(table: SqliteTable?, columns: List<ResultSetSqliteColumn>) {
+    val rowIdName = table?.rowIdName?.stringName ?: return
+    if (orderBy is OrderBy.NotOrdered && columns.any { it.name == rowIdName }) {
+      resultSet.setPagingKeyColumn(rowIdName)
+    }
+  }
+
   private fun isEditable() = tableSupplier() != null && !liveUpdatesEnabled && !(tableSupplier()?.isView ?: false)
 
   private inner class TableViewListenerImpl : TableView.Listener {
@@ -301,30 +422,32 @@ class TableController(
 
       rowBatchSize = rowCount
 
-      updateDataAndButtonsWithLoadingScreens()
+      navigate()
     }
 
     override fun loadPreviousRowsInvoked() {
       rowOffset = max(0, rowOffset - rowBatchSize)
-      updateDataAndButtonsWithLoadingScreens()
+      navigate()
     }
 
     override fun loadNextRowsInvoked() {
       rowOffset += rowBatchSize
-      updateDataAndButtonsWithLoadingScreens()
+      navigate()
     }
 
     override fun loadFirstRowsInvoked() {
       rowOffset = 0
-      updateDataAndButtonsWithLoadingScreens()
+      navigate()
     }
 
     override fun loadLastRowsInvoked() {
       resultSet.totalRowCount.transformAsync(edtExecutor) { rowCount ->
-        rowOffset = (rowCount / rowBatchSize) * rowBatchSize
+        var lastRowOffset = (rowCount / rowBatchSize) * rowBatchSize
+        if (lastRowOffset == rowCount) lastRowOffset -= rowBatchSize
 
-        if (rowOffset == rowCount) rowOffset -= rowBatchSize
-        updateDataAndButtonsWithLoadingScreens()
+        // Row batches are addressed by an Int offset.
+        rowOffset = max(0L, min(lastRowOffset, (Int.MAX_VALUE - rowBatchSize).toLong())).toInt()
+        navigate()
       }
     }
 
@@ -24,7 +24,7 @@ import com.google.common.util.concurrent.ListenableFuture
  * Implementation of [SqliteResultSet] that is empty.
  */
 class EmptySqliteResultSet : SqliteResultSet {
-  override val totalRowCount: ListenableFuture<Int> = Futures.immediateFuture(0)
+  override val totalRowCount: ListenableFuture<Long> = Futures.immediateFuture(0L)
 
   override val columns: ListenableFuture<List<ResultSetSqliteColumn>> = Futures.immediateFuture(emptyList())
 
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.sqlite.databaseConnection
+
+import com.android.tools.idea.concurrency.transform
+import com.android.tools.idea.sqlite.model.SqliteRow
+import com.android.tools.idea.sqlite.model.SqliteValue
+import com.google.common.util.concurrent.ListenableFuture
+import java.util.TreeMap
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Fetches the rows of a paged [SqliteResultSet], one batch at a time.
+ *
+ * Without a key column, batches are selected by offset. With a key column (see [SqliteResultSet.setPagingKeyColumn]), the key of the
+ * last row of each batch is remembered, and a batch is selected starting after the key of the closest row before it, so that SQLite
+ * only steps over the rows between that row and the batch instead of all the rows before the batch. Rows inserted or deleted before a
+ * remembered key shift the rows after it, so the keys are forgotten by [invalidate] whenever the data might have changed.
+ *
+ * [prefetchAround] fetches the next and previous batches in the background, for when the user navigates to them. A prefetched batch is
+ * only returned once, and only shortly after being prefetched, since the database can change at any time: fetching the same batch again
+ * always runs a query.
+ *
+ * @param fetchRows runs the query selecting the rows of a batch, given the key column, the key to start after, the offset and the
+ * size of the batch. See [SqliteResultSet.toSelectPage].
+ */
+internal class PagedRowFetcher(
+  private val taskExecutor: Executor,
+  private val fetchRows: (keyColumnName: String?, afterKey: Long?, rowOffset: Int, rowBatchSize: Int) -> ListenableFuture<List<SqliteRow>>
+) {
+  companion object {
+    /** Maximum number of rows of the prefetched batches that are kept until they are used. */
+    const val MAX_PREFETCHED_ROWS = 1_000
+    /** Maximum number of remembered keys, they are all forgotten when going over it. */
+    const val MAX_KEYS = 10_000
+    private val PREFETCH_EXPIRATION_NANOS = TimeUnit.SECONDS.toNanos(10)
+  }
+
+  private data class Batch(val rowOffset: Int, val rowBatchSize: Int)
+
+  private class PrefetchedBatch(val rows: ListenableFuture<List<SqliteRow>>, val timestampNanos: Long)
+
+  private val lock = Any()
+
+  // All the fields below are guarded by lock.
+  private var keyColumnName: String? = null
+
+  /** Incremented by [invalidate], so that batches fetched before don't record what they saw. */
+  private var generation = 0
+
+  /** The key of the last row of each batch fetched so far, by row index. */
+  private val keys = TreeMap<Int, Long>()
+
+  /** The number of rows, known once a batch came back with less rows than requested. */
+  private var rowCount: Int? = null
+
+  /** Prefetched batches, least recently prefetched first. */
+  private val prefetchedBatches = LinkedHashMap<Batch, PrefetchedBatch>()
+  private var prefetchedRowCount = 0
+
+  fun setKeyColumn(keyColumnName: String) {
+    synchronized(lock) {
+      if (this.keyColumnName != keyColumnName) {
+        this.keyColumnName = keyColumnName
+        keys.clear()
+        clearPrefetchedBatches()
+      }
+    }
+  }
+
+  fun getRowBatch(rowOffset: Int, rowBatchSize: Int): ListenableFuture<List<SqliteRow>> {
+    checkOffsetAndSize(rowOffset, rowBatchSize)
+    val batch = Batch(rowOffset, rowBatchSize)
+    return takePrefetchedBatch(batch) ?: fetchBatch(batch)
+  }
+
+  /**
+   * Prefetches the batches before and after the batch of [rowBatchSize] rows at [rowOffset]. Meant to be called when the user navigates
+   * to that batch, not when its rows are refreshed, e.g. by live updates.
+   */
+  fun prefetchAround(rowOffset: Int, rowBatchSize: Int) {
+    checkOffsetAndSize(rowOffset, rowBatchSize)
+    val nextRowOffset = rowOffset.toLong() + rowBatchSize
+    val rowCount = synchronized(lock) { rowCount }
+    if ((rowCount == null || nextRowOffset < rowCount) && nextRowOffset + rowBatchSize <= Int.MAX_VALUE) {
+      prefetch(Batch(nextRowOffset.toInt(), rowBatchSize))
+    }
+    if (rowOffset > 0) {
+      prefetch(Batch(maxOf(0, rowOffset - rowBatchSize), rowBatchSize))
+    }
+  }
+
+  /**
+   * Forgets the keys and the row count seen so far and drops the prefetched batches, as the rows might have changed.
+   */
+  fun invalidate() {
+    synchronized(lock) {
+      generation++
+      keys.clear()
+      rowCount = null
+      clearPrefetchedBatches()
+    }
+  }
+
+  private fun fetchBatch(batch: Batch): ListenableFuture<List<SqliteRow>> {
+    val (keyColumnName, closestKey, generation) = synchronized(lock) {
+      Triple(keyColumnName, keyColumnName?.let { keys.floorEntry(batch.rowOffset - 1) }, generation)
+    }
+    val rows = if (closestKey == null) {
+      fetchRows(keyColumnName, null, batch.rowOffset, batch.rowBatchSize)
+    }
+    else {
+      fetchRows(keyColumnName, closestKey.value, batch.rowOffset - closestKey.key - 1, batch.rowBatchSize)
+    }
+    return rows.transform(taskExecutor) {
+      remember(keyColumnName, generation, batch, it)
+      it
+    }
+  }
+
+  private fun remember(keyColumnName: String?, generation: Int, batch: Batch, rows: List<SqliteRow>) {
+    synchronized(lock) {
+      if (generation != this.generation) return
+      if (rows.size < batch.rowBatchSize) {
+        rowCount = batch.rowOffset + rows.size
+      }
+      else if (rowCount.let { it != null && it < batch.rowOffset + rows.size }) {
+        rowCount = null
+      }
+    }
+
+    if (keyColumnName == null || rows.isEmpty()) return
+    val keyValue = rows.last().values.firstOrNull { it.columnName == keyColumnName }?.value as? SqliteValue.StringValue ?: return
+    val key = keyValue.value.toLongOrNull() ?: return
+
+    synchronized(lock) {
+      if (keyColumnName != this.keyColumnName || generation != this.generation) return
+      if (keys.size >= MAX_KEYS) {
+        keys.clear()
+      }
+      keys[batch.rowOffset + rows.size - 1] = key
+    }
+  }
+  private fun prefetch(batch: Batch) {
+    if (batch.rowBatchSize > MAX_PREFETCHED_ROWS) return
+    val generation = synchronized(lock) {
+      if (prefetchedBatches.containsKey(batch)) return
+      generation
+    }
+
+    val rows = fetchBatch(batch)
+    synchronized(lock) {
+      if (generation != this.generation) {
+        // Invalidated while the query was being sent, the rows might be stale.
+        rows.cancel(true)
+        return
+      }
+      prefetchedBatches[batch] = PrefetchedBatch(rows, System.nanoTime())
+      prefetchedRowCount += batch.rowBatchSize
+      val iterator = prefetchedBatches.entries.iterator()
+      while (prefetchedRowCount > MAX_PREFETCHED_ROWS && iterator.hasNext()) {
+        val (evictedBatch, evicted) = iterator.next()
+        iterator.remove()
+        prefetchedRowCount -= evictedBatch.rowBatchSize
+        evicted.rows.cancel(true)
+      }
+    }
+  }
+
+  private fun takePrefetchedBatch(batch: Batch): ListenableFuture<List<SqliteRow>>? {
+    val prefetched = synchronized(lock) {
+      val prefetched = prefetchedBatches.remove(batch) ?: return null
+      prefetchedRowCount -= batch.rowBatchSize
+      prefetched
+    }
+
+    val rows = prefetched.rows
+    val isUsable = System.nanoTime() - prefetched.timestampNanos < PREFETCH_EXPIRATION_NANOS &&
+                   !rows.isCancelled &&
+                   (!rows.isDone || rows.succeeded())
+    return if (isUsable) rows else null
+  }
+
+  private fun clearPrefetchedBatches() {
+    prefetchedBatches.values.forEach { it.rows.cancel(true) }
+    prefetchedBatches.clear()
+    prefetchedRowCount = 0
+  }
+
+  /**
+   * Cancels the prefetched batches and forgets the keys seen so far.
+   */
+  fun dispose() {
+    invalidate()
+  }
+
+  private fun ListenableFuture<*>.succeeded(): Boolean {
+    return try {
+      get()
+      true
+    }
+    catch (e: Exception) {
+      false
+    }
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.sqlite.databaseConnection
 
+import com.android.tools.idea.lang.androidSql.parser.AndroidSqlLexer
 import com.android.tools.idea.sqlite.model.ResultSetSqliteColumn
 import com.android.tools.idea.sqlite.model.SqliteRow
 import com.android.tools.idea.sqlite.model.SqliteStatement
@@ -38,13 +39,29 @@ interface SqliteResultSet : Disposable {
     "SELECT * FROM ($it) LIMIT $rowOffset, $rowBatchSize"
   }
 
+  /**
+   * Returns a statement selecting a page of rows ordered by the integer column [keyColumnName], skipping [rowOffset] rows after the
+   * row whose key is [afterKey], or from the first row if [afterKey] is null.
+   * If [keyColumnName] is null, the page is selected by offset, in the order of the statement.
+   */
+  fun SqliteStatement.toSelectPage(keyColumnName: String?, afterKey: Long?, rowOffset: Int, rowBatchSize: Int): SqliteStatement {
+    if (keyColumnName == null) {
+      return toSelectLimitOffset(rowOffset, rowBatchSize)
+    }
+    return this.transform(SqliteStatementType.SELECT) {
+      val keyColumn = AndroidSqlLexer.getValidName(keyColumnName)
+      val afterKeyCondition = afterKey?.let { key -> " WHERE $keyColumn > $key" } ?: ""
+      "SELECT * FROM ($it)$afterKeyCondition ORDER BY $keyColumn LIMIT $rowOffset, $rowBatchSize"
+    }
+  }
+
   val columns: ListenableFuture<List<ResultSetSqliteColumn>>
 
   /**
    * Returns the total amount of rows available to this result set.
    * This number is obtained by running a `SELECT COUNT(*) FROM (sqliteStatement)`, sqliteStatement can be anything.
    */
-  val totalRowCount: ListenableFuture<Int>
+  val totalRowCount: ListenableFuture<Long>
 
   /**
    * Returns a list of [SqliteRow]s.
@@ -52,6 +69,31 @@ interface SqliteResultSet : Disposable {
    * @param rowBatchSize The maximum amount of rows returned. Must be > 0
    */
   fun getRowBatch(rowOffset: Int, rowBatchSize: Int): ListenableFuture<List<SqliteRow>>
+
+  /**
+   * Makes [getRowBatch] order the rows by [keyColumnName] and page through them by key instead of by offset, so that fetching a
+   * batch doesn't require SQLite to step over all the rows before it. The column must be an integer column of the result set
+   * uniquely identifying its rows, such as the rowid of a table, and the statement must not order its rows in another way.
+   *
+   * Result sets that don't page through their rows ignore this.
+   */
+  fun setPagingKeyColumn(keyColumnName: String) { }
+
+  /**
+   * Starts fetching the batches of [rowBatchSize] rows before and after the one at [rowOffset] in the background, so that navigating
+   * to them is fast. Meant to be called when the user navigates, not when the rows are refreshed.
+   *
+   * Result sets that don't page through their rows ignore this.
+   */
+  fun prefetchAdjacentRowBatches(rowOffset: Int, rowBatchSize: Int) { }
+
+  /**
+   * Drops what the result set remembers about its rows, such as paging keys and prefetched batches, as the data might have changed:
+   * rows inserted or deleted before a remembered key shift the offsets of all the rows after it.
+   *
+   * Result sets that don't page through their rows ignore this.
+   */
+  fun invalidateRows() { }
 }
 
 /**
@@ -58,10 +58,10 @@ abstract class JdbcSqliteResultSet(
     }
   }
 
-  abstract override val totalRowCount: ListenableFuture<Int>
+  abstract override val totalRowCount: ListenableFuture<Long>
   abstract override fun getRowBatch(rowOffset: Int, rowBatchSize: Int): ListenableFuture<List<SqliteRow>>
 
-  protected fun getRowCount(sqliteStatement: SqliteStatement, handleResponse: (ResultSet) -> Int): ListenableFuture<Int> {
+  protected fun getRowCount(sqliteStatement: SqliteStatement, handleResponse: (ResultSet) -> Long): ListenableFuture<Long> {
     return taskExecutor.executeAsync {
       check(!Disposer.isDisposed(this)) { "ResultSet has already been closed." }
       check(!connection.isClosed) { "The connection has been closed." }
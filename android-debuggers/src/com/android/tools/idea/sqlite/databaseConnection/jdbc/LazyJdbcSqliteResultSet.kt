@@ -27,9 +27,9 @@ class LazyJdbcSqliteResultSet(
   connection: Connection,
   private val sqliteStatement: SqliteStatement
 ) : JdbcSqliteResultSet(taskExecutor, connection, sqliteStatement) {
-  override val totalRowCount: ListenableFuture<Int>
+  override val totalRowCount: ListenableFuture<Long>
     get() = getRowCount(sqliteStatement) {
-      var rowCount = 0
+      var rowCount = 0L
       while (it.next()) {
         rowCount += 1
       }
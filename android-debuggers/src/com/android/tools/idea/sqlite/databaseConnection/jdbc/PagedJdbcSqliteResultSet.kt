@@ -15,7 +15,7 @@
  */
 package com.android.tools.idea.sqlite.databaseConnection.jdbc
 
-import com.android.tools.idea.sqlite.databaseConnection.checkOffsetAndSize
+import com.android.tools.idea.sqlite.databaseConnection.PagedRowFetcher
 import com.android.tools.idea.sqlite.model.SqliteRow
 import com.android.tools.idea.sqlite.model.SqliteStatement
 import com.google.common.util.concurrent.ListenableFuture
@@ -27,16 +27,8 @@ class PagedJdbcSqliteResultSet(
   connection: Connection,
   private val sqliteStatement: SqliteStatement
 ) : JdbcSqliteResultSet(taskExecutor, connection, sqliteStatement) {
-  override val totalRowCount: ListenableFuture<Int>
-    get() = getRowCount(sqliteStatement.toRowCountStatement()) {
-      it.next()
-      val count = it.getInt(1)
-      count
-    }
-
-  override fun getRowBatch(rowOffset: Int, rowBatchSize: Int): ListenableFuture<List<SqliteRow>> {
-    checkOffsetAndSize(rowOffset, rowBatchSize)
-    return getRowBatch(sqliteStatement.toSelectLimitOffset(rowOffset, rowBatchSize)) { resultSet, columns ->
+  private val rowFetcher = PagedRowFetcher(taskExecutor) { keyColumnName, afterKey, rowOffset, rowBatchSize ->
+    getRowBatch(sqliteStatement.toSelectPage(keyColumnName, afterKey, rowOffset, rowBatchSize)) { resultSet, columns ->
       val rows = ArrayList<SqliteRow>()
       while (resultSet.next()) {
         rows.add(createCurrentRow(resultSet, columns))
@@ -44,4 +36,31 @@ class PagedJdbcSqliteResultSet(
       rows
     }
   }
-}
\ No newline at end of file
+
+  override val totalRowCount: ListenableFuture<Long>
+    get() = getRowCount(sqliteStatement.toRowCountStatement()) {
+      it.next()
+      val count = it.getLong(1)
+      count
+    }
+
+  override fun getRowBatch(rowOffset: Int, rowBatchSize: Int): ListenableFuture<List<SqliteRow>> {
+    return rowFetcher.getRowBatch(rowOffset, rowBatchSize)
+  }
+
+  override fun setPagingKeyColumn(keyColumnName: String) {
+    rowFetcher.setKeyColumn(keyColumnName)
+  }
+
+  override fun prefetchAdjacentRowBatches(rowOffset: Int, rowBatchSize: Int) {
+    rowFetcher.prefetchAround(rowOffset, rowBatchSize)
+  }
+
+  override fun invalidateRows() {
+    rowFetcher.invalidate()
+  }
+
+  override fun dispose() {
+    rowFetcher.dispose()
+  }
+}
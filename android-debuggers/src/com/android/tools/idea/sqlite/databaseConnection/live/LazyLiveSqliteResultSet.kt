@@ -34,9 +34,9 @@ class LazyLiveSqliteResultSet(
   override val columns: ListenableFuture<List<ResultSetSqliteColumn>>
     get() = sendQueryCommand(sqliteStatement).mapToColumns(taskExecutor)
 
-  override val totalRowCount: ListenableFuture<Int>
+  override val totalRowCount: ListenableFuture<Long>
     get() = sendQueryCommand(sqliteStatement).transform(taskExecutor) { response ->
-      response.query.rowsList.size
+      response.query.rowsList.size.toLong()
     }
 
   override fun getRowBatch(rowOffset: Int, rowBatchSize: Int): ListenableFuture<List<SqliteRow>> {
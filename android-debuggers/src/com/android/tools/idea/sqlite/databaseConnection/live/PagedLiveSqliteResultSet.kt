@@ -17,7 +17,7 @@ package com.android.tools.idea.sqlite.databaseConnection.live
 
 import com.android.tools.idea.concurrency.transform
 import com.android.tools.idea.sqlite.DatabaseInspectorMessenger
-import com.android.tools.idea.sqlite.databaseConnection.checkOffsetAndSize
+import com.android.tools.idea.sqlite.databaseConnection.PagedRowFetcher
 import com.android.tools.idea.sqlite.model.ResultSetSqliteColumn
 import com.android.tools.idea.sqlite.model.SqliteRow
 import com.android.tools.idea.sqlite.model.SqliteStatement
@@ -34,15 +34,8 @@ class PagedLiveSqliteResultSet(
   override val columns: ListenableFuture<List<ResultSetSqliteColumn>> get() =
     sendQueryCommand(sqliteStatement.toSelectLimitOffset(0, 1)).mapToColumns(taskExecutor)
 
-  override val totalRowCount: ListenableFuture<Int>
-    get() = sendQueryCommand(sqliteStatement.toRowCountStatement()).transform(taskExecutor) { response ->
-      // TODO: remove the cast to Int since it's possible to go over the 2^31 limit
-      response.query.rowsList.firstOrNull()?.valuesList?.firstOrNull()?.longValue?.toInt() ?: 0
-    }
-
-  override fun getRowBatch(rowOffset: Int, rowBatchSize: Int): ListenableFuture<List<SqliteRow>> {
-    checkOffsetAndSize(rowOffset, rowBatchSize)
-    return sendQueryCommand(sqliteStatement.toSelectLimitOffset(rowOffset, rowBatchSize)).transform(taskExecutor) { response ->
+  private val rowFetcher = PagedRowFetcher(taskExecutor) { keyColumnName, afterKey, rowOffset, rowBatchSize ->
+    sendQueryCommand(sqliteStatement.toSelectPage(keyColumnName, afterKey, rowOffset, rowBatchSize)).transform(taskExecutor) { response ->
       val columnNames = response.query.columnNamesList
       response.query.rowsList.map {
         val sqliteColumnValues = it.valuesList.mapIndexed { index, cellValue -> cellValue.toSqliteColumnValue(columnNames[index]) }
@@ -50,4 +43,29 @@ class PagedLiveSqliteResultSet(
       }
     }
   }
-}
\ No newline at end of file
+
+  override val totalRowCount: ListenableFuture<Long>
+    get() = sendQueryCommand(sqliteStatement.toRowCountStatement()).transform(taskExecutor) { response ->
+      response.query.rowsList.firstOrNull()?.valuesList?.firstOrNull()?.longValue ?: 0L
+    }
+
+  override fun getRowBatch(rowOffset: Int, rowBatchSize: Int): ListenableFuture<List<SqliteRow>> {
+    return rowFetcher.getRowBatch(rowOffset, rowBatchSize)
+  }
+
+  override fun setPagingKeyColumn(keyColumnName: String) {
+    rowFetcher.setKeyColumn(keyColumnName)
+  }
+
+  override fun prefetchAdjacentRowBatches(rowOffset: Int, rowBatchSize: Int) {
+    rowFetcher.prefetchAround(rowOffset, rowBatchSize)
+  }
+
+  override fun invalidateRows() {
+    rowFetcher.invalidate()
+  }
+
+  override fun dispose() {
+    rowFetcher.dispose()
+  }
+}
@@ -20,6 +20,7 @@ import com.android.tools.idea.lang.androidSql.parser.AndroidSqlParserDefinition
 import com.android.tools.idea.lang.androidSql.psi.AndroidSqlBindParameter
 import com.android.tools.idea.lang.androidSql.psi.AndroidSqlColumnRefExpression
 import com.android.tools.idea.lang.androidSql.psi.AndroidSqlComparisonExpression
+import com.android.tools.idea.lang.androidSql.psi.AndroidSqlDefinedTableName
 import com.android.tools.idea.lang.androidSql.psi.AndroidSqlDeleteStatement
 import com.android.tools.idea.lang.androidSql.psi.AndroidSqlEquivalenceExpression
 import com.android.tools.idea.lang.androidSql.psi.AndroidSqlExplainPrefix
@@ -28,6 +29,7 @@ import com.android.tools.idea.lang.androidSql.psi.AndroidSqlInsertStatement
 import com.android.tools.idea.lang.androidSql.psi.AndroidSqlPragmaStatement
 import com.android.tools.idea.lang.androidSql.psi.AndroidSqlPsiTypes
 import com.android.tools.idea.lang.androidSql.psi.AndroidSqlSelectStatement
+import com.android.tools.idea.lang.androidSql.psi.AndroidSqlSingleTableStatementTable
 import com.android.tools.idea.lang.androidSql.psi.AndroidSqlUpdateStatement
 import com.android.tools.idea.lang.androidSql.psi.AndroidSqlVisitor
 import com.android.tools.idea.lang.androidSql.psi.AndroidSqlWithClauseStatement
@@ -45,6 +47,7 @@ import com.intellij.psi.util.PsiTreeUtil
 import com.intellij.psi.util.elementType
 import com.intellij.psi.util.parentOfType
 import java.util.Deque
+import java.util.Locale
 
 /**
  * Returns a SQLite statement where named parameters have been replaced with positional parameters (?)
@@ -233,6 +236,40 @@ fun hasParsingError(project: Project, sqliteStatement: String): Boolean {
   return PsiTreeUtil.hasErrorElements(psiFile)
 }
 
+/**
+ * Returns the lower case names of the tables read by [sqliteStatement], or null if they can't be determined.
+ *
+ * Names of views and of tables defined in a WITH clause are returned as well, since they can't be told apart from the names of tables.
+ */
+fun getReadTableNames(project: Project, sqliteStatement: String): Set<String>? {
+  val psiFile = AndroidSqlParserDefinition.parseSqlQuery(project, sqliteStatement)
+  if (PsiTreeUtil.hasErrorElements(psiFile)) return null
+
+  return PsiTreeUtil.findChildrenOfType(psiFile, AndroidSqlDefinedTableName::class.java)
+    .map { it.nameAsString.toLowerCase(Locale.ROOT) }
+    .toSet()
+}
+
+/**
+ * Returns the lower case names of the tables modified by [sqliteStatement], or null if they can't be determined.
+ *
+ * Only INSERT, UPDATE and DELETE statements modify a known set of tables. Tables modified by triggers are not included.
+ */
+fun getModifiedTableNames(project: Project, sqliteStatement: String): Set<String>? {
+  val statementType = getSqliteStatementType(project, sqliteStatement)
+  if (statementType != SqliteStatementType.INSERT &&
+      statementType != SqliteStatementType.UPDATE &&
+      statementType != SqliteStatementType.DELETE) {
+    return null
+  }
+
+  val psiFile = AndroidSqlParserDefinition.parseSqlQuery(project, sqliteStatement)
+  val tableNames = PsiTreeUtil.findChildrenOfType(psiFile, AndroidSqlSingleTableStatementTable::class.java)
+    .map { it.definedTableName?.nameAsString?.toLowerCase(Locale.ROOT) ?: return null }
+    .toSet()
+  return if (tableNames.isEmpty()) null else tableNames
+}
+
 private fun parentIsInExpression(bindParameter: AndroidSqlBindParameter): Boolean {
   return bindParameter.parent.parent is AndroidSqlInExpression
 }
@@ -300,7 +300,7 @@ class SqliteEvaluatorControllerTest : PlatformTestCase() {
     ))
 
     // Assert
-    verify(mockListener, times(2)).onSqliteStatementExecuted(databaseId)
+    verify(mockListener, times(2)).onSqliteStatementExecuted(databaseId, SqliteStatement(SqliteStatementType.UPDATE, "fake stmt"))
   }
 
   fun testResetViewBeforePopulatingIt() {
@@ -2191,6 +2191,44 @@ class TableControllerTest : LightPlatformTestCase() {
     verify(tableView, times(1)).startTableLoading()
   }
 
+  fun testNotifyDatabasesMightBeStaleOnlyUpdatesTablesOfThoseDatabases() {
+    // Prepare
+    val mockResultSet = MockSqliteResultSet()
+    `when`(mockDatabaseConnection.query(any(SqliteStatement::class.java))).thenReturn(Futures.immediateFuture(mockResultSet))
+    tableController = TableController(
+      project,
+      10,
+      tableView,
+      mockDatabaseId,
+      { sqliteTable },
+      databaseRepository,
+      SqliteStatement(SqliteStatementType.UNKNOWN, ""),
+      {},
+      edtExecutor,
+      edtExecutor
+    )
+    Disposer.register(testRootDisposable, tableController)
+    pumpEventsAndWaitForFuture(tableController.setUp())
+    tableView.listeners.first().toggleLiveUpdatesInvoked()
+    PlatformTestUtil.dispatchAllEventsInIdeEventQueue()
+
+    // Act
+    tableController.notifyDatabasesMightBeStale(setOf(realDatabaseId))
+    PlatformTestUtil.dispatchAllEventsInIdeEventQueue()
+
+    // Assert
+    // 1st invocation by setUp, 2nd by toggleLiveUpdatesInvoked
+    verify(tableView, times(2)).showTableColumns(mockResultSet._columns.toViewColumns())
+
+    // Act
+    tableController.notifyDatabasesMightBeStale(setOf(realDatabaseId, mockDatabaseId))
+    PlatformTestUtil.dispatchAllEventsInIdeEventQueue()
+
+    // Assert
+    // 3rd invocation by notifyDatabasesMightBeStale
+    verify(tableView, times(3)).showTableColumns(mockResultSet._columns.toViewColumns())
+  }
+
   fun testToggleLiveUpdatesKeepsTableNotEditable() {
     // Prepare
     val mockResultSet = MockSqliteResultSet()
@@ -2303,7 +2341,7 @@ class TableControllerTest : LightPlatformTestCase() {
     // Prepare
     val resultSet = mock(SqliteResultSet::class.java)
     `when`(resultSet.getRowBatch(any(), any())).thenReturn(Futures.immediateFuture(emptyList()))
-    `when`(resultSet.totalRowCount).thenReturn(Futures.immediateFuture(0))
+    `when`(resultSet.totalRowCount).thenReturn(Futures.immediateFuture(0L))
     `when`(resultSet.columns).thenReturn(Futures.immediateFuture(listOf(ResultSetSqliteColumn("c1", null, null, null))))
 
     `when`(mockDatabaseConnection.query(any(SqliteStatement::class.java))).thenReturn(Futures.immediateFuture(resultSet))
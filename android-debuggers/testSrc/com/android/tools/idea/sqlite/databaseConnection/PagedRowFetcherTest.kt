@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.sqlite.databaseConnection
+
+import com.android.tools.idea.sqlite.model.SqliteColumnValue
+import com.android.tools.idea.sqlite.model.SqliteRow
+import com.android.tools.idea.sqlite.model.SqliteValue
+import com.google.common.truth.Truth.assertThat
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.MoreExecutors
+import junit.framework.TestCase
+
+class PagedRowFetcherTest : TestCase() {
+  private data class Fetch(val keyColumnName: String?, val afterKey: Long?, val rowOffset: Int, val rowBatchSize: Int)
+
+  // The rowid of the row at index i is 2 * i, so that keys and indices differ.
+  private val rows = (0 until 1000).map { SqliteRow(listOf(SqliteColumnValue("rowid", SqliteValue.fromAny(2 * it)))) }
+  private val fetches = mutableListOf<Fetch>()
+
+  private val fetcher = PagedRowFetcher(MoreExecutors.directExecutor()) { keyColumnName, afterKey, rowOffset, rowBatchSize ->
+    fetches.add(Fetch(keyColumnName, afterKey, rowOffset, rowBatchSize))
+    val rowsAfterKey = if (afterKey == null) rows else rows.drop(afterKey.toInt() / 2 + 1)
+    Futures.immediateFuture(rowsAfterKey.drop(rowOffset).take(rowBatchSize))
+  }
+
+  fun testNextAndPreviousBatchesArePrefetched() {
+    assertThat(fetcher.getRowBatch(10, 10).get()).isEqualTo(rows.subList(10, 20))
+    fetcher.prefetchAround(10, 10)
+    assertThat(fetches).containsExactly(Fetch(null, null, 10, 10), Fetch(null, null, 20, 10), Fetch(null, null, 0, 10)).inOrder()
+
+    fetches.clear()
+    assertThat(fetcher.getRowBatch(20, 10).get()).isEqualTo(rows.subList(20, 30))
+    // The prefetched batch is used as is.
+    assertThat(fetches).isEmpty()
+    fetcher.prefetchAround(20, 10)
+    assertThat(fetches).containsExactly(Fetch(null, null, 30, 10), Fetch(null, null, 10, 10)).inOrder()
+  }
+
+  fun testBatchesAreOnlyPrefetchedOnRequest() {
+    assertThat(fetcher.getRowBatch(10, 10).get()).isEqualTo(rows.subList(10, 20))
+    assertThat(fetcher.getRowBatch(10, 10).get()).isEqualTo(rows.subList(10, 20))
+    assertThat(fetches).containsExactly(Fetch(null, null, 10, 10), Fetch(null, null, 10, 10))
+  }
+
+  fun testFetchingTheSameBatchAgainRunsAQuery() {
+    fetcher.getRowBatch(0, 10).get()
+    fetcher.prefetchAround(0, 10)
+    fetches.clear()
+
+    assertThat(fetcher.getRowBatch(0, 10).get()).isEqualTo(rows.subList(0, 10))
+    assertThat(fetches).containsExactly(Fetch(null, null, 0, 10))
+  }
+
+  fun testLastBatchDoesNotPrefetchNextBatch() {
+    assertThat(fetcher.getRowBatch(995, 10).get()).isEqualTo(rows.subList(995, 1000))
+    fetcher.prefetchAround(995, 10)
+    assertThat(fetches).containsExactly(Fetch(null, null, 995, 10), Fetch(null, null, 985, 10)).inOrder()
+  }
+
+  fun testBatchesAreFetchedAfterTheClosestKnownKey() {
+    fetcher.setKeyColumn("rowid")
+
+    assertThat(fetcher.getRowBatch(0, 10).get()).isEqualTo(rows.subList(0, 10))
+    assertThat(fetches.single()).isEqualTo(Fetch("rowid", null, 0, 10))
+    fetcher.prefetchAround(0, 10)
+    // The prefetched next batch starts right after the last row of the first one, which has the rowid 18.
+    assertThat(fetches[1]).isEqualTo(Fetch("rowid", 18, 0, 10))
+
+    fetches.clear()
+    assertThat(fetcher.getRowBatch(50, 10).get()).isEqualTo(rows.subList(50, 60))
+    // The closest known key is the one of the last row of the prefetched batch, at index 19.
+    assertThat(fetches.single()).isEqualTo(Fetch("rowid", 38, 30, 10))
+  }
+
+  fun testInvalidateForgetsKeysAndPrefetchedBatches() {
+    fetcher.setKeyColumn("rowid")
+    fetcher.getRowBatch(0, 10).get()
+    fetcher.prefetchAround(0, 10)
+
+    // Rows inserted or deleted before a known key would make the keyset and the offset disagree.
+    fetcher.invalidate()
+    fetches.clear()
+
+    assertThat(fetcher.getRowBatch(10, 10).get()).isEqualTo(rows.subList(10, 20))
+    assertThat(fetches.single()).isEqualTo(Fetch("rowid", null, 10, 10))
+  }
+
+  fun testInvalidArgumentsThrow() {
+    try {
+      fetcher.getRowBatch(-1, 10)
+      fail()
+    }
+    catch (e: IllegalArgumentException) {
+    }
+    try {
+      fetcher.getRowBatch(0, 0)
+      fail()
+    }
+    catch (e: IllegalArgumentException) {
+    }
+  }
+}
@@ -100,8 +100,8 @@ class JdbcSqliteResultSetTest : LightPlatformTestCase() {
     val rowCountAfterInsert = pumpEventsAndWaitForFuture(resultSet.totalRowCount)
 
     // Assert
-    assertEquals(1, rowCountBeforeInsert)
-    assertEquals(2, rowCountAfterInsert)
+    assertEquals(1L, rowCountBeforeInsert)
+    assertEquals(2L, rowCountAfterInsert)
   }
 
   fun `test CreateResultSetFromExplain ThenAddColumn ResultSetReturnsOneMoreRow`() {
@@ -126,7 +126,7 @@ class JdbcSqliteResultSetTest : LightPlatformTestCase() {
     val rowCountAfter = pumpEventsAndWaitForFuture(resultSet.totalRowCount)
 
     // Assert
-    assertEquals(9, rowCountBefore)
-    assertEquals(10, rowCountAfter)
+    assertEquals(9L, rowCountBefore)
+    assertEquals(10L, rowCountAfter)
   }
 }
\ No newline at end of file
@@ -92,7 +92,7 @@ class LazyLiveSqliteResultSetTest : LightPlatformTestCase() {
     val rowCount = pumpEventsAndWaitForFuture(resultSet.totalRowCount)
 
     // Assert
-    assertEquals(2, rowCount)
+    assertEquals(2L, rowCount)
   }
 
   fun testRowCountFailsIfDisposed() {
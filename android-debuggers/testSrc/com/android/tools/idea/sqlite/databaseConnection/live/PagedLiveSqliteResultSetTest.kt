@@ -92,7 +92,7 @@ class PagedLiveSqliteResultSetTest : LightPlatformTestCase() {
     val rowCount = pumpEventsAndWaitForFuture(resultSet.totalRowCount)
 
     // Assert
-    assertEquals(12345, rowCount)
+    assertEquals(12345L, rowCount)
   }
 
   fun testRowCountFailsIfDisposed() {
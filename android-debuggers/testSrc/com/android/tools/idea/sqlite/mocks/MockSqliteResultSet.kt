@@ -47,7 +47,7 @@ class MockSqliteResultSet(
 
   override val columns: ListenableFuture<List<ResultSetSqliteColumn>> get() = Futures.immediateFuture(_columns)
 
-  override val totalRowCount: ListenableFuture<Int> get() = Futures.immediateFuture(rows.size)
+  override val totalRowCount: ListenableFuture<Long> get() = Futures.immediateFuture(rows.size.toLong())
 
   override fun getRowBatch(rowOffset: Int, rowBatchSize: Int): ListenableFuture<List<SqliteRow>> {
     assert(rowOffset >= 0)
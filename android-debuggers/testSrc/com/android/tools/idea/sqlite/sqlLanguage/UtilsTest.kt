@@ -289,5 +289,22 @@ class UtilsTest : LightPlatformTestCase() {
     )
   }
 
+  fun testGetReadTableNames() {
+    assertEquals(setOf("t1"), getReadTableNames(project, "SELECT * FROM T1"))
+    assertEquals(setOf("t1", "t2"), getReadTableNames(project, "SELECT * FROM t1 JOIN `t2` ON t1.id = t2.id"))
+    assertEquals(setOf("t1", "t2"), getReadTableNames(project, "SELECT * FROM t1 WHERE id IN (SELECT id FROM t2)"))
+    assertEquals(setOf("t1"), getReadTableNames(project, "SELECT * FROM (SELECT * FROM t1)"))
+    assertNull(getReadTableNames(project, "SELECT * FROM"))
+  }
+
+  fun testGetModifiedTableNames() {
+    assertEquals(setOf("t1"), getModifiedTableNames(project, "INSERT INTO t1 VALUES (42)"))
+    assertEquals(setOf("t1"), getModifiedTableNames(project, "UPDATE \"T1\" SET id = 42 WHERE name = 'foo'"))
+    assertEquals(setOf("t1"), getModifiedTableNames(project, "DELETE FROM t1 WHERE id IN (SELECT id FROM t2)"))
+    assertNull(getModifiedTableNames(project, "DROP TABLE t1"))
+    assertNull(getModifiedTableNames(project, "SELECT * FROM t1"))
+    assertNull(getModifiedTableNames(project, "UPDATE t1 SET"))
+  }
+
   private fun getSqliteStatement(sqliteStatement: String) = AndroidSqlParserDefinition.parseSqlQuery(project, sqliteStatement)
 }
\ No newline at end of file
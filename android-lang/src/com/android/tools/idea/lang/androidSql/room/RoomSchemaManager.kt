@@ -18,6 +18,7 @@ package com.android.tools.idea.lang.androidSql.room
 import com.android.support.AndroidxName
 import com.android.tools.idea.kotlin.findArgumentExpression
 import com.android.tools.idea.kotlin.fqNameMatches
+import com.android.tools.idea.kotlin.getQualifiedName
 import com.android.tools.idea.kotlin.tryEvaluateConstant
 import com.android.tools.idea.lang.androidSql.resolution.AndroidSqlColumn
 import com.android.tools.idea.lang.androidSql.resolution.PRIMARY_KEY_NAMES
@@ -28,6 +29,8 @@ import com.android.tools.idea.projectsystem.getScopeType
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.diagnostic.debug
 import com.intellij.openapi.module.Module
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Key
 import com.intellij.psi.*
 import com.intellij.psi.JavaPsiFacade
 import com.intellij.psi.PsiAnnotation
@@ -42,16 +45,35 @@ import com.intellij.psi.PsiModifierList
 import com.intellij.psi.PsiModifierListOwner
 import com.intellij.psi.PsiNamedElement
 import com.intellij.psi.SmartPointerManager
+import com.intellij.psi.impl.java.stubs.index.JavaAnnotationIndex
 import com.intellij.psi.search.GlobalSearchScope
-import com.intellij.psi.search.searches.AnnotatedElementsSearch.searchPsiClasses
+import com.intellij.psi.search.PsiSearchHelper
 import com.intellij.psi.util.*
 import com.intellij.testFramework.LightVirtualFile
+import org.jetbrains.kotlin.asJava.classes.KtLightClass
 import org.jetbrains.kotlin.asJava.elements.KtLightField
+import org.jetbrains.kotlin.asJava.toLightClass
+import org.jetbrains.kotlin.idea.KotlinFileType
+import org.jetbrains.kotlin.idea.stubindex.KotlinAnnotationsIndex
+import org.jetbrains.kotlin.psi.KtAnnotationEntry
+import org.jetbrains.kotlin.psi.KtClassOrObject
 import org.jetbrains.kotlin.psi.KtExpression
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi.KtModifierListOwner
+import org.jetbrains.kotlin.psi.KtProperty
+import org.jetbrains.kotlin.psi.psiUtil.getStrictParentOfType
 
 private val LOG = Logger.getInstance(RoomSchemaManager::class.java)
 
-/** Utility for constructing a [RoomSchema] using IDE indices. */
+/** Keys of the [RoomTable]s cached in entity and view classes, see [getTable]. */
+private val TABLE_KEYS = RoomTable.Type.values().associate { it to Key.create<CachedValue<RoomTable?>>("RoomSchemaManager.table.$it") }
+
+/**
+ * Utility for constructing a [RoomSchema] using IDE indices.
+ *
+ * Schemas are built again after any change to PSI, but the table of each entity or view class is cached in that class and only built
+ * again after a change to the files it depends on, see [getTableDependencies].
+ */
 class RoomSchemaManager(val module: Module) {
   companion object {
     fun getInstance(module: Module): RoomSchemaManager = module.getService(RoomSchemaManager::class.java)!!
@@ -82,7 +104,6 @@ class RoomSchemaManager(val module: Module) {
     return schemas[scopeType]!!.value
   }
 
-  private val constantEvaluationHelper = JavaPsiFacade.getInstance(module.project).constantEvaluationHelper
   private val pointerManager = SmartPointerManager.getInstance(module.project)
 
   /** Builds the schema using IJ indexes. */
@@ -93,13 +114,11 @@ class RoomSchemaManager(val module: Module) {
 
     LOG.debug { "Recalculating Room schema for module ${module.name} for scope ${scopeType}" }
 
-    val psiFacade = JavaPsiFacade.getInstance(module.project) ?: return null
-
     // Some of this logic is repeated in [RoomReferenceSearchExecutor], make sure to keep them in sync.
-    val entities = processAnnotatedClasses(psiFacade, scope, RoomAnnotations.ENTITY) { createTable(it, RoomTable.Type.ENTITY) }
-    val views = processAnnotatedClasses(psiFacade, scope, RoomAnnotations.DATABASE_VIEW) { createTable(it, RoomTable.Type.VIEW) }
-    val databases = processAnnotatedClasses(psiFacade, scope, RoomAnnotations.DATABASE) { this.createDatabase(it, pointerManager) }
-    val daos = processAnnotatedClasses(psiFacade, scope, RoomAnnotations.DAO) {
+    val entities = processAnnotatedClasses(scope, RoomAnnotations.ENTITY) { getTable(it, RoomTable.Type.ENTITY) }
+    val views = processAnnotatedClasses(scope, RoomAnnotations.DATABASE_VIEW) { getTable(it, RoomTable.Type.VIEW) }
+    val databases = processAnnotatedClasses(scope, RoomAnnotations.DATABASE) { this.createDatabase(it, pointerManager) }
+    val daos = processAnnotatedClasses(scope, RoomAnnotations.DAO) {
       Dao(pointerManager.createSmartPsiElementPointer(it))
     }
 
@@ -109,21 +128,167 @@ class RoomSchemaManager(val module: Module) {
   /**
    * Finds classes annotated with the given annotation (both old and new names) and processes them using the supplied [processor] function,
    * gathering non-null results.
+   *
+   * The annotations are looked up by short name in the Java and Kotlin annotation indexes, and only the ones annotating a class are
+   * resolved, to check their qualified name. Kotlin annotations are also looked up by the aliases the annotation is imported with.
    */
   private fun <T : Any> processAnnotatedClasses(
-    psiFacade: JavaPsiFacade,
     scope: GlobalSearchScope,
     annotation: AndroidxName,
     processor: (PsiClass) -> T?
   ): Set<T> {
     val result = HashSet<T>()
-    annotation.bothNames { name ->
-      psiFacade.findClass(name, scope)?.let { searchPsiClasses(it, scope).mapNotNullTo(result, processor) }
+    val shortName = annotation.newName().substringAfterLast('.')
+
+    for (psiAnnotation in JavaAnnotationIndex.getInstance().get(shortName, module.project, scope)) {
+      val psiClass = (psiAnnotation.owner as? PsiModifierList)?.parent as? PsiClass ?: continue
+      if (annotation.isEquals(psiAnnotation.qualifiedName)) {
+        processor(psiClass)?.let(result::add)
+      }
+    }
+
+    for (annotationEntry in KotlinAnnotationsIndex.getInstance().get(shortName, module.project, scope)) {
+      val ktClass = annotationEntry.getStrictParentOfType<KtModifierListOwner>() as? KtClassOrObject ?: continue
+      if (annotationEntry.fqNameMatches(annotation.oldName()) || annotationEntry.fqNameMatches(annotation.newName())) {
+        ktClass.toLightClass()?.let(processor)?.let(result::add)
+      }
+    }
+
+    for (alias in getKotlinImportAliases(scope, annotation, shortName)) {
+      for (annotationEntry in KotlinAnnotationsIndex.getInstance().get(alias, module.project, scope)) {
+        val ktClass = annotationEntry.getStrictParentOfType<KtModifierListOwner>() as? KtClassOrObject ?: continue
+        // fqNameMatches checks the short name as written first, which is the alias here.
+        if (annotation.isEquals(annotationEntry.getQualifiedName())) {
+          ktClass.toLightClass()?.let(processor)?.let(result::add)
+        }
+      }
     }
     return result
   }
 
-  private fun createTable(psiClass: PsiClass, type: RoomTable.Type): RoomTable? {
+  /**
+   * Returns the aliases [annotation] is imported with in the Kotlin files of [scope], e.g. `import androidx.room.Entity as RoomEntity`.
+   * Only the files containing the [shortName] of the annotation, as found by the word index, are looked at, and their import aliases
+   * are cached in each file, see [getImportAliases].
+   */
+  private fun getKotlinImportAliases(scope: GlobalSearchScope, annotation: AndroidxName, shortName: String): Set<String> {
+    val aliases = HashSet<String>()
+    val kotlinScope = GlobalSearchScope.getScopeRestrictedByFileTypes(scope, KotlinFileType.INSTANCE)
+    PsiSearchHelper.getInstance(module.project).processAllFilesWithWord(shortName, kotlinScope, { file ->
+      val fileAliases = (file as? KtFile)?.let(::getImportAliases).orEmpty()
+      fileAliases[annotation.oldName()]?.let(aliases::addAll)
+      fileAliases[annotation.newName()]?.let(aliases::addAll)
+      true
+    }, true)
+    return aliases
+  }
+
+  private fun createDatabase(psiClass: PsiClass, pointerManager: SmartPointerManager): RoomDatabase? {
+    val entitiesElementValue: HashSet<PsiClassPointer>? =
+      psiClass.modifierList
+        ?.findAnnotation(RoomAnnotations.DATABASE)
+        ?.findDeclaredAttributeValue("tables")
+        ?.let { it as? PsiArrayInitializerMemberValue }
+        ?.initializers
+        ?.mapNotNullTo(HashSet()) {
+          val classObjectAccessExpression = it as? PsiClassObjectAccessExpression ?: return@mapNotNullTo null
+          PsiUtil.resolveClassInClassTypeOnly(classObjectAccessExpression.operand.type)
+            ?.let(pointerManager::createSmartPsiElementPointer)
+        }
+
+    return RoomDatabase(pointerManager.createSmartPsiElementPointer(psiClass),
+                                                                    entitiesElementValue ?: emptySet())
+  }
+}
+
+/**
+ * Returns the aliases of the imports of [file] by imported qualified name, cached until the file changes.
+ */
+private fun getImportAliases(file: KtFile): Map<String, List<String>> {
+  return CachedValuesManager.getCachedValue(file) {
+    val aliases = HashMap<String, MutableList<String>>()
+    for (directive in file.importDirectives) {
+      val alias = directive.aliasName ?: continue
+      val importedFqName = directive.importedFqName?.asString() ?: continue
+      aliases.getOrPut(importedFqName) { ArrayList() }.add(alias)
+    }
+    CachedValueProvider.Result.create<Map<String, List<String>>>(if (aliases.isEmpty()) emptyMap() else aliases, file)
+  }
+}
+
+/**
+ * Returns the [RoomTable] of the entity or view [psiClass], or null if it doesn't define one.
+ *
+ * Tables don't depend on the module they are used from, so they are cached in the classes until a file they were built from changes.
+ * Light classes of Kotlin sources are created again after any change to PSI, so the tables of Kotlin classes are cached in their origin.
+ */
+private fun getTable(psiClass: PsiClass, type: RoomTable.Type): RoomTable? {
+  val cacheHolder: PsiElement = (psiClass as? KtLightClass)?.kotlinOrigin ?: psiClass
+  return CachedValuesManager.getCachedValue(cacheHolder, TABLE_KEYS.getValue(type)) {
+    val tableClass = (cacheHolder as? KtClassOrObject)?.toLightClass() ?: cacheHolder as PsiClass
+    CachedValueProvider.Result.create(RoomTableBuilder(tableClass.project).createTable(tableClass, type),
+                                      *getTableDependencies(tableClass))
+  }
+}
+
+/**
+ * Returns the dependencies of the table built from [psiClass]: the files declaring the class, its super classes and the classes of its
+ * embedded fields, and the files declaring the constants their annotations use.
+ *
+ * When a super class or the class of an embedded field can't be resolved, the table also depends on the structure of Java classes, as
+ * adding the missing class anywhere changes the table.
+ */
+private fun getTableDependencies(psiClass: PsiClass): Array<Any> {
+  val classes = LinkedHashSet<PsiClass>()
+  val files = LinkedHashSet<Any>()
+  if (!collectTableClasses(psiClass, classes)) {
+    files.add(PsiModificationTracker.JAVA_STRUCTURE_MODIFICATION_COUNT)
+  }
+
+  for (tableClass in classes) {
+    val element = tableClass.navigationElement
+    files.add(element.containingFile ?: return arrayOf(PsiModificationTracker.MODIFICATION_COUNT))
+    if (element is PsiCompiledElement) continue
+
+    for (annotation in PsiTreeUtil.findChildrenOfAnyType(element, PsiAnnotation::class.java, KtAnnotationEntry::class.java)) {
+      for (reference in SyntaxTraverser.psiTraverser(annotation).flatMap { it.references.asIterable() }) {
+        val target = reference.resolve()
+        if (target is PsiField || target is KtProperty) {
+          target.navigationElement.containingFile?.let(files::add)
+        }
+      }
+    }
+  }
+  return files.toTypedArray()
+}
+
+/**
+ * Adds to [classes] [psiClass], its super classes and the classes of its embedded fields, recursively.
+ *
+ * @return false if one of these classes couldn't be resolved
+ */
+private fun collectTableClasses(psiClass: PsiClass, classes: MutableSet<PsiClass>): Boolean {
+  if (!classes.add(psiClass)) return true
+  var resolved = true
+  for (superType in psiClass.superTypes) {
+    val superClass = superType.resolve()
+    resolved = superClass != null && collectTableClasses(superClass, classes) && resolved
+  }
+  for (field in psiClass.fields) {
+    if (field.modifierList?.findAnnotation(RoomAnnotations.EMBEDDED) != null) {
+      val embeddedClass = PsiUtil.resolveClassInClassTypeOnly(field.type)
+      resolved = embeddedClass != null && collectTableClasses(embeddedClass, classes) && resolved
+    }
+  }
+  return resolved
+}
+
+/** Builds the [RoomTable] of entity and view classes. */
+private class RoomTableBuilder(project: Project) {
+  private val constantEvaluationHelper = JavaPsiFacade.getInstance(project).constantEvaluationHelper
+  private val pointerManager = SmartPointerManager.getInstance(project)
+
+  fun createTable(psiClass: PsiClass, type: RoomTable.Type): RoomTable? {
     val (tableName, tableNameElement) = getNameAndNameElement(
       psiClass,
       annotationName = when (type) {
@@ -223,23 +388,6 @@ class RoomSchemaManager(val module: Module) {
     return createColumnsFromFields(embeddedClass, currentPrefix + newPrefix)
   }
 
-  private fun createDatabase(psiClass: PsiClass, pointerManager: SmartPointerManager): RoomDatabase? {
-    val entitiesElementValue: HashSet<PsiClassPointer>? =
-      psiClass.modifierList
-        ?.findAnnotation(RoomAnnotations.DATABASE)
-        ?.findDeclaredAttributeValue("tables")
-        ?.let { it as? PsiArrayInitializerMemberValue }
-        ?.initializers
-        ?.mapNotNullTo(HashSet()) {
-          val classObjectAccessExpression = it as? PsiClassObjectAccessExpression ?: return@mapNotNullTo null
-          PsiUtil.resolveClassInClassTypeOnly(classObjectAccessExpression.operand.type)
-            ?.let(pointerManager::createSmartPsiElementPointer)
-        }
-
-    return RoomDatabase(pointerManager.createSmartPsiElementPointer(psiClass),
-                                                                    entitiesElementValue ?: emptySet())
-  }
-
   private fun <T> getNameAndNameElement(
     element: T,
     annotationName: AndroidxName,
@@ -298,13 +446,8 @@ class RoomSchemaManager(val module: Module) {
 
     return name?.let { it to annotation!! }
   }
+}
 
-  private inline fun AndroidxName.bothNames(f: (String) -> Unit) {
-    f(oldName())
-    f(newName())
-  }
-
-  private fun PsiModifierList.findAnnotation(annotation: AndroidxName): PsiAnnotation? {
-    return findAnnotation(annotation.oldName()) ?: findAnnotation(annotation.newName())
-  }
+private fun PsiModifierList.findAnnotation(annotation: AndroidxName): PsiAnnotation? {
+  return findAnnotation(annotation.oldName()) ?: findAnnotation(annotation.newName())
 }
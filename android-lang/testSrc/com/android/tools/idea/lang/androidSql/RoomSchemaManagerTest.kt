@@ -189,6 +189,54 @@ class RoomSchemaManagerTest : JavaCodeInsightFixtureTestCase() {
         daos = emptySet()))
   }
 
+  fun testEntities_onlyChangedEntitiesAreRebuilt() {
+    val userClass = myFixture.addRoomEntity("com.example.User", "name" ofType "String")
+    myFixture.addRoomEntity("com.example.Address", "street" ofType "String")
+
+    val tablesBefore = getSchema(userClass).tables
+    assertThat(tablesBefore.map { it.name }).containsExactly("User", "Address")
+
+    myFixture.openFileInEditor(userClass.containingFile.virtualFile)
+    myFixture.moveCaret("name|;")
+    myFixture.type("2")
+    PsiDocumentManager.getInstance(project).commitAllDocuments()
+
+    val tablesAfter = getSchema(userClass).tables
+    // The table of the unmodified class is reused, the one of the modified class is built again.
+    assertThat(tablesAfter.single { it.name == "Address" }).isSameAs(tablesBefore.single { it.name == "Address" })
+    assertThat(tablesAfter.single { it.name == "User" }.columns.map { it.name }).contains("name2")
+  }
+
+  fun testEntities_tableNameConstantChanged() {
+    val constants = myFixture.addClass(
+      """
+        package com.example;
+
+        public class Tables {
+          public static final String ADDRESSES = "addresses";
+        }
+        """.trimIndent())
+
+    val address = myFixture.addClass(
+      """
+        package com.example;
+
+        import androidx.room.Entity;
+
+        @Entity(tableName = Tables.ADDRESSES)
+        public class Address {}
+        """.trimIndent())
+
+    assertThat(getSchema(address).tables.single().name).isEqualTo("addresses")
+
+    myFixture.openFileInEditor(constants.containingFile.virtualFile)
+    myFixture.moveCaret("\"addresses|\"")
+    myFixture.type("_table")
+    PsiDocumentManager.getInstance(project).commitAllDocuments()
+
+    assertThat(getSchema(address).tables.single().name).isEqualTo("addresses_table")
+  }
+
   fun testViews_addView() {
     val idsClass = myFixture.addClass(
       """
@@ -527,6 +575,33 @@ class RoomSchemaManagerTest : JavaCodeInsightFixtureTestCase() {
         daos = emptySet()))
   }
 
+  fun testColumns_superClassAddedLater() {
+    val psiClass = myFixture.addClass(
+      """
+        package com.example;
+
+        import androidx.room.Entity;
+
+        @Entity
+        public class User extends NamedBase {
+          private int age;
+        }
+        """.trimIndent())
+
+    assertThat(getSchema(psiClass).tables.single().columns.map { it.name }).doesNotContain("name")
+
+    myFixture.addClass(
+      """
+        package com.example;
+
+        public abstract class NamedBase {
+          private String name;
+        }
+        """.trimIndent())
+
+    assertThat(getSchema(psiClass).tables.single().columns.map { it.name }).contains("name")
+  }
+
   fun testFts() {
     val psiClass = myFixture.addClass(
       """
@@ -584,6 +659,42 @@ class RoomSchemaManagerTest : JavaCodeInsightFixtureTestCase() {
     assertThat(getSchema(element).tables.iterator().next().columns.find { it.name == "override_name" }).isNotNull()
   }
 
+  fun testSchemaForKotlinFileWithAliasedAnnotation() {
+    myFixture.configureByText("User.kt",
+                              """
+        package com.example
+
+        import androidx.room.Entity as RoomEntity
+
+        @RoomEntity
+        class User(val na<caret>me: String)
+    """.trimIndent())
+
+    val element = myFixture.elementAtCaret
+
+    assertThat(getSchema(element).tables.map { it.name }).containsExactly("User")
+  }
+
+  fun testSchemaForKotlinFileWithAnnotationAliasAddedLater() {
+    myFixture.configureByText("User.kt",
+                              """
+        package com.example
+
+        import androidx.room.Entity
+
+        @RoomEntity
+        class User(val name: String)
+    """.trimIndent())
+
+    assertThat(getSchema(myFixture.file).tables).isEmpty()
+
+    myFixture.moveCaret("androidx.room.Entity|")
+    myFixture.type(" as RoomEntity")
+    PsiDocumentManager.getInstance(project).commitAllDocuments()
+
+    assertThat(getSchema(myFixture.file).tables.map { it.name }).containsExactly("User")
+  }
+
   fun testEditFragmentFindsCorrectSchema() {
     myFixture.addRoomEntity("com.example.User", "name" ofType "String", "age" ofType "int")
 
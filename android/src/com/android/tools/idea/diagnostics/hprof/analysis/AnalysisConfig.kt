@@ -74,7 +74,8 @@ class AnalysisConfig(
   class TraverseOptions(
     val onlyStrongReferences: Boolean = false,
     val includeDisposerRelationships: Boolean = true,
-    val includeFieldInformation: Boolean = true
+    val includeFieldInformation: Boolean = true,
+    val threadCount: Int = Runtime.getRuntime().availableProcessors()
   )
 
   class MetaInfoOptions(
@@ -17,7 +17,6 @@ package com.android.tools.idea.diagnostics.hprof.analysis
 
 import com.android.tools.idea.diagnostics.hprof.classstore.ClassDefinition
 import com.android.tools.idea.diagnostics.hprof.histogram.Histogram
-import com.android.tools.idea.diagnostics.hprof.navigator.ObjectNavigator
 import com.android.tools.idea.diagnostics.hprof.util.HeapReportUtils.sectionHeader
 import com.android.tools.idea.diagnostics.hprof.util.HeapReportUtils.toPaddedShortStringAsCount
 import com.android.tools.idea.diagnostics.hprof.util.HeapReportUtils.toPaddedShortStringAsSize
@@ -31,7 +30,6 @@ import com.intellij.openapi.progress.ProgressIndicator
 import gnu.trove.TIntArrayList
 import gnu.trove.TIntHashSet
 import gnu.trove.TIntIntHashMap
-import gnu.trove.TLongArrayList
 
 class AnalyzeGraph(private val analysisContext: AnalysisContext) {
 
@@ -231,7 +229,7 @@ class AnalyzeGraph(private val analysisContext: AnalysisContext) {
 
     var visitedInstancesCount = 0
     val stopwatch = Stopwatch.createStarted()
-    val references = TLongArrayList()
+    val batchLoader = InstanceBatchLoader(nav, traverseOptions.threadCount)
 
     var visitedCount = 0
     var strongRefVisitedCount = 0
@@ -249,6 +247,11 @@ class AnalyzeGraph(private val analysisContext: AnalysisContext) {
 
     while (!toVisit.isEmpty) {
       for (i in 0 until toVisit.size()) {
+        // Objects are read from the auxiliary files in batches, on several threads
+        val slot = i % InstanceBatchLoader.BATCH_SIZE
+        if (slot == 0) {
+          batchLoader.load(toVisit, i, minOf(toVisit.size(), i + InstanceBatchLoader.BATCH_SIZE))
+        }
         val id = toVisit[i]
 
         // Disposer.ourTree is only visited during DisposerTree phase to give opportunity for
@@ -258,8 +261,7 @@ class AnalyzeGraph(private val analysisContext: AnalysisContext) {
           continue
         }
 
-        nav.goTo(id.toLong(), ObjectNavigator.ReferenceResolution.ALL_REFERENCES)
-        val currentObjectClass = nav.getClass()
+        val currentObjectClass = batchLoader.classes[slot]!!
 
         if ((currentObjectClass == sunMiscCleanerClass || currentObjectClass == finalizerClass)
             && phase < WalkGraphPhase.CleanerFinalizerReferences) {
@@ -274,26 +276,26 @@ class AnalyzeGraph(private val analysisContext: AnalysisContext) {
         nominatedInstances[currentObjectClass]?.add(id)
 
         var isLeaf = true
-        nav.copyReferencesTo(references)
+        val references = batchLoader.references[slot]
         val currentObjectIsArray = currentObjectClass.isArray()
 
         // Postpone any soft references encountered before the phase that handles them
-        if (phase < WalkGraphPhase.SoftReferences && nav.getSoftReferenceId() != 0L) {
+        if (phase < WalkGraphPhase.SoftReferences && batchLoader.softReferenceIds[slot] != 0L) {
           if (!onlyStrongReferences) {
-            softReferenceIdToParentMap.put(nav.getSoftReferenceId().toInt(), id)
+            softReferenceIdToParentMap.put(batchLoader.softReferenceIds[slot].toInt(), id)
           }
-          references[nav.getSoftWeakReferenceIndex()] = 0L
+          references[batchLoader.softWeakReferenceIndices[slot]] = 0L
         }
 
         // Postpone any weak references encountered before the phase that handles them
-        if (phase < WalkGraphPhase.WeakReferences && nav.getWeakReferenceId() != 0L) {
+        if (phase < WalkGraphPhase.WeakReferences && batchLoader.weakReferenceIds[slot] != 0L) {
           if (!onlyStrongReferences) {
-            weakReferenceIdToParentMap.put(nav.getWeakReferenceId().toInt(), id)
+            weakReferenceIdToParentMap.put(batchLoader.weakReferenceIds[slot].toInt(), id)
           }
-          references[nav.getSoftWeakReferenceIndex()] = 0L
+          references[batchLoader.softWeakReferenceIndices[slot]] = 0L
         }
 
-        val size = nav.getObjectSize()
+        val size = batchLoader.sizes[slot]
         val nonDisposerReferences = references.size()
 
         // Inline children from the disposer tree
@@ -416,6 +418,8 @@ class AnalyzeGraph(private val analysisContext: AnalysisContext) {
       }
     }
 
+    batchLoader.close()
+
     // Assert that any postponed objects have been handled
     assert(cleanerObjects.isEmpty)
     assert(softReferenceIdToParentMap.isEmpty)
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.diagnostics.hprof.analysis
+
+import com.android.tools.idea.diagnostics.hprof.classstore.ClassDefinition
+import com.android.tools.idea.diagnostics.hprof.navigator.ObjectNavigator
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import gnu.trove.TIntArrayList
+import gnu.trove.TLongArrayList
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Reads the class, size and references of batches of objects of the instance graph on several threads, each one with its own
+ * [ObjectNavigator]. Decoding objects from the auxiliary files is most of the cost of the graph traversal.
+ *
+ * The loaded data is then consumed in order on the calling thread, so that parents are assigned in the same order as with a
+ * single-threaded traversal and the report doesn't depend on the number of threads.
+ */
+internal class InstanceBatchLoader(navigator: ObjectNavigator, threadCount: Int) : AutoCloseable {
+  companion object {
+    const val BATCH_SIZE = 16_384
+
+    /** Batches smaller than this are loaded on the calling thread only. */
+    private const val MIN_PARALLEL_BATCH_SIZE = 1_024
+  }
+
+  private val navigators = List(maxOf(1, threadCount)) { if (it == 0) navigator else navigator.createCopy() }
+
+  // Idle threads time out, so that they don't outlive a traversal that failed before calling close.
+  private val executor: ExecutorService? =
+    if (navigators.size > 1) {
+      ThreadPoolExecutor(navigators.size - 1, navigators.size - 1, 10, TimeUnit.SECONDS, LinkedBlockingQueue(),
+                         ThreadFactoryBuilder().setNameFormat("HProf graph traversal %d").setDaemon(true).build())
+        .apply { allowCoreThreadTimeOut(true) }
+    }
+    else null
+
+  // Data of the objects of the current batch, by index in the batch.
+  val classes = arrayOfNulls<ClassDefinition>(BATCH_SIZE)
+  val sizes = IntArray(BATCH_SIZE)
+  val references = Array(BATCH_SIZE) { TLongArrayList() }
+  val softReferenceIds = LongArray(BATCH_SIZE)
+  val weakReferenceIds = LongArray(BATCH_SIZE)
+  val softWeakReferenceIndices = IntArray(BATCH_SIZE)
+
+  /**
+   * Loads the objects of [ids] from [fromIndex] (inclusive) to [toIndex] (exclusive). There can be at most [BATCH_SIZE] of them.
+   */
+  fun load(ids: TIntArrayList, fromIndex: Int, toIndex: Int) {
+    val count = toIndex - fromIndex
+    require(count in 0..BATCH_SIZE)
+
+    val chunkCount = if (executor == null || count < MIN_PARALLEL_BATCH_SIZE) 1 else navigators.size
+    val chunkSize = (count + chunkCount - 1) / chunkCount
+    val futures = (1 until chunkCount).map { chunk ->
+      executor!!.submit {
+        loadRange(navigators[chunk], ids, fromIndex, chunk * chunkSize, minOf(count, (chunk + 1) * chunkSize))
+      }
+    }
+    loadRange(navigators[0], ids, fromIndex, 0, minOf(count, chunkSize))
+
+    try {
+      futures.forEach { it.get() }
+    }
+    catch (e: ExecutionException) {
+      throw e.cause ?: e
+    }
+  }
+
+  private fun loadRange(nav: ObjectNavigator, ids: TIntArrayList, fromIndex: Int, startSlot: Int, endSlot: Int) {
+    for (slot in startSlot until endSlot) {
+      nav.goTo(ids[fromIndex + slot].toLong(), ObjectNavigator.ReferenceResolution.ALL_REFERENCES)
+      classes[slot] = nav.getClass()
+      sizes[slot] = nav.getObjectSize()
+      nav.copyReferencesTo(references[slot])
+      softReferenceIds[slot] = nav.getSoftReferenceId()
+      weakReferenceIds[slot] = nav.getWeakReferenceId()
+      softWeakReferenceIndices[slot] = nav.getSoftWeakReferenceIndex()
+    }
+  }
+
+  override fun close() {
+    executor?.shutdownNow()
+  }
+}
@@ -17,6 +17,7 @@ package com.android.tools.idea.diagnostics.hprof.classstore
 
 import com.android.tools.idea.diagnostics.hprof.navigator.RootReason
 import com.android.tools.idea.diagnostics.hprof.parser.HProfEventBasedParser
+import com.android.tools.idea.diagnostics.hprof.parser.HProfVisitor
 import com.android.tools.idea.diagnostics.hprof.visitors.CollectRootReasonsVisitor
 import com.android.tools.idea.diagnostics.hprof.visitors.CollectStringValuesVisitor
 import com.android.tools.idea.diagnostics.hprof.visitors.CollectThreadInfoVisitor
@@ -45,7 +46,10 @@ class HProfMetadata(var classStore: ClassStore, // TODO: private-set, public-get
   }
 
   companion object {
-    fun create(parser: HProfEventBasedParser): HProfMetadata {
+    /**
+     * Collects the metadata of the heap dump in a single pass over it, which is shared with the given [otherVisitors].
+     */
+    fun create(parser: HProfEventBasedParser, vararg otherVisitors: HProfVisitor): HProfMetadata {
       val stringIdMap = TLongObjectHashMap<String>()
       val threadsMap = TLongObjectHashMap<ThreadInfo>()
 
@@ -57,7 +61,8 @@ class HProfMetadata(var classStore: ClassStore, // TODO: private-set, public-get
         CollectStringValuesVisitor(stringIdMap),
         classStoreVisitor,
         threadInfoVisitor,
-        rootReasonsVisitor
+        rootReasonsVisitor,
+        *otherVisitors
       )
       parser.accept(visitor, "create hprof metadata")
       return HProfMetadata(classStoreVisitor.getClassStore(),
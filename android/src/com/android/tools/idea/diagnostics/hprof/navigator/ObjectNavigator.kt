@@ -56,6 +56,11 @@ abstract class ObjectNavigator(val classStore: ClassStore, val instanceCount: Lo
   abstract fun getWeakReferenceId(): Long
   abstract fun getSoftWeakReferenceIndex(): Int
 
+  /**
+   * Returns a navigator over the same objects with its own current object, so that it can be used on another thread.
+   */
+  abstract fun createCopy(): ObjectNavigator
+
   fun goToInstanceField(className: String?, fieldName: String) {
     val objectId = getInstanceFieldObjectId(className, fieldName)
     goTo(objectId, ReferenceResolution.ALL_REFERENCES)
@@ -71,6 +71,16 @@ class ObjectNavigatorOnAuxFiles(
     }
   }
 
+  override fun createCopy(): ObjectNavigator {
+    // Duplicated buffers share their content but have their own positions. Their byte order has to be set again.
+    return ObjectNavigatorOnAuxFiles(roots,
+                                     auxOffsets.duplicate().order(auxOffsets.order()),
+                                     aux.duplicate().order(aux.order()),
+                                     classStore,
+                                     instanceCount,
+                                     idSize)
+  }
+
   override fun getReferencesCopy(): TLongArrayList {
     val result = TLongArrayList()
     for (i in 0 until references.size()) {
@@ -25,14 +25,22 @@ import com.android.tools.idea.diagnostics.hprof.parser.HeapDumpRecordType
 import com.android.tools.idea.diagnostics.hprof.parser.InstanceFieldEntry
 import com.android.tools.idea.diagnostics.hprof.parser.StaticFieldEntry
 import com.android.tools.idea.diagnostics.hprof.parser.Type
+import gnu.trove.TLongObjectHashMap
 import java.nio.ByteBuffer
 
-class HistogramVisitor(private val classStore: ClassStore) : HProfVisitor() {
+/**
+ * Counts the instances of each class and their sizes. Classes are only resolved once the visit is complete, so this visitor can share a
+ * pass over the heap dump with the visitors that build the [ClassStore].
+ */
+class HistogramVisitor : HProfVisitor() {
   private var completed = false
 
   private var instanceCount = 0L
 
-  private var classToHistogramEntryInternal = HashMap<ClassDefinition, InternalHistogramEntry>()
+  private var classDumpCount = 0L
+  private val instancesByClassId = TLongObjectHashMap<ClassIdEntry>()
+  private val objectArraysByClassId = TLongObjectHashMap<ClassIdEntry>()
+  private val primitiveArraysByType = HashMap<Type, ClassIdEntry>()
 
   override fun preVisit() {
     assert(!completed)
@@ -45,9 +53,8 @@ class HistogramVisitor(private val classStore: ClassStore) : HProfVisitor() {
 
   override fun visitPrimitiveArrayDump(arrayObjectId: Long, stackTraceSerialNumber: Long, numberOfElements: Long, elementType: Type) {
     instanceCount++
-    val classDefinition = classStore.getClassForPrimitiveArray(elementType)!!
-    classToHistogramEntryInternal.getOrPut(classDefinition) {
-      InternalHistogramEntry(classDefinition)
+    primitiveArraysByType.getOrPut(elementType) {
+      ClassIdEntry()
     }.addInstance(numberOfElements * elementType.size + ClassDefinition.ARRAY_PREAMBLE_SIZE)
   }
 
@@ -60,34 +67,52 @@ class HistogramVisitor(private val classStore: ClassStore) : HProfVisitor() {
                               staticFields: Array<StaticFieldEntry>,
                               instanceFields: Array<InstanceFieldEntry>) {
     instanceCount++
-    val classDefinition = classStore.classClass
-    classToHistogramEntryInternal.getOrPut(classDefinition) {
-      InternalHistogramEntry(classDefinition)
-    }.addInstance(classDefinition.instanceSize.toLong() + ClassDefinition.OBJECT_PREAMBLE_SIZE)
+    classDumpCount++
   }
 
   override fun visitObjectArrayDump(arrayObjectId: Long, stackTraceSerialNumber: Long, arrayClassObjectId: Long, objects: LongArray) {
     instanceCount++
-    val classDefinition = classStore[arrayClassObjectId]
-    classToHistogramEntryInternal.getOrPut(classDefinition) {
-      InternalHistogramEntry(classDefinition)
-    }.addInstance(objects.size.toLong() * visitorContext.idSize + ClassDefinition.ARRAY_PREAMBLE_SIZE)
+    getOrCreateEntry(objectArraysByClassId, arrayClassObjectId)
+      .addInstance(objects.size.toLong() * visitorContext.idSize + ClassDefinition.ARRAY_PREAMBLE_SIZE)
   }
 
   override fun visitInstanceDump(objectId: Long, stackTraceSerialNumber: Long, classObjectId: Long, bytes: ByteBuffer) {
     instanceCount++
-    val classDefinition = classStore[classObjectId]
-    classToHistogramEntryInternal.getOrPut(classDefinition) {
-      InternalHistogramEntry(classDefinition)
-    }.addInstance(classDefinition.instanceSize.toLong() + ClassDefinition.OBJECT_PREAMBLE_SIZE)
+    // The size of instances only depends on their class, it is added once the class is known.
+    getOrCreateEntry(instancesByClassId, classObjectId).addInstance(0)
   }
 
   override fun postVisit() {
     completed = true
   }
 
-  fun createHistogram(): Histogram {
+  fun createHistogram(classStore: ClassStore): Histogram {
     assert(completed)
+    val classToHistogramEntryInternal = HashMap<ClassDefinition, InternalHistogramEntry>()
+    fun addEntry(classDefinition: ClassDefinition, instances: Long, bytes: Long) {
+      classToHistogramEntryInternal.getOrPut(classDefinition) {
+        InternalHistogramEntry(classDefinition)
+      }.addInstances(instances, bytes)
+    }
+
+    if (classDumpCount > 0) {
+      val classClass = classStore.classClass
+      addEntry(classClass, classDumpCount, classDumpCount * (classClass.instanceSize.toLong() + ClassDefinition.OBJECT_PREAMBLE_SIZE))
+    }
+    primitiveArraysByType.forEach { (type, entry) ->
+      addEntry(classStore.getClassForPrimitiveArray(type)!!, entry.instances, entry.bytes)
+    }
+    objectArraysByClassId.forEachEntry { classId, entry ->
+      addEntry(classStore[classId], entry.instances, entry.bytes)
+      true
+    }
+    instancesByClassId.forEachEntry { classId, entry ->
+      val classDefinition = classStore[classId]
+      addEntry(classDefinition, entry.instances,
+               entry.instances * (classDefinition.instanceSize.toLong() + ClassDefinition.OBJECT_PREAMBLE_SIZE))
+      true
+    }
+
     val result = ArrayList<HistogramEntry>(classToHistogramEntryInternal.size)
 
     classToHistogramEntryInternal.forEach { (_, internalEntry) ->
@@ -97,6 +122,25 @@ class HistogramVisitor(private val classStore: ClassStore) : HProfVisitor() {
     return Histogram(result, instanceCount)
   }
 
+  private fun getOrCreateEntry(map: TLongObjectHashMap<ClassIdEntry>, classId: Long): ClassIdEntry {
+    var entry = map[classId]
+    if (entry == null) {
+      entry = ClassIdEntry()
+      map.put(classId, entry)
+    }
+    return entry
+  }
+
+  private class ClassIdEntry {
+    var instances = 0L
+    var bytes = 0L
+
+    fun addInstance(sizeInBytes: Long) {
+      instances++
+      bytes += sizeInBytes
+    }
+  }
+
   class InternalHistogramEntry(private val classDefinition: ClassDefinition) {
 
     private var totalInstances = 0L
@@ -107,6 +151,11 @@ class HistogramVisitor(private val classStore: ClassStore) : HProfVisitor() {
       totalBytes += sizeInBytes
     }
 
+    fun addInstances(instances: Long, sizeInBytes: Long) {
+      totalInstances += instances
+      totalBytes += sizeInBytes
+    }
+
     fun asHistogramEntry(): HistogramEntry {
       return HistogramEntry(classDefinition, totalInstances, totalBytes)
     }
@@ -62,6 +62,8 @@ import com.intellij.util.ArrayUtil;
 import com.intellij.util.ExceptionUtil;
 import com.intellij.util.containers.ContainerUtil;
 import java.awt.datatransfer.StringSelection;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -86,6 +88,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.DefaultTreeSelectionModel;
@@ -110,6 +113,10 @@ public class DeviceExplorerController {
   private static final String DEVICE_EXPLORER_BUSY_MESSAGE = "Device Explorer is busy, please retry later or cancel current operation";
   private static final long FILE_ENTRY_CREATION_TIMEOUT_MILLIS = 10_000;
   private static final long FILE_ENTRY_DELETION_TIMEOUT_MILLIS = 10_000;
+  /**
+   * The maximum number of entries of a directory downloaded at the same time.
+   */
+  private static final int MAX_CONCURRENT_DOWNLOADS = 4;
 
   private int myShowLoadingNodeDelayMillis = 200;
   private int myTransferringNodeRepaintMillis = 100;
@@ -803,16 +810,59 @@ public class DeviceExplorerController {
       }
       tracker.getSummary().addDirectoryCount(1);
 
+      // Download the whole directory at once if the file system supports it, entry by entry otherwise
+      if (!treeNode.getEntry().supportsDirectoryDownload()) {
+        return downloadDirectoryEntries(treeNode, localDirectoryPath, tracker);
+      }
+
+      SettableFuture<Void> futureResult = SettableFuture.create();
+      ListenableFuture<Void> futureDownloadDirectory =
+        treeNode.getEntry().downloadDirectory(localDirectoryPath, new FileTransferProgress() {
+          @Override
+          public void progress(long currentBytes, long totalBytes) {
+            tracker.setDownloadFileText(treeNode.getEntry().getFullPath(), currentBytes, totalBytes);
+          }
+
+          @Override
+          public boolean isCancelled() {
+            return tracker.isCancelled();
+          }
+        });
+      myEdtExecutor.addConsumer(futureDownloadDirectory, (aVoid, throwable) -> {
+        if (throwable == null) {
+          addDownloadedDirectoryContents(localDirectoryPath, tracker);
+          futureResult.set(null);
+        }
+        else if (tracker.isCancelled()) {
+          futureResult.set(null);
+        }
+        else {
+          LOGGER.info(String.format("Error downloading directory %s at once, downloading its entries one by one",
+                                    getUserFacingNodeName(treeNode)), throwable);
+          futureResult.setFuture(downloadDirectoryEntries(treeNode, localDirectoryPath, tracker));
+        }
+      });
+      return futureResult;
+    }
+
+    @NotNull
+    private ListenableFuture<Void> downloadDirectoryEntries(@NotNull DeviceFileEntryNode treeNode,
+                                                            @NotNull Path localDirectoryPath,
+                                                            @NotNull FileTransferOperationTracker tracker) {
       SettableFuture<Void> futureResult = SettableFuture.create();
 
       ListenableFuture<Void> futureLoadChildren = loadNodeChildren(treeNode);
       myEdtExecutor.addCallback(futureLoadChildren, new FutureCallback<Void>() {
         @Override
         public void onSuccess(@Nullable Void result) {
-          ListenableFuture<Void> futureDownloadChildren = executeFuturesInSequence(treeNode.getChildEntryNodes().iterator(), node -> {
-            Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
-            return downloadSingleNode(node, nodePath, tracker);
-          });
+          // Download entries in parallel, the actual number of concurrent transfers is limited by the file system
+          ListenableFuture<Void> futureDownloadChildren = myEdtExecutor.executeFuturesInParallel(
+            treeNode.getChildEntryNodes().iterator(),
+            node -> {
+              Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
+              return downloadSingleNode(node, nodePath, tracker);
+            },
+            MAX_CONCURRENT_DOWNLOADS);
           myEdtExecutor.addConsumer(futureDownloadChildren, (aVoid, throwable) -> {
             if (throwable != null) {
               tracker.addProblem(throwable);
@@ -831,6 +881,30 @@ public class DeviceExplorerController {
       return futureResult;
     }
 
+    /**
+     * Reports the files and directories downloaded at once by {@link DeviceFileEntry#downloadDirectory} to the {@code tracker}.
+     */
+    private void addDownloadedDirectoryContents(@NotNull Path localDirectoryPath, @NotNull FileTransferOperationTracker tracker) {
+      try (Stream<Path> paths = Files.walk(localDirectoryPath)) {
+        paths.filter(path -> !path.equals(localDirectoryPath)).forEach(path -> {
+          if (Files.isDirectory(path)) {
+            tracker.processDirectory();
+            tracker.getSummary().addDirectoryCount(1);
+          }
+          else {
+            long size = path.toFile().length();
+            tracker.processFile();
+            tracker.processFileBytes(size);
+            tracker.getSummary().addFileCount(1);
+            tracker.getSummary().addByteCount(size);
+          }
+        });
+      }
+      catch (IOException e) {
+        tracker.addProblem(e);
+      }
+    }
+
     @Override
     public void copyNodePathsInvoked(@NotNull List<DeviceFileEntryNode> treeNodes) {
       String text = treeNodes.stream().map(x -> x.getEntry().getFullPath()).collect(Collectors.joining("\n"));
@@ -17,6 +17,7 @@ package com.android.tools.idea.explorer.adbimpl;
 
 import com.android.tools.idea.explorer.fs.DeviceFileEntry;
 import com.android.tools.idea.explorer.fs.FileTransferProgress;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
@@ -205,6 +206,7 @@ public class AdbDeviceDataDirectoryEntry extends AdbDeviceForwardingFileEntry {
     private final String myPackageName;
     @NotNull
     private final AdbDeviceDirectFileEntry myDirectEntry;
+    private final boolean myIsPackageRoot;
 
     public AdbDevicePackageDirectoryEntry(@NotNull AdbDeviceFileEntry parent,
                                           @NotNull AdbFileListingEntry entry,
@@ -212,6 +214,7 @@ public class AdbDeviceDataDirectoryEntry extends AdbDeviceForwardingFileEntry {
       super(parent.myDevice, entry, parent);
       myPackageName = packageName;
       myDirectEntry = new AdbDeviceDirectFileEntry(parent.myDevice, entry, parent, packageName);
+      myIsPackageRoot = !(parent instanceof AdbDevicePackageDirectoryEntry);
     }
 
     @NotNull
@@ -223,9 +226,17 @@ public class AdbDeviceDataDirectoryEntry extends AdbDeviceForwardingFileEntry {
     @NotNull
     @Override
     public ListenableFuture<List<DeviceFileEntry>> getEntries() {
+      // Listing the package directory for the first time lists the whole package tree at once, since each "run-as"
+      // command is slow and the directories of a package are typically browsed one after the other.
+      ListenableFuture<Boolean> futurePrefetch = myIsPackageRoot
+                                                 ? myDevice.getAdbFileListing().prefetchRunAs(myEntry, myPackageName)
+                                                 : Futures.immediateFuture(false);
+      // Prefetching is an optimization only, fall back to listing the directory alone
+      futurePrefetch = myDevice.getTaskExecutor().catching(futurePrefetch, Exception.class, error -> false);
+
       // Create "run-as" entries for child entries
-      ListenableFuture<List<AdbFileListingEntry>> futureChildren =
-        myDevice.getAdbFileListing().getChildrenRunAs(myEntry, myPackageName);
+      ListenableFuture<List<AdbFileListingEntry>> futureChildren = myDevice.getTaskExecutor().transformAsync(
+        futurePrefetch, prefetched -> myDevice.getAdbFileListing().getChildrenRunAs(myEntry, myPackageName));
 
       return myDevice.getTaskExecutor().transform(futureChildren, entries -> {
         assert entries != null;
@@ -242,6 +253,18 @@ public class AdbDeviceDataDirectoryEntry extends AdbDeviceForwardingFileEntry {
       return myDevice.getAdbFileTransfer().downloadFileViaTempLocation(getFullPath(), getSize(), localPath, progress, myPackageName);
     }
 
+    @Override
+    public boolean supportsDirectoryDownload() {
+      return true;
+    }
+
+    @NotNull
+    @Override
+    public ListenableFuture<Void> downloadDirectory(@NotNull Path localDirectory, @NotNull FileTransferProgress progress) {
+      // Downloading each file via a temp. location takes several commands per file, archive the whole directory instead.
+      return myDevice.getAdbFileTransfer().downloadDirectoryViaArchive(getFullPath(), localDirectory, progress, myPackageName);
+    }
+
     @NotNull
     @Override
     public ListenableFuture<Void> uploadFile(@NotNull Path localPath, @NotNull String fileName, @NotNull FileTransferProgress progress) {
@@ -251,6 +274,7 @@ public class AdbDeviceDataDirectoryEntry extends AdbDeviceForwardingFileEntry {
       //
       // We do this directly instead of doing it as a fallback to attempting a regular push
       // because of https://code.google.com/p/android/issues/detail?id=241157.
+      myDevice.getAdbFileListing().invalidate(getFullPath());
       return myDevice.getAdbFileTransfer().uploadFileViaTempLocation(localPath,
                                                                      AdbPathUtil.resolve(getFullPath(), fileName),
                                                                      progress,
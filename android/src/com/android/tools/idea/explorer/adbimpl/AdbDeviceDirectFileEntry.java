@@ -63,6 +63,7 @@ public class AdbDeviceDirectFileEntry extends AdbDeviceFileEntry {
   @NotNull
   @Override
   public ListenableFuture<Void> delete() {
+    myDevice.getAdbFileListing().invalidate(AdbPathUtil.getParentPath(getFullPath()));
     if (isDirectory()) {
       return myDevice.getAdbFileOperations().deleteRecursiveRunAs(getFullPath(), myRunAs);
     }
@@ -74,12 +75,14 @@ public class AdbDeviceDirectFileEntry extends AdbDeviceFileEntry {
   @NotNull
   @Override
   public ListenableFuture<Void> createNewFile(@NotNull String fileName) {
+    myDevice.getAdbFileListing().invalidate(getFullPath());
     return myDevice.getAdbFileOperations().createNewFileRunAs(getFullPath(), fileName, myRunAs);
   }
 
   @NotNull
   @Override
   public ListenableFuture<Void> createNewDirectory(@NotNull String directoryName) {
+    myDevice.getAdbFileListing().invalidate(getFullPath());
     return myDevice.getAdbFileOperations().createNewDirectoryRunAs(getFullPath(), directoryName, myRunAs);
   }
 
@@ -114,6 +117,7 @@ public class AdbDeviceDirectFileEntry extends AdbDeviceFileEntry {
                                            @NotNull String fileName,
                                            @NotNull FileTransferProgress progress) {
     String remotePath = AdbPathUtil.resolve(myEntry.getFullPath(), fileName);
+    myDevice.getAdbFileListing().invalidate(getFullPath());
 
     // If the device is *not* root, but supports "su 0", the ADB Sync service may not have the
     // permissions upload the local file directly to the remote location.
@@ -27,9 +27,15 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -38,14 +44,32 @@ import java.util.stream.Collectors;
 import static com.android.ddmlib.FileListingService.LS_LD_PATTERN;
 import static com.android.ddmlib.FileListingService.LS_L_PATTERN;
 
+/**
+ * Lists the contents of directories of a device using "ls -l".
+ *
+ * <p>To avoid one shell command per directory when browsing a deep tree, {@link #prefetchRunAs} lists a whole subtree
+ * with a single "ls -l -R" command and keeps the listing of each directory of the subtree. A prefetched listing is used
+ * at most once, within {@link #PREFETCH_TIMEOUT_MILLIS} of being fetched: the following request for the same directory
+ * goes to the device again, so that refreshing a directory always shows its current contents. Each subtree is prefetched
+ * at most once until {@link #invalidateAll} is called, so that refreshing or expanding it again only lists the directory
+ * being refreshed.
+ */
 public class AdbFileListing {
   @NotNull public static final Logger LOGGER = Logger.getInstance(AdbFileListing.class);
   @NotNull private static final Pattern BACKSLASH = Pattern.compile("\\", Pattern.LITERAL);
+  private static final long PREFETCH_TIMEOUT_MILLIS = 30_000;
+  /**
+   * The maximum number of directories kept from a single prefetch, so that prefetching a huge tree (e.g. an app
+   * with thousands of cache directories) doesn't keep the whole tree in memory.
+   */
+  private static final int MAX_PREFETCHED_DIRECTORIES = 1_000;
 
   @NotNull private final IDevice myDevice;
   @NotNull private AdbDeviceCapabilities myDeviceCapabilities;
   @NotNull private final FutureCallbackExecutor myExecutor;
   @NotNull private final AdbFileListingEntry myRoot;
+  @NotNull private final Map<ListingKey, PrefetchedListing> myPrefetchedListings = new ConcurrentHashMap<>();
+  @NotNull private final Set<ListingKey> myPrefetchedRoots = ConcurrentHashMap.newKeySet();
 
   public AdbFileListing(@NotNull IDevice device, @NotNull AdbDeviceCapabilities deviceCapabilities, @NotNull Executor taskExecutor) {
     myDevice = device;
@@ -67,6 +91,11 @@ public class AdbFileListing {
   @NotNull
   public ListenableFuture<List<AdbFileListingEntry>> getChildrenRunAs(@NotNull AdbFileListingEntry parentEntry,
                                                                       @Nullable String runAs) {
+    PrefetchedListing prefetched = myPrefetchedListings.remove(new ListingKey(parentEntry.getFullPath(), runAs));
+    if (prefetched != null && !prefetched.isExpired()) {
+      return Futures.immediateFuture(prefetched.myEntries);
+    }
+
     return myExecutor.executeAsync(() -> {
       // Run "ls -l" command and process matching output lines
       String command = getCommand(runAs, "ls -l ").withDirectoryEscapedPath(parentEntry.getFullPath()).build(); //$NON-NLS-1$
@@ -86,6 +115,53 @@ public class AdbFileListing {
     });
   }
 
+  /**
+   * Lists the whole subtree of {@code parentEntry} with a single command, so that the next call to {@link #getChildrenRunAs}
+   * for {@code parentEntry} or any of its descendant directories doesn't need to go to the device. Prefetching is best
+   * effort: the future completes with {@code false} if the listing failed, e.g. because the device "ls" does not support
+   * "-R", and only fails in case of ADB specific errors, such as device disconnected, etc. The future also completes with
+   * {@code false}, without running any command, if the subtree was already prefetched.
+   */
+  @NotNull
+  public ListenableFuture<Boolean> prefetchRunAs(@NotNull AdbFileListingEntry parentEntry, @Nullable String runAs) {
+    if (!myPrefetchedRoots.add(new ListingKey(parentEntry.getFullPath(), runAs))) {
+      return Futures.immediateFuture(false);
+    }
+    return myExecutor.executeAsync(() -> {
+      String command = getCommand(runAs, "ls -l -R ").withDirectoryEscapedPath(parentEntry.getFullPath()).build(); //$NON-NLS-1$
+
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      Map<String, List<AdbFileListingEntry>> listings =
+        processLsRecursiveOutput(commandResult.getOutput(), myDeviceCapabilities.hasEscapingLs(), parentEntry);
+      if (commandResult.isError()) {
+        // Sub-directories we are not allowed to read make "ls" fail, but the rest of the output is still valid.
+        // An empty listing could be an error though, so leave it to a regular listing.
+        LOGGER.info(String.format("Error prefetching the contents of \"%s\", keeping what was listed", parentEntry.getFullPath()));
+        listings.values().removeIf(List::isEmpty);
+      }
+      long timestamp = System.nanoTime();
+      listings.forEach((path, entries) -> myPrefetchedListings.put(new ListingKey(path, runAs), new PrefetchedListing(entries, timestamp)));
+      return !listings.isEmpty();
+    });
+  }
+
+  /**
+   * Forgets any prefetched listing of the directory at {@code path} and of its sub-directories, typically because
+   * the directory was modified.
+   */
+  public void invalidate(@NotNull String path) {
+    String prefix = path.endsWith(AdbPathUtil.FILE_SEPARATOR) ? path : path + AdbPathUtil.FILE_SEPARATOR;
+    myPrefetchedListings.keySet().removeIf(key -> key.myPath.equals(path) || key.myPath.startsWith(prefix));
+  }
+
+  /**
+   * Forgets all prefetched listings, and allows prefetching subtrees again.
+   */
+  public void invalidateAll() {
+    myPrefetchedRoots.clear();
+    myPrefetchedListings.clear();
+  }
+
   /**
    * Determine if a symlink entry points to a directory. This is a best effort process,
    * as the target of the symlink might not be accessible, in which case the future value
@@ -130,6 +206,50 @@ public class AdbFileListing {
     });
   }
 
+  /**
+   * Splits the output of "ls -l -R" into the listing of each directory, keyed by path. The listing of the first directory
+   * may or may not be preceded by a "path:" line, depending on the "ls" implementation. Listings of sub-directories are
+   * preceded by a "path:" line and separated by empty lines.
+   */
+  @NotNull
+  static Map<String, List<AdbFileListingEntry>> processLsRecursiveOutput(@NotNull List<String> lines,
+                                                                         boolean escaping,
+                                                                         @NotNull AdbFileListingEntry parentEntry) {
+    Map<String, List<AdbFileListingEntry>> listings = new HashMap<>();
+    AdbFileListingEntry directory = parentEntry;
+    List<AdbFileListingEntry> entries = new ArrayList<>();
+    listings.put(parentEntry.getFullPath(), entries);
+    for (String line : lines) {
+      if (line.endsWith(":") && !LS_L_PATTERN.matcher(line).matches()) {
+        String path = normalizeDirectoryPath(line.substring(0, line.length() - 1), escaping);
+        if (listings.size() >= MAX_PREFETCHED_DIRECTORIES && !listings.containsKey(path)) {
+          break;
+        }
+        directory = new AdbFileListingEntryBuilder().setPath(path).setKind(AdbFileListingEntry.EntryKind.DIRECTORY).build();
+        entries = listings.computeIfAbsent(path, key -> new ArrayList<>());
+        continue;
+      }
+      AdbFileListingEntry entry = processLsOutputLine(line, escaping, directory);
+      if (entry != null) {
+        entries.add(entry);
+      }
+    }
+    return listings;
+  }
+
+  @NotNull
+  private static String normalizeDirectoryPath(@NotNull String path, boolean escaping) {
+    if (escaping) {
+      path = BACKSLASH.matcher(path).replaceAll("");
+    }
+    // The paths of sub-directories are built by appending their name to the path we pass, which ends with a "/".
+    path = path.replaceAll("/{2,}", AdbPathUtil.FILE_SEPARATOR);
+    if (path.length() > 1 && path.endsWith(AdbPathUtil.FILE_SEPARATOR)) {
+      path = path.substring(0, path.length() - 1);
+    }
+    return path;
+  }
+
   @Nullable
   private static AdbFileListingEntry processLsOutputLine(@NotNull String line, boolean escaping, @NotNull AdbFileListingEntry parentEntry) {
     // no need to handle empty lines.
@@ -229,4 +349,41 @@ public class AdbFileListing {
     }
     return command.withText(text);
   }
+
+  private static final class ListingKey {
+    @NotNull private final String myPath;
+    @Nullable private final String myRunAs;
+
+    ListingKey(@NotNull String path, @Nullable String runAs) {
+      myPath = path;
+      myRunAs = runAs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof ListingKey)) return false;
+      ListingKey key = (ListingKey)o;
+      return myPath.equals(key.myPath) && Objects.equals(myRunAs, key.myRunAs);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myPath, myRunAs);
+    }
+  }
+
+  private static final class PrefetchedListing {
+    @NotNull private final List<AdbFileListingEntry> myEntries;
+    private final long myTimestampNanos;
+
+    PrefetchedListing(@NotNull List<AdbFileListingEntry> entries, long timestampNanos) {
+      myEntries = entries;
+      myTimestampNanos = timestampNanos;
+    }
+
+    boolean isExpired() {
+      return System.nanoTime() - myTimestampNanos > TimeUnit.MILLISECONDS.toNanos(PREFETCH_TIMEOUT_MILLIS);
+    }
+  }
 }
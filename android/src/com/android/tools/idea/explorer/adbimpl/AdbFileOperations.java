@@ -237,6 +237,22 @@ public class AdbFileOperations {
     });
   }
 
+  /**
+   * Creates a tar archive at {@code archivePath} containing the contents of the directory at {@code directoryPath}.
+   */
+  @NotNull
+  public ListenableFuture<Void> createArchiveRunAs(@NotNull String directoryPath, @NotNull String archivePath, @Nullable String runAs) {
+    return myExecutor.executeAsync(() -> {
+      String command = getCommand(runAs, "tar -c -f ").withEscapedPath(archivePath)
+        .withText(" -C ").withEscapedPath(directoryPath)
+        .withText(" .")
+        .build();
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      commandResult.throwIfError();
+      return null;
+    });
+  }
+
   @NotNull
   public ListenableFuture<String> createTempFile(@NotNull String tempPath) {
     return createTempFileRunAs(tempPath, null);
@@ -25,21 +25,37 @@ import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.android.tools.idea.explorer.fs.ThrottledProgress;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Locale;
 import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import javax.annotation.concurrent.GuardedBy;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class AdbFileTransfer {
   @NotNull private static Logger LOGGER = Logger.getInstance(AdbFileTransfer.class);
 
+  /**
+   * The maximum number of files pushed or pulled at the same time. Each transfer uses its own sync connection, so
+   * transferring a few files in parallel hides the latency of each round trip to the device, without flooding adb.
+   */
+  public static final int MAX_CONCURRENT_TRANSFERS = 4;
+
   @NotNull private final IDevice myDevice;
   @NotNull private final AdbFileOperations myFileOperations;
   @NotNull private final FutureCallbackExecutor myProgressExecutor;
   @NotNull private final FutureCallbackExecutor myTaskExecutor;
+  @NotNull private final Object myLock = new Object();
+  @GuardedBy("myLock") @NotNull private final Deque<Runnable> myPendingTransfers = new ArrayDeque<>();
+  @GuardedBy("myLock") private int myActiveTransferCount;
 
   public AdbFileTransfer(@NotNull IDevice device,
                          @NotNull AdbFileOperations fileOperations,
@@ -92,6 +108,42 @@ public class AdbFileTransfer {
     });
   }
 
+  /**
+   * Downloads the contents of the remote directory {@code remotePath} into {@code localDirectory} as a single archive,
+   * which is much faster than downloading each file of a large tree, especially via a temp. location.
+   * The future fails if the device does not support the "tar" command.
+   */
+  @NotNull
+  public ListenableFuture<Void> downloadDirectoryViaArchive(@NotNull String remotePath,
+                                                            @NotNull Path localDirectory,
+                                                            @NotNull FileTransferProgress progress,
+                                                            @Nullable String runAs) {
+    ListenableFuture<String> futureTempFile = myFileOperations.createTempFile(DEVICE_TEMP_DIRECTORY);
+    return myTaskExecutor.transformAsync(futureTempFile, tempFile -> {
+      assert tempFile != null;
+
+      // Archive the remote directory to the temporary remote location
+      ListenableFuture<Void> futureArchive = myFileOperations.createArchiveRunAs(remotePath, tempFile, runAs);
+      ListenableFuture<Void> futureExtract = myTaskExecutor.transformAsync(futureArchive, aVoid -> {
+        // Download the archive to a local temporary file, then extract it
+        Path localArchive = FileUtil.createTempFile("device-explorer", ".tar", true).toPath();
+        ListenableFuture<Void> futureDownload = downloadFile(tempFile, -1, localArchive, progress);
+        ListenableFuture<Void> futureExtracted = myTaskExecutor.transform(futureDownload, aVoid2 -> {
+          long startTime = System.nanoTime();
+          TarExtractor.extract(localArchive, localDirectory);
+          long endTime = System.nanoTime();
+          LOGGER.info(String.format(Locale.US, "Extracting archive took %,d ms to execute: \"%s\" -> \"%s\"",
+                                    (endTime - startTime) / 1_000_000, remotePath, localDirectory));
+          return null;
+        });
+        return myTaskExecutor.finallySync(futureExtracted, () -> FileUtil.delete(localArchive.toFile()));
+      });
+
+      // Ensure temporary remote file is deleted in all cases (after download success *or* error)
+      return myTaskExecutor.finallyAsync(futureExtract,
+                                         () -> myFileOperations.deleteFile(tempFile));
+    });
+  }
 
   @NotNull
   public ListenableFuture<Void> uploadFile(@NotNull Path localPath,
@@ -126,6 +178,14 @@ public class AdbFileTransfer {
                                                     long remotePathSize,
                                                     @NotNull Path localPath,
                                                     @NotNull FileTransferProgress progress) {
+    return enqueueTransfer(() -> downloadFileWorkerImpl(remotePath, remotePathSize, localPath, progress));
+  }
+
+  @NotNull
+  private ListenableFuture<Void> downloadFileWorkerImpl(@NotNull String remotePath,
+                                                        long remotePathSize,
+                                                        @NotNull Path localPath,
+                                                        @NotNull FileTransferProgress progress) {
 
     ListenableFuture<SyncService> futureSyncService = getSyncService();
 
@@ -161,6 +221,13 @@ public class AdbFileTransfer {
   private ListenableFuture<Void> uploadFileWorker(@NotNull Path localPath,
                                                   @NotNull String remotePath,
                                                   @NotNull FileTransferProgress progress) {
+    return enqueueTransfer(() -> uploadFileWorkerImpl(localPath, remotePath, progress));
+  }
+
+  @NotNull
+  private ListenableFuture<Void> uploadFileWorkerImpl(@NotNull Path localPath,
+                                                      @NotNull String remotePath,
+                                                      @NotNull FileTransferProgress progress) {
 
     ListenableFuture<SyncService> futureSyncService = getSyncService();
 
@@ -194,6 +261,54 @@ public class AdbFileTransfer {
     });
   }
 
+  /**
+   * Starts the {@code transfer} right away if less than {@link #MAX_CONCURRENT_TRANSFERS} transfers are running,
+   * or when one of the running transfers completes otherwise.
+   */
+  @NotNull
+  private ListenableFuture<Void> enqueueTransfer(@NotNull Supplier<ListenableFuture<Void>> transfer) {
+    SettableFuture<Void> futureResult = SettableFuture.create();
+    Runnable startTransfer = () -> {
+      ListenableFuture<Void> futureTransfer;
+      if (futureResult.isCancelled()) {
+        futureTransfer = Futures.immediateCancelledFuture();
+      }
+      else {
+        try {
+          futureTransfer = transfer.get();
+        }
+        catch (Throwable t) {
+          futureTransfer = Futures.immediateFailedFuture(t);
+        }
+      }
+      futureResult.setFuture(futureTransfer);
+      futureTransfer.addListener(this::startNextTransfer, MoreExecutors.directExecutor());
+    };
+
+    synchronized (myLock) {
+      if (myActiveTransferCount >= MAX_CONCURRENT_TRANSFERS) {
+        myPendingTransfers.add(startTransfer);
+        return futureResult;
+      }
+      myActiveTransferCount++;
+    }
+    startTransfer.run();
+    return futureResult;
+  }
+
+  private void startNextTransfer() {
+    Runnable nextTransfer;
+    synchronized (myLock) {
+      nextTransfer = myPendingTransfers.poll();
+      if (nextTransfer == null) {
+        myActiveTransferCount--;
+        return;
+      }
+    }
+    // Don't start the next transfer from the completion listener of the previous one
+    myTaskExecutor.execute(nextTransfer);
+  }
+
   @NotNull
   private ListenableFuture<SyncService> getSyncService() {
     return myTaskExecutor.executeAsync(() -> {
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.adbimpl;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Extracts the regular files and directories of a tar archive, as created by the "tar" command of a device
+ * (ustar format, with GNU or pax extensions for long names). Links and special files are skipped, since
+ * they can't be downloaded one by one either.
+ */
+final class TarExtractor {
+  private static final int BLOCK_SIZE = 512;
+
+  private TarExtractor() {
+  }
+
+  static void extract(@NotNull Path archive, @NotNull Path directory) throws IOException {
+    try (InputStream stream = new BufferedInputStream(Files.newInputStream(archive))) {
+      extract(stream, directory);
+    }
+  }
+
+  static void extract(@NotNull InputStream stream, @NotNull Path directory) throws IOException {
+    Path root = directory.toAbsolutePath().normalize();
+    Files.createDirectories(root);
+    DataInputStream input = new DataInputStream(stream);
+    byte[] header = new byte[BLOCK_SIZE];
+    String longName = null;
+    while (true) {
+      try {
+        input.readFully(header);
+      }
+      catch (EOFException e) {
+        // Some implementations omit the end of archive blocks
+        return;
+      }
+      if (isZeroBlock(header)) {
+        return;
+      }
+
+      long size = parseSize(header);
+      byte type = header[156];
+      String name = longName != null ? longName : getName(header);
+      longName = null;
+
+      switch (type) {
+        case 'L': // GNU long name of the next entry
+          longName = trimNul(new String(readData(input, size), StandardCharsets.UTF_8));
+          continue;
+        case 'x': // pax extended header of the next entry
+          longName = getPaxPath(new String(readData(input, size), StandardCharsets.UTF_8));
+          continue;
+        case '0':
+        case '\0': {
+          Path file = resolve(root, name);
+          Files.createDirectories(file.getParent());
+          try (OutputStream output = Files.newOutputStream(file)) {
+            copy(input, output, size);
+          }
+          skipPadding(input, size);
+          break;
+        }
+        case '5':
+          Files.createDirectories(resolve(root, name));
+          skip(input, size);
+          break;
+        default:
+          skip(input, size);
+          break;
+      }
+    }
+  }
+
+  @NotNull
+  private static Path resolve(@NotNull Path root, @NotNull String name) throws IOException {
+    Path path = root.resolve(name).normalize();
+    if (!path.startsWith(root)) {
+      throw new IOException(String.format("Archive entry \"%s\" is outside of the destination directory", name));
+    }
+    return path;
+  }
+
+  @NotNull
+  private static String getName(@NotNull byte[] header) {
+    String name = getString(header, 0, 100);
+    // ustar splits long names in a prefix and a name
+    if (getString(header, 257, 5).equals("ustar")) {
+      String prefix = getString(header, 345, 155);
+      if (!prefix.isEmpty()) {
+        name = prefix + "/" + name;
+      }
+    }
+    return name;
+  }
+
+  @Nullable
+  private static String getPaxPath(@NotNull String records) {
+    // Records are "<length> <key>=<value>\n"
+    for (String record : records.split("\n")) {
+      int space = record.indexOf(' ');
+      if (space >= 0 && record.startsWith("path=", space + 1)) {
+        return record.substring(space + 1 + "path=".length());
+      }
+    }
+    return null;
+  }
+
+  private static long parseSize(@NotNull byte[] header) throws IOException {
+    if ((header[124] & 0x80) != 0) {
+      // Base-256 encoding, used by GNU tar for files larger than 8GB
+      long size = 0;
+      for (int i = 125; i < 136; i++) {
+        size = (size << 8) | (header[i] & 0xff);
+      }
+      return size;
+    }
+    String octal = getString(header, 124, 12).trim();
+    try {
+      return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+    }
+    catch (NumberFormatException e) {
+      throw new IOException("Invalid archive entry size: " + octal, e);
+    }
+  }
+
+  @NotNull
+  private static String getString(@NotNull byte[] header, int offset, int length) {
+    int end = offset;
+    while (end < offset + length && header[end] != 0) {
+      end++;
+    }
+    return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+  }
+
+  @NotNull
+  private static String trimNul(@NotNull String value) {
+    int nul = value.indexOf('\0');
+    return nul >= 0 ? value.substring(0, nul) : value;
+  }
+
+  private static boolean isZeroBlock(@NotNull byte[] block) {
+    for (byte b : block) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @NotNull
+  private static byte[] readData(@NotNull DataInputStream input, long size) throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Archive header too large: " + size);
+    }
+    byte[] data = new byte[(int)size];
+    input.readFully(data);
+    skipPadding(input, size);
+    return data;
+  }
+
+  private static void copy(@NotNull InputStream input, @NotNull OutputStream output, long size) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    long remaining = size;
+    while (remaining > 0) {
+      int count = input.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+      if (count < 0) {
+        throw new EOFException("Unexpected end of archive");
+      }
+      output.write(buffer, 0, count);
+      remaining -= count;
+    }
+  }
+
+  private static void skip(@NotNull DataInputStream input, long size) throws IOException {
+    long remaining = size;
+    while (remaining > 0) {
+      long count = input.skip(remaining);
+      if (count <= 0) {
+        if (input.read() < 0) {
+          throw new EOFException("Unexpected end of archive");
+        }
+        count = 1;
+      }
+      remaining -= count;
+    }
+    skipPadding(input, size);
+  }
+
+  private static void skipPadding(@NotNull DataInputStream input, long size) throws IOException {
+    int padding = (int)((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+    input.skipBytes(padding);
+  }
+}
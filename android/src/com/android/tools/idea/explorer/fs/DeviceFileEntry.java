@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.explorer.fs;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -93,6 +94,24 @@ public interface DeviceFileEntry {
   ListenableFuture<Void> downloadFile(@NotNull Path localPath,
                                       @NotNull FileTransferProgress progress);
 
+  /**
+   * Returns {@code true} if {@link #downloadDirectory} can download this directory in a single operation.
+   * Otherwise, its entries should be downloaded one by one.
+   */
+  default boolean supportsDirectoryDownload() {
+    return false;
+  }
+
+  /**
+   * Downloads the contents of this directory, recursively, to a local directory in a single operation.
+   * Only call this method if {@link #supportsDirectoryDownload()} returns {@code true}.
+   */
+  @NotNull
+  default ListenableFuture<Void> downloadDirectory(@NotNull Path localDirectory,
+                                                   @NotNull FileTransferProgress progress) {
+    return Futures.immediateFailedFuture(new UnsupportedOperationException("Directory download is not supported"));
+  }
+
   /**
    * Uploads the contents of a local file to a remote {@link DeviceFileEntry} directory.
    */
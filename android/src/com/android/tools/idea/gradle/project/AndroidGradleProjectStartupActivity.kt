@@ -298,6 +298,7 @@ private fun attachCachedModelsOrTriggerSync(project: Project, gradleProjectInfo:
 private fun additionalProjectSetup(project: Project) {
   ConflictSet.findConflicts(project).showSelectionConflicts()
   ProjectStructure.getInstance(project).analyzeProjectStructure()
-  setUpModules(project)
+  // The cached models are usually the ones the modules were set up with before the project was closed.
+  setUpModules(project, onlyChangedModules = true)
 }
 
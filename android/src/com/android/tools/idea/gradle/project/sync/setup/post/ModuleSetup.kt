@@ -18,27 +18,86 @@ package com.android.tools.idea.gradle.project.sync.setup.post
 
 import com.android.tools.idea.gradle.project.facet.gradle.GradleFacet
 import com.android.tools.idea.gradle.project.model.AndroidModuleModel
+import com.android.tools.idea.gradle.project.model.JavaModuleModel
+import com.android.tools.idea.gradle.project.model.NdkModuleModel
 import com.android.tools.idea.project.AndroidRunConfigurations
 import com.android.tools.idea.testartifacts.scopes.GradleTestArtifactSearchScopes
+import com.google.common.annotations.VisibleForTesting
+import com.google.common.hash.Funnels
+import com.google.common.hash.Hashing
+import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.module.Module
 import com.intellij.openapi.module.ModuleManager
+import com.intellij.openapi.progress.ProcessCanceledException
 import com.intellij.openapi.project.Project
+import com.intellij.serialization.ObjectSerializer
+import com.intellij.serialization.WriteConfiguration
 import org.jetbrains.android.facet.AndroidFacet
 import org.jetbrains.kotlin.idea.configuration.compilerArgumentsBySourceSet
 import org.jetbrains.kotlin.idea.configuration.configureFacetByCompilerArguments
 import org.jetbrains.kotlin.idea.configuration.sourceSetName
 import org.jetbrains.kotlin.idea.facet.KotlinFacet
 
-fun setUpModules(project: Project) {
+/**
+ * Sets up the modules of [project] after their models were attached. When [onlyChangedModules] is true, the steps whose result is saved
+ * with the project are skipped for the modules whose models are the same as when they were last set up, see [ModuleSetupState].
+ *
+ * Model hashes are only computed when [onlyChangedModules] is true. A full setup, e.g. after a sync, forgets the recorded hashes, so the
+ * first reopen after it sets up all the modules again and records their hashes.
+ */
+@JvmOverloads
+fun setUpModules(project: Project, onlyChangedModules: Boolean = false) = setUpModules(project, onlyChangedModules, ::computeModelHash)
+
+@VisibleForTesting
+fun setUpModules(project: Project, onlyChangedModules: Boolean, modelHash: (Module) -> String?) {
   project.fixRunConfigurations()
-  ModuleManager.getInstance(project).modules.forEach { module ->
-    recordLastAgpVersion(module)
+  val modules = ModuleManager.getInstance(project).modules
+  val setupState = ModuleSetupState.getInstance(project)
+  val modelHashes = mutableMapOf<Module, String>()
+  modules.forEach { module ->
+    val hash = if (onlyChangedModules) modelHash(module) else null
+    if (!onlyChangedModules || hash == null || !setupState.isSetUp(module, hash)) {
+      recordLastAgpVersion(module)
+      setupAndroidRunConfiguration(module)
+      setupKotlinOptionsOnFacet(module)
+    }
     GradleTestArtifactSearchScopes.initializeScope(module)
-    setupAndroidRunConfiguration(module)
-    setupKotlinOptionsOnFacet(module)
+    hash?.let { modelHashes[module] = it }
   }
+  setupState.setUp(modelHashes)
 }
 
+/**
+ * Returns a hash of the models of [module], as serialized in the cached project structure, or null if they can't be serialized.
+ */
+private fun computeModelHash(module: Module): String? {
+  val models = listOfNotNull(AndroidModuleModel.get(module),
+                             GradleFacet.getInstance(module)?.gradleModuleModel,
+                             JavaModuleModel.get(module),
+                             NdkModuleModel.get(module))
+  val hasher = Hashing.murmur3_128().newHasher()
+  try {
+    Funnels.asOutputStream(hasher).use { outputStream ->
+      models.forEach {
+        hasher.putUnencodedChars(it.javaClass.name)
+        ObjectSerializer.instance.write(it, outputStream, MODEL_HASH_CONFIGURATION)
+      }
+    }
+  }
+  catch (e: ProcessCanceledException) {
+    throw e
+  }
+  catch (e: Exception) {
+    LOG.warn("Failed to hash the models of module ${module.name}", e)
+    return null
+  }
+  return hasher.hash().toString()
+}
+
+private val MODEL_HASH_CONFIGURATION = WriteConfiguration(allowAnySubTypes = true, binary = true)
+
+private val LOG = Logger.getInstance("#com.android.tools.idea.gradle.project.sync.setup.post.ModuleSetup")
+
 // Added due to KT-19958
 private fun setupKotlinOptionsOnFacet(module: Module) {
   val facet = AndroidFacet.getInstance(module) ?: return
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.gradle.project.sync.setup.post
+
+import com.intellij.openapi.components.PersistentStateComponent
+import com.intellij.openapi.components.ServiceManager
+import com.intellij.openapi.components.State
+import com.intellij.openapi.components.Storage
+import com.intellij.openapi.components.StoragePathMacros
+import com.intellij.openapi.module.Module
+import com.intellij.openapi.project.Project
+
+/**
+ * Remembers a hash of the models each module was last set up with (see [setUpModules]), so that setup steps whose result is saved with the
+ * project don't run again for modules whose models didn't change, e.g. when the project is reopened with cached models.
+ */
+@State(name = "ModuleSetupState", storages = [Storage(StoragePathMacros.WORKSPACE_FILE)])
+class ModuleSetupState : PersistentStateComponent<ModuleSetupState.State> {
+  class State {
+    /** The hash of the models each module was set up with, by module name. */
+    var modelHashesByModule: MutableMap<String, String> = mutableMapOf()
+  }
+
+  private var state = State()
+
+  override fun getState(): State = state
+
+  override fun loadState(state: State) {
+    this.state = state
+  }
+
+  /**
+   * Returns whether [module] was already set up with models whose hash is [modelHash].
+   */
+  @Synchronized
+  fun isSetUp(module: Module, modelHash: String): Boolean = state.modelHashesByModule[module.name] == modelHash
+
+  /**
+   * Records that the given modules were set up with models with the given hashes, and forgets about the other modules.
+   */
+  @Synchronized
+  fun setUp(modelHashes: Map<Module, String>) {
+    state.modelHashesByModule = modelHashes.mapKeysTo(mutableMapOf()) { it.key.name }
+  }
+
+  companion object {
+    @JvmStatic
+    fun getInstance(project: Project): ModuleSetupState = ServiceManager.getService(project, ModuleSetupState::class.java)
+  }
+}
@@ -28,6 +28,7 @@ import com.android.tools.idea.lint.common.LintIdeClient
 import com.android.tools.idea.lint.common.LintIdeSupport
 import com.android.tools.idea.lint.common.LintResult
 import com.android.tools.idea.project.AndroidProjectInfo
+import com.android.tools.idea.projectsystem.ProjectSyncModificationTracker
 import com.android.tools.idea.res.AndroidFileChangeListener
 import com.android.tools.idea.sdk.AndroidSdks
 import com.android.tools.idea.sdk.StudioSdkUtil
@@ -162,6 +163,9 @@ class AndroidLintIdeSupport : LintIdeSupport() {
     return true
   }
 
+  override fun getProjectModelModificationCount(project: Project): Long =
+    super.getProjectModelModificationCount(project) + ProjectSyncModificationTracker.getInstance(project).modificationCount
+
   // Projects
   override fun createProject(client: LintIdeClient,
                              files: List<VirtualFile>?,
@@ -60,26 +60,6 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     return Logger.getInstance(AndroidLogcatService.class);
   }
 
-  private static class LogcatBuffer {
-    private int myBufferSize;
-    private final LinkedList<LogCatMessage> myMessages = new LinkedList<>();
-
-    public void addMessage(@NotNull LogCatMessage message) {
-      myMessages.add(message);
-      myBufferSize += message.getMessage().length();
-      if (ConsoleBuffer.useCycleBuffer()) {
-        while (myBufferSize > ConsoleBuffer.getCycleBufferSize()) {
-          myBufferSize -= myMessages.removeFirst().getMessage().length();
-        }
-      }
-    }
-
-    @NotNull
-    public List<LogCatMessage> getMessages() {
-      return myMessages;
-    }
-  }
-
   private static class ListenerConnector implements LogcatListener {
     @GuardedBy("myListenerLock")
     @Nullable private LogcatListener myListener; // Initially not null, set to null when disconnected.
@@ -173,7 +153,7 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
   private final Map<IDevice, AndroidLogcatReceiver> myLogReceivers;
 
   @GuardedBy("myLock")
-  private final Map<IDevice, LogcatBuffer> myLogBuffers;
+  private final Map<IDevice, LogcatRingBuffer> myLogBuffers;
 
   /**
    * This is a list of commands to execute per device. We use a newSingleThreadExecutor
@@ -212,7 +192,8 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
 
       AndroidLogcatReceiver receiver = newAndroidLogcatReceiver(device);
       myLogReceivers.put(device, receiver);
-      myLogBuffers.put(device, new LogcatBuffer());
+      int maxCharCount = ConsoleBuffer.useCycleBuffer() ? ConsoleBuffer.getCycleBufferSize() : Integer.MAX_VALUE;
+      myLogBuffers.put(device, new LogcatRingBuffer(maxCharCount));
       myExecutors.get(device).execute(() -> executeLogcat(device, receiver));
     }
   }
@@ -225,7 +206,7 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
         Iterable<ListenerConnector> connectors;
         synchronized (myLock) {
           connectors = ImmutableList.copyOf(myDeviceToListenerMultimap.get(device));
-          LogcatBuffer buffer = myLogBuffers.get(device);
+          LogcatRingBuffer buffer = myLogBuffers.get(device);
 
           if (buffer != null) {
             buffer.addMessage(line);
@@ -364,9 +345,17 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
    * to a UI thread. For example, don't directly invoke a runnable on the UI thread per line, but consider batching many log lines first.
    */
   public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener, boolean addOldLogs) {
+    addListener(device, listener, addOldLogs ? new LogcatRingBuffer.Query() : null);
+  }
+
+  /**
+   * Same as {@link #addListener(IDevice, LogcatListener, boolean)}, but only notifies the listener of the log messages received so far
+   * that match {@code backlogQuery}, or of none if it is null. New messages are still all sent to the listener.
+   */
+  public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener, @Nullable LogcatRingBuffer.Query backlogQuery) {
     synchronized (myLock) {
-      List<LogCatMessage> oldMessages =
-          addOldLogs && myLogBuffers.containsKey(device) ? myLogBuffers.get(device).getMessages() : ImmutableList.of();
+      LogcatRingBuffer buffer = myLogBuffers.get(device);
+      List<LogCatMessage> oldMessages = backlogQuery != null && buffer != null ? buffer.getMessages(backlogQuery) : ImmutableList.of();
 
       ListenerConnector listenerConnector = new ListenerConnector(listener, oldMessages);
       myDeviceToListenerMultimap.put(device, listenerConnector);
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import gnu.trove.TObjectIntHashMap;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Backlog of the logcat messages of a device, trimmed to a maximum number of message characters like the console cycle buffer.
+ * <p>
+ * Headers are stored as primitive columns (timestamp, pid, tid, level and interned tag and application name), so filtering the
+ * backlog by process is a scan over a few arrays. Tags and application names no longer used by any message are dropped when the intern
+ * table grows past twice the number of strings still in use.
+ * <p>
+ * This class is not thread safe, {@link AndroidLogcatService} only accesses it while holding its lock.
+ */
+public final class LogcatRingBuffer {
+  private static final int INITIAL_CAPACITY = 256;
+  private static final LogLevel[] LEVELS = LogLevel.values();
+  private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+  private static final int NO_PID = -1;
+  private static final int MIN_INTERNED_STRING_LIMIT = 1024;
+
+  private final int myMaxCharCount;
+
+  // Columns, indexed from myHead and wrapping around at the capacity
+  @NotNull private long[] myEpochSeconds = new long[INITIAL_CAPACITY];
+  @NotNull private int[] myNanos = new int[INITIAL_CAPACITY];
+  @NotNull private int[] myPids = new int[INITIAL_CAPACITY];
+  @NotNull private int[] myTids = new int[INITIAL_CAPACITY];
+  @NotNull private byte[] myLevels = new byte[INITIAL_CAPACITY];
+  @NotNull private int[] myTagIds = new int[INITIAL_CAPACITY];
+  @NotNull private int[] myAppNameIds = new int[INITIAL_CAPACITY];
+  @NotNull private String[] myMessages = new String[INITIAL_CAPACITY];
+  /** Whether the row is a continuation line of the message of the previous row, i.e. it was received with the same header instance */
+  @NotNull private boolean[] myContinuations = new boolean[INITIAL_CAPACITY];
+
+  private int myHead;
+  private int mySize;
+  private int myCharCount;
+  @Nullable private LogCatHeader myLastHeader;
+
+  /** Interned tags and application names, ids start at 1 since {@link TObjectIntHashMap#get} returns 0 for missing keys. */
+  @NotNull private TObjectIntHashMap<String> myStringIds = new TObjectIntHashMap<>();
+  @NotNull private List<String> myStrings = new ArrayList<>();
+  private int myInternedStringLimit = MIN_INTERNED_STRING_LIMIT;
+
+  LogcatRingBuffer(int maxCharCount) {
+    myMaxCharCount = maxCharCount;
+  }
+
+  int size() {
+    return mySize;
+  }
+
+  int getCharCount() {
+    return myCharCount;
+  }
+
+  int getInternedStringCount() {
+    return myStrings.size();
+  }
+
+  void addMessage(@NotNull LogCatMessage message) {
+    if (mySize == myMessages.length) {
+      grow();
+    }
+    if (myStrings.size() >= myInternedStringLimit) {
+      compactStrings();
+    }
+    LogCatHeader header = message.getHeader();
+    Instant timestamp = header.getTimestamp();
+    int index = (myHead + mySize) % myMessages.length;
+    myEpochSeconds[index] = timestamp == null ? NO_TIMESTAMP : timestamp.getEpochSecond();
+    myNanos[index] = timestamp == null ? 0 : timestamp.getNano();
+    myPids[index] = header.getPid();
+    myTids[index] = header.getTid();
+    myLevels[index] = (byte)header.getLogLevel().ordinal();
+    myTagIds[index] = intern(header.getTag());
+    myAppNameIds[index] = intern(header.getAppName());
+    myMessages[index] = message.getMessage();
+    myContinuations[index] = mySize > 0 && header == myLastHeader;
+    myLastHeader = header;
+    mySize++;
+
+    myCharCount += message.getMessage().length();
+    while (myCharCount > myMaxCharCount && mySize > 0) {
+      removeFirst();
+    }
+  }
+
+  /**
+   * Returns all the messages of the buffer, oldest first.
+   */
+  @NotNull
+  List<LogCatMessage> getMessages() {
+    return getMessages(new Query());
+  }
+
+  /**
+   * Returns the messages of the buffer matching the given query, oldest first. Consecutive lines of a multi-line message
+   * share the same header instance, as they do when they are first received. Separate messages get separate header instances
+   * even when their headers are equal.
+   */
+  @NotNull
+  List<LogCatMessage> getMessages(@NotNull Query query) {
+    int appNameId = 0;
+    if (query.myAppName != null && (appNameId = myStringIds.get(query.myAppName)) == 0) {
+      return Collections.emptyList();
+    }
+
+    List<LogCatMessage> messages = new ArrayList<>();
+    MessageBuilder builder = new MessageBuilder();
+    for (int i = 0; i < mySize; i++) {
+      int index = (myHead + i) % myMessages.length;
+      if (query.myPid != NO_PID && myPids[index] != query.myPid) {
+        continue;
+      }
+      if (appNameId != 0 && myAppNameIds[index] != appNameId) {
+        continue;
+      }
+      messages.add(builder.build(index));
+    }
+    return messages;
+  }
+
+  private void removeFirst() {
+    myCharCount -= myMessages[myHead].length();
+    myMessages[myHead] = null;
+    myHead = (myHead + 1) % myMessages.length;
+    mySize--;
+  }
+
+  private void grow() {
+    int capacity = myMessages.length * 2;
+    myEpochSeconds = copy(myEpochSeconds, new long[capacity]);
+    myNanos = copy(myNanos, new int[capacity]);
+    myPids = copy(myPids, new int[capacity]);
+    myTids = copy(myTids, new int[capacity]);
+    myLevels = copy(myLevels, new byte[capacity]);
+    myTagIds = copy(myTagIds, new int[capacity]);
+    myAppNameIds = copy(myAppNameIds, new int[capacity]);
+    myMessages = copy(myMessages, new String[capacity]);
+    myContinuations = copy(myContinuations, new boolean[capacity]);
+    myHead = 0;
+  }
+
+  /**
+   * Copies the rows of the given column to the start of the new column.
+   */
+  @NotNull
+  private <T> T copy(@NotNull T column, @NotNull T newColumn) {
+    int tailLength = Math.min(mySize, myMessages.length - myHead);
+    System.arraycopy(column, myHead, newColumn, 0, tailLength);
+    System.arraycopy(column, 0, newColumn, tailLength, mySize - tailLength);
+    return newColumn;
+  }
+
+  /**
+   * Rebuilds the intern table with only the tags and application names of the messages still in the buffer.
+   */
+  private void compactStrings() {
+    List<String> strings = myStrings;
+    myStringIds = new TObjectIntHashMap<>();
+    myStrings = new ArrayList<>();
+    for (int i = 0; i < mySize; i++) {
+      int index = (myHead + i) % myMessages.length;
+      myTagIds[index] = intern(strings.get(myTagIds[index] - 1));
+      myAppNameIds[index] = intern(strings.get(myAppNameIds[index] - 1));
+    }
+    myInternedStringLimit = Math.max(MIN_INTERNED_STRING_LIMIT, 2 * myStrings.size());
+  }
+
+  private int intern(@NotNull String value) {
+    int id = myStringIds.get(value);
+    if (id == 0) {
+      myStrings.add(value);
+      id = myStrings.size();
+      myStringIds.put(value, id);
+    }
+    return id;
+  }
+
+  /**
+   * Creates the messages of a query, reusing the header of the previous row for the continuation lines of its message.
+   */
+  private final class MessageBuilder {
+    private int myPreviousIndex = -1;
+    @Nullable private LogCatHeader myPreviousHeader;
+
+    @NotNull
+    LogCatMessage build(int index) {
+      if (myPreviousHeader == null || !myContinuations[index] || myPreviousIndex != (index + myMessages.length - 1) % myMessages.length) {
+        Instant timestamp = myEpochSeconds[index] == NO_TIMESTAMP ? null : Instant.ofEpochSecond(myEpochSeconds[index], myNanos[index]);
+        myPreviousHeader = new LogCatHeader(LEVELS[myLevels[index]], myPids[index], myTids[index],
+                                            myStrings.get(myAppNameIds[index] - 1), myStrings.get(myTagIds[index] - 1), timestamp);
+      }
+      myPreviousIndex = index;
+      return new LogCatMessage(myPreviousHeader, myMessages[index]);
+    }
+  }
+
+  /**
+   * Selects the messages of a {@link LogcatRingBuffer}. Criteria that are not set match every message.
+   */
+  public static final class Query {
+    @Nullable private String myAppName;
+    private int myPid = NO_PID;
+
+    @NotNull
+    public Query setAppName(@Nullable String appName) {
+      myAppName = appName;
+      return this;
+    }
+
+    @NotNull
+    public Query setPid(int pid) {
+      myPid = pid;
+      return this;
+    }
+  }
+}
@@ -31,8 +31,10 @@ import com.android.tools.idea.projectsystem.ProjectSystemUtil;
 import com.android.utils.ILogger;
 import com.android.utils.NullLogger;
 import com.android.utils.Pair;
-import com.android.utils.XmlUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
@@ -52,6 +54,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import org.apache.commons.io.input.CharSequenceInputStream;
@@ -80,6 +83,8 @@ final class MergedManifestInfo {
    */
   @Nullable private final Document myDomDocument;
   @NotNull private final ModificationStamps myModificationStamps;
+  /** Hashes of the contents of {@link #getFiles()} when they were merged. */
+  @NotNull private final long[] myContentHashes;
   private final long mySyncTimestamp;
   @Nullable private final ImmutableList<MergingReport.Record> myLoggingRecords;
   @Nullable private final Actions myActions;
@@ -160,15 +165,33 @@ final class MergedManifestInfo {
     }
   }
 
+  /**
+   * Hashes of the contents of files by file, with the modification stamp they were computed for. Hashes are only computed again when a file
+   * changes, and are shared by the modules merging the same library manifests.
+   */
+  private static final Cache<VirtualFile, StampedHash> ourContentHashes = CacheBuilder.newBuilder().weakKeys().build();
+
+  private static class StampedHash {
+    final long modificationStamp;
+    final long hash;
+
+    StampedHash(long modificationStamp, long hash) {
+      this.modificationStamp = modificationStamp;
+      this.hash = hash;
+    }
+  }
+
   private MergedManifestInfo(@NotNull AndroidFacet facet,
                              @Nullable Document domDocument,
                              @NotNull ModificationStamps modificationStamps,
+                             @NotNull long[] contentHashes,
                              long syncTimestamp,
                              @Nullable ImmutableList<MergingReport.Record> loggingRecords,
                              @Nullable Actions actions) {
     myFacet = facet;
     myDomDocument = domDocument;
     myModificationStamps = modificationStamps;
+    myContentHashes = contentHashes;
     mySyncTimestamp = syncTimestamp;
     myLoggingRecords = loggingRecords;
     myActions = actions;
@@ -185,6 +208,7 @@ final class MergedManifestInfo {
 
     MergedManifestContributors contributors = ProjectSystemUtil.getModuleSystem(facet).getMergedManifestContributors();
     ModificationStamps modificationStamps = ModificationStamps.forFiles(project, contributors.allFiles);
+    long[] contentHashes = getContentHashes(contributors.allFiles);
 
     Document document = null;
     ImmutableList<MergingReport.Record> loggingRecords = null;
@@ -197,7 +221,44 @@ final class MergedManifestInfo {
       actions = result.actions;
     }
 
-    return new MergedManifestInfo(facet, document, modificationStamps, syncTimestamp, loggingRecords, actions);
+    return new MergedManifestInfo(facet, document, modificationStamps, contentHashes, syncTimestamp, loggingRecords, actions);
+  }
+
+  @NotNull
+  private static long[] getContentHashes(@NotNull List<VirtualFile> files) {
+    long[] hashes = new long[files.size()];
+    for (int i = 0; i < hashes.length; i++) {
+      hashes[i] = getContentHash(files.get(i));
+    }
+    return hashes;
+  }
+
+  /**
+   * Returns a hash of the content of {@code file} as read by the manifest merger, i.e. including unsaved changes.
+   */
+  private static long getContentHash(@NotNull VirtualFile file) {
+    com.intellij.openapi.editor.Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+    long modificationStamp = document != null ? document.getModificationStamp() : file.getModificationStamp();
+    StampedHash cached = ourContentHashes.getIfPresent(file);
+    if (cached != null && cached.modificationStamp == modificationStamp) {
+      return cached.hash;
+    }
+
+    long hash;
+    if (document != null) {
+      hash = Hashing.farmHashFingerprint64().hashString(document.getImmutableCharSequence(), UTF_8).asLong();
+    }
+    else {
+      try {
+        hash = Hashing.farmHashFingerprint64().hashBytes(file.contentsToByteArray()).asLong();
+      }
+      catch (IOException e) {
+        // The file is merged as an empty manifest, see getMergedManifest.
+        hash = 0;
+      }
+    }
+    ourContentHashes.put(file, new StampedHash(modificationStamp, hash));
+    return hash;
   }
 
   @Slow
@@ -254,7 +315,12 @@ final class MergedManifestInfo {
     }
     // TODO(b/128854237): We should use something backed with an iterator here so that we can early
     //  return without computing all the files we might care about first.
-    return myModificationStamps.equals(ModificationStamps.forFiles(myFacet.getModule().getProject(), manifests.allFiles));
+    if (myModificationStamps.equals(ModificationStamps.forFiles(myFacet.getModule().getProject(), manifests.allFiles))) {
+      return true;
+    }
+    // Modification stamps also change when the content doesn't, e.g. when a document is saved or when a change is undone before the
+    // manifests are merged again. Merging them again would give the same result.
+    return getFiles().equals(manifests.allFiles) && Arrays.equals(myContentHashes, getContentHashes(manifests.allFiles));
   }
 
   public boolean hasSevereError() {
@@ -355,13 +421,11 @@ final class MergedManifestInfo {
           if (moduleContainingManifest != null && !module.equals(moduleContainingManifest)) {
             MergedManifestSnapshot manifest = MergedManifestManager.getFreshSnapshotInCallingThread(moduleContainingManifest);
 
-            Document document = manifest.getDocument();
-            if (document != null) { // normally the case, but can fail on merge fail
-              // This is not very efficient. Consider enhancing the manifest merger API
-              // such that I can pass back a fully merged DOM document instead of
-              // an XML string since it will need to turn around and parse it anyway.
-              String text = XmlUtils.toXml(document);
-              return new ByteArrayInputStream(text.getBytes(UTF_8));
+            // Normally not null, but can be on merge fail. The snapshot of the module is reused as long as its manifests don't change,
+            // and so is its serialized document. The manifest merger API can't take a DOM document, it needs to parse it anyway.
+            byte[] documentXml = manifest.getDocumentXml();
+            if (documentXml != null) {
+              return new ByteArrayInputStream(documentXml);
             }
           }
         }
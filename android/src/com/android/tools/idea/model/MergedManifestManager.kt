@@ -67,8 +67,11 @@ private class MergedManifestSupplier(private val facet: AndroidFacet) :
    * (as opposed to the delegate supplier's background thread). This value is consumed on the delegate
    * supplier's background thread in [getOrCreateSnapshotFromDelegate], which is the only place that
    * it can be set to null.
+   *
+   * Only written while holding [callingThreadLock], but volatile so that [now] doesn't have to wait for that lock.
    */
   @GuardedBy("callingThreadLock")
+  @Volatile
   private var snapshotFromCallingThread: MergedManifestSnapshot? = null
 
   /**
@@ -101,7 +104,7 @@ private class MergedManifestSupplier(private val facet: AndroidFacet) :
   override val now: MergedManifestSnapshot?
     // getOrCreateSnapshotFromDelegate clears snapshotFromCallingThread before using it,
     // so if the value is not null, it must be more recent than whatever the delegate has cached.
-    get() = synchronized(callingThreadLock) { snapshotFromCallingThread } ?: delegate.now
+    get() = snapshotFromCallingThread ?: delegate.now
 
   override fun get() = delegate.get()
 
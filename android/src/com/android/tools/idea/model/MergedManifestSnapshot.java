@@ -18,6 +18,7 @@ package com.android.tools.idea.model;
 import static com.android.SdkConstants.ANDROID_URI;
 import static com.android.SdkConstants.ATTR_NAME;
 import static com.android.xml.AndroidManifest.NODE_USES_FEATURE;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.android.ide.common.rendering.api.ResourceValue;
 import com.android.manifmerger.Actions;
@@ -29,6 +30,7 @@ import com.android.sdklib.IAndroidTarget;
 import com.android.sdklib.devices.Device;
 import com.android.tools.idea.configurations.ThemeUtils;
 import com.android.tools.idea.run.activity.ActivityLocatorUtils;
+import com.android.utils.XmlUtils;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.intellij.openapi.module.Module;
@@ -72,7 +74,8 @@ public class MergedManifestSnapshot {
   private final ImmutableList<Element> myActivityAliases;
   private final ImmutableList<Element> myServices;
   private final boolean myIsValid;
-
+  /** The merged manifest serialized as XML, computed the first time the merged manifest of another module reads it. */
+  @Nullable private volatile byte[] myDocumentXml;
 
   MergedManifestSnapshot(@NotNull Module module,
                          @Nullable String packageName,
@@ -157,6 +160,18 @@ public class MergedManifestSnapshot {
     return myDocument;
   }
 
+  /**
+   * Returns {@link #getDocument()} serialized as XML, so that the modules depending on this one can merge it into their manifest without
+   * serializing it again for every merge.
+   */
+  @Nullable
+  byte[] getDocumentXml() {
+    if (myDocumentXml == null && myDocument != null) {
+      myDocumentXml = XmlUtils.toXml(myDocument).getBytes(UTF_8);
+    }
+    return myDocumentXml;
+  }
+
   @NotNull
   public List<VirtualFile> getManifestFiles() {
     return myFiles;
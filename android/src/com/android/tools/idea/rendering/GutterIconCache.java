@@ -17,21 +17,51 @@ package com.android.tools.idea.rendering;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.android.ide.common.rendering.api.RenderResources;
-import com.google.common.collect.Maps;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.MapMaker;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.ex.EditorEx;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
-import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.JBHiDPIScaledImage;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.ui.EmptyIcon;
 import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.UIUtil;
 import icons.AndroidIcons;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import javax.swing.*;
-import java.util.Map;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Cache of the thumbnails of image resources shown in the editor gutter.
+ * <p>
+ * Thumbnails are keyed on the content of the file, on the resolver used to resolve the references of XML drawables and on whether the
+ * screen is a Retina one, so an entry never needs to be invalidated: it is just no longer used. The cache is bounded by the memory used by
+ * the thumbnails, least recently used thumbnails being evicted first.
+ * <p>
+ * {@link #getIconOrPlaceholder} renders thumbnails in the background and repaints the editor gutters when they are ready, so that
+ * highlighting isn't blocked while the drawables of a file are rasterized.
+ */
 public class GutterIconCache {
   private static final Logger LOG = Logger.getInstance(GutterIconCache.class);
   private static final Icon NONE = AndroidIcons.Android; // placeholder
@@ -39,16 +69,68 @@ public class GutterIconCache {
   @VisibleForTesting static final int MAX_WIDTH = JBUI.scale(16);
   @VisibleForTesting static final int MAX_HEIGHT = JBUI.scale(16);
 
+  /** Shown in the gutter while a thumbnail is being rendered, with the size of the thumbnail so that the gutter doesn't change width. */
+  private static final Icon PLACEHOLDER = EmptyIcon.create(MAX_WIDTH, MAX_HEIGHT);
+
+  private static final long MAX_CACHE_WEIGHT_BYTES = 16 * 1024 * 1024;
+
   private static final GutterIconCache ourInstance = new GutterIconCache();
 
-  private Map<String, Icon> myThumbnailCache = Maps.newHashMap();
+  private static final ExecutorService ourRenderingExecutor =
+    AppExecutorUtil.createBoundedApplicationPoolExecutor("Gutter Icon Rendering", 2);
+
+  private final Cache<Key, Icon> myThumbnailCache = CacheBuilder.newBuilder()
+    .maximumWeight(MAX_CACHE_WEIGHT_BYTES)
+    .weigher((Key key, Icon icon) -> getWeight(icon))
+    .build();
 
   /**
-   * Stores timestamps for the last modification time of image files using the
-   * path as a key.
+   * The last thumbnail of each file, shown instead of {@link #PLACEHOLDER} while the file is rendered again after a change. Thumbnails are
+   * only weakly referenced, so that this doesn't keep the ones evicted from {@link #myThumbnailCache}.
    */
-  private Map<String, Long> myModificationStampCache = Maps.newHashMap();
-  private boolean myRetina;
+  private final Cache<String, Icon> myLatestThumbnailByPath = CacheBuilder.newBuilder().weakValues().build();
+
+  /** Thumbnails being rendered, so that a thumbnail requested again before it is ready is only rendered once. */
+  private final ConcurrentMap<Key, CompletableFuture<Icon>> myPendingThumbnails = new ConcurrentHashMap<>();
+
+  /** Ids of the resolvers used to render XML drawables. Resolvers are weakly referenced and compared by identity. */
+  private final ConcurrentMap<RenderResources, Integer> myResolverIds = new MapMaker().weakKeys().makeMap();
+  private final AtomicInteger myNextResolverId = new AtomicInteger(1);
+
+  private final AtomicBoolean myRepaintScheduled = new AtomicBoolean();
+
+  /**
+   * Identifies a thumbnail: the file content it was rendered from, the resolver used for its references and the kind of screen it is for.
+   */
+  private static final class Key {
+    @NotNull private final String myPath;
+    private final long myModificationStamp;
+    private final int myResolverId;
+    private final boolean myRetina;
+
+    private Key(@NotNull String path, long modificationStamp, int resolverId, boolean retina) {
+      myPath = path;
+      myModificationStamp = modificationStamp;
+      myResolverId = resolverId;
+      myRetina = retina;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key key = (Key)o;
+      return myModificationStamp == key.myModificationStamp &&
+             myResolverId == key.myResolverId &&
+             myRetina == key.myRetina &&
+             myPath.equals(key.myPath);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myPath, myModificationStamp, myResolverId, myRetina);
+    }
+  }
 
   public GutterIconCache() {
   }
@@ -59,39 +141,121 @@ public class GutterIconCache {
   }
 
   @VisibleForTesting
-  boolean isIconUpToDate(@NotNull VirtualFile file) {
-    String path = file.getPath();
-    if (myModificationStampCache.containsKey(path)) {
-      // Entry is valid if image resource has not been modified since the entry was cached
-      return myModificationStampCache.get(path) == file.getModificationStamp() && !FileDocumentManager.getInstance().isFileModified(file);
-    }
-
-    return false;
+  boolean isIconUpToDate(@NotNull VirtualFile file, @Nullable RenderResources resolver) {
+    return myThumbnailCache.getIfPresent(getKey(file, resolver)) != null;
   }
 
+  /**
+   * Returns the thumbnail of {@code file}, rendering it on the calling thread if it isn't cached yet, or null if the file can't be
+   * rendered. If the thumbnail is already being rendered in the background, waits for it instead.
+   */
   @Nullable
   public Icon getIcon(@NotNull VirtualFile file, @Nullable RenderResources resolver, @NotNull AndroidFacet facet) {
-    boolean isRetina = UIUtil.isRetina();
-    if (myRetina != isRetina) {
-      myRetina = isRetina;
-      myThumbnailCache.clear();
+    Key key = getKey(file, resolver);
+    Icon icon = myThumbnailCache.getIfPresent(key);
+    if (icon == null) {
+      CompletableFuture<Icon> pending = myPendingThumbnails.get(key);
+      icon = pending != null ? pending.join() : render(key, file, resolver, facet);
     }
-    String path = file.getPath();
-    Icon myIcon = myThumbnailCache.get(path);
-    if (myIcon == null || !isIconUpToDate(file)) {
-      myIcon = GutterIconFactory.createIcon(file, resolver, MAX_WIDTH, MAX_HEIGHT, facet);
+    return icon != NONE ? icon : null;
+  }
 
-      if (myIcon == null) {
-        myIcon = NONE;
+  /**
+   * Returns the thumbnail of {@code file} if it is cached. Otherwise, starts rendering it in the background and returns the previous
+   * thumbnail of the file or a placeholder. The editor gutters are repainted once the thumbnail is ready. Returns null if the file can't be
+   * rendered.
+   */
+  @Nullable
+  public Icon getIconOrPlaceholder(@NotNull VirtualFile file, @Nullable RenderResources resolver, @NotNull AndroidFacet facet) {
+    Key key = getKey(file, resolver);
+    Icon icon = myThumbnailCache.getIfPresent(key);
+    if (icon == null) {
+      CompletableFuture<Icon> future = new CompletableFuture<>();
+      if (myPendingThumbnails.putIfAbsent(key, future) == null) {
+        ourRenderingExecutor.execute(() -> {
+          try {
+            future.complete(render(key, file, resolver, facet));
+          }
+          catch (Throwable e) {
+            LOG.warn(String.format("Could not render icon image %1$s", file.getPresentableUrl()), e);
+            future.complete(NONE);
+          }
+          finally {
+            myPendingThumbnails.remove(key);
+            scheduleRepaint();
+          }
+        });
       }
+      icon = myLatestThumbnailByPath.getIfPresent(key.myPath);
+      if (icon == null) {
+        return PLACEHOLDER;
+      }
+    }
+    return icon != NONE ? icon : null;
+  }
 
-      myThumbnailCache.put(path, myIcon);
+  /**
+   * Waits for the thumbnails being rendered in the background.
+   */
+  @TestOnly
+  public void waitForPendingIcons() {
+    new ArrayList<>(myPendingThumbnails.values()).forEach(CompletableFuture::join);
+  }
 
-      // Record timestamp of image resource at the time of caching
-      myModificationStampCache.put(path, file.getModificationStamp());
+  @NotNull
+  private Icon render(@NotNull Key key, @NotNull VirtualFile file, @Nullable RenderResources resolver, @NotNull AndroidFacet facet) {
+    // XML drawables are read from their document and their references resolved, which needs a read action on the rendering executor.
+    Icon icon = ApplicationManager.getApplication()
+      .runReadAction((Computable<Icon>)() -> GutterIconFactory.createIcon(file, resolver, MAX_WIDTH, MAX_HEIGHT, facet));
+    if (icon == null) {
+      icon = NONE;
     }
+    myThumbnailCache.put(key, icon);
+    myLatestThumbnailByPath.put(key.myPath, icon);
+    return icon;
+  }
 
-    return myIcon != NONE ? myIcon : null;
+  @NotNull
+  private Key getKey(@NotNull VirtualFile file, @Nullable RenderResources resolver) {
+    // Unsaved changes of XML drawables are rendered, see GutterIconFactory.
+    Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+    long modificationStamp = document != null ? document.getModificationStamp() : file.getModificationStamp();
+    // Only the references of XML drawables are resolved.
+    int resolverId = resolver != null && file.getPath().endsWith(".xml")
+                     ? myResolverIds.computeIfAbsent(resolver, r -> myNextResolverId.getAndIncrement())
+                     : 0;
+    return new Key(file.getPath(), modificationStamp, resolverId, UIUtil.isRetina());
+  }
+
+  private static int getWeight(@NotNull Icon icon) {
+    if (icon instanceof ImageIcon) {
+      Image image = ((ImageIcon)icon).getImage();
+      // Retina thumbnails wrap an image larger than the size reported by the icon.
+      if (image instanceof JBHiDPIScaledImage) {
+        image = ((JBHiDPIScaledImage)image).getDelegate();
+      }
+      if (image instanceof BufferedImage) {
+        return ((BufferedImage)image).getWidth() * ((BufferedImage)image).getHeight() * Integer.BYTES;
+      }
+    }
+    return Math.max(1, icon.getIconWidth() * icon.getIconHeight() * Integer.BYTES);
   }
 
+  /**
+   * Repaints the editor gutters so that they show the thumbnails rendered in the background. Thumbnails finishing together only cause one
+   * repaint.
+   */
+  private void scheduleRepaint() {
+    if (!myRepaintScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    ApplicationManager.getApplication().invokeLater(() -> {
+      myRepaintScheduled.set(false);
+      for (Editor editor : EditorFactory.getInstance().getAllEditors()) {
+        if (editor instanceof EditorEx) {
+          ((EditorEx)editor).getGutterComponentEx().repaint();
+        }
+      }
+    });
+  }
 }
@@ -88,7 +88,7 @@ public class GutterIconRenderer extends com.intellij.openapi.editor.markup.Gutte
   @NotNull
   public Icon getIcon() {
     Icon icon = myFile != null
-                ? GutterIconCache.getInstance().getIcon(myFile, myResourceResolver, myFacet)
+                ? GutterIconCache.getInstance().getIconOrPlaceholder(myFile, myResourceResolver, myFacet)
                 : StudioIcons.LayoutEditor.Properties.IMAGE_PICKER;
     return icon == null ? EmptyIcon.ICON_0 : icon;
   }
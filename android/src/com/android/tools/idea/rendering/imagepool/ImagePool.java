@@ -116,6 +116,11 @@ public interface ImagePool {
      * Returns the number of times we had an image that was returned to this bucket.
      */
     long imageWasReturned();
+
+    /**
+     * Returns the number of images of this bucket that were dropped from the pool to keep it within its memory budget.
+     */
+    long bucketEvictions();
   }
 
   interface Stats {
@@ -123,6 +128,11 @@ public interface ImagePool {
 
     long totalBytesInUse();
 
+    /**
+     * Returns the maximum number of bytes the images waiting in the pool to be reused can take.
+     */
+    long maxBytesPooled();
+
     BucketStats[] getBucketStats();
   }
 
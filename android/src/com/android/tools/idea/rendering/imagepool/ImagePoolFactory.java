@@ -49,6 +49,11 @@ public class ImagePoolFactory {
     }
   };
 
+  /**
+   * Maximum number of bytes that the images waiting to be reused can take in a pool created with the default settings.
+   */
+  private static final long DEFAULT_MAX_POOLED_BYTES = Math.min(Runtime.getRuntime().maxMemory() / 8, 500_000_000L);
+
   private ImagePoolFactory() {
   }
 
@@ -64,7 +69,7 @@ public class ImagePoolFactory {
       }
 
       return 50_000_000 / (w * h);
-    });
+    }, DEFAULT_MAX_POOLED_BYTES);
   }
 
   /**
@@ -18,10 +18,9 @@ package com.android.tools.idea.rendering.imagepool;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.FinalizablePhantomReference;
 import com.google.common.base.FinalizableReferenceQueue;
-import com.google.common.collect.EvictingQueue;
-import com.google.common.collect.ForwardingQueue;
 import com.google.common.collect.Sets;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.LowMemoryWatcher;
 import java.awt.AlphaComposite;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
@@ -30,14 +29,15 @@ import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.awt.image.WritableRaster;
 import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
-import java.util.NoSuchElementException;
-import java.util.Queue;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -52,6 +52,10 @@ import org.jetbrains.annotations.Nullable;
  * Class that offers a pool of {@link BufferedImage}s. The returned {@link Image} do not offer a direct access
  * to the underlying {@link BufferedImage} to avoid clients holding references to it.
  * Once the {@link Image} is not being referenced anymore, it will be automatically returned to the pool.
+ * <p>
+ * The images waiting in the pool to be reused are strongly referenced, so that they are not all cleared by the GC right before the next
+ * render needs them. Their total size is kept within a memory budget by dropping the least recently returned images first, whatever
+ * their bucket. All of them are dropped when the IDE is low on memory.
  */
 @SuppressWarnings("ALL")
 class ImagePoolImpl implements ImagePool {
@@ -59,8 +63,15 @@ class ImagePoolImpl implements ImagePool {
 
   private static final Bucket NULL_BUCKET = new Bucket(0, 0, 0);
   private final int[] myBucketSizes;
+  private final long myMaxPooledBytes;
+  private final Object myPoolLock = new Object();
+  // The fields below are guarded by myPoolLock.
   private final HashMap<String, Bucket> myPool = new HashMap<>();
   private final IdentityHashMap<Bucket, BucketStatsImpl> myBucketStats = new IdentityHashMap<>();
+  /** Images waiting in the pool to be reused, least recently returned first */
+  private final LinkedHashSet<PooledImage> myPooledImages = new LinkedHashSet<>();
+  private long myPooledBytes = 0;
+
   private final BiFunction<Integer, Integer, Function<Integer, Integer>> myBucketSizingPolicy;
   @SuppressWarnings("IOResourceOpenedButNotSafelyClosed")
   private final FinalizableReferenceQueue myFinalizableReferenceQueue = new FinalizableReferenceQueue();
@@ -68,6 +79,7 @@ class ImagePoolImpl implements ImagePool {
 
   private final LongAdder myTotalAllocatedBytes = new LongAdder();
   private final LongAdder myTotalInUseBytes = new LongAdder();
+  private final LowMemoryWatcher myLowMemoryWatcher;
 
   private final Stats myStats = new Stats() {
     @Override
@@ -80,17 +92,24 @@ class ImagePoolImpl implements ImagePool {
       return myTotalInUseBytes.sum();
     }
 
+    @Override
+    public long maxBytesPooled() {
+      return myMaxPooledBytes;
+    }
+
     @Override
     public BucketStats[] getBucketStats() {
-      return myBucketStats.values().stream()
-        .toArray(BucketStats[]::new);
+      synchronized (myPoolLock) {
+        return myBucketStats.values().stream()
+          .toArray(BucketStats[]::new);
+      }
     }
   };
 
   /**
    * Constructs a new {@link ImagePoolImpl} with a custom queue sizing policy. The passed bucketSizingPolicy will be called
    * every time that a new cache is needed for a given (width, height) -> (imageType).
-   * The return value from calling that function will be the size of the EvictingQueue used for caching the pooled
+   * The return value from calling that function will be the size of the bucket used for caching the pooled
    * images.
    *
    * @param bucketSizes        Array containing a list of the allowed bucket sizes. The images will be allocated into a bucket that fits its two
@@ -98,20 +117,25 @@ class ImagePoolImpl implements ImagePool {
    *                           allocated into the pool.
    * @param bucketSizingPolicy Function that returns the maximum size for a given bucket. The bucket is defined by width, height and image
    *                           type. If the returned size is 0, no pooling will be done for that bucket size.
+   * @param maxPooledBytes     Maximum number of bytes that the images waiting in the pool to be reused can take, across all buckets.
    */
-  ImagePoolImpl(@NotNull int[] bucketSizes, @NotNull BiFunction<Integer, Integer, Function<Integer, Integer>> bucketSizingPolicy) {
+  ImagePoolImpl(@NotNull int[] bucketSizes,
+                @NotNull BiFunction<Integer, Integer, Function<Integer, Integer>> bucketSizingPolicy,
+                long maxPooledBytes) {
     if (LOG.isDebugEnabled()) {
-      LOG.debug("New ImagePool " + Arrays.toString(bucketSizes));
+      LOG.debug("New ImagePool " + Arrays.toString(bucketSizes) + " maxPooledBytes=" + maxPooledBytes);
     }
     myBucketSizes = bucketSizes;
     Arrays.sort(myBucketSizes);
     myBucketSizingPolicy = bucketSizingPolicy;
+    myMaxPooledBytes = maxPooledBytes;
+    myLowMemoryWatcher = LowMemoryWatcher.register(this::clearPooledImages);
   }
 
-  private boolean isDisposed = false;
+  private volatile boolean isDisposed = false;
 
   /**
-   * Returns the key to be used for indexing the {@link EvictingQueue}.
+   * Returns the key to be used for indexing the {@link Bucket}s.
    */
   @NotNull
   private static String getPoolKey(int w, int h, int type) {
@@ -165,19 +189,114 @@ class ImagePoolImpl implements ImagePool {
 
     int finalWidthBucket = widthBucket;
     int finalHeightBucket = heightBucket;
-    return myPool.computeIfAbsent(poolKey, (k) -> {
-      int size = myBucketSizingPolicy.apply(finalWidthBucket, finalHeightBucket).apply(type);
+    synchronized (myPoolLock) {
+      return myPool.computeIfAbsent(poolKey, (k) -> {
+        int size = myBucketSizingPolicy.apply(finalWidthBucket, finalHeightBucket).apply(type);
+
+        if (size == 0) {
+          // For size 0, do not allocate extra memory for a new Bucket.
+          return NULL_BUCKET;
+        }
+
+        Bucket newBucket = new Bucket(finalWidthBucket, finalHeightBucket, size);
+        myBucketStats.put(newBucket, new BucketStatsImpl(newBucket));
+
+        return newBucket;
+      });
+    }
+  }
+
+  @Nullable
+  private BucketStatsImpl getBucketStats(@NotNull Bucket bucket) {
+    synchronized (myPoolLock) {
+      return myBucketStats.get(bucket);
+    }
+  }
+
+  /**
+   * Removes the most recently returned image from the given bucket, or returns null if the bucket is empty.
+   */
+  @Nullable
+  private BufferedImage takeFromBucket(@NotNull Bucket bucket) {
+    synchronized (myPoolLock) {
+      PooledImage pooledImage = bucket.myImages.pollLast();
+      if (pooledImage == null) {
+        return null;
+      }
+      myPooledImages.remove(pooledImage);
+      myPooledBytes -= pooledImage.mySizeBytes;
+      return pooledImage.myImage;
+    }
+  }
+
+  /**
+   * Returns the given image to the bucket so it can be reused. If the pool goes over its memory budget, the least recently returned
+   * images are dropped from it.
+   *
+   * @return false if the image was not accepted by the bucket
+   */
+  private boolean returnToBucket(@NotNull Bucket bucket, @NotNull BufferedImage image, long sizeBytes) {
+    List<PooledImage> evictedImages = new ArrayList<>();
+    synchronized (myPoolLock) {
+      if (isDisposed || bucket.myImages.size() >= bucket.myMaxSize || sizeBytes > myMaxPooledBytes) {
+        return false;
+      }
+
+      PooledImage pooledImage = new PooledImage(image, bucket, sizeBytes);
+      bucket.myImages.addLast(pooledImage);
+      myPooledImages.add(pooledImage);
+      myPooledBytes += sizeBytes;
+
+      Iterator<PooledImage> iterator = myPooledImages.iterator();
+      while (myPooledBytes > myMaxPooledBytes) {
+        PooledImage evictedImage = iterator.next();
+        iterator.remove();
+        // The least recently returned images of a bucket are at its head.
+        evictedImage.myBucket.myImages.removeFirstOccurrence(evictedImage);
+        myPooledBytes -= evictedImage.mySizeBytes;
+        evictedImages.add(evictedImage);
+      }
+    }
+
+    onImagesEvicted(evictedImages);
+    return true;
+  }
 
-      if (size == 0) {
-        // For size 0, do not allocate extra memory for a new EvictingQueue.
-        return NULL_BUCKET;
+  /**
+   * Drops all the images waiting in the pool to be reused, e.g. because the IDE is low on memory. Images in use are not affected and
+   * are returned to the pool as usual once they are no longer referenced.
+   */
+  @VisibleForTesting
+  void clearPooledImages() {
+    List<PooledImage> evictedImages;
+    synchronized (myPoolLock) {
+      evictedImages = new ArrayList<>(myPooledImages);
+      for (PooledImage evictedImage : evictedImages) {
+        evictedImage.myBucket.myImages.clear();
       }
+      myPooledImages.clear();
+      myPooledBytes = 0;
+    }
 
-      Bucket newBucket = new Bucket(finalWidthBucket, finalHeightBucket, size);
-      myBucketStats.put(newBucket, new BucketStatsImpl(newBucket));
+    if (!evictedImages.isEmpty()) {
+      LOG.debug("Low memory, dropped all the pooled images");
+    }
+    onImagesEvicted(evictedImages);
+  }
 
-      return newBucket;
-    });
+  private void onImagesEvicted(@NotNull List<PooledImage> evictedImages) {
+    for (PooledImage evictedImage : evictedImages) {
+      BucketStatsImpl evictedBucketStats = getBucketStats(evictedImage.myBucket);
+      if (evictedBucketStats != null) {
+        evictedBucketStats.bucketEviction();
+      }
+      myTotalAllocatedBytes.add(-evictedImage.mySizeBytes);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(String.format("Evicted image (%dx%d) from bucket (%dx%d)\n",
+                                evictedImage.myImage.getWidth(), evictedImage.myImage.getHeight(),
+                                evictedImage.myBucket.myMinWidth, evictedImage.myBucket.myMinHeight));
+      }
+    }
   }
 
   @VisibleForTesting
@@ -185,22 +304,16 @@ class ImagePoolImpl implements ImagePool {
   ImageImpl create(final int w, final int h, final int type, @Nullable Consumer<BufferedImage> freedCallback) {
     assert !isDisposed : "ImagePool already disposed";
 
-    // To avoid creating a large number of EvictingQueues, we distribute the images in buckets and use that
+    // To avoid creating a large number of Buckets, we distribute the images in buckets and use that
     Bucket bucket = getTypeBucket(w, h, type);
-    BucketStatsImpl bucketStats = myBucketStats.get(bucket);
+    BucketStatsImpl bucketStats = getBucketStats(bucket);
     if (LOG.isDebugEnabled()) {
       LOG.debug(String.format("create(%dx%d-%d) in bucket (%dx%d) hasStats=%b\n", w, h, type, bucket.myMinWidth, bucket.myMinHeight,
                               bucketStats != null));
     }
 
-    BufferedImage image;
-    SoftReference<BufferedImage> imageRef;
-    try {
-      imageRef = bucket.remove();
-      while ((image = imageRef.get()) == null) {
-        imageRef = bucket.remove();
-      }
-
+    BufferedImage image = takeFromBucket(bucket);
+    if (image != null) {
       long totalSize = image.getWidth() * image.getHeight();
       if (bucketStats != null) {
         bucketStats.bucketHit();
@@ -224,7 +337,7 @@ class ImagePoolImpl implements ImagePool {
         g.dispose();
       }
     }
-    catch (NoSuchElementException e) {
+    else {
       if (LOG.isDebugEnabled()) {
         LOG.debug(String.format("  New image %dx%d - %d\n", w, h, type));
       }
@@ -241,7 +354,6 @@ class ImagePoolImpl implements ImagePool {
       long estimatedSize = newImageWidth * newImageHeight * 4;
       myTotalAllocatedBytes.add(estimatedSize);
       myTotalInUseBytes.add(estimatedSize);
-
     }
 
     ImageImpl pooledImage = new ImageImpl(w, h, image);
@@ -252,7 +364,8 @@ class ImagePoolImpl implements ImagePool {
       public void finalizeReferent() {
         // This method might be called twice if the user has manually called the free() method. The second call will have no effect.
         if (myReferences.remove(this)) {
-          boolean accepted = bucket.offer(new SoftReference<>(imagePointer));
+          long estimatedSize = imagePointer.getWidth() * imagePointer.getHeight() * 4;
+          boolean accepted = returnToBucket(bucket, imagePointer, estimatedSize);
           if (bucketStats != null) {
             if (accepted) {
               bucketStats.returnedImageAccepted();
@@ -267,7 +380,6 @@ class ImagePoolImpl implements ImagePool {
                                     w, h, type, bucket.myMinWidth, bucket.myMinHeight));
           }
 
-          long estimatedSize = imagePointer.getWidth() * imagePointer.getHeight() * 4;
           if (!accepted) {
             myTotalAllocatedBytes.add(-estimatedSize);
           }
@@ -293,6 +405,7 @@ class ImagePoolImpl implements ImagePool {
     private final AtomicLong myBucketHit = new AtomicLong(0);
     private final AtomicLong myBucketFull = new AtomicLong(0);
     private final AtomicLong myBucketHadSpace = new AtomicLong(0);
+    private final AtomicLong myBucketEvictions = new AtomicLong(0);
 
     BucketStatsImpl(@NotNull Bucket bucket) {
       myBucket = bucket;
@@ -338,6 +451,11 @@ class ImagePoolImpl implements ImagePool {
       return myBucketHadSpace.get();
     }
 
+    @Override
+    public long bucketEvictions() {
+      return myBucketEvictions.get();
+    }
+
     public void bucketHit() {
       myLastAccessMs.set(System.currentTimeMillis());
       myBucketHit.incrementAndGet();
@@ -355,10 +473,30 @@ class ImagePoolImpl implements ImagePool {
     public void returnedImageRejected() {
       myBucketFull.incrementAndGet();
     }
+
+    public void bucketEviction() {
+      myBucketEvictions.incrementAndGet();
+    }
+  }
+
+  /**
+   * An image waiting in the pool to be reused.
+   */
+  private static final class PooledImage {
+    @NotNull private final BufferedImage myImage;
+    @NotNull private final Bucket myBucket;
+    private final long mySizeBytes;
+
+    private PooledImage(@NotNull BufferedImage image, @NotNull Bucket bucket, long sizeBytes) {
+      myImage = image;
+      myBucket = bucket;
+      mySizeBytes = sizeBytes;
+    }
   }
 
-  private static class Bucket extends ForwardingQueue<SoftReference<BufferedImage>> {
-    private final Queue<SoftReference<BufferedImage>> myDelegate;
+  private static class Bucket {
+    /** Images of this bucket waiting to be reused, least recently returned first. Guarded by the pool lock. */
+    private final ArrayDeque<PooledImage> myImages = new ArrayDeque<>();
     private final int myMinWidth;
     private final int myMinHeight;
     private final int myMaxSize;
@@ -371,14 +509,6 @@ class ImagePoolImpl implements ImagePool {
       myMinWidth = minWidth;
       myMinHeight = minHeight;
       myMaxSize = maxSize;
-      myDelegate = maxSize == 0 ?
-                   EvictingQueue.create(0)
-                                : new ArrayBlockingQueue<SoftReference<BufferedImage>>(maxSize);
-    }
-
-    @Override
-    protected Queue<SoftReference<BufferedImage>> delegate() {
-      return myDelegate;
     }
 
     public int getMaxSize() {
@@ -424,9 +554,14 @@ class ImagePoolImpl implements ImagePool {
    */
   public void dispose() {
     isDisposed = true;
+    myLowMemoryWatcher.stop();
     myFinalizableReferenceQueue.close();
     myReferences.clear();
-    myPool.clear();
+    synchronized (myPoolLock) {
+      myPool.clear();
+      myPooledImages.clear();
+      myPooledBytes = 0;
+    }
   }
 
   public static class ImageImpl implements ImagePool.Image {
@@ -20,6 +20,7 @@ import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.tools.idea.logcat.AndroidLogcatFormatter;
 import com.android.tools.idea.logcat.AndroidLogcatService;
 import com.android.tools.idea.logcat.AndroidLogcatUtils;
+import com.android.tools.idea.logcat.LogcatRingBuffer;
 import com.intellij.openapi.util.Key;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -37,6 +38,14 @@ public abstract class ApplicationLogListener implements AndroidLogcatService.Log
     myPid = pid;
   }
 
+  /**
+   * Returns the query selecting the messages of the application process in the logcat backlog.
+   */
+  @NotNull
+  public LogcatRingBuffer.Query getBacklogQuery() {
+    return new LogcatRingBuffer.Query().setAppName(myPackageName).setPid(myPid);
+  }
+
   @Override
   public void onLogLineReceived(@NotNull LogCatMessage line) {
     if (!myPackageName.equals(line.getHeader().getAppName()) || myPid != line.getHeader().getPid()) {
@@ -25,7 +25,6 @@ import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.logcat.AndroidLogcatFormatter;
 import com.android.tools.idea.logcat.AndroidLogcatPreferences;
 import com.android.tools.idea.logcat.AndroidLogcatService;
-import com.android.tools.idea.logcat.AndroidLogcatService.LogcatListener;
 import com.android.tools.idea.logcat.output.LogcatOutputConfigurableProvider;
 import com.android.tools.idea.logcat.output.LogcatOutputSettings;
 import com.android.tools.idea.run.AndroidDebugState;
@@ -212,10 +211,10 @@ public class ConnectJavaDebuggerTask extends ConnectDebuggerTask {
     }
 
     final IDevice device = client.getDevice();
-    LogcatListener logListener = new MyLogcatListener(client, debugProcessHandler);
+    MyLogcatListener logListener = new MyLogcatListener(client, debugProcessHandler);
 
     Logger.getInstance(ConnectJavaDebuggerTask.class).info(String.format("captureLogcatOutput(\"%s\")", device.getName()));
-    AndroidLogcatService.getInstance().addListener(device, logListener, true);
+    AndroidLogcatService.getInstance().addListener(device, logListener, logListener.getBacklogQuery());
 
     // Remove listener when process is terminated
     debugProcessHandler.addProcessListener(new ProcessAdapter() {
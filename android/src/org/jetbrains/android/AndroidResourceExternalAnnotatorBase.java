@@ -158,8 +158,8 @@ public abstract class AndroidResourceExternalAnnotatorBase
     VirtualFile bitmap = AndroidAnnotatorUtil.resolveDrawableFile(drawable, resourceResolver, facet);
     bitmap = AndroidAnnotatorUtil.pickBestBitmap(bitmap);
     if (bitmap != null) {
-      // Updating the GutterIconCache in the background thread to include the icon.
-      GutterIconCache.getInstance().getIcon(bitmap, resourceResolver, facet);
+      // Start rendering the icon in the background, so that it is likely ready when the gutter is painted.
+      GutterIconCache.getInstance().getIconOrPlaceholder(bitmap, resourceResolver, facet);
     }
     return new com.android.tools.idea.rendering.GutterIconRenderer(element, resourceResolver, facet, bitmap, configuration);
   }
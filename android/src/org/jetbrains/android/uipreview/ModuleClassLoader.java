@@ -30,8 +30,11 @@ import com.android.tools.idea.res.ResourceRepositoryManager;
 import com.android.tools.idea.util.DependencyManagementUtil;
 import com.android.tools.idea.util.FileExtensions;
 import com.android.tools.idea.util.VirtualFileSystemOpener;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
@@ -107,6 +110,9 @@ public final class ModuleClassLoader extends RenderClassLoader {
 
   private final List<Path> mAdditionalLibraries;
 
+  /** Map from fully qualified class name to the hash of the .class file contents for each class loaded by this class loader */
+  private final Map<String, HashCode> myClassFileHashes = new ConcurrentHashMap<>();
+
   private static class ClassModificationTimestamp {
     public final long timestamp;
     public final long length;
@@ -334,7 +340,21 @@ public final class ModuleClassLoader extends RenderClassLoader {
     myClassFiles.put(name, classFile);
     myClassFilesLastModified.put(name, new ClassModificationTimestamp(classFile.getTimeStamp(), classFile.getLength()));
 
-    return super.loadClassFile(name, classFile);
+    byte[] data;
+    try {
+      data = classFile.contentsToByteArray();
+    }
+    catch (IOException e) {
+      LOG.warn(e);
+      return null;
+    }
+    myClassFileHashes.put(name, hashClassFile(data));
+    return loadClass(name, data);
+  }
+
+  @NotNull
+  static HashCode hashClassFile(byte @NotNull [] data) {
+    return Hashing.murmur3_128().hashBytes(data);
   }
 
   private static void registerResources(@NotNull Module module) {
@@ -479,6 +499,24 @@ public final class ModuleClassLoader extends RenderClassLoader {
     return areDependenciesUpToDate();
   }
 
+  /**
+   * Returns the hash of the contents of the .class file of each class loaded by this class loader from the project, by fully qualified
+   * class name. Classes from libraries are not included.
+   */
+  @NotNull
+  Map<String, HashCode> getClassFileHashes() {
+    return ImmutableMap.copyOf(myClassFileHashes);
+  }
+
+  /**
+   * Returns the hash of the contents of the .class file of the given class if it was loaded by this class loader from the project, or
+   * null otherwise.
+   */
+  @Nullable
+  HashCode getClassFileHash(@NotNull String className) {
+    return myClassFileHashes.get(className);
+  }
+
   public boolean isClassLoaded(@NotNull String className) {
     return findLoadedClass(className) != null;
   }
@@ -17,11 +17,14 @@ package org.jetbrains.android.uipreview
 
 import com.android.SdkConstants.CLASS_COMPOSE_VIEW_ADAPTER
 import com.android.tools.idea.LogAnonymizerUtil.anonymize
+import com.android.tools.idea.projectsystem.getModuleSystem
 import com.android.tools.idea.rendering.RenderService
+import com.google.common.hash.HashCode
 import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.diagnostic.debug
 import com.intellij.openapi.module.Module
+import java.io.IOException
 import java.util.WeakHashMap
 
 private const val CLASS_COMPOSE_RECOMPOSER = "androidx.compose.Recomposer"
@@ -73,6 +76,30 @@ class ModuleClassLoaderManager {
    */
   fun getPrivate(parent: ClassLoader?, module: Module) = ModuleClassLoader(parent, module)
 
+  /**
+   * Returns the hash of the .class file of each project class loaded by the shared [ModuleClassLoader] of [module], by fully qualified
+   * class name, or null if there is no up to date shared [ModuleClassLoader].
+   */
+  @Synchronized
+  fun getSharedClassFileHashes(module: Module): Map<String, HashCode>? = cache[module]?.takeIf { it.isUpToDate }?.classFileHashes
+
+  /**
+   * Returns the hash of the current .class file of the project class [className] of [module], or null if there is no such class file.
+   * The hash computed by the shared [ModuleClassLoader] is used if it loaded the class and is up to date.
+   */
+  fun getClassFileHash(module: Module, className: String): HashCode? {
+    synchronized(this) { cache[module]?.takeIf { it.isUpToDate } }?.getClassFileHash(className)?.let { return it }
+    if (module.isDisposed) return null
+    val classFile = module.getModuleSystem().findClassFile(className) ?: return null
+    return try {
+      ModuleClassLoader.hashClassFile(classFile.contentsToByteArray())
+    }
+    catch (e: IOException) {
+      LOG.debug(e)
+      null
+    }
+  }
+
   @Synchronized
   fun clearCache() {
     cache.values.forEach { disposeClassLoaderThreadLocals(it) }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.dex;
+
+import static com.android.tools.idea.apk.viewer.dex.GenerateProguardKeepRuleActionTest.getDexPath;
+import static com.android.tools.idea.apk.viewer.dex.GenerateProguardKeepRuleActionTest.getTestDexFile;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.apk.analyzer.dex.DexFileStats;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.iface.reference.MethodReference;
+import org.jf.dexlib2.immutable.reference.ImmutableMethodReference;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DexIndexTest {
+  @Rule public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void indexMatchesDexFileStats() throws Exception {
+    Path path = getDexPath("Test.dex");
+    DexBackedDexFile dexFile = getTestDexFile(path);
+    DexIndex index = DexIndex.create(dexFile);
+    DexFileStats stats = DexFileStats.create(Collections.singletonList(dexFile));
+
+    assertThat(index.classCount).isEqualTo(stats.classCount);
+    assertThat(index.definedMethodCount).isEqualTo(stats.definedMethodCount);
+    assertThat(index.referencedMethodCount).isEqualTo(stats.referencedMethodCount);
+  }
+
+  @Test
+  public void indexIsSavedAndReused() throws Exception {
+    Path[] dexFiles = new Path[]{getDexPath("Test.dex")};
+    Path cacheDir = myTemporaryFolder.newFolder().toPath();
+
+    AtomicInteger parseCount = new AtomicInteger();
+    Supplier<ListenableFuture<DexBackedDexFile[]>> parser = () -> {
+      parseCount.incrementAndGet();
+      try {
+        return Futures.immediateFuture(new DexBackedDexFile[]{getTestDexFile(dexFiles[0])});
+      }
+      catch (IOException e) {
+        return Futures.immediateFailedFuture(e);
+      }
+    };
+
+    DexIndex index = DexIndex.getOrCreate(dexFiles, parser, cacheDir, MoreExecutors.newDirectExecutorService()).get(1, TimeUnit.MINUTES);
+    assertThat(Files.list(cacheDir).count()).isEqualTo(1);
+    assertThat(parseCount.get()).isEqualTo(1);
+
+    DexIndex reloaded =
+      DexIndex.getOrCreate(dexFiles, parser, cacheDir, MoreExecutors.newDirectExecutorService()).get(1, TimeUnit.MINUTES);
+    // The cached index is found without parsing the dex file again.
+    assertThat(parseCount.get()).isEqualTo(1);
+    assertThat(reloaded).isNotSameAs(index);
+    assertThat(reloaded.classCount).isEqualTo(index.classCount);
+    assertThat(reloaded.definedMethodCount).isEqualTo(index.definedMethodCount);
+    assertThat(reloaded.definedFieldCount).isEqualTo(index.definedFieldCount);
+    assertThat(reloaded.referencedMethodCount).isEqualTo(index.referencedMethodCount);
+
+    // Test.<init>() calls its super constructor.
+    ImmutableMethodReference objectInit = new ImmutableMethodReference("Ljava/lang/Object;", "<init>", null, "V");
+    assertThat(index.getReferencingMethodCount(objectInit)).isAtLeast(1);
+    assertThat(reloaded.getReferencingMethodCount(objectInit)).isEqualTo(index.getReferencingMethodCount(objectInit));
+    assertThat(reloaded.getReferencingMethods(objectInit)).containsExactlyElementsIn(index.getReferencingMethods(objectInit));
+    assertThat(index.getReferencingMethods(objectInit)).hasSize(index.getReferencingMethodCount(objectInit));
+  }
+
+  @Test
+  public void keyChangesWithModificationTime() throws Exception {
+    Path dexFile = myTemporaryFolder.newFile("classes.dex").toPath();
+    Files.write(dexFile, new byte[]{1, 2, 3});
+    String key = DexIndex.computeKey(new Path[]{dexFile});
+    assertThat(DexIndex.computeKey(new Path[]{dexFile})).isEqualTo(key);
+
+    Files.setLastModifiedTime(dexFile, FileTime.fromMillis(Files.getLastModifiedTime(dexFile).toMillis() + 1000));
+    assertThat(DexIndex.computeKey(new Path[]{dexFile})).isNotEqualTo(key);
+  }
+
+  @Test
+  public void leastRecentlyUsedIndicesAreEvicted() throws Exception {
+    Path cacheDir = myTemporaryFolder.newFolder().toPath();
+    for (int i = 0; i < 4; i++) {
+      Path indexFile = Files.createFile(cacheDir.resolve(i + ".idx"));
+      Files.setLastModifiedTime(indexFile, FileTime.fromMillis(1000 * i));
+    }
+
+    DexIndex.evictLeastRecentlyUsed(cacheDir, 2);
+    assertThat(Files.list(cacheDir).map(file -> file.getFileName().toString()).collect(Collectors.toList()))
+      .containsExactly("2.idx", "3.idx");
+  }
+
+  @Test
+  public void parseMethodReference() {
+    MethodReference method = DexIndex.parseMethodReference("Lcom/example/Foo;->bar(I[[Ljava/lang/String;J)[Z");
+    assertThat(method.getDefiningClass()).isEqualTo("Lcom/example/Foo;");
+    assertThat(method.getName()).isEqualTo("bar");
+    assertThat(method.getParameterTypes()).containsExactly("I", "[[Ljava/lang/String;", "J").inOrder();
+    assertThat(method.getReturnType()).isEqualTo("[Z");
+  }
+}
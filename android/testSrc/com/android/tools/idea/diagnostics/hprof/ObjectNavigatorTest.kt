@@ -15,14 +15,19 @@
  */
 package com.android.tools.idea.diagnostics.hprof
 
+import com.android.tools.idea.diagnostics.hprof.analysis.InstanceBatchLoader
 import com.android.tools.idea.diagnostics.hprof.classstore.HProfMetadata
 import com.android.tools.idea.diagnostics.hprof.histogram.Histogram
 import com.android.tools.idea.diagnostics.hprof.navigator.ObjectNavigator
 import com.android.tools.idea.diagnostics.hprof.parser.HProfEventBasedParser
+import com.android.tools.idea.diagnostics.hprof.visitors.HistogramVisitor
 import com.android.tools.idea.diagnostics.hprof.visitors.RemapIDsVisitor
+import gnu.trove.TIntArrayList
+import gnu.trove.TLongArrayList
 import org.junit.After
 import org.junit.Assert.assertArrayEquals
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
 import org.junit.Before
 import org.junit.Test
 import org.junit.rules.TemporaryFolder
@@ -99,6 +104,61 @@ class ObjectNavigatorTest {
     assertEquals("java.lang.String", navigator.getClass().undecoratedName)
   }
 
+  @Test
+  fun testHistogramSharesMetadataPass() {
+    val hprofFile = tmpFolder.newFile()
+    class MyTestClass(val name: String)
+    HProfTestUtils.createHProfOnFile(hprofFile, {
+      addRootUnknown(Array(100) { MyTestClass("Object$it") })
+      addRootUnknown(IntArray(10))
+    })
+
+    FileChannel.open(hprofFile.toPath(), StandardOpenOption.READ).use { hprofChannel ->
+      val parser = HProfEventBasedParser(hprofChannel)
+      val histogramVisitor = HistogramVisitor()
+      val hprofMetadata = HProfMetadata.create(parser, histogramVisitor)
+      val histogram = histogramVisitor.createHistogram(hprofMetadata.classStore)
+      val separateHistogram = Histogram.create(parser, hprofMetadata.classStore)
+
+      assertEquals(separateHistogram.instanceCount, histogram.instanceCount)
+      assertEquals(separateHistogram.bytesCount, histogram.bytesCount)
+      assertEquals(separateHistogram.entries.map { it.classDefinition.name to it.totalInstances }.toSet(),
+                   histogram.entries.map { it.classDefinition.name to it.totalInstances }.toSet())
+      assertEquals(100, histogram.entries.single { it.classDefinition.name == "MyTestClass" }.totalInstances)
+    }
+  }
+
+  @Test
+  fun testInstanceBatchLoaderReadsObjectsOnSeveralThreads() {
+    val hprofFile = tmpFolder.newFile()
+    class MyTestClass(val name: String, val next: MyTestClass?)
+    HProfTestUtils.createHProfOnFile(hprofFile, {
+      addRootUnknown(Array(3000) { MyTestClass("Object$it", MyTestClass("Next$it", null)) })
+    })
+    val (navigator, _) = getObjectNavigatorAndRemappingFunction(hprofFile)
+    val ids = TIntArrayList()
+    for (id in 1..navigator.instanceCount.toInt()) {
+      ids.add(id)
+    }
+    assertTrue(ids.size() > 1_024)
+
+    InstanceBatchLoader(navigator.createCopy(), 4).use { loader ->
+      val expectedReferences = TLongArrayList()
+      for (batchStart in 0 until ids.size() step InstanceBatchLoader.BATCH_SIZE) {
+        val batchEnd = minOf(ids.size(), batchStart + InstanceBatchLoader.BATCH_SIZE)
+        loader.load(ids, batchStart, batchEnd)
+        for (i in batchStart until batchEnd) {
+          navigator.goTo(ids[i].toLong(), ObjectNavigator.ReferenceResolution.ALL_REFERENCES)
+          navigator.copyReferencesTo(expectedReferences)
+          val slot = i - batchStart
+          assertEquals(navigator.getClass(), loader.classes[slot])
+          assertEquals(navigator.getObjectSize(), loader.sizes[slot])
+          assertEquals(expectedReferences, loader.references[slot])
+        }
+      }
+    }
+  }
+
   private fun getObjectNavigatorAndRemappingFunction(hprofFile: File): Pair<ObjectNavigator, LongUnaryOperator> {
     FileChannel.open(hprofFile.toPath(), StandardOpenOption.READ).use { hprofChannel ->
       val parser = HProfEventBasedParser(hprofChannel)
@@ -354,6 +354,115 @@ public class AdbFileListingTest {
     assertDirectoryLink(fileListing, rootEntries, "vendor", true);
   }
 
+  @Test
+  public void test_Nexus7Api23_PrefetchedChildren() throws Exception {
+    // Prepare
+    TestShellCommands commands = new TestShellCommands();
+    TestDevices.addNexus7Api23Commands(commands);
+    IDevice device = commands.createMockDevice();
+    AdbFileListing fileListing = new AdbFileListing(device, new AdbDeviceCapabilities(device), PooledThreadExecutor.INSTANCE);
+    String runAs = "com.example.rpaquay.myapplication";
+    AdbFileListingEntry appDirectory = new AdbFileListingEntryBuilder()
+      .setPath("/data/app/com.example.rpaquay.myapplication-2")
+      .setKind(EntryKind.DIRECTORY)
+      .build();
+
+    // Act
+    assertThat(waitForFuture(fileListing.prefetchRunAs(appDirectory, runAs))).isTrue();
+    int commandCount = commands.getExecutedCommandCount();
+    List<AdbFileListingEntry> appEntries = waitForFuture(fileListing.getChildrenRunAs(appDirectory, runAs));
+    List<AdbFileListingEntry> libEntries = waitForFuture(fileListing.getChildrenRunAs(findEntry(appEntries, "lib"), runAs));
+    List<AdbFileListingEntry> libArmEntries = waitForFuture(fileListing.getChildrenRunAs(findEntry(libEntries, "arm"), runAs));
+    List<AdbFileListingEntry> oatEntries = waitForFuture(fileListing.getChildrenRunAs(findEntry(appEntries, "oat"), runAs));
+    List<AdbFileListingEntry> oatArmEntries = waitForFuture(fileListing.getChildrenRunAs(findEntry(oatEntries, "arm"), runAs));
+
+    // Assert: browsing the whole tree didn't run any command
+    assertThat(commands.getExecutedCommandCount()).isEqualTo(commandCount);
+    assertThat(appEntries).hasSize(4);
+    assertThat(libArmEntries).isEmpty();
+    assertEntry(oatArmEntries, "base.odex", entry -> {
+      assertThat(entry.getFullPath()).isEqualTo("/data/app/com.example.rpaquay.myapplication-2/oat/arm/base.odex");
+      assertThat(entry.isFile()).isTrue();
+      assertThat(entry.getSize()).isEqualTo(250104);
+    });
+
+    // Act: listing a directory again goes to the device
+    List<AdbFileListingEntry> appEntriesAgain = waitForFuture(fileListing.getChildrenRunAs(appDirectory, runAs));
+
+    // Assert
+    assertThat(commands.getExecutedCommandCount()).isEqualTo(commandCount + 1);
+    assertThat(appEntriesAgain.stream().anyMatch(x -> "split_lib_slice_9_apk.apk".equals(x.getName()))).isTrue();
+  }
+
+  @Test
+  public void test_Nexus7Api23_PrefetchOnlyOnce() throws Exception {
+    // Prepare
+    TestShellCommands commands = new TestShellCommands();
+    TestDevices.addNexus7Api23Commands(commands);
+    IDevice device = commands.createMockDevice();
+    AdbFileListing fileListing = new AdbFileListing(device, new AdbDeviceCapabilities(device), PooledThreadExecutor.INSTANCE);
+    String runAs = "com.example.rpaquay.myapplication";
+    AdbFileListingEntry appDirectory = new AdbFileListingEntryBuilder()
+      .setPath("/data/app/com.example.rpaquay.myapplication-2")
+      .setKind(EntryKind.DIRECTORY)
+      .build();
+
+    // Act
+    assertThat(waitForFuture(fileListing.prefetchRunAs(appDirectory, runAs))).isTrue();
+    int commandCount = commands.getExecutedCommandCount();
+    boolean prefetchedAgain = waitForFuture(fileListing.prefetchRunAs(appDirectory, runAs));
+
+    // Assert: the subtree was not listed again
+    assertThat(prefetchedAgain).isFalse();
+    assertThat(commands.getExecutedCommandCount()).isEqualTo(commandCount);
+
+    // Act: prefetching is allowed again once all listings are invalidated
+    fileListing.invalidateAll();
+
+    // Assert
+    assertThat(waitForFuture(fileListing.prefetchRunAs(appDirectory, runAs))).isTrue();
+    assertThat(commands.getExecutedCommandCount()).isEqualTo(commandCount + 1);
+  }
+
+  @Test
+  public void test_Nexus7Api23_InvalidatePrefetchedChildren() throws Exception {
+    // Prepare
+    TestShellCommands commands = new TestShellCommands();
+    TestDevices.addNexus7Api23Commands(commands);
+    commands.add("run-as com.example.rpaquay.myapplication sh -c 'ls -l /data/app/com.example.rpaquay.myapplication-2/oat/arm/'" +
+                 COMMAND_ERROR_CHECK_SUFFIX,
+                 "-rw-r--r-- system   all_a68     250104 2017-06-12 11:21 base.odex\n" +
+                 "-rw-r--r-- system   all_a68       1024 2017-06-12 11:22 base.vdex\n");
+    IDevice device = commands.createMockDevice();
+    AdbFileListing fileListing = new AdbFileListing(device, new AdbDeviceCapabilities(device), PooledThreadExecutor.INSTANCE);
+    String runAs = "com.example.rpaquay.myapplication";
+    AdbFileListingEntry appDirectory = new AdbFileListingEntryBuilder()
+      .setPath("/data/app/com.example.rpaquay.myapplication-2")
+      .setKind(EntryKind.DIRECTORY)
+      .build();
+    AdbFileListingEntry oatArmDirectory = new AdbFileListingEntryBuilder()
+      .setPath("/data/app/com.example.rpaquay.myapplication-2/oat/arm")
+      .setKind(EntryKind.DIRECTORY)
+      .build();
+
+    // Act
+    waitForFuture(fileListing.prefetchRunAs(appDirectory, runAs));
+    fileListing.invalidate("/data/app/com.example.rpaquay.myapplication-2/oat");
+    int commandCount = commands.getExecutedCommandCount();
+    List<AdbFileListingEntry> oatArmEntries = waitForFuture(fileListing.getChildrenRunAs(oatArmDirectory, runAs));
+
+    // Assert
+    assertThat(commands.getExecutedCommandCount()).isEqualTo(commandCount + 1);
+    assertThat(oatArmEntries).hasSize(2);
+  }
+
+  @NotNull
+  private static AdbFileListingEntry findEntry(@NotNull List<AdbFileListingEntry> entries, @NotNull String name) {
+    AdbFileListingEntry entry = entries.stream().filter(x -> name.equals(x.getName())).findFirst().orElse(null);
+    assertThat(entry).isNotNull();
+    return entry;
+  }
+
   private static void assertDirectoryLink(@NotNull AdbFileListing fileListing,
                                           @NotNull List<AdbFileListingEntry> entries,
                                           @NotNull String name,
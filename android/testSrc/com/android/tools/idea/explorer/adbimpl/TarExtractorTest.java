@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.adbimpl;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class TarExtractorTest {
+  @Rule
+  public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void extractFilesAndDirectories() throws Exception {
+    // Prepare
+    String longName = "./databases/" + String.join("", Collections.nCopies(20, "long-name")) + ".db";
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "./", '5', "");
+    addEntry(archive, "./shared_prefs/", '5', "");
+    addEntry(archive, "./shared_prefs/prefs.xml", '0', "<map />");
+    addEntry(archive, "./lib", '2', "");
+    addEntry(archive, "././@LongLink", 'L', longName + "\0");
+    addEntry(archive, longName.substring(0, 99), '0', "database contents");
+    archive.write(new byte[1024]);
+    Path directory = myTemporaryFolder.newFolder().toPath();
+
+    // Act
+    TarExtractor.extract(new ByteArrayInputStream(archive.toByteArray()), directory);
+
+    // Assert
+    assertThat(new String(Files.readAllBytes(directory.resolve("shared_prefs/prefs.xml")), StandardCharsets.UTF_8)).isEqualTo("<map />");
+    assertThat(new String(Files.readAllBytes(directory.resolve(longName)), StandardCharsets.UTF_8)).isEqualTo("database contents");
+    assertThat(Files.exists(directory.resolve("lib"))).isFalse();
+  }
+
+  @Test
+  public void extractRejectsEntriesOutsideOfDirectory() throws Exception {
+    // Prepare
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    addEntry(archive, "../outside.txt", '0', "contents");
+    Path directory = myTemporaryFolder.newFolder().toPath();
+
+    // Act
+    thrown.expect(IOException.class);
+    TarExtractor.extract(new ByteArrayInputStream(archive.toByteArray()), directory);
+  }
+
+  private static void addEntry(@NotNull ByteArrayOutputStream archive, @NotNull String name, char type, @NotNull String contents)
+    throws IOException {
+    byte[] data = contents.getBytes(StandardCharsets.UTF_8);
+    byte[] header = new byte[512];
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+    byte[] size = String.format("%011o", data.length).getBytes(StandardCharsets.US_ASCII);
+    System.arraycopy(size, 0, header, 124, size.length);
+    header[156] = (byte)type;
+    byte[] magic = "ustar".getBytes(StandardCharsets.US_ASCII);
+    System.arraycopy(magic, 0, header, 257, magic.length);
+    archive.write(header);
+    archive.write(data);
+    archive.write(new byte[(512 - data.length % 512) % 512]);
+  }
+}
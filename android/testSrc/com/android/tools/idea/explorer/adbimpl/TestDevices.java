@@ -523,6 +523,25 @@ public class TestDevices {
                "-rw-r--r-- system   system      44095 2017-06-12 11:21 split_lib_slice_8_apk.apk\n" +
                "-rw-r--r-- system   system       6289 2017-06-12 11:21 split_lib_slice_9_apk.apk\n");
 
+    addCommand(commands,
+               "run-as com.example.rpaquay.myapplication sh -c 'ls -l -R /data/app/com.example.rpaquay.myapplication-2/'",
+               "/data/app/com.example.rpaquay.myapplication-2/:\n" +
+               "-rw-r--r-- system   system     468458 2017-06-12 11:21 base.apk\n" +
+               "drwxr-xr-x system   system            2017-06-12 11:21 lib\n" +
+               "drwxrwx--x system   install           2017-06-12 11:21 oat\n" +
+               "-rw-r--r-- system   system    1351085 2017-06-12 11:21 split_lib_dependencies_apk.apk\n" +
+               "\n" +
+               "/data/app/com.example.rpaquay.myapplication-2/lib:\n" +
+               "drwxr-xr-x system   system            2017-06-12 11:21 arm\n" +
+               "\n" +
+               "/data/app/com.example.rpaquay.myapplication-2/lib/arm:\n" +
+               "\n" +
+               "/data/app/com.example.rpaquay.myapplication-2/oat:\n" +
+               "drwxrwx--x system   install           2017-06-12 11:21 arm\n" +
+               "\n" +
+               "/data/app/com.example.rpaquay.myapplication-2/oat/arm:\n" +
+               "-rw-r--r-- system   all_a68     250104 2017-06-12 11:21 base.odex\n");
+
     addCommand(commands, "mkdir /sdcard/foo-dir", "");
     addFailedCommand(commands, "mkdir /foo-dir", "mkdir: '/foo-dir': Read-only file system\n");
     addFailedCommand(commands, "mkdir /system/foo-dir", "mkdir: '/system/foo-dir': Read-only file system\n");
@@ -23,12 +23,14 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TestShellCommands {
   @NotNull private static final Logger LOGGER = Logger.getInstance(TestShellCommands.class);
 
   @NotNull private final Map<String, TestShellCommandResult> myCommands = new HashMap<>();
   @NotNull private String myDescription = "[MockDevice]";
+  @NotNull private final AtomicInteger myExecutedCommandCount = new AtomicInteger();
 
   public void setDescription(@NotNull String description) {
     myDescription = description;
@@ -46,11 +48,19 @@ public class TestShellCommands {
     return myCommands.get(command);
   }
 
+  /**
+   * The number of shell commands executed on the mock device so far.
+   */
+  public int getExecutedCommandCount() {
+    return myExecutedCommandCount.get();
+  }
+
   public IDevice createMockDevice() throws Exception {
     return new MockDdmlibDevice().setName(myDescription).setShellCommands(this).getIDevice();
   }
 
   public void executeShellCommand(String command, IShellOutputReceiver receiver) throws Exception {
+    myExecutedCommandCount.incrementAndGet();
     TestShellCommandResult commandResult = this.get(command);
     if (commandResult == null) {
       UnsupportedOperationException error = new UnsupportedOperationException(
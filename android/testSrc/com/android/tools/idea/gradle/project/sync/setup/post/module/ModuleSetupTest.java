@@ -21,6 +21,7 @@ import static com.android.tools.idea.testing.Facets.createAndAddAndroidFacet;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -80,6 +81,45 @@ public class ModuleSetupTest extends PlatformTestCase {
     assertNotNull(GradleTestArtifactSearchScopes.getInstance(getModule()));
   }
 
+  public void testSetUpOnlyChangedModules() {
+    Module module = getModule();
+    AndroidFacet androidFacet = createAndAddAndroidFacet(module);
+    AndroidModel.set(androidFacet, myAndroidModuleModel);
+    androidFacet.getProperties().PROJECT_TYPE = PROJECT_TYPE_APP;
+
+    ModuleSetup.setUpModules(getProject(), true, m -> "hash1");
+    ModuleSetup.setUpModules(getProject(), true, m -> "hash1");
+
+    // The module was already set up with the same models the second time.
+    verify(myRunConfigurations, times(1)).createRunConfiguration(androidFacet);
+    assertNotNull(GradleTestArtifactSearchScopes.getInstance(getModule()));
+
+    ModuleSetup.setUpModules(getProject(), true, m -> "hash2");
+    verify(myRunConfigurations, times(2)).createRunConfiguration(androidFacet);
+
+    // Modules whose models can't be hashed are always set up.
+    ModuleSetup.setUpModules(getProject(), true, m -> null);
+    ModuleSetup.setUpModules(getProject(), true, m -> null);
+    verify(myRunConfigurations, times(4)).createRunConfiguration(androidFacet);
+  }
+
+  public void testFullSetUpDoesNotHashModels() {
+    Module module = getModule();
+    AndroidFacet androidFacet = createAndAddAndroidFacet(module);
+    AndroidModel.set(androidFacet, myAndroidModuleModel);
+    androidFacet.getProperties().PROJECT_TYPE = PROJECT_TYPE_APP;
+
+    ModuleSetup.setUpModules(getProject(), true, m -> "hash1");
+    ModuleSetup.setUpModules(getProject(), false, m -> {
+      throw new AssertionError("Models hashed during a full setup");
+    });
+    verify(myRunConfigurations, times(2)).createRunConfiguration(androidFacet);
+
+    // The full setup forgot the recorded hashes.
+    ModuleSetup.setUpModules(getProject(), true, m -> "hash1");
+    verify(myRunConfigurations, times(3)).createRunConfiguration(androidFacet);
+  }
+
   public void testSetUpModuleWithoutAndroidFacet() {
     ModuleSetup.setUpModules(getProject());
 
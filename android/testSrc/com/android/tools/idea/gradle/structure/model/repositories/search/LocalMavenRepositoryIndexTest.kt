@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.gradle.structure.model.repositories.search
+
+import com.android.ide.common.repository.GradleVersion
+import com.android.tools.idea.gradle.structure.model.repositories.search.LocalMavenRepositoryIndex.Artifact
+import com.google.common.truth.Truth.assertThat
+import com.google.common.util.concurrent.MoreExecutors
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.concurrent.Executor
+
+class LocalMavenRepositoryIndexTest {
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private lateinit var root: File
+
+  @Before
+  fun setUp() {
+    root = temporaryFolder.newFolder("repository")
+  }
+
+  private fun addVersion(groupId: String, name: String, version: String) {
+    val artifactDir = File(root, "${groupId.replace('.', File.separatorChar)}${File.separatorChar}$name")
+    val versionDir = File(artifactDir, version)
+    versionDir.mkdirs()
+    File(versionDir, "$name-$version.pom").writeText("<project/>")
+    // Make sure the modification time changes, whatever the precision of the file system.
+    artifactDir.setLastModified(artifactDir.lastModified() + 2000)
+    versionDir.setLastModified(versionDir.lastModified() + 2000)
+  }
+
+  @Test
+  fun artifactsAreFound() {
+    addVersion("com.example.libs", "lib1", "1.0")
+    addVersion("com.example.libs", "lib1", "1.1")
+    addVersion("com.example", "lib2", "2.0")
+    // Not a version: there is no pom file.
+    File(root, "com/example/libs/lib3/1.0").mkdirs()
+
+    assertThat(LocalMavenRepositoryIndex(root).getArtifacts()).containsExactly(
+      Artifact("com.example", "lib2", listOf(GradleVersion.parse("2.0"))),
+      Artifact("com.example.libs", "lib1", listOf(GradleVersion.parse("1.0"), GradleVersion.parse("1.1")))
+    ).inOrder()
+  }
+
+  @Test
+  fun newVersionsAreFoundAfterRefresh() {
+    addVersion("com.example", "lib", "1.0")
+    val index = LocalMavenRepositoryIndex(root, refreshIntervalMs = 0, refreshExecutor = MoreExecutors.directExecutor())
+    assertThat(index.getArtifacts().single().versions).containsExactly(GradleVersion.parse("1.0"))
+
+    addVersion("com.example", "lib", "2.0")
+    assertThat(index.getArtifacts().single().versions).containsExactly(GradleVersion.parse("1.0"), GradleVersion.parse("2.0"))
+  }
+
+  @Test
+  fun unchangedRepositoryIsNotIndexedAgain() {
+    addVersion("com.example", "lib", "1.0")
+    val index = LocalMavenRepositoryIndex(root, refreshIntervalMs = 0, refreshExecutor = MoreExecutors.directExecutor())
+    val artifacts = index.getArtifacts()
+
+    assertThat(index.getArtifacts()).isSameAs(artifacts)
+  }
+
+  @Test
+  fun lastIndexIsReturnedWhileRefreshing() {
+    addVersion("com.example", "lib", "1.0")
+    val refreshes = mutableListOf<Runnable>()
+    val index = LocalMavenRepositoryIndex(root, refreshIntervalMs = 0, refreshExecutor = Executor { refreshes.add(it) })
+    assertThat(index.getArtifacts().single().versions).containsExactly(GradleVersion.parse("1.0"))
+    assertThat(refreshes).isEmpty()
+
+    addVersion("com.example", "lib", "2.0")
+    assertThat(index.getArtifacts().single().versions).containsExactly(GradleVersion.parse("1.0"))
+    // A single refresh is scheduled at a time.
+    index.getArtifacts()
+    assertThat(refreshes).hasSize(1)
+
+    refreshes.removeAt(0).run()
+    assertThat(index.getArtifacts().single().versions).containsExactly(GradleVersion.parse("1.0"), GradleVersion.parse("2.0"))
+  }
+
+  @Test
+  fun repositoryIsNotCheckedWithinRefreshInterval() {
+    addVersion("com.example", "lib", "1.0")
+    val index = LocalMavenRepositoryIndex(root, refreshIntervalMs = 60_000)
+    val artifacts = index.getArtifacts()
+
+    addVersion("com.example", "lib", "2.0")
+    assertThat(index.getArtifacts()).isSameAs(artifacts)
+  }
+}
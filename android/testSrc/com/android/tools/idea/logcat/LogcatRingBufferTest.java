@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+public final class LogcatRingBufferTest {
+  private static final LogCatHeader FIRST_HEADER =
+    new LogCatHeader(LogLevel.DEBUG, 1493, 1493, "com.example.first", "First", Instant.ofEpochSecond(1534635551, 439_000_000));
+  private static final LogCatHeader SECOND_HEADER =
+    new LogCatHeader(LogLevel.ERROR, 1500, 1501, "com.example.second", "Second", Instant.ofEpochSecond(1534635552, 0));
+
+  @Test
+  public void getMessagesReturnsAllMessagesInOrder() {
+    LogcatRingBuffer buffer = new LogcatRingBuffer(Integer.MAX_VALUE);
+    for (int i = 0; i < 1000; i++) {
+      buffer.addMessage(new LogCatMessage(i % 2 == 0 ? FIRST_HEADER : SECOND_HEADER, "Line" + i));
+    }
+
+    List<LogCatMessage> messages = buffer.getMessages();
+
+    assertEquals(1000, messages.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(new LogCatMessage(i % 2 == 0 ? FIRST_HEADER : SECOND_HEADER, "Line" + i).toString(), messages.get(i).toString());
+    }
+  }
+
+  @Test
+  public void linesOfTheSameMessageShareTheirHeader() {
+    LogcatRingBuffer buffer = new LogcatRingBuffer(Integer.MAX_VALUE);
+    buffer.addMessage(new LogCatMessage(FIRST_HEADER, "Line1"));
+    buffer.addMessage(new LogCatMessage(FIRST_HEADER, "Line2"));
+    buffer.addMessage(new LogCatMessage(SECOND_HEADER, "Line3"));
+
+    List<LogCatMessage> messages = buffer.getMessages();
+
+    assertSame(messages.get(0).getHeader(), messages.get(1).getHeader());
+    assertEquals(SECOND_HEADER, messages.get(2).getHeader());
+  }
+
+  @Test
+  public void separateMessagesWithEqualHeadersDoNotShareTheirHeader() {
+    LogCatHeader header = new LogCatHeader(FIRST_HEADER.getLogLevel(), FIRST_HEADER.getPid(), FIRST_HEADER.getTid(),
+                                           FIRST_HEADER.getAppName(), FIRST_HEADER.getTag(), FIRST_HEADER.getTimestamp());
+    LogcatRingBuffer buffer = new LogcatRingBuffer(Integer.MAX_VALUE);
+    buffer.addMessage(new LogCatMessage(FIRST_HEADER, "Line1"));
+    buffer.addMessage(new LogCatMessage(header, "Line2"));
+
+    List<LogCatMessage> messages = buffer.getMessages();
+
+    assertNotSame(messages.get(0).getHeader(), messages.get(1).getHeader());
+  }
+
+  @Test
+  public void unusedTagsAreDropped() {
+    LogcatRingBuffer buffer = new LogcatRingBuffer(100);
+    for (int i = 0; i < 10_000; i++) {
+      buffer.addMessage(new LogCatMessage(new LogCatHeader(LogLevel.INFO, 1, 1, "com.example", "Tag" + i, null), "Message"));
+    }
+
+    assertTrue(buffer.getInternedStringCount() <= 1024);
+    List<LogCatMessage> messages = buffer.getMessages();
+    assertEquals(14, messages.size());
+    assertEquals("Tag9999", messages.get(13).getHeader().getTag());
+    assertEquals("com.example", messages.get(13).getHeader().getAppName());
+  }
+
+  @Test
+  public void oldMessagesAreTrimmed() {
+    LogcatRingBuffer buffer = new LogcatRingBuffer(50);
+    for (int i = 0; i < 1000; i++) {
+      buffer.addMessage(new LogCatMessage(FIRST_HEADER, String.format("Message %03d", i)));
+    }
+
+    // Each message is 11 characters long
+    assertEquals(4, buffer.size());
+    assertEquals(44, buffer.getCharCount());
+    assertEquals("Message 996,Message 997,Message 998,Message 999", getTexts(buffer.getMessages()));
+  }
+
+  @Test
+  public void queryFiltersByColumns() {
+    LogcatRingBuffer buffer = new LogcatRingBuffer(Integer.MAX_VALUE);
+    buffer.addMessage(new LogCatMessage(FIRST_HEADER, "First message"));
+    buffer.addMessage(new LogCatMessage(SECOND_HEADER, "Second message"));
+
+    assertEquals("First message", getTexts(buffer.getMessages(new LogcatRingBuffer.Query().setPid(1493))));
+    assertEquals("First message",
+                 getTexts(buffer.getMessages(new LogcatRingBuffer.Query().setAppName("com.example.first").setPid(1493))));
+    assertEquals("", getTexts(buffer.getMessages(new LogcatRingBuffer.Query().setAppName("com.example.first").setPid(1500))));
+    assertEquals("", getTexts(buffer.getMessages(new LogcatRingBuffer.Query().setAppName("com.example.unknown"))));
+  }
+
+  @NotNull
+  private static String getTexts(@NotNull List<LogCatMessage> messages) {
+    return messages.stream().map(LogCatMessage::getMessage).collect(Collectors.joining(","));
+  }
+}
@@ -21,7 +21,11 @@ import static com.google.common.truth.Truth.assertThat;
 
 import com.android.tools.idea.projectsystem.ProjectSystemSyncManager;
 import com.android.tools.idea.projectsystem.ProjectSystemUtil;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
 import com.intellij.testFramework.fixtures.IdeaProjectTestFixture;
 import com.intellij.testFramework.fixtures.TestFixtureBuilder;
 import java.util.List;
@@ -42,6 +46,23 @@ public class MergedManifestInfoTest extends AndroidTestCase {
     assertThat(mergedManifestInfo.isUpToDate()).isFalse();
   }
 
+  public void testUnchangedContent() throws Exception {
+    MergedManifestInfo mergedManifestInfo = MergedManifestInfo.create(myFacet);
+    VirtualFile manifest = ProjectSystemUtil.getModuleSystem(myFacet).getMergedManifestContributors().primaryManifest;
+    Document document = FileDocumentManager.getInstance().getDocument(manifest);
+    String text = document.getText();
+
+    // Changes that leave the content as it was don't make a refresh necessary
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> document.setText(text + " "));
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> document.setText(text));
+    PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+    assertThat(mergedManifestInfo.isUpToDate()).isTrue();
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> document.setText(text.replace("<manifest", "<!-- --><manifest")));
+    PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+    assertThat(mergedManifestInfo.isUpToDate()).isFalse();
+  }
+
   public void testGetLibManifests() throws Exception {
     List<VirtualFile> libManifests = ProjectSystemUtil.getModuleSystem(myFacet).getMergedManifestContributors().libraryManifests;
     // TODO: add external library dependency to local library module and check to make sure libManifests lists the local one first.
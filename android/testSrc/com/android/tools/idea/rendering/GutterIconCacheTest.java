@@ -22,6 +22,7 @@ import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.vfs.*;
 import org.jetbrains.android.AndroidTestCase;
 
+import javax.swing.Icon;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -49,14 +50,14 @@ public class GutterIconCacheTest extends AndroidTestCase {
     GutterIconCache cache = new GutterIconCache();
 
     // If we've never requested an Icon for the path, there should be no valid cache entry.
-    assertThat(cache.isIconUpToDate(mySampleSvgFile)).isFalse();
+    assertThat(cache.isIconUpToDate(mySampleSvgFile, null)).isFalse();
   }
 
   public void testIsIconUpToDate_entryValid() {
     GutterIconCache.getInstance().getIcon(mySampleSvgFile, null, myFacet);
 
     // If we haven't modified the image since creating an Icon, the cache entry is still valid
-    assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgFile)).isTrue();
+    assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgFile, null)).isTrue();
   }
 
   public void testIsIconUpToDate_entryInvalidUnsavedChanges() {
@@ -67,7 +68,7 @@ public class GutterIconCacheTest extends AndroidTestCase {
     ApplicationManager.getApplication().runWriteAction(() -> document.setText(document.getText()));
 
     // Modifying the image should have invalidated the cache entry.
-    assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgFile)).isFalse();
+    assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgFile, null)).isFalse();
   }
 
   public void testIconUpToDate_entryInvalidSavedChanges() throws Exception {
@@ -81,7 +82,7 @@ public class GutterIconCacheTest extends AndroidTestCase {
     });
 
     // Modifying the image should have invalidated the cache entry.
-    assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgFile)).isFalse();
+    assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgFile, null)).isFalse();
   }
 
   public void testIconUpToDate_entryInvalidDiskChanges() throws Exception {
@@ -97,6 +98,35 @@ public class GutterIconCacheTest extends AndroidTestCase {
     assertThat(previousTimestamp).isLessThan(Files.getLastModifiedTime(mySampleSvgPath));
 
     // Modifying the image should have invalidated the cache entry.
-    assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgFile)).isFalse();
+    assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgFile, null)).isFalse();
+  }
+
+  public void testGetIconOrPlaceholder_rendersInBackground() {
+    GutterIconCache cache = new GutterIconCache();
+
+    // The thumbnail isn't rendered on the calling thread, a placeholder with the size of the thumbnail is shown until it is ready.
+    Icon placeholder = cache.getIconOrPlaceholder(mySampleSvgFile, null, myFacet);
+    assertThat(placeholder).isNotNull();
+    assertThat(placeholder.getIconWidth()).isEqualTo(GutterIconCache.MAX_WIDTH);
+
+    cache.waitForPendingIcons();
+    assertThat(cache.isIconUpToDate(mySampleSvgFile, null)).isTrue();
+    Icon icon = cache.getIconOrPlaceholder(mySampleSvgFile, null, myFacet);
+    assertThat(icon).isNotSameAs(placeholder);
+    assertThat(cache.getIcon(mySampleSvgFile, null, myFacet)).isSameAs(icon);
+  }
+
+  public void testGetIconOrPlaceholder_previousThumbnailShownWhileRendering() {
+    GutterIconCache cache = new GutterIconCache();
+    Icon icon = cache.getIcon(mySampleSvgFile, null, myFacet);
+
+    // Rendering the file again after a change doesn't evict the thumbnail of the previous content, which is still shown meanwhile.
+    Document document = FileDocumentManager.getInstance().getDocument(mySampleSvgFile);
+    ApplicationManager.getApplication().runWriteAction(() -> document.setText(document.getText()));
+    assertThat(cache.isIconUpToDate(mySampleSvgFile, null)).isFalse();
+    assertThat(cache.getIconOrPlaceholder(mySampleSvgFile, null, myFacet)).isSameAs(icon);
+
+    cache.waitForPendingIcons();
+    assertThat(cache.isIconUpToDate(mySampleSvgFile, null)).isTrue();
   }
 }
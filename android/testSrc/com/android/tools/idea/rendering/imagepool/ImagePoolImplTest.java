@@ -68,7 +68,7 @@ public class ImagePoolImplTest {
       }
 
       return 50_000_000 / (w * h);
-    });
+    }, Long.MAX_VALUE);
   }
 
   @After
@@ -144,6 +144,57 @@ public class ImagePoolImplTest {
     gc();
   }
 
+  @Test
+  public void testMemoryBudget() {
+    // 50x50 images are allocated in the 500x500 bucket, so each one takes 1MB. The budget only fits two of them.
+    ImagePoolImpl pool = new ImagePoolImpl(new int[]{50, 500, 1000}, (w, h) -> (type) -> 10, 2_000_000);
+    try {
+      ImagePoolImpl.ImageImpl image1 = pool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null);
+      ImagePoolImpl.ImageImpl image2 = pool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null);
+      ImagePoolImpl.ImageImpl image3 = pool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null);
+      BufferedImage internalPtr2 = image2.myBuffer;
+      BufferedImage internalPtr3 = image3.myBuffer;
+      image1.dispose();
+      image2.dispose();
+      image3.dispose();
+
+      // The least recently returned image was dropped from the pool
+      ImagePool.BucketStats bucketStats = pool.getStats().getBucketStats()[0];
+      assertEquals(1, bucketStats.bucketEvictions());
+      assertEquals(3, bucketStats.imageWasReturned());
+      assertEquals(2_000_000, pool.getStats().totalBytesAllocated());
+      assertEquals(0, pool.getStats().totalBytesInUse());
+
+      // The most recently returned images are reused first
+      assertEquals(internalPtr3, pool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null).myBuffer);
+      assertEquals(internalPtr2, pool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null).myBuffer);
+      assertEquals(2, bucketStats.bucketHits());
+      pool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null);
+      assertEquals(4, bucketStats.bucketMisses());
+    }
+    finally {
+      pool.dispose();
+    }
+  }
+
+  @Test
+  public void testClearPooledImages() {
+    ImagePoolImpl.ImageImpl image1 = myPool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null);
+    ImagePoolImpl.ImageImpl image2 = myPool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null);
+    BufferedImage internalPtr1 = image1.myBuffer;
+    BufferedImage internalPtr2 = image2.myBuffer;
+    image1.dispose();
+    image2.dispose();
+
+    // Low memory drops the images waiting to be reused
+    myPool.clearPooledImages();
+    assertEquals(0, myPool.getStats().totalBytesAllocated());
+
+    BufferedImage newPtr = myPool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null).myBuffer;
+    assertNotEquals(internalPtr1, newPtr);
+    assertNotEquals(internalPtr2, newPtr);
+  }
+
   @Test
   public void testDefaultPooling() throws InterruptedException {
     // Small images won't be pooled
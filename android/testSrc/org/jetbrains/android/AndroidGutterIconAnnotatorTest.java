@@ -291,6 +291,7 @@ public class AndroidGutterIconAnnotatorTest extends AndroidTestCase {
     assertThat(highlightInfo.getGutterIconRenderer()).isInstanceOf(GutterIconRenderer.class);
     GutterIconRenderer renderer = (GutterIconRenderer)highlightInfo.getGutterIconRenderer();
     assertThat(renderer).isNotNull();
+    GutterIconCache.getInstance().waitForPendingIcons();
     Icon icon = renderer.getIcon();
     BufferedImage image = TestRenderingUtils.getImageFromIcon(icon);
 
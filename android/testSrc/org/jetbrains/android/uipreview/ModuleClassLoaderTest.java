@@ -33,6 +33,7 @@ import com.android.tools.idea.res.ResourceRepositoryManager;
 import com.android.tools.idea.testing.AndroidModuleModelBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
 import com.google.common.io.Files;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.WriteAction;
@@ -247,4 +248,30 @@ public class ModuleClassLoaderTest extends AndroidTestCase {
     ModuleClassLoader loader = ModuleClassLoaderManager.get().getShared(null, myModule);
     loader.loadClass("p1.p2.R");
   }
+
+  public void testSharedClassFileHashes() throws IOException {
+    File srcDir = new File(Files.createTempDir(), "src");
+    File fooSrc = new File(srcDir, "com/google/example/Foo.java");
+    FileUtil.writeToFile(fooSrc, "package com.google.example; public class Foo {}");
+    ToolProvider.getSystemJavaCompiler().run(null, null, null, fooSrc.getPath());
+    VirtualFile fooClass = VfsUtil.findFileByIoFile(new File(fooSrc.getParent(), "Foo.class"), true);
+    assertThat(fooClass).isNotNull();
+
+    ModuleClassLoaderManager manager = ModuleClassLoaderManager.get();
+    manager.clearCache(myModule);
+    assertThat(manager.getSharedClassFileHashes(myModule)).isNull();
+
+    ModuleClassLoader loader = manager.getShared(null, myModule);
+    assertThat(manager.getSharedClassFileHashes(myModule)).isEmpty();
+    loader.loadClassFile("com.google.example.Foo", fooClass);
+    HashCode fooHash = ModuleClassLoader.hashClassFile(fooClass.contentsToByteArray());
+    assertThat(manager.getSharedClassFileHashes(myModule)).containsExactly("com.google.example.Foo", fooHash);
+    assertThat(manager.getClassFileHash(myModule, "com.google.example.Foo")).isEqualTo(fooHash);
+
+    // The hashes don't depend on the class loader.
+    manager.clearCache(myModule);
+    assertThat(manager.getSharedClassFileHashes(myModule)).isNull();
+    manager.getShared(null, myModule).loadClassFile("com.google.example.Foo", fooClass);
+    assertThat(manager.getSharedClassFileHashes(myModule)).containsExactly("com.google.example.Foo", fooHash);
+  }
 }
@@ -36,6 +36,7 @@ import com.intellij.notification.NotificationGroup;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.extensions.PluginId;
 import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.fileEditor.FileEditorLocation;
@@ -70,6 +71,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.*;
 import java.util.List;
@@ -90,6 +92,8 @@ public class DexFileViewer extends UserDataHolderBase implements ApkFileEditorCo
   @Nullable private ProguardMappings myProguardMappings;
   private boolean myDeobfuscateNames;
   private ListenableFuture<DexReferences> myDexReferences;
+  private ListenableFuture<DexBackedDexFile[]> myDexFilesFuture;
+  private ListenableFuture<DexIndex> myDexIndex;
 
   @NotNull public static final NotificationGroup LOGGING_NOTIFICATION =
     NotificationGroup.logOnlyGroup("APK Analyzer (Info)", PluginId.getId("org.jetbrains.android"));
@@ -287,14 +291,17 @@ public class DexFileViewer extends UserDataHolderBase implements ApkFileEditorCo
 
   public void initDex() {
     ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
-    ListenableFuture<Map<Path, DexBackedDexFile>> dexFileFuture = pooledThreadExecutor.submit(() -> {
+    ListenableFuture<Map<Path, DexBackedDexFile>> dexFileFuture = Futures.transform(getDexFiles(), files -> {
+      assert files != null;
       Map<Path, DexBackedDexFile> dexFiles = Maps.newHashMapWithExpectedSize(myDexFiles.length);
       for (int i = 0; i < myDexFiles.length; i++) {
-        dexFiles.put(myDexFiles[i], DexFiles.getDexFile(myDexFiles[i]));
+        dexFiles.put(myDexFiles[i], files[i]);
       }
       return dexFiles;
-    });
+    }, pooledThreadExecutor);
 
+    // The node types of the tree, and PackageTreeCreator, come from the apkanalyzer library, which builds the whole package tree from
+    // the parsed dex files at once. Creating nodes on expansion from DexIndex needs node types that can be populated lazily there.
     ListenableFuture<DexPackageNode> treeNodeFuture =
       Futures.transform(dexFileFuture, new Function<Map<Path, DexBackedDexFile>, DexPackageNode>() {
         @NotNull
@@ -340,16 +347,6 @@ public class DexFileViewer extends UserDataHolderBase implements ApkFileEditorCo
       }
     }, EdtExecutorService.getInstance());
 
-    ListenableFuture<DexFileStats> dexStatsFuture =
-      Futures.transform(dexFileFuture, new Function<Map<Path, DexBackedDexFile>, DexFileStats>() {
-        @NotNull
-        @Override
-        public DexFileStats apply(@Nullable Map<Path, DexBackedDexFile> input) {
-          assert input != null;
-          return DexFileStats.create(input.values());
-        }
-      }, pooledThreadExecutor);
-
     //this will never change for a given dex file, regardless of proguard mappings
     //so it doesn't make sense to recompute every time
     if (((BorderLayout)myTopPanel.getLayout()).getLayoutComponent(BorderLayout.EAST) == null) {
@@ -358,9 +355,9 @@ public class DexFileViewer extends UserDataHolderBase implements ApkFileEditorCo
       titleComponent.append("Loading dex stats");
       myTopPanel.add(titleComponent, BorderLayout.EAST);
 
-      Futures.addCallback(dexStatsFuture, new FutureCallback<DexFileStats>() {
+      Futures.addCallback(getDexIndex(), new FutureCallback<DexIndex>() {
         @Override
-        public void onSuccess(DexFileStats result) {
+        public void onSuccess(DexIndex result) {
           titleComponent.clear();
           titleComponent.setIcon(AllIcons.General.Information);
           titleComponent.append(myDexFiles.length == 1 ? "This dex file defines " : "These dex files define ");
@@ -466,18 +463,44 @@ public class DexFileViewer extends UserDataHolderBase implements ApkFileEditorCo
     return myDeobfuscateNames;
   }
 
+  /**
+   * Returns the parsed dex files, in the same order as {@link #myDexFiles}. Each file is parsed in its own pooled task, and only
+   * once for the lifetime of the viewer.
+   */
+  @NotNull
+  private synchronized ListenableFuture<DexBackedDexFile[]> getDexFiles() {
+    if (myDexFilesFuture == null) {
+      ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
+      List<ListenableFuture<DexBackedDexFile>> files = new ArrayList<>(myDexFiles.length);
+      for (Path dexFile : myDexFiles) {
+        files.add(pooledThreadExecutor.submit(() -> DexFiles.getDexFile(dexFile)));
+      }
+      myDexFilesFuture = Futures.transform(Futures.allAsList(files), list -> {
+        assert list != null;
+        return list.toArray(new DexBackedDexFile[0]);
+      }, MoreExecutors.directExecutor());
+    }
+    return myDexFilesFuture;
+  }
+
+  /**
+   * Returns the index of the dex files of this viewer, which is reused across viewers of the same dex files.
+   */
+  @NotNull
+  synchronized ListenableFuture<DexIndex> getDexIndex() {
+    if (myDexIndex == null) {
+      ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
+      myDexIndex = DexIndex.getOrCreate(myDexFiles, this::getDexFiles, Paths.get(PathManager.getSystemPath(), "apk-analyzer", "dex-index"),
+                                        pooledThreadExecutor);
+    }
+    return myDexIndex;
+  }
+
   @Nullable
   ListenableFuture<DexReferences> getDexReferences() {
     if (myDexReferences == null) {
       ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
-      ListenableFuture<DexBackedDexFile[]> dexFileFuture = pooledThreadExecutor.submit(() -> {
-        DexBackedDexFile[] files = new DexBackedDexFile[myDexFiles.length];
-        for (int i = 0; i < files.length; i++) {
-          files[i] = DexFiles.getDexFile(myDexFiles[i]);
-        }
-        return files;
-      });
-      myDexReferences = Futures.transform(dexFileFuture, new Function<DexBackedDexFile[], DexReferences>() {
+      myDexReferences = Futures.transform(getDexFiles(), new Function<DexBackedDexFile[], DexReferences>() {
         @Override
         public DexReferences apply(@Nullable DexBackedDexFile[] inputs) {
           assert inputs != null;
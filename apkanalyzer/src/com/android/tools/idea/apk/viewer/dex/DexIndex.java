@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.dex;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.intellij.openapi.diagnostic.Logger;
+import gnu.trove.TObjectIntHashMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jf.dexlib2.dexbacked.DexBackedClassDef;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.dexbacked.DexBackedField;
+import org.jf.dexlib2.dexbacked.DexBackedMethod;
+import org.jf.dexlib2.iface.MethodImplementation;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.iface.instruction.ReferenceInstruction;
+import org.jf.dexlib2.iface.reference.MethodReference;
+import org.jf.dexlib2.iface.reference.Reference;
+import org.jf.dexlib2.immutable.reference.ImmutableMethodReference;
+import org.jf.dexlib2.util.ReferenceUtil;
+
+/**
+ * Summary of a set of dex files: how many classes, methods and fields they define and reference, and for every class, method and
+ * field referenced by an instruction, which methods reference it.
+ * <p>
+ * The index is built from the parsed dex files with one task per file, and saved to disk keyed by the paths, sizes and checksums or
+ * modification times of the dex files, so opening the same APK again doesn't need to read any dex file to show its stats. Only the
+ * {@link #MAX_CACHED_INDICES} most recently used indices are kept.
+ */
+public class DexIndex {
+  private static final Logger LOG = Logger.getInstance(DexIndex.class);
+
+  /** Bump whenever the on-disk format or the contents of the index change. */
+  private static final int VERSION = 2;
+
+  private static final String INDEX_EXTENSION = ".idx";
+  private static final int MAX_CACHED_INDICES = 50;
+
+  public final int classCount;
+  public final int definedMethodCount;
+  public final int definedFieldCount;
+  /** Sum of the sizes of the method id tables, i.e. the number of methods counted against the 64K reference limit. */
+  public final int referencedMethodCount;
+
+  /**
+   * For each class, method or field referenced by an instruction (as a smali-style reference string), the methods referencing it, as
+   * indices into {@link #myMethods}.
+   */
+  @NotNull private final Map<String, int[]> myReferrers;
+  /** Reference strings of the methods that reference anything. */
+  @NotNull private final String[] myMethods;
+
+  private DexIndex(int classCount,
+                   int definedMethodCount,
+                   int definedFieldCount,
+                   int referencedMethodCount,
+                   @NotNull Map<String, int[]> referrers,
+                   @NotNull String[] methods) {
+    this.classCount = classCount;
+    this.definedMethodCount = definedMethodCount;
+    this.definedFieldCount = definedFieldCount;
+    this.referencedMethodCount = referencedMethodCount;
+    myReferrers = referrers;
+    myMethods = methods;
+  }
+
+  /**
+   * Returns the number of methods with at least one instruction referencing the given class, method or field.
+   */
+  public int getReferencingMethodCount(@NotNull Reference reference) {
+    int[] referrers = myReferrers.get(ReferenceUtil.getReferenceString(reference));
+    return referrers == null ? 0 : referrers.length;
+  }
+
+  /**
+   * Returns the methods with at least one instruction referencing the given class, method or field.
+   */
+  @NotNull
+  public List<MethodReference> getReferencingMethods(@NotNull Reference reference) {
+    int[] referrers = myReferrers.get(ReferenceUtil.getReferenceString(reference));
+    if (referrers == null) {
+      return Collections.emptyList();
+    }
+    List<MethodReference> methods = new ArrayList<>(referrers.length);
+    for (int referrer : referrers) {
+      methods.add(parseMethodReference(myMethods[referrer]));
+    }
+    return methods;
+  }
+
+  /**
+   * Loads the index of the given dex files from the cache directory, or builds it in parallel on the given executor from the parsed
+   * dex files and saves it. The dex files are only parsed when the index isn't cached.
+   */
+  @NotNull
+  public static ListenableFuture<DexIndex> getOrCreate(@NotNull Path[] dexFiles,
+                                                       @NotNull Supplier<ListenableFuture<DexBackedDexFile[]>> parsedDexFiles,
+                                                       @NotNull Path cacheDir,
+                                                       @NotNull ListeningExecutorService executor) {
+    ListenableFuture<String> keyFuture = executor.submit(() -> computeKey(dexFiles));
+    return Futures.transformAsync(keyFuture, key -> {
+      Path indexFile = cacheDir.resolve(key + INDEX_EXTENSION);
+      DexIndex cached = load(indexFile);
+      if (cached != null) {
+        touch(indexFile);
+        return Futures.immediateFuture(cached);
+      }
+
+      return Futures.transformAsync(parsedDexFiles.get(), files -> {
+        assert files != null;
+        List<ListenableFuture<DexIndex>> partialIndices = new ArrayList<>(files.length);
+        for (DexBackedDexFile file : files) {
+          partialIndices.add(executor.submit(() -> create(file)));
+        }
+        return Futures.transform(Futures.allAsList(partialIndices), partial -> {
+          assert partial != null;
+          DexIndex index = merge(partial);
+          save(index, indexFile);
+          evictLeastRecentlyUsed(cacheDir, MAX_CACHED_INDICES);
+          return index;
+        }, executor);
+      }, executor);
+    }, executor);
+  }
+
+  /**
+   * Computes the cache key from the attributes of the dex files rather than their contents, so that a cache hit doesn't read them.
+   */
+  @NotNull
+  static String computeKey(@NotNull Path[] dexFiles) throws IOException {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putInt(VERSION);
+    for (Path dexFile : dexFiles) {
+      String uri = dexFile.toUri().toString();
+      hasher.putInt(uri.length()).putUnencodedChars(uri);
+      BasicFileAttributes attributes = Files.readAttributes(dexFile, BasicFileAttributes.class);
+      hasher.putLong(attributes.size());
+      if (dexFile.getFileSystem().supportedFileAttributeViews().contains("zip")) {
+        // Entries of an archive come with the CRC of their contents, while their times are often fixed for reproducible builds.
+        hasher.putLong(((Number)Files.getAttribute(dexFile, "zip:crc")).longValue());
+      }
+      else {
+        hasher.putLong(attributes.lastModifiedTime().toMillis());
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Indexes a single dex file.
+   */
+  @NotNull
+  static DexIndex create(@NotNull DexBackedDexFile dexFile) {
+    int classCount = 0;
+    int definedMethodCount = 0;
+    int definedFieldCount = 0;
+    Map<String, List<String>> referrers = new HashMap<>();
+    for (DexBackedClassDef classDef : dexFile.getClasses()) {
+      classCount++;
+      for (DexBackedMethod method : classDef.getMethods()) {
+        definedMethodCount++;
+        addReferences(ReferenceUtil.getMethodDescriptor(method), method.getImplementation(), referrers);
+      }
+      for (DexBackedField ignored : classDef.getFields()) {
+        definedFieldCount++;
+      }
+    }
+
+    TObjectIntHashMap<String> methodIds = new TObjectIntHashMap<>();
+    List<String> methods = new ArrayList<>();
+    Map<String, int[]> referrerIds = new HashMap<>(referrers.size());
+    referrers.forEach((reference, methodsReferencing) -> referrerIds.put(reference, toIds(methodsReferencing, methodIds, methods)));
+    return new DexIndex(classCount, definedMethodCount, definedFieldCount, dexFile.getMethodCount(), referrerIds,
+                        methods.toArray(new String[0]));
+  }
+
+  private static void addReferences(@NotNull String method,
+                                    @Nullable MethodImplementation implementation,
+                                    @NotNull Map<String, List<String>> referrers) {
+    if (implementation == null) {
+      return;
+    }
+    // Each method is listed once per reference, however many times it uses it.
+    Set<String> seen = new HashSet<>();
+    for (Instruction instruction : implementation.getInstructions()) {
+      if (instruction instanceof ReferenceInstruction) {
+        String reference = ReferenceUtil.getReferenceString(((ReferenceInstruction)instruction).getReference());
+        if (reference != null && seen.add(reference)) {
+          referrers.computeIfAbsent(reference, r -> new ArrayList<>()).add(method);
+        }
+      }
+    }
+  }
+
+  @NotNull
+  private static int[] toIds(@NotNull List<String> methods, @NotNull TObjectIntHashMap<String> methodIds, @NotNull List<String> table) {
+    int[] ids = new int[methods.size()];
+    for (int i = 0; i < ids.length; i++) {
+      String method = methods.get(i);
+      if (!methodIds.containsKey(method)) {
+        methodIds.put(method, table.size());
+        table.add(method);
+      }
+      ids[i] = methodIds.get(method);
+    }
+    return ids;
+  }
+
+  @NotNull
+  private static DexIndex merge(@NotNull List<DexIndex> indices) {
+    int classCount = 0;
+    int definedMethodCount = 0;
+    int definedFieldCount = 0;
+    int referencedMethodCount = 0;
+    Map<String, List<String>> referrers = new HashMap<>();
+    for (DexIndex index : indices) {
+      classCount += index.classCount;
+      definedMethodCount += index.definedMethodCount;
+      definedFieldCount += index.definedFieldCount;
+      referencedMethodCount += index.referencedMethodCount;
+      index.myReferrers.forEach((reference, ids) -> {
+        List<String> methods = referrers.computeIfAbsent(reference, r -> new ArrayList<>());
+        for (int id : ids) {
+          methods.add(index.myMethods[id]);
+        }
+      });
+    }
+
+    TObjectIntHashMap<String> methodIds = new TObjectIntHashMap<>();
+    List<String> methods = new ArrayList<>();
+    Map<String, int[]> referrerIds = new HashMap<>(referrers.size());
+    referrers.forEach((reference, methodsReferencing) -> referrerIds.put(reference, toIds(methodsReferencing, methodIds, methods)));
+    return new DexIndex(classCount, definedMethodCount, definedFieldCount, referencedMethodCount, referrerIds,
+                        methods.toArray(new String[0]));
+  }
+
+  /**
+   * Parses a method reference string, such as {@code Lcom/example/Foo;->bar(I[Ljava/lang/String;)V}.
+   */
+  @NotNull
+  static MethodReference parseMethodReference(@NotNull String reference) {
+    int arrow = reference.indexOf("->");
+    int parametersStart = reference.indexOf('(', arrow);
+    int parametersEnd = reference.indexOf(')', parametersStart);
+    List<String> parameters = new ArrayList<>();
+    int start = parametersStart + 1;
+    while (start < parametersEnd) {
+      int end = start;
+      while (reference.charAt(end) == '[') {
+        end++;
+      }
+      end = reference.charAt(end) == 'L' ? reference.indexOf(';', end) + 1 : end + 1;
+      parameters.add(reference.substring(start, end));
+      start = end;
+    }
+    return new ImmutableMethodReference(reference.substring(0, arrow), reference.substring(arrow + 2, parametersStart), parameters,
+                                        reference.substring(parametersEnd + 1));
+  }
+
+  @Nullable
+  static DexIndex load(@NotNull Path indexFile) {
+    if (!Files.isRegularFile(indexFile)) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+      if (in.readInt() != VERSION) {
+        return null;
+      }
+      int classCount = in.readInt();
+      int definedMethodCount = in.readInt();
+      int definedFieldCount = in.readInt();
+      int referencedMethodCount = in.readInt();
+      String[] methods = new String[in.readInt()];
+      for (int i = 0; i < methods.length; i++) {
+        methods[i] = in.readUTF();
+      }
+      int referenceCount = in.readInt();
+      Map<String, int[]> referrers = new HashMap<>(referenceCount);
+      for (int i = 0; i < referenceCount; i++) {
+        String reference = in.readUTF();
+        int[] ids = new int[in.readInt()];
+        for (int j = 0; j < ids.length; j++) {
+          ids[j] = in.readInt();
+        }
+        referrers.put(reference, ids);
+      }
+      return new DexIndex(classCount, definedMethodCount, definedFieldCount, referencedMethodCount, referrers, methods);
+    }
+    catch (IOException e) {
+      LOG.warn("Unable to read dex index " + indexFile, e);
+      return null;
+    }
+  }
+
+  static void save(@NotNull DexIndex index, @NotNull Path indexFile) {
+    try {
+      Files.createDirectories(indexFile.getParent());
+      // Write to a temporary file first, so that a concurrent reader never sees a partial index.
+      Path tempFile = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+        out.writeInt(VERSION);
+        out.writeInt(index.classCount);
+        out.writeInt(index.definedMethodCount);
+        out.writeInt(index.definedFieldCount);
+        out.writeInt(index.referencedMethodCount);
+        out.writeInt(index.myMethods.length);
+        for (String method : index.myMethods) {
+          out.writeUTF(method);
+        }
+        out.writeInt(index.myReferrers.size());
+        for (Map.Entry<String, int[]> entry : index.myReferrers.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeInt(entry.getValue().length);
+          for (int id : entry.getValue()) {
+            out.writeInt(id);
+          }
+        }
+      }
+      Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e) {
+      LOG.warn("Unable to save dex index " + indexFile, e);
+    }
+  }
+
+  /**
+   * Marks the index file as recently used, the eviction going by modification time.
+   */
+  private static void touch(@NotNull Path indexFile) {
+    try {
+      Files.setLastModifiedTime(indexFile, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+    catch (IOException e) {
+      LOG.warn("Unable to update dex index " + indexFile, e);
+    }
+  }
+
+  /**
+   * Deletes all but the {@code maxIndices} most recently used index files in the cache directory.
+   */
+  static void evictLeastRecentlyUsed(@NotNull Path cacheDir, int maxIndices) {
+    List<Path> indexFiles = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir, "*" + INDEX_EXTENSION)) {
+      stream.forEach(indexFiles::add);
+    }
+    catch (IOException e) {
+      LOG.warn("Unable to list dex indices in " + cacheDir, e);
+      return;
+    }
+    if (indexFiles.size() <= maxIndices) {
+      return;
+    }
+
+    Map<Path, FileTime> lastUsed = new HashMap<>();
+    for (Path indexFile : indexFiles) {
+      try {
+        lastUsed.put(indexFile, Files.getLastModifiedTime(indexFile));
+      }
+      catch (IOException e) {
+        // Deleted concurrently.
+        lastUsed.put(indexFile, FileTime.fromMillis(0));
+      }
+    }
+    indexFiles.sort(Comparator.comparing(lastUsed::get, Comparator.reverseOrder()));
+    for (Path indexFile : indexFiles.subList(maxIndices, indexFiles.size())) {
+      try {
+        Files.deleteIfExists(indexFile);
+      }
+      catch (IOException e) {
+        LOG.warn("Unable to delete dex index " + indexFile, e);
+      }
+    }
+  }
+}
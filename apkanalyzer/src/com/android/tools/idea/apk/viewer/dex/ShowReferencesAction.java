@@ -46,6 +46,7 @@ import org.jf.dexlib2.iface.reference.TypeReference;
 import javax.swing.*;
 import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeWillExpandListener;
+import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.ExpandVetoException;
 import javax.swing.tree.TreePath;
@@ -81,6 +82,28 @@ public class ShowReferencesAction extends AnAction {
     assert node != null; // action should've been disabled in this case
     Project project = getEventProject(e);
 
+    // Methods and fields are only referenced by instructions, which the index covers, so their references don't need the dex files
+    // to be parsed. Classes are also referenced by signatures, superclasses and annotations.
+    Reference reference = node.getReference();
+    if (reference instanceof MethodReference || reference instanceof FieldReference) {
+      Futures.addCallback(myDexFileViewer.getDexIndex(), new FutureCallback<DexIndex>() {
+        @Override
+        public void onSuccess(@Nullable DexIndex result) {
+          assert result != null;
+          showIndexedReferenceTree(e, node, project, result);
+        }
+
+        @Override
+        public void onFailure(@NotNull Throwable t) {
+          showReferences(e, node, project);
+        }
+      }, EdtExecutorService.getInstance());
+      return;
+    }
+    showReferences(e, node, project);
+  }
+
+  private void showReferences(@NotNull AnActionEvent e, @NotNull DexElementNode node, @Nullable Project project) {
     ListenableFuture<DexReferences> references = myDexFileViewer.getDexReferences();
     assert references != null;
 
@@ -144,31 +167,100 @@ public class ShowReferencesAction extends AnAction {
           isSeed ? SimpleTextAttributes.STYLE_BOLD : SimpleTextAttributes.STYLE_PLAIN,
           null);
 
-        ProguardMap usedProguardMap = deobfuscate ? proguardMap : null;
-
-        if (ref instanceof TypeReference){
-          TypeReference typeRef = (TypeReference)ref;
-          append(PackageTreeCreator.decodeClassName(typeRef.getType(), usedProguardMap), attr);
-        } else if (ref instanceof MethodReference){
-          MethodReference methodRef = (MethodReference)ref;
-          append(PackageTreeCreator.decodeClassName(methodRef.getDefiningClass(), usedProguardMap), attr);
-          append(": ", attr);
-          append(PackageTreeCreator.decodeClassName(methodRef.getReturnType(), usedProguardMap), attr);
-          append(" ", attr);
-          append(PackageTreeCreator.decodeMethodName(methodRef, usedProguardMap), attr);
-          append(PackageTreeCreator.decodeMethodParams(methodRef, usedProguardMap), attr);
-        } else if (ref instanceof FieldReference){
-          FieldReference fieldRef = (FieldReference)ref;
-          append(PackageTreeCreator.decodeClassName(fieldRef.getDefiningClass(), usedProguardMap), attr);
-          append(": ", attr);
-          append(PackageTreeCreator.decodeClassName(fieldRef.getType(), usedProguardMap), attr);
-          append(" ", attr);
-          append(PackageTreeCreator.decodeFieldName(fieldRef, usedProguardMap), attr);
-        }
+        appendReference(this, ref, attr, deobfuscate ? proguardMap : null);
         setIcon(DexNodeIcons.forNode(node));
       }
     });
 
+    showPopup(e, project, tree, node);
+  }
+
+  /**
+   * Shows the methods referencing a method or field, as found in the index. Each method can be expanded to show the methods
+   * referencing it in turn.
+   */
+  private void showIndexedReferenceTree(@NotNull AnActionEvent e, @NotNull DexElementNode node, @Nullable Project project,
+                                        @NotNull DexIndex index) {
+    ProguardMappings proguardMappings = myDexFileViewer.getProguardMappings();
+    final ProguardMap proguardMap = proguardMappings != null ? proguardMappings.map : null;
+    final ProguardSeedsMap seedsMap = proguardMappings != null ? proguardMappings.seeds : null;
+    final boolean deobfuscate = myDexFileViewer.isDeobfuscateNames();
+
+    assert node.getReference() != null;
+    IndexedReferenceNode root = new IndexedReferenceNode(node.getReference(), index);
+    root.loadChildren(index);
+    Tree tree = new Tree(new DefaultTreeModel(root));
+    tree.setShowsRootHandles(true);
+    tree.addTreeWillExpandListener(new TreeWillExpandListener() {
+      @Override
+      public void treeWillExpand(TreeExpansionEvent event) {
+        Object component = event.getPath().getLastPathComponent();
+        if (component instanceof IndexedReferenceNode) {
+          ((IndexedReferenceNode)component).loadChildren(index);
+        }
+      }
+
+      @Override
+      public void treeWillCollapse(TreeExpansionEvent event) {
+      }
+    });
+
+    tree.setCellRenderer(new ColoredTreeCellRenderer() {
+      @Override
+      public void customizeCellRenderer(@NotNull JTree tree,
+                                        Object value,
+                                        boolean selected,
+                                        boolean expanded,
+                                        boolean leaf,
+                                        int row,
+                                        boolean hasFocus) {
+        Reference ref = ((IndexedReferenceNode)value).getReference();
+        boolean isSeed = ref instanceof MethodReference && seedsMap != null && isSeed((MethodReference)ref, seedsMap, proguardMap);
+        SimpleTextAttributes attr = new SimpleTextAttributes(
+          isSeed ? SimpleTextAttributes.STYLE_BOLD : SimpleTextAttributes.STYLE_PLAIN,
+          null);
+
+        appendReference(this, ref, attr, deobfuscate ? proguardMap : null);
+        setIcon(ref instanceof FieldReference ? AllIcons.Nodes.Field : AllIcons.Nodes.Method);
+      }
+    });
+
+    showPopup(e, project, tree, node);
+  }
+
+  private static boolean isSeed(@NotNull MethodReference method, @NotNull ProguardSeedsMap seedsMap, @Nullable ProguardMap map) {
+    String className = PackageTreeCreator.decodeClassName(method.getDefiningClass(), map);
+    String methodName = PackageTreeCreator.decodeMethodName(method, map);
+    String params = PackageTreeCreator.decodeMethodParams(method, map).replace(" ", "");
+    return seedsMap.hasMethod(className, methodName + params);
+  }
+
+  private static void appendReference(@NotNull ColoredTreeCellRenderer renderer,
+                                      @Nullable Reference ref,
+                                      @NotNull SimpleTextAttributes attr,
+                                      @Nullable ProguardMap usedProguardMap) {
+    if (ref instanceof TypeReference){
+      TypeReference typeRef = (TypeReference)ref;
+      renderer.append(PackageTreeCreator.decodeClassName(typeRef.getType(), usedProguardMap), attr);
+    } else if (ref instanceof MethodReference){
+      MethodReference methodRef = (MethodReference)ref;
+      renderer.append(PackageTreeCreator.decodeClassName(methodRef.getDefiningClass(), usedProguardMap), attr);
+      renderer.append(": ", attr);
+      renderer.append(PackageTreeCreator.decodeClassName(methodRef.getReturnType(), usedProguardMap), attr);
+      renderer.append(" ", attr);
+      renderer.append(PackageTreeCreator.decodeMethodName(methodRef, usedProguardMap), attr);
+      renderer.append(PackageTreeCreator.decodeMethodParams(methodRef, usedProguardMap), attr);
+    } else if (ref instanceof FieldReference){
+      FieldReference fieldRef = (FieldReference)ref;
+      renderer.append(PackageTreeCreator.decodeClassName(fieldRef.getDefiningClass(), usedProguardMap), attr);
+      renderer.append(": ", attr);
+      renderer.append(PackageTreeCreator.decodeClassName(fieldRef.getType(), usedProguardMap), attr);
+      renderer.append(" ", attr);
+      renderer.append(PackageTreeCreator.decodeFieldName(fieldRef, usedProguardMap), attr);
+    }
+  }
+
+  private void showPopup(@NotNull AnActionEvent e, @Nullable Project project, @NotNull Tree tree, @NotNull DexElementNode node) {
     JBScrollPane pane = new JBScrollPane(tree);
     pane.setPreferredSize(new Dimension(600, 400));
     JBPopup popup = JBPopupFactory.getInstance().createComponentPopupBuilder(pane, null)
@@ -176,13 +268,31 @@ public class ShowReferencesAction extends AnAction {
       .setDimensionServiceKey(project, ShowReferencesAction.class.getName(), false)
       .setResizable(true)
       .setMovable(true)
-      .setTitle("References to " + node.getName())
+      .setTitle(getTitle(node))
       .setFocusable(true)
       .setRequestFocus(true)
       .createPopup();
     popup.showInBestPositionFor(e.getDataContext());
   }
 
+  @NotNull
+  private String getTitle(@NotNull DexElementNode node) {
+    String title = "References to " + node.getName();
+    // Direct references to methods and fields only come from instructions, which is what the index counts.
+    Reference reference = node.getReference();
+    ListenableFuture<DexIndex> index = myDexFileViewer.getDexIndex();
+    if ((reference instanceof MethodReference || reference instanceof FieldReference) && index.isDone()) {
+      try {
+        int count = Futures.getUnchecked(index).getReferencingMethodCount(reference);
+        title += " (used by " + count + (count == 1 ? " method)" : " methods)");
+      }
+      catch (RuntimeException ignored) {
+        // The index failed to build, the title just won't have the count.
+      }
+    }
+    return title;
+  }
+
   @Nullable
   private DexElementNode getSelectedNode() {
     TreePath path = myTree.getSelectionPath();
@@ -190,6 +300,41 @@ public class ShowReferencesAction extends AnAction {
     return component instanceof DexElementNode ? (DexElementNode)component : null;
   }
 
+  /**
+   * A class, method or field in a reference tree built from a {@link DexIndex}, the children of which are the methods referencing it.
+   * Children are only loaded when the node is expanded, as references can be cyclic.
+   */
+  @VisibleForTesting
+  static class IndexedReferenceNode extends DefaultMutableTreeNode {
+    private final int myReferencingMethodCount;
+    private boolean myChildrenLoaded;
+
+    IndexedReferenceNode(@NotNull Reference reference, @NotNull DexIndex index) {
+      super(reference);
+      myReferencingMethodCount = index.getReferencingMethodCount(reference);
+    }
+
+    @NotNull
+    Reference getReference() {
+      return (Reference)getUserObject();
+    }
+
+    @Override
+    public boolean isLeaf() {
+      return myReferencingMethodCount == 0;
+    }
+
+    void loadChildren(@NotNull DexIndex index) {
+      if (myChildrenLoaded) {
+        return;
+      }
+      myChildrenLoaded = true;
+      for (MethodReference method : index.getReferencingMethods(getReference())) {
+        add(new IndexedReferenceNode(method, index));
+      }
+    }
+  }
+
   @VisibleForTesting
   static boolean canShowReferences(@Nullable DexElementNode node) {
     if (node == null || node.getReference() == null) {
@@ -19,8 +19,6 @@ import com.android.annotations.NonNull;
 import com.android.tools.adtui.common.ColumnTreeBuilder;
 import com.android.tools.apk.analyzer.ArchiveContext;
 import com.android.tools.apk.analyzer.Archives;
-import com.android.tools.apk.analyzer.internal.ApkDiffEntry;
-import com.android.tools.apk.analyzer.internal.ApkDiffParser;
 import com.android.tools.apk.analyzer.internal.ApkEntry;
 import com.android.tools.apk.analyzer.internal.ApkFileByFileDiffParser;
 import com.android.tools.idea.apk.viewer.ApkViewPanel.FutureCallBackAdapter;
@@ -28,10 +26,12 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.ColoredTreeCellRenderer;
 import com.intellij.ui.LoadingNode;
+import com.intellij.ui.SimpleTextAttributes;
 import com.intellij.ui.TreeSpeedSearch;
 import com.intellij.ui.treeStructure.Tree;
 import com.intellij.util.Function;
@@ -50,6 +50,7 @@ import java.awt.event.ItemListener;
 import static com.android.tools.idea.apk.viewer.ApkViewPanel.getHumanizedSize;
 
 public class ApkDiffPanel {
+  private static final Logger LOG = Logger.getInstance(ApkDiffPanel.class);
 
   private static final ListeningExecutorService ourExecutorService = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
   private ListenableFuture<DefaultMutableTreeNode> myFbfTreeStructureFuture;
@@ -105,21 +106,53 @@ public class ApkDiffPanel {
   }
 
   private void constructDiffTree(){
-    // construct the main tree
-    ListenableFuture<DefaultMutableTreeNode> treeStructureFuture = ourExecutorService.submit(() -> {
-      try (ArchiveContext archiveContext1 = Archives.open(VfsUtilCore.virtualToIoFile(myOldApk).toPath());
-           ArchiveContext archiveContext2 = Archives.open(VfsUtilCore.virtualToIoFile(myNewApk).toPath())) {
-        return ApkDiffParser.createTreeNode(archiveContext1, archiveContext2);
-      }
-    });
-    FutureCallBackAdapter<DefaultMutableTreeNode> setRootNode = new FutureCallBackAdapter<DefaultMutableTreeNode>() {
+    // construct the main tree, publishing it as soon as the central directories are read and filling in details as they arrive
+    StreamingApkDiffer.Listener listener = new StreamingApkDiffer.Listener() {
+      private DefaultMutableTreeNode myRoot;
+
       @Override
-      public void onSuccess(DefaultMutableTreeNode result) {
-        setRootNode(result);
+      public void treeCreated(@NotNull DefaultMutableTreeNode root) {
+        myRoot = root;
+        setRootNode(root);
+        myTree.setPaintBusy(true);
         myCalculateFileByFileCheckBox.setEnabled(true);
       }
+
+      @Override
+      public void childrenAdded(@NotNull DefaultMutableTreeNode node) {
+        // The user may have switched to the file-by-file tree in the meantime.
+        if (myTreeModel.getRoot() == myRoot) {
+          myTreeModel.nodeStructureChanged(node);
+        }
+      }
+
+      @Override
+      public void finished() {
+        if (myTreeModel.getRoot() == myRoot) {
+          myTree.setPaintBusy(false);
+        }
+      }
     };
-    Futures.addCallback(treeStructureFuture, setRootNode, EdtExecutorService.getInstance());
+    ListenableFuture<Void> diff =
+      new StreamingApkDiffer(VfsUtilCore.virtualToIoFile(myOldApk).toPath(), VfsUtilCore.virtualToIoFile(myNewApk).toPath(),
+                             ourExecutorService, EdtExecutorService.getInstance(), listener).start();
+    Futures.addCallback(diff, new FutureCallBackAdapter<Void>() {
+      @Override
+      public void onFailure(@NotNull Throwable t) {
+        LOG.warn("Unable to compare " + myOldApk.getPath() + " with " + myNewApk.getPath(), t);
+        // The user may have switched to the file-by-file tree in the meantime.
+        if (myCalculateFileByFileCheckBox.isSelected()) {
+          return;
+        }
+        // Don't leave a loading or half built tree behind.
+        myTreeModel = new DefaultTreeModel(null);
+        myTree.setModel(myTreeModel);
+        myTree.setPaintBusy(false);
+        String message = t.getMessage() != null ? t.getMessage() : t.getClass().getSimpleName();
+        myTree.getEmptyText().setText("Error comparing APKs: " + message, SimpleTextAttributes.ERROR_ATTRIBUTES);
+        myCalculateFileByFileCheckBox.setEnabled(true);
+      }
+    }, EdtExecutorService.getInstance());
   }
 
   private void createUIComponents() {
@@ -153,12 +186,12 @@ public class ApkDiffPanel {
                    .setName("Old Size")
                    .setPreferredWidth(150)
                    .setHeaderAlignment(SwingConstants.TRAILING)
-                   .setRenderer(new SizeRenderer(ApkDiffEntry::getOldSize)))
+                   .setRenderer(new SizeRenderer(StreamingDiffEntry::getOldSize)))
       .addColumn(new ColumnTreeBuilder.ColumnBuilder()
                    .setName("New Size")
                    .setPreferredWidth(150)
                    .setHeaderAlignment(SwingConstants.TRAILING)
-                   .setRenderer(new SizeRenderer(ApkDiffEntry::getNewSize)))
+                   .setRenderer(new SizeRenderer(StreamingDiffEntry::getNewSize)))
       .addColumn(new ColumnTreeBuilder.ColumnBuilder()
                    .setName("Diff Size")
                    .setPreferredWidth(150)
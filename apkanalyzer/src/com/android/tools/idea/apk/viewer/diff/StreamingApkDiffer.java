@@ -0,0 +1,644 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.diff;
+
+import com.android.SdkConstants;
+import com.android.tools.apk.analyzer.dex.DexFiles;
+import com.android.tools.idea.apk.viewer.diff.StreamingDiffEntry.Status;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import javax.swing.tree.DefaultMutableTreeNode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jf.dexlib2.dexbacked.DexBackedClassDef;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.dexbacked.DexBackedMethod;
+import org.jf.dexlib2.iface.ExceptionHandler;
+import org.jf.dexlib2.iface.MethodImplementation;
+import org.jf.dexlib2.iface.TryBlock;
+import org.jf.dexlib2.iface.instruction.FiveRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.iface.instruction.OffsetInstruction;
+import org.jf.dexlib2.iface.instruction.OneRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.ReferenceInstruction;
+import org.jf.dexlib2.iface.instruction.RegisterRangeInstruction;
+import org.jf.dexlib2.iface.instruction.SwitchElement;
+import org.jf.dexlib2.iface.instruction.SwitchPayload;
+import org.jf.dexlib2.iface.instruction.ThreeRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.TwoRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.VerificationErrorInstruction;
+import org.jf.dexlib2.iface.instruction.WideLiteralInstruction;
+import org.jf.dexlib2.iface.instruction.formats.ArrayPayload;
+import org.jf.dexlib2.util.ReferenceUtil;
+
+/**
+ * Compares two archives without reading them fully before showing results.
+ * <p>
+ * The shape of the tree, and the sizes and statuses of all entries, come from the central directories of the two archives, so the tree
+ * is published as soon as both directories have been read: entries with matching CRC and size are unchanged, without reading them.
+ * Changed dex files are then compared down to the class and method level, and nested archives (e.g. jars in an APK) are compared entry by
+ * entry, in parallel on the worker executor. The children found for each of them are published to the {@link Listener} as they arrive.
+ * <p>
+ * Sizes of archive entries are their uncompressed sizes, like in the file tree of an APK. Sizes of dex classes and methods are the sizes
+ * of their code.
+ */
+public class StreamingApkDiffer {
+  private static final Logger LOG = Logger.getInstance(StreamingApkDiffer.class);
+
+  /**
+   * Receives the results of a diff. All methods are called on the callback executor passed to the differ, and the nodes
+   * passed to them are only ever modified on that executor.
+   */
+  public interface Listener {
+    /**
+     * Called once, with the tree built from the central directories. Changed dex files and nested archives don't have children yet.
+     */
+    void treeCreated(@NotNull DefaultMutableTreeNode root);
+
+    /**
+     * Called when the contents of the dex file or nested archive of the given node have been compared and added as its children.
+     */
+    void childrenAdded(@NotNull DefaultMutableTreeNode node);
+
+    /**
+     * Called once all entries have been compared.
+     */
+    void finished();
+  }
+
+  @NotNull private final Path myOldArchive;
+  @NotNull private final Path myNewArchive;
+  @NotNull private final ListeningExecutorService myWorkerExecutor;
+  @NotNull private final Executor myCallbackExecutor;
+  @NotNull private final Listener myListener;
+
+  public StreamingApkDiffer(@NotNull Path oldArchive,
+                            @NotNull Path newArchive,
+                            @NotNull ListeningExecutorService workerExecutor,
+                            @NotNull Executor callbackExecutor,
+                            @NotNull Listener listener) {
+    myOldArchive = oldArchive;
+    myNewArchive = newArchive;
+    myWorkerExecutor = workerExecutor;
+    myCallbackExecutor = callbackExecutor;
+    myListener = listener;
+  }
+
+  /**
+   * Starts the diff. The returned future completes once all entries have been compared and the listener has been notified.
+   */
+  @NotNull
+  public ListenableFuture<Void> start() {
+    return Futures.transformAsync(myWorkerExecutor.submit(this::readCentralDirectories), this::compareContents, myWorkerExecutor);
+  }
+
+  @NotNull
+  private ArchivePair readCentralDirectories() throws IOException {
+    ZipFile oldZip = new ZipFile(myOldArchive.toFile());
+    ZipFile newZip;
+    try {
+      newZip = new ZipFile(myNewArchive.toFile());
+    }
+    catch (IOException e) {
+      oldZip.close();
+      throw e;
+    }
+
+    ArchivePair archives = new ArchivePair(oldZip, newZip);
+    DefaultMutableTreeNode root = new DefaultMutableTreeNode(
+      new StreamingDiffEntry(myNewArchive.getFileName().toString(), Paths.get("/"), 0, 0, Status.UNCHANGED));
+    archives.nodesToCompare.putAll(addEntryNodes(root, "", getFileEntries(oldZip), getFileEntries(newZip)));
+    myCallbackExecutor.execute(() -> myListener.treeCreated(root));
+    return archives;
+  }
+
+  /**
+   * Adds to {@code root} the nodes of the file entries of both archives, whose paths are relative to {@code basePath}.
+   *
+   * @return the nodes whose contents need to be compared to get their children, with the path of their entry
+   */
+  @NotNull
+  private static Map<DefaultMutableTreeNode, String> addEntryNodes(@NotNull DefaultMutableTreeNode root,
+                                                                   @NotNull String basePath,
+                                                                   @NotNull Map<String, ZipEntry> oldEntries,
+                                                                   @NotNull Map<String, ZipEntry> newEntries) {
+    TreeSet<String> allPaths = new TreeSet<>(oldEntries.keySet());
+    allPaths.addAll(newEntries.keySet());
+
+    Map<DefaultMutableTreeNode, String> nodesToCompare = new HashMap<>();
+    Map<String, DefaultMutableTreeNode> directories = new HashMap<>();
+    directories.put("", root);
+    for (String path : allPaths) {
+      ZipEntry oldEntry = oldEntries.get(path);
+      ZipEntry newEntry = newEntries.get(path);
+      long oldSize = oldEntry == null ? 0 : Math.max(0, oldEntry.getSize());
+      long newSize = newEntry == null ? 0 : Math.max(0, newEntry.getSize());
+
+      Status status = getEntryStatus(oldEntry, newEntry);
+      int nameStart = path.lastIndexOf('/') + 1;
+      DefaultMutableTreeNode node = new DefaultMutableTreeNode(
+        new StreamingDiffEntry(path.substring(nameStart), Paths.get(basePath + "/" + path), oldSize, newSize, status));
+      getDirectoryNode(directories, basePath, path.substring(0, Math.max(0, nameStart - 1))).add(node);
+      addToSizes(node, oldSize, newSize);
+
+      if (isArchive(path) || (status == Status.CHANGED && isDex(path))) {
+        nodesToCompare.put(node, path);
+      }
+    }
+
+    updateDirectoryStatus(root);
+    return nodesToCompare;
+  }
+
+  @NotNull
+  private static Status getEntryStatus(@Nullable ZipEntry oldEntry, @Nullable ZipEntry newEntry) {
+    if (oldEntry == null) {
+      return Status.ADDED;
+    }
+    if (newEntry == null) {
+      return Status.REMOVED;
+    }
+    if (oldEntry.getCrc() == newEntry.getCrc() && oldEntry.getSize() == newEntry.getSize()) {
+      return Status.UNCHANGED;
+    }
+    return Status.CHANGED;
+  }
+
+  @NotNull
+  private ListenableFuture<Void> compareContents(@NotNull ArchivePair archives) {
+    List<ListenableFuture<?>> comparisons = new ArrayList<>(archives.nodesToCompare.size());
+    for (Map.Entry<DefaultMutableTreeNode, String> toCompare : archives.nodesToCompare.entrySet()) {
+      DefaultMutableTreeNode node = toCompare.getKey();
+      String path = toCompare.getValue();
+      comparisons.add(myWorkerExecutor.submit(() -> {
+        try {
+          List<DefaultMutableTreeNode> children = compareEntryContents(archives.oldZip, archives.newZip, "", path);
+          myCallbackExecutor.execute(() -> {
+            children.forEach(node::add);
+            myListener.childrenAdded(node);
+          });
+        }
+        catch (IOException | RuntimeException e) {
+          // The entry keeps the status given by the central directories, only its details are missing.
+          LOG.warn("Unable to compare the contents of " + path, e);
+        }
+      }));
+    }
+
+    return Futures.whenAllComplete(comparisons).call(() -> {
+      archives.close();
+      myCallbackExecutor.execute(myListener::finished);
+      return null;
+    }, myWorkerExecutor);
+  }
+
+  /**
+   * Compares the contents of the entry at {@code path} in both archives, and returns the nodes to add under its node: the entries of a
+   * nested archive, or the changed classes of a dex file.
+   */
+  @NotNull
+  private static List<DefaultMutableTreeNode> compareEntryContents(@Nullable ZipFile oldZip,
+                                                                   @Nullable ZipFile newZip,
+                                                                   @NotNull String basePath,
+                                                                   @NotNull String path) throws IOException {
+    byte[] oldBytes = readEntry(oldZip, path);
+    byte[] newBytes = readEntry(newZip, path);
+    if (isArchive(path)) {
+      return diffNestedArchive(oldBytes, newBytes, basePath + "/" + path);
+    }
+    // Only dex files changed in both archives are compared.
+    assert oldBytes != null && newBytes != null;
+    return diffDex(oldBytes, newBytes, basePath + "/" + path);
+  }
+
+  /**
+   * Compares two versions of a nested archive, either of which may be missing, and returns the nodes of its entries. The dex files and
+   * archives nested in it are compared right away, so its entries are published at once with all their children.
+   */
+  @NotNull
+  private static List<DefaultMutableTreeNode> diffNestedArchive(@Nullable byte[] oldBytes,
+                                                                @Nullable byte[] newBytes,
+                                                                @NotNull String archivePath) throws IOException {
+    try (ZipFile oldZip = openNestedArchive(oldBytes); ZipFile newZip = openNestedArchive(newBytes)) {
+      DefaultMutableTreeNode archiveRoot =
+        new DefaultMutableTreeNode(new StreamingDiffEntry("", Paths.get(archivePath), 0, 0, Status.UNCHANGED));
+      for (Map.Entry<DefaultMutableTreeNode, String> toCompare : addEntryNodes(archiveRoot, archivePath, getFileEntries(oldZip),
+                                                                               getFileEntries(newZip)).entrySet()) {
+        compareEntryContents(oldZip, newZip, archivePath, toCompare.getValue()).forEach(toCompare.getKey()::add);
+      }
+
+      List<DefaultMutableTreeNode> children = new ArrayList<>(archiveRoot.getChildCount());
+      for (int i = 0; i < archiveRoot.getChildCount(); i++) {
+        children.add((DefaultMutableTreeNode)archiveRoot.getChildAt(i));
+      }
+      return children;
+    }
+    catch (ZipException e) {
+      // An entry named like an archive that isn't one, show it as a plain file.
+      LOG.info("Not comparing the entries of " + archivePath + ": " + e.getMessage());
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * Opens the given contents of a nested archive from a temporary file, which is deleted once the archive is closed.
+   */
+  @Nullable
+  private static ZipFile openNestedArchive(@Nullable byte[] bytes) throws IOException {
+    if (bytes == null) {
+      return null;
+    }
+    File file = Files.createTempFile("apk-diff", SdkConstants.DOT_ZIP).toFile();
+    try {
+      Files.write(file.toPath(), bytes);
+      return new ZipFile(file, ZipFile.OPEN_READ | ZipFile.OPEN_DELETE);
+    }
+    catch (IOException e) {
+      FileUtil.delete(file);
+      throw e;
+    }
+  }
+
+  /**
+   * Compares two versions of a dex file at the class and method level, and returns a node per changed class, with a child per
+   * changed method. Added and removed classes don't get method children.
+   */
+  @NotNull
+  private static List<DefaultMutableTreeNode> diffDex(@NotNull byte[] oldBytes, @NotNull byte[] newBytes, @NotNull String dexPath) {
+    Map<String, Map<String, MethodInfo>> oldClasses = readClasses(DexFiles.getDexFile(oldBytes));
+    Map<String, Map<String, MethodInfo>> newClasses = readClasses(DexFiles.getDexFile(newBytes));
+    TreeSet<String> allClasses = new TreeSet<>(oldClasses.keySet());
+    allClasses.addAll(newClasses.keySet());
+
+    List<DefaultMutableTreeNode> result = new ArrayList<>();
+    for (String type : allClasses) {
+      Map<String, MethodInfo> oldMethods = oldClasses.get(type);
+      Map<String, MethodInfo> newMethods = newClasses.get(type);
+      String className = decodeType(type);
+      Path classPath = Paths.get(dexPath, className);
+
+      if (oldMethods == null || newMethods == null) {
+        long oldSize = oldMethods == null ? 0 : totalSize(oldMethods);
+        long newSize = newMethods == null ? 0 : totalSize(newMethods);
+        result.add(new DefaultMutableTreeNode(
+          new StreamingDiffEntry(className, classPath, oldSize, newSize, oldMethods == null ? Status.ADDED : Status.REMOVED)));
+        continue;
+      }
+
+      TreeSet<String> allMethods = new TreeSet<>(oldMethods.keySet());
+      allMethods.addAll(newMethods.keySet());
+      List<DefaultMutableTreeNode> methodNodes = new ArrayList<>();
+      for (String method : allMethods) {
+        MethodInfo oldMethod = oldMethods.get(method);
+        MethodInfo newMethod = newMethods.get(method);
+        if (oldMethod != null && newMethod != null && oldMethod.equals(newMethod)) {
+          continue;
+        }
+        Status status = oldMethod == null ? Status.ADDED : newMethod == null ? Status.REMOVED : Status.CHANGED;
+        methodNodes.add(new DefaultMutableTreeNode(new StreamingDiffEntry(
+          method, classPath, oldMethod == null ? 0 : oldMethod.size, newMethod == null ? 0 : newMethod.size, status)));
+      }
+      if (methodNodes.isEmpty()) {
+        continue;
+      }
+
+      DefaultMutableTreeNode classNode = new DefaultMutableTreeNode(
+        new StreamingDiffEntry(className, classPath, totalSize(oldMethods), totalSize(newMethods), Status.CHANGED));
+      methodNodes.sort(BY_SIZE_DIFFERENCE);
+      methodNodes.forEach(classNode::add);
+      result.add(classNode);
+    }
+
+    result.sort(BY_SIZE_DIFFERENCE);
+    return result;
+  }
+
+  private static final Comparator<DefaultMutableTreeNode> BY_SIZE_DIFFERENCE =
+    Comparator.comparingLong((DefaultMutableTreeNode node) -> Math.abs(getEntry(node).getSize())).reversed();
+
+  @NotNull
+  private static Map<String, Map<String, MethodInfo>> readClasses(@NotNull DexBackedDexFile dexFile) {
+    Map<String, Map<String, MethodInfo>> classes = new HashMap<>();
+    for (DexBackedClassDef classDef : dexFile.getClasses()) {
+      Map<String, MethodInfo> methods = new TreeMap<>();
+      for (DexBackedMethod method : classDef.getMethods()) {
+        StringBuilder signature = new StringBuilder(method.getName()).append('(');
+        List<String> parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.size(); i++) {
+          signature.append(i == 0 ? "" : ", ").append(decodeType(parameterTypes.get(i)));
+        }
+        signature.append("): ").append(decodeType(method.getReturnType()));
+        methods.put(signature.toString(), MethodInfo.of(method.getImplementation()));
+      }
+      classes.put(classDef.getType(), methods);
+    }
+    return classes;
+  }
+
+  private static long totalSize(@NotNull Map<String, MethodInfo> methods) {
+    long size = 0;
+    for (MethodInfo method : methods.values()) {
+      size += method.size;
+    }
+    return size;
+  }
+
+  /**
+   * Turns a type descriptor such as {@code [Ljava/lang/String;} into its source form, {@code java.lang.String[]}.
+   */
+  @NotNull
+  static String decodeType(@NotNull String descriptor) {
+    int dimensions = 0;
+    while (dimensions < descriptor.length() && descriptor.charAt(dimensions) == '[') {
+      dimensions++;
+    }
+    String elementType = descriptor.substring(dimensions);
+    String decoded;
+    switch (elementType) {
+      case "V": decoded = "void"; break;
+      case "Z": decoded = "boolean"; break;
+      case "B": decoded = "byte"; break;
+      case "S": decoded = "short"; break;
+      case "C": decoded = "char"; break;
+      case "I": decoded = "int"; break;
+      case "J": decoded = "long"; break;
+      case "F": decoded = "float"; break;
+      case "D": decoded = "double"; break;
+      default:
+        decoded = elementType.startsWith("L") && elementType.endsWith(";")
+                  ? elementType.substring(1, elementType.length() - 1).replace('/', '.')
+                  : elementType;
+    }
+    StringBuilder result = new StringBuilder(decoded);
+    for (int i = 0; i < dimensions; i++) {
+      result.append("[]");
+    }
+    return result.toString();
+  }
+
+  private static boolean isDex(@NotNull String path) {
+    return path.endsWith(SdkConstants.DOT_DEX);
+  }
+
+  private static boolean isArchive(@NotNull String path) {
+    return path.endsWith(SdkConstants.DOT_ANDROID_PACKAGE) ||
+           path.endsWith(SdkConstants.DOT_JAR) ||
+           path.endsWith(SdkConstants.DOT_ZIP) ||
+           path.endsWith(SdkConstants.DOT_AAR);
+  }
+
+  @Nullable
+  private static byte[] readEntry(@Nullable ZipFile zip, @NotNull String path) throws IOException {
+    ZipEntry entry = zip == null ? null : zip.getEntry(path);
+    if (entry == null) {
+      return null;
+    }
+    try (InputStream stream = zip.getInputStream(entry)) {
+      return ByteStreams.toByteArray(stream);
+    }
+  }
+
+  @NotNull
+  private static Map<String, ZipEntry> getFileEntries(@Nullable ZipFile zip) {
+    Map<String, ZipEntry> entries = new HashMap<>();
+    if (zip == null) {
+      return entries;
+    }
+    Enumeration<? extends ZipEntry> enumeration = zip.entries();
+    while (enumeration.hasMoreElements()) {
+      ZipEntry entry = enumeration.nextElement();
+      if (!entry.isDirectory()) {
+        entries.put(entry.getName(), entry);
+      }
+    }
+    return entries;
+  }
+
+  @NotNull
+  private static DefaultMutableTreeNode getDirectoryNode(@NotNull Map<String, DefaultMutableTreeNode> directories,
+                                                        @NotNull String basePath,
+                                                        @NotNull String path) {
+    DefaultMutableTreeNode node = directories.get(path);
+    if (node == null) {
+      int nameStart = path.lastIndexOf('/') + 1;
+      node = new DefaultMutableTreeNode(
+        new StreamingDiffEntry(path.substring(nameStart), Paths.get(basePath + "/" + path), 0, 0, Status.UNCHANGED));
+      getDirectoryNode(directories, basePath, path.substring(0, Math.max(0, nameStart - 1))).add(node);
+      directories.put(path, node);
+    }
+    return node;
+  }
+
+  private static void addToSizes(@NotNull DefaultMutableTreeNode node, long oldSize, long newSize) {
+    for (DefaultMutableTreeNode parent = (DefaultMutableTreeNode)node.getParent(); parent != null;
+         parent = (DefaultMutableTreeNode)parent.getParent()) {
+      StreamingDiffEntry entry = getEntry(parent);
+      entry.setSizes(entry.getOldSize() + oldSize, entry.getNewSize() + newSize);
+    }
+  }
+
+  private static void updateDirectoryStatus(@NotNull DefaultMutableTreeNode node) {
+    if (node.isLeaf()) {
+      return;
+    }
+    for (int i = 0; i < node.getChildCount(); i++) {
+      updateDirectoryStatus((DefaultMutableTreeNode)node.getChildAt(i));
+    }
+    getEntry(node).setStatus(computeDirectoryStatus(node));
+  }
+
+  /**
+   * A directory is changed as soon as any of its children is not unchanged.
+   */
+  @NotNull
+  private static Status computeDirectoryStatus(@NotNull DefaultMutableTreeNode node) {
+    Status result = Status.UNCHANGED;
+    for (int i = 0; i < node.getChildCount(); i++) {
+      if (getEntry((DefaultMutableTreeNode)node.getChildAt(i)).getStatus() != Status.UNCHANGED) {
+        result = Status.CHANGED;
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  private static StreamingDiffEntry getEntry(@NotNull DefaultMutableTreeNode node) {
+    return (StreamingDiffEntry)node.getUserObject();
+  }
+
+  private static class ArchivePair implements AutoCloseable {
+    @NotNull final ZipFile oldZip;
+    @NotNull final ZipFile newZip;
+    @NotNull final Map<DefaultMutableTreeNode, String> nodesToCompare = new HashMap<>();
+
+    ArchivePair(@NotNull ZipFile oldZip, @NotNull ZipFile newZip) {
+      this.oldZip = oldZip;
+      this.newZip = newZip;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        oldZip.close();
+      }
+      finally {
+        newZip.close();
+      }
+    }
+  }
+
+  /**
+   * Code size of a method, plus a fingerprint of its code to detect changes that don't affect the size.
+   */
+  private static class MethodInfo {
+    private static final HashCode NO_CODE = HashCode.fromLong(0);
+
+    final long size;
+    @NotNull final HashCode fingerprint;
+
+    private MethodInfo(long size, @NotNull HashCode fingerprint) {
+      this.size = size;
+      this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Fingerprints the instructions with all their operands, and the try blocks. References are hashed by their string form rather than
+     * by their index, as indices change whenever an unrelated string, type or member is added to the dex file.
+     */
+    @NotNull
+    static MethodInfo of(@Nullable MethodImplementation implementation) {
+      if (implementation == null) {
+        return new MethodInfo(0, NO_CODE);
+      }
+      long codeUnits = 0;
+      Hasher hasher = Hashing.murmur3_128().newHasher();
+      hasher.putInt(implementation.getRegisterCount());
+      for (Instruction instruction : implementation.getInstructions()) {
+        codeUnits += instruction.getCodeUnits();
+        hashInstruction(hasher, instruction);
+      }
+      for (TryBlock<? extends ExceptionHandler> tryBlock : implementation.getTryBlocks()) {
+        hasher.putInt(tryBlock.getStartCodeAddress()).putInt(tryBlock.getCodeUnitCount());
+        for (ExceptionHandler handler : tryBlock.getExceptionHandlers()) {
+          putString(hasher, handler.getExceptionType());
+          hasher.putInt(handler.getHandlerCodeAddress());
+        }
+      }
+      // Code units are 16 bits wide.
+      return new MethodInfo(codeUnits * 2, hasher.hash());
+    }
+
+    private static void hashInstruction(@NotNull Hasher hasher, @NotNull Instruction instruction) {
+      hasher.putInt(instruction.getOpcode().ordinal());
+      if (instruction instanceof OneRegisterInstruction) {
+        hasher.putInt(((OneRegisterInstruction)instruction).getRegisterA());
+      }
+      if (instruction instanceof TwoRegisterInstruction) {
+        hasher.putInt(((TwoRegisterInstruction)instruction).getRegisterB());
+      }
+      if (instruction instanceof ThreeRegisterInstruction) {
+        hasher.putInt(((ThreeRegisterInstruction)instruction).getRegisterC());
+      }
+      if (instruction instanceof FiveRegisterInstruction) {
+        FiveRegisterInstruction registers = (FiveRegisterInstruction)instruction;
+        hasher.putInt(registers.getRegisterCount())
+          .putInt(registers.getRegisterC())
+          .putInt(registers.getRegisterD())
+          .putInt(registers.getRegisterE())
+          .putInt(registers.getRegisterF())
+          .putInt(registers.getRegisterG());
+      }
+      if (instruction instanceof RegisterRangeInstruction) {
+        RegisterRangeInstruction registers = (RegisterRangeInstruction)instruction;
+        hasher.putInt(registers.getStartRegister()).putInt(registers.getRegisterCount());
+      }
+      if (instruction instanceof WideLiteralInstruction) {
+        hasher.putLong(((WideLiteralInstruction)instruction).getWideLiteral());
+      }
+      if (instruction instanceof OffsetInstruction) {
+        hasher.putInt(((OffsetInstruction)instruction).getCodeOffset());
+      }
+      if (instruction instanceof ReferenceInstruction) {
+        putString(hasher, ReferenceUtil.getReferenceString(((ReferenceInstruction)instruction).getReference()));
+      }
+      if (instruction instanceof VerificationErrorInstruction) {
+        hasher.putInt(((VerificationErrorInstruction)instruction).getVerificationError());
+      }
+      if (instruction instanceof SwitchPayload) {
+        for (SwitchElement element : ((SwitchPayload)instruction).getSwitchElements()) {
+          hasher.putInt(element.getKey()).putInt(element.getOffset());
+        }
+      }
+      if (instruction instanceof ArrayPayload) {
+        ArrayPayload payload = (ArrayPayload)instruction;
+        hasher.putInt(payload.getElementWidth());
+        for (Number element : payload.getArrayElements()) {
+          hasher.putLong(element.longValue());
+        }
+      }
+    }
+
+    private static void putString(@NotNull Hasher hasher, @Nullable String value) {
+      // The length keeps consecutive strings from being ambiguous.
+      if (value == null) {
+        hasher.putInt(-1);
+      }
+      else {
+        hasher.putInt(value.length()).putUnencodedChars(value);
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof MethodInfo)) {
+        return false;
+      }
+      MethodInfo other = (MethodInfo)o;
+      return size == other.size && fingerprint.equals(other.fingerprint);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Long.hashCode(size) + fingerprint.hashCode();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.diff;
+
+import com.android.tools.apk.analyzer.internal.ApkDiffEntry;
+import com.android.tools.apk.analyzer.internal.ApkEntry;
+import java.nio.file.Path;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A node of the tree built by {@link StreamingApkDiffer}, with the sizes of the entry in both archives and whether it was added, removed
+ * or changed. Entries are complete when the tree is published; only their children are added afterwards, on the thread the differ
+ * publishes its results on, which is the EDT for {@link ApkDiffPanel}.
+ */
+public class StreamingDiffEntry extends ApkEntry {
+  public enum Status {
+    UNCHANGED,
+    CHANGED,
+    ADDED,
+    REMOVED
+  }
+
+  @NotNull private final String myName;
+  @NotNull private final Path myPath;
+  private long myOldSize;
+  private long myNewSize;
+  @NotNull private Status myStatus;
+
+  public StreamingDiffEntry(@NotNull String name, @NotNull Path path, long oldSize, long newSize, @NotNull Status status) {
+    myName = name;
+    myPath = path;
+    myOldSize = oldSize;
+    myNewSize = newSize;
+    myStatus = status;
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return myName;
+  }
+
+  @NotNull
+  @Override
+  public Path getPath() {
+    return myPath;
+  }
+
+  /**
+   * Returns the size difference between the new and the old entry.
+   */
+  @Override
+  public long getSize() {
+    return myNewSize - myOldSize;
+  }
+
+  public long getOldSize() {
+    return myOldSize;
+  }
+
+  public long getNewSize() {
+    return myNewSize;
+  }
+
+  void setSizes(long oldSize, long newSize) {
+    myOldSize = oldSize;
+    myNewSize = newSize;
+  }
+
+  @NotNull
+  public Status getStatus() {
+    return myStatus;
+  }
+
+  void setStatus(@NotNull Status status) {
+    myStatus = status;
+  }
+
+  /**
+   * Returns the old size of the given entry, whether it comes from the streaming or from the file-by-file diff.
+   */
+  public static long getOldSize(@Nullable ApkEntry entry) {
+    return entry instanceof StreamingDiffEntry ? ((StreamingDiffEntry)entry).getOldSize() : ApkDiffEntry.getOldSize(entry);
+  }
+
+  /**
+   * Returns the new size of the given entry, whether it comes from the streaming or from the file-by-file diff.
+   */
+  public static long getNewSize(@Nullable ApkEntry entry) {
+    return entry instanceof StreamingDiffEntry ? ((StreamingDiffEntry)entry).getNewSize() : ApkDiffEntry.getNewSize(entry);
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.android.tools.idea.apk.viewer.diff.StreamingDiffEntry.Status;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.swing.tree.DefaultMutableTreeNode;
+import org.jetbrains.annotations.NotNull;
+import org.jf.dexlib2.AccessFlags;
+import org.jf.dexlib2.DexFileFactory;
+import org.jf.dexlib2.Opcode;
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.Method;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.immutable.ImmutableClassDef;
+import org.jf.dexlib2.immutable.ImmutableDexFile;
+import org.jf.dexlib2.immutable.ImmutableMethod;
+import org.jf.dexlib2.immutable.ImmutableMethodImplementation;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction10x;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction11n;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction11x;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StreamingApkDifferTest {
+  private static final long TIMEOUT_SECONDS = 120;
+
+  @Rule public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  private final ListeningExecutorService myWorkerExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+  private final ExecutorService myCallbackExecutor = Executors.newSingleThreadExecutor();
+
+  @After
+  public void tearDown() {
+    myWorkerExecutor.shutdownNow();
+    myCallbackExecutor.shutdownNow();
+  }
+
+  @Test
+  public void diffReportsEntriesFromCentralDirectory() throws Exception {
+    File oldApk = createArchive("old.apk", "AndroidManifest.xml", "manifest", "res/raw/same.txt", "same", "res/raw/removed.txt", "gone");
+    File newApk = createArchive("new.apk", "AndroidManifest.xml", "new manifest", "res/raw/same.txt", "same", "assets/added.txt", "new");
+
+    RecordingListener listener = new RecordingListener();
+    new StreamingApkDiffer(oldApk.toPath(), newApk.toPath(), myWorkerExecutor, myCallbackExecutor, listener).start()
+      .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    // Listener calls are queued on the callback executor, wait for them to run too.
+    myCallbackExecutor.submit(() -> {}).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    assertTrue(listener.myFinished);
+    assertEquals(Status.CHANGED, listener.myEntries.get("/AndroidManifest.xml").getStatus());
+    assertEquals(Status.UNCHANGED, listener.myEntries.get("/res/raw/same.txt").getStatus());
+    assertEquals(0, listener.myEntries.get("/res/raw/same.txt").getSize());
+    assertEquals(Status.REMOVED, listener.myEntries.get("/res/raw/removed.txt").getStatus());
+    assertEquals(0, listener.myEntries.get("/res/raw/removed.txt").getNewSize());
+    assertEquals(Status.ADDED, listener.myEntries.get("/assets/added.txt").getStatus());
+    assertEquals(0, listener.myEntries.get("/assets/added.txt").getOldSize());
+
+    // Directories aggregate the sizes and statuses of their children.
+    StreamingDiffEntry raw = listener.myEntries.get("/res/raw");
+    assertEquals(Status.CHANGED, raw.getStatus());
+    assertEquals(listener.myEntries.get("/res/raw/same.txt").getOldSize() + listener.myEntries.get("/res/raw/removed.txt").getOldSize(),
+                 raw.getOldSize());
+    assertEquals(Status.CHANGED, ((StreamingDiffEntry)listener.myRoot.getUserObject()).getStatus());
+  }
+
+  @Test
+  public void diffReportsChangedClassesAndMethodsOfDexFiles() throws Exception {
+    byte[] oldDex = createDex(
+      classDef("Lcom/example/Foo;",
+               method("Lcom/example/Foo;", "constant", "I", new ImmutableInstruction11n(Opcode.CONST_4, 0, 1),
+                      new ImmutableInstruction11x(Opcode.RETURN, 0)),
+               method("Lcom/example/Foo;", "same", "V", new ImmutableInstruction10x(Opcode.RETURN_VOID)),
+               method("Lcom/example/Foo;", "removed", "V", new ImmutableInstruction10x(Opcode.RETURN_VOID))));
+    byte[] newDex = createDex(
+      classDef("Lcom/example/Foo;",
+               // Only the literal changes, not the size of the code.
+               method("Lcom/example/Foo;", "constant", "I", new ImmutableInstruction11n(Opcode.CONST_4, 0, 2),
+                      new ImmutableInstruction11x(Opcode.RETURN, 0)),
+               method("Lcom/example/Foo;", "same", "V", new ImmutableInstruction10x(Opcode.RETURN_VOID)),
+               method("Lcom/example/Foo;", "added", "V", new ImmutableInstruction10x(Opcode.RETURN_VOID))),
+      classDef("Lcom/example/Bar;", method("Lcom/example/Bar;", "run", "V", new ImmutableInstruction10x(Opcode.RETURN_VOID))));
+    File oldApk = createArchive("old.apk", ImmutableMap.of("classes.dex", oldDex));
+    File newApk = createArchive("new.apk", ImmutableMap.of("classes.dex", newDex));
+
+    RecordingListener listener = new RecordingListener();
+    new StreamingApkDiffer(oldApk.toPath(), newApk.toPath(), myWorkerExecutor, myCallbackExecutor, listener).start()
+      .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    myCallbackExecutor.submit(() -> {}).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    DefaultMutableTreeNode dexNode = (DefaultMutableTreeNode)listener.myRoot.getChildAt(0);
+    assertEquals(Status.CHANGED, ((StreamingDiffEntry)dexNode.getUserObject()).getStatus());
+    assertEquals(ImmutableMap.of("com.example.Foo", Status.CHANGED, "com.example.Bar", Status.ADDED), getChildStatuses(dexNode));
+
+    DefaultMutableTreeNode fooNode = findChild(dexNode, "com.example.Foo");
+    assertEquals(ImmutableMap.of("constant(): int", Status.CHANGED, "removed(): void", Status.REMOVED, "added(): void", Status.ADDED),
+                 getChildStatuses(fooNode));
+    // Added classes don't get method children.
+    assertEquals(0, findChild(dexNode, "com.example.Bar").getChildCount());
+  }
+
+  @Test
+  public void entrySizesAreUncompressedSizes() throws Exception {
+    String oldText = String.join("", Collections.nCopies(1000, "a"));
+    String newText = String.join("", Collections.nCopies(3000, "a"));
+    File oldApk = createArchive("old.apk", "res/raw/text.txt", oldText);
+    File newApk = createArchive("new.apk", "res/raw/text.txt", newText);
+
+    RecordingListener listener = new RecordingListener();
+    new StreamingApkDiffer(oldApk.toPath(), newApk.toPath(), myWorkerExecutor, myCallbackExecutor, listener).start()
+      .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    myCallbackExecutor.submit(() -> {}).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    StreamingDiffEntry text = listener.myEntries.get("/res/raw/text.txt");
+    assertEquals(1000, text.getOldSize());
+    assertEquals(3000, text.getNewSize());
+    assertEquals(2000, text.getSize());
+    assertEquals(3000, ((StreamingDiffEntry)listener.myRoot.getUserObject()).getNewSize());
+  }
+
+  @Test
+  public void diffReportsEntriesOfNestedArchives() throws Exception {
+    byte[] oldJar = createArchiveBytes(ImmutableMap.of("com/example/Same.class", bytes("same"),
+                                                       "com/example/Changed.class", bytes("old")));
+    byte[] newJar = createArchiveBytes(ImmutableMap.of("com/example/Same.class", bytes("same"),
+                                                       "com/example/Changed.class", bytes("new"),
+                                                       "com/example/Added.class", bytes("added")));
+    File oldApk = createArchive("old.apk", ImmutableMap.of("libs/lib.jar", oldJar));
+    File newApk = createArchive("new.apk", ImmutableMap.of("libs/lib.jar", newJar));
+
+    RecordingListener listener = new RecordingListener();
+    new StreamingApkDiffer(oldApk.toPath(), newApk.toPath(), myWorkerExecutor, myCallbackExecutor, listener).start()
+      .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    myCallbackExecutor.submit(() -> {}).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    DefaultMutableTreeNode jarNode = findChild(findChild(listener.myRoot, "libs"), "lib.jar");
+    assertEquals(Status.CHANGED, ((StreamingDiffEntry)jarNode.getUserObject()).getStatus());
+    DefaultMutableTreeNode packageNode = findChild(findChild(jarNode, "com"), "example");
+    assertEquals(ImmutableMap.of("Same.class", Status.UNCHANGED, "Changed.class", Status.CHANGED, "Added.class", Status.ADDED),
+                 getChildStatuses(packageNode));
+    assertEquals("/libs/lib.jar/com/example/Added.class",
+                 ((StreamingDiffEntry)findChild(packageNode, "Added.class").getUserObject()).getPath().toString().replace('\\', '/'));
+  }
+
+  @Test
+  public void decodeType() {
+    assertEquals("int", StreamingApkDiffer.decodeType("I"));
+    assertEquals("java.lang.String", StreamingApkDiffer.decodeType("Ljava/lang/String;"));
+    assertEquals("com.example.Foo$Bar[][]", StreamingApkDiffer.decodeType("[[Lcom/example/Foo$Bar;"));
+  }
+
+  @NotNull
+  private File createArchive(@NotNull String name, @NotNull String... pathsAndContents) throws IOException {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    for (int i = 0; i < pathsAndContents.length; i += 2) {
+      entries.put(pathsAndContents[i], pathsAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+    }
+    return createArchive(name, entries);
+  }
+
+  @NotNull
+  private File createArchive(@NotNull String name, @NotNull Map<String, byte[]> entries) throws IOException {
+    File archive = myTemporaryFolder.newFile(name);
+    Files.write(archive.toPath(), createArchiveBytes(entries));
+    return archive;
+  }
+
+  @NotNull
+  private static byte[] createArchiveBytes(@NotNull Map<String, byte[]> entries) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        zip.putNextEntry(new ZipEntry(entry.getKey()));
+        zip.write(entry.getValue());
+        zip.closeEntry();
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  @NotNull
+  private static byte[] bytes(@NotNull String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @NotNull
+  private byte[] createDex(@NotNull ClassDef... classes) throws IOException {
+    File dex = myTemporaryFolder.newFile();
+    DexFileFactory.writeDexFile(dex.getPath(), new ImmutableDexFile(Opcodes.getDefault(), Arrays.asList(classes)));
+    return Files.readAllBytes(dex.toPath());
+  }
+
+  @NotNull
+  private static ClassDef classDef(@NotNull String type, @NotNull Method... methods) {
+    return new ImmutableClassDef(type, AccessFlags.PUBLIC.getValue(), "Ljava/lang/Object;", null, null, null, null, Arrays.asList(methods));
+  }
+
+  @NotNull
+  private static Method method(@NotNull String type, @NotNull String name, @NotNull String returnType, @NotNull Instruction... code) {
+    return new ImmutableMethod(type, name, null, returnType, AccessFlags.PUBLIC.getValue(), null,
+                               new ImmutableMethodImplementation(1, Arrays.asList(code), null, null));
+  }
+
+  @NotNull
+  private static Map<String, Status> getChildStatuses(@NotNull DefaultMutableTreeNode node) {
+    Map<String, Status> statuses = new HashMap<>();
+    for (int i = 0; i < node.getChildCount(); i++) {
+      StreamingDiffEntry entry = (StreamingDiffEntry)((DefaultMutableTreeNode)node.getChildAt(i)).getUserObject();
+      statuses.put(entry.getName(), entry.getStatus());
+    }
+    return statuses;
+  }
+
+  @NotNull
+  private static DefaultMutableTreeNode findChild(@NotNull DefaultMutableTreeNode node, @NotNull String name) {
+    for (int i = 0; i < node.getChildCount(); i++) {
+      DefaultMutableTreeNode child = (DefaultMutableTreeNode)node.getChildAt(i);
+      if (((StreamingDiffEntry)child.getUserObject()).getName().equals(name)) {
+        return child;
+      }
+    }
+    throw new AssertionError("No child named " + name);
+  }
+
+  private static class RecordingListener implements StreamingApkDiffer.Listener {
+    private final Map<String, StreamingDiffEntry> myEntries = new HashMap<>();
+    private DefaultMutableTreeNode myRoot;
+    private boolean myFinished;
+
+    @Override
+    public void treeCreated(@NotNull DefaultMutableTreeNode root) {
+      myRoot = root;
+      Enumeration<?> nodes = root.breadthFirstEnumeration();
+      while (nodes.hasMoreElements()) {
+        StreamingDiffEntry entry = (StreamingDiffEntry)((DefaultMutableTreeNode)nodes.nextElement()).getUserObject();
+        myEntries.put(entry.getPath().toString().replace('\\', '/'), entry);
+      }
+    }
+
+    @Override
+    public void childrenAdded(@NotNull DefaultMutableTreeNode node) {
+    }
+
+    @Override
+    public void finished() {
+      myFinished = true;
+    }
+  }
+}
@@ -35,12 +35,19 @@ class CriticalPathAnalyzer(override val warningsFilter: BuildAttributionWarnings
                            taskContainer: TaskContainer,
                            pluginContainer: PluginContainer)
   : BaseAnalyzer(taskContainer, pluginContainer), BuildEventsAnalyzer {
-  private val tasksSet = HashSet<TaskData>()
+  /**
+   * Tasks that finished successfully, by id. Ids are given in the order the tasks finish, and a task can only depend on tasks that finished
+   * before it, so the ids are a topological order of the dependency graph.
+   */
+  private val tasks = ArrayList<TaskData>()
+  private val taskIds = HashMap<TaskData, Int>()
 
   /**
-   * Contains for each task, a list of tasks that this task depends on.
+   * For each task id, the duration of the critical path ending with that task, and the id of the task before it on that path (-1 if
+   * there is none). They are computed as the tasks finish, so the dependencies of the tasks don't need to be kept.
    */
-  private val dependenciesMap = HashMap<TaskData, List<TaskData>>()
+  private var criticalPathDurations = LongArray(INITIAL_CAPACITY)
+  private var criticalPathPreviousTaskIds = IntArray(INITIAL_CAPACITY)
 
   val tasksDeterminingBuildDuration = ArrayList<TaskData>()
   val pluginsDeterminingBuildDuration = ArrayList<PluginBuildData>()
@@ -61,82 +68,59 @@ class CriticalPathAnalyzer(override val warningsFilter: BuildAttributionWarnings
 
     if (event is TaskFinishEvent && event.result is TaskSuccessResult) {
       val task = getTask(event)
-      val dependenciesList = ArrayList<TaskData>()
+      if (taskIds.containsKey(task)) return
 
+      var criticalPathDuration = -1L
+      var previousTaskId = -1
       event.descriptor.dependencies.forEach { dependency ->
         if (dependency is TaskOperationDescriptor) {
-          getTask(dependency.taskPath)?.let {
-            dependenciesList.add(it)
+          // Dependencies that didn't finish successfully are not part of the graph.
+          val dependencyId = getTask(dependency.taskPath)?.let { taskIds[it] } ?: return@forEach
+          if (criticalPathDuration < criticalPathDurations[dependencyId]) {
+            criticalPathDuration = criticalPathDurations[dependencyId]
+            previousTaskId = dependencyId
           }
         }
       }
-
-      tasksSet.add(task)
-      dependenciesMap[task] = dependenciesList
+      addTask(task, max(criticalPathDuration, 0L) + task.executionTime, previousTaskId)
     }
   }
 
-  /**
-   * returns the duration of the critical path that starts from task [startTask]
-   */
-  private fun calculateCriticalPathStartingFromTask(
-    startTask: TaskData,
-    criticalPathFromTaskMap: MutableMap<TaskData, Long>
-  ): Long {
-    // Avoid recomputing the subpath critical path if it's already calculated
-    criticalPathFromTaskMap[startTask]?.let { return it }
-
-    var criticalPathDuration = 0L
-    dependenciesMap[startTask]!!.forEach { dependency ->
-      criticalPathDuration = max(criticalPathDuration, calculateCriticalPathStartingFromTask(dependency, criticalPathFromTaskMap))
+  private fun addTask(task: TaskData, criticalPathDuration: Long, previousTaskId: Int) {
+    val id = tasks.size
+    if (id == criticalPathDurations.size) {
+      criticalPathDurations = criticalPathDurations.copyOf(id * 2)
+      criticalPathPreviousTaskIds = criticalPathPreviousTaskIds.copyOf(id * 2)
     }
-
-    // Add task execution time
-    criticalPathDuration += startTask.executionTime
-    // Memoize the calculated value in the map
-    criticalPathFromTaskMap[startTask] = criticalPathDuration
-
-    return criticalPathDuration
+    tasks.add(task)
+    taskIds[task] = id
+    criticalPathDurations[id] = criticalPathDuration
+    criticalPathPreviousTaskIds[id] = previousTaskId
   }
 
   /**
-   * We are using dynamic programming to calculate the critical path for the task graph that is a direct acyclic graph.
+   * Returns the longest path of the dependency graph, which is a direct acyclic graph, weighted by the tasks execution time.
    *
-   * The algorithm should run in linear time of the number of tasks and the number of dependencies in the graph. The memory used is in order
-   * of the number of tasks in the graph.
+   * The critical paths ending with each task were computed in topological order as the tasks finished, so this only needs to follow the
+   * longest one back from its last task, without recursion. The whole analysis runs in linear time of the number of tasks and the number of
+   * dependencies in the graph, and the memory used is in order of the number of tasks.
    */
   private fun calculateTasksCriticalPathBasedOnDependencies(): List<TaskData> {
-    val tasksCriticalPath = ArrayList<TaskData>()
-    val criticalPathFromTaskMap = HashMap<TaskData, Long>()
-
-    var startTask: TaskData? = null
+    var lastTaskId = -1
     var currentCriticalPathDuration = -1L
-
-    // Calculate the critical path starting from each task
-    tasksSet.forEach {
-      val criticalPathFromTask = calculateCriticalPathStartingFromTask(it, criticalPathFromTaskMap)
-      if (currentCriticalPathDuration < criticalPathFromTask) {
-        currentCriticalPathDuration = criticalPathFromTask
-        startTask = it
+    for (id in tasks.indices) {
+      if (currentCriticalPathDuration < criticalPathDurations[id]) {
+        currentCriticalPathDuration = criticalPathDurations[id]
+        lastTaskId = id
       }
     }
 
     // Construct critical path
-    while (startTask != null) {
-      tasksCriticalPath.add(startTask!!)
-
-      var nextTask: TaskData? = null
-      currentCriticalPathDuration = -1
-
-      dependenciesMap[startTask!!]!!.forEach { dependency ->
-        val criticalPathFromTask = criticalPathFromTaskMap[dependency]!!
-        if (currentCriticalPathDuration < criticalPathFromTask) {
-          currentCriticalPathDuration = criticalPathFromTask
-          nextTask = dependency
-        }
-      }
-
-      startTask = nextTask
+    val tasksCriticalPath = ArrayList<TaskData>()
+    var id = lastTaskId
+    while (id != -1) {
+      tasksCriticalPath.add(tasks[id])
+      id = criticalPathPreviousTaskIds[id]
     }
 
     tasksCriticalPath.reverse()
@@ -292,7 +276,7 @@ class CriticalPathAnalyzer(override val warningsFilter: BuildAttributionWarnings
   private fun calculateTasksDeterminingBuildDuration(tasksCriticalPath: List<TaskData>) {
     val tasksDeterminingBuildDurationList = ArrayList<TaskData>()
 
-    val taskListSortedByStartTime = tasksSet.sortedBy { it.executionStartTime }
+    val taskListSortedByStartTime = tasks.sortedBy { it.executionStartTime }
 
     // Since the critical path tasks are not intersecting, and we iterate through them in start time order, we are able to reuse the
     // iterator across all queries without having to iterate through the whole list each time
@@ -351,8 +335,7 @@ class CriticalPathAnalyzer(override val warningsFilter: BuildAttributionWarnings
 
   override fun onBuildStart() {
     super.onBuildStart()
-    tasksSet.clear()
-    dependenciesMap.clear()
+    clearTasks()
     tasksDeterminingBuildDuration.clear()
     pluginsDeterminingBuildDuration.clear()
     buildStartedTimestamp = Long.MAX_VALUE
@@ -362,12 +345,21 @@ class CriticalPathAnalyzer(override val warningsFilter: BuildAttributionWarnings
   override fun onBuildSuccess() {
     calculateTasksDeterminingBuildDuration(calculateTasksCriticalPathBasedOnDependencies())
     calculatePluginsDeterminingBuildDuration()
-    tasksSet.clear()
-    dependenciesMap.clear()
+    clearTasks()
   }
 
   override fun onBuildFailure() {
-    tasksSet.clear()
-    dependenciesMap.clear()
+    clearTasks()
+  }
+
+  private fun clearTasks() {
+    tasks.clear()
+    taskIds.clear()
+    criticalPathDurations = LongArray(INITIAL_CAPACITY)
+    criticalPathPreviousTaskIds = IntArray(INITIAL_CAPACITY)
+  }
+
+  companion object {
+    private const val INITIAL_CAPACITY = 1024
   }
 }
@@ -27,6 +27,7 @@ import com.android.tools.idea.testing.AndroidGradleProjectRule
 import com.android.tools.idea.testing.TestProjectPaths
 import com.google.common.truth.Truth.assertThat
 import com.intellij.openapi.components.ServiceManager
+import org.gradle.tooling.events.task.TaskFinishEvent
 import org.jetbrains.kotlin.utils.addToStdlib.sumByLong
 import org.junit.After
 import org.junit.Before
@@ -169,6 +170,36 @@ class CriticalPathAnalyzerTest {
     assertThat(analyzer.pluginsDeterminingBuildDuration[1].buildDuration).isEqualTo(25)
   }
 
+  @Test
+  fun testCriticalPathAnalyzerOnLongDependencyChain() {
+    val pluginContainer = PluginContainer()
+    val analyzer = CriticalPathAnalyzer(BuildAttributionWarningsFilter(), TaskContainer(), pluginContainer)
+    val plugin = createBinaryPluginIdentifierStub("plugin")
+
+    analyzer.onBuildStart()
+
+    // Given a chain of tasks long enough to overflow the stack of a recursive traversal, and a task running in parallel with it
+    val chainLength = 20_000
+    var previousTask: TaskFinishEvent? = null
+    val chain = List(chainLength) { i ->
+      createTaskFinishEventStub(":app:task$i", plugin, listOfNotNull(previousTask), i * 10L, i * 10L + 10).also { previousTask = it }
+    }
+    val parallelTask = createTaskFinishEventStub(":lib:parallel", plugin, emptyList(), 0, 20)
+
+    analyzer.receiveEvent(chain[0])
+    analyzer.receiveEvent(parallelTask)
+    chain.drop(1).forEach { analyzer.receiveEvent(it) }
+
+    // When the build is finished successfully and the analyzer is run
+    analyzer.onBuildSuccess()
+
+    // Then the whole chain is the critical path
+    assertThat(analyzer.tasksDeterminingBuildDuration).hasSize(chainLength)
+    assertThat(analyzer.tasksDeterminingBuildDuration.first()).isEqualTo(TaskData.createTaskData(chain.first(), pluginContainer))
+    assertThat(analyzer.tasksDeterminingBuildDuration.last()).isEqualTo(TaskData.createTaskData(chain.last(), pluginContainer))
+    assertThat(analyzer.tasksDeterminingBuildDuration.sumByLong { it.executionTime }).isEqualTo(chainLength * 10L)
+  }
+
   @Test
   fun testCriticalPathAnalyzerOnNoOpBuild() {
     myProjectRule.load(TestProjectPaths.SIMPLE_APPLICATION)
@@ -40,6 +40,7 @@ import com.android.tools.idea.compose.preview.actions.requestBuildForSurface
 import com.android.tools.idea.compose.preview.navigation.PreviewNavigationHandler
 import com.android.tools.idea.compose.preview.scene.ComposeSceneComponentProvider
 import com.android.tools.idea.compose.preview.util.ComposeAdapterLightVirtualFile
+import com.android.tools.idea.compose.preview.util.PreviewConfiguration
 import com.android.tools.idea.compose.preview.util.PreviewElement
 import com.android.tools.idea.compose.preview.util.PreviewElementTemplateInstanceProvider
 import com.android.tools.idea.compose.preview.util.PreviewElementInstance
@@ -60,6 +61,7 @@ import com.android.tools.idea.flags.StudioFlags
 import com.android.tools.idea.flags.StudioFlags.COMPOSE_PREVIEW_AUTO_BUILD
 import com.android.tools.idea.gradle.project.build.GradleBuildState
 import com.android.tools.idea.gradle.project.build.PostProjectBuildTasksExecutor
+import com.android.tools.idea.res.ResourceRepositoryManager
 import com.android.tools.idea.run.util.StopWatch
 import com.android.tools.idea.uibuilder.editor.multirepresentation.PreviewRepresentation
 import com.android.tools.idea.uibuilder.graphics.NlConstants.DEFAULT_SCREEN_OFFSET_X
@@ -71,6 +73,7 @@ import com.android.tools.idea.uibuilder.surface.NlInteractionHandler
 import com.android.tools.idea.uibuilder.surface.SceneMode
 import com.android.tools.idea.uibuilder.surface.layout.GridSurfaceLayoutManager
 import com.android.tools.idea.util.runWhenSmartAndSyncedOnEdt
+import com.google.common.hash.HashCode
 import com.intellij.application.subscribe
 import com.intellij.openapi.actionSystem.CommonDataKeys
 import com.intellij.openapi.actionSystem.DataContext
@@ -92,20 +95,27 @@ import com.intellij.ui.EditorNotifications
 import com.intellij.ui.JBColor
 import com.intellij.util.ui.UIUtil
 import kotlinx.coroutines.Job
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.future.await
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
 import org.jetbrains.android.facet.AndroidFacet
+import org.jetbrains.android.uipreview.ModuleClassLoader
+import org.jetbrains.android.uipreview.ModuleClassLoaderManager
 import java.awt.BorderLayout
 import java.awt.Color
 import java.time.Duration
+import java.util.Collections
 import java.util.EnumMap
-import java.util.concurrent.CompletableFuture
+import java.util.WeakHashMap
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.function.Consumer
 import javax.swing.JComponent
 import javax.swing.JPanel
 import javax.swing.OverlayLayout
+import kotlin.math.max
 import kotlin.properties.Delegates
 
 /**
@@ -155,24 +165,36 @@ private fun configureLayoutlibSceneManager(sceneManager: LayoutlibSceneManager,
   }
 
 /**
- * Sets up the given [existingModel] with the right values to be used in the preview.
+ * Sets up the given [existingModel] with the right values to be used in the preview. The [LayoutlibSceneManager] of the model is
+ * configured right before rendering it.
  */
 private fun configureExistingModel(existingModel: NlModel,
                                    displayName: String,
                                    newDataContext: ModelDataContext,
-                                   showDecorations: Boolean,
-                                   isInteractive: Boolean,
-                                   fileContents: String,
-                                   surface: NlDesignSurface): NlModel {
+                                   fileContents: String): NlModel {
   existingModel.updateFileContentBlocking(fileContents)
   // Reconfigure the model by setting the new display name and applying the configuration values
   existingModel.modelDisplayName = displayName
   existingModel.dataContext = newDataContext
-  configureLayoutlibSceneManager(surface.getSceneManager(existingModel) as LayoutlibSceneManager, showDecorations, isInteractive)
 
   return existingModel
 }
 
+/**
+ * Inputs of a successful render of a preview. While none of them change, the image from that render can be reused.
+ *
+ * @param xml the XML used to render the preview
+ * @param resourcesModificationCount the modification count of the app resources
+ * @param classFileHashes the hash of the .class file of each project class the preview might depend on, by fully qualified class name.
+ *  These are all the project classes loaded by the [ModuleClassLoader] used by the render, since the class loader is shared by the
+ *  previews of the module and the classes loaded by each of them are not known.
+ */
+private data class PreviewRenderKey(val xml: String,
+                                    val configuration: PreviewConfiguration,
+                                    val showDecorations: Boolean,
+                                    val resourcesModificationCount: Long,
+                                    val classFileHashes: Map<String, HashCode>)
+
 /**
  * A [PreviewRepresentation] that provides a compose elements preview representation of the given [psiFile].
  *
@@ -217,6 +239,16 @@ class ComposePreviewRepresentation(psiFile: PsiFile,
    */
   private val uniqueRefreshLauncher = UniqueTaskCoroutineLauncher(this, "Compose Preview refresh")
 
+  /**
+   * Limits the number of previews rendered at the same time, see [StudioFlags.COMPOSE_PREVIEW_MAX_PARALLEL_RENDERS].
+   */
+  private val renderSemaphore = Semaphore(max(1, StudioFlags.COMPOSE_PREVIEW_MAX_PARALLEL_RENDERS.get()))
+
+  /**
+   * The [PreviewRenderKey] of the last successful render of each [NlModel].
+   */
+  private val lastRenderKeys: MutableMap<NlModel, PreviewRenderKey> = Collections.synchronizedMap(WeakHashMap())
+
   override var groupFilter: PreviewGroup by Delegates.observable(ALL_PREVIEW_GROUP) { _, oldValue, newValue ->
     if (oldValue != newValue) {
       LOG.debug("New group preview element selection: $newValue")
@@ -512,6 +544,74 @@ class ComposePreviewRepresentation(psiFile: PsiFile,
     updateNotifications()
   }
 
+  /**
+   * Returns the XML used to render this [PreviewElement].
+   */
+  private fun PreviewElement.toPreviewXmlString(): String = toPreviewXml()
+    // Whether to paint the debug boundaries or not
+    .toolsAttribute("paintBounds", showDebugBoundaries.toString())
+    .buildString()
+
+  /**
+   * Returns the [PreviewRenderKey] for rendering [model] from [xml], or null if the image of the render can't be reused.
+   *
+   * @param classNames the classes to include in [PreviewRenderKey.classFileHashes], or null to include all the project classes loaded by
+   *  the shared [ModuleClassLoader] of the module.
+   */
+  private fun renderKey(model: NlModel, previewElement: PreviewElement, xml: String, classNames: Set<String>?): PreviewRenderKey? {
+    // Interactive previews change with every frame
+    if (isInteractive.get()) return null
+    val classLoaderManager = ModuleClassLoaderManager.get()
+    val classFileHashes = if (classNames == null) {
+      classLoaderManager.getSharedClassFileHashes(model.module) ?: return null
+    }
+    else {
+      classNames.associateWith { classLoaderManager.getClassFileHash(model.module, it) ?: return null }
+    }
+    return PreviewRenderKey(xml,
+                            previewElement.configuration,
+                            previewElement.displaySettings.showDecoration,
+                            ResourceRepositoryManager.getAppResources(model.facet).modificationCount,
+                            classFileHashes)
+  }
+
+  /**
+   * Renders [sceneManager] unless its last successful render had the same [PreviewRenderKey], in which case its image is reused.
+   */
+  private suspend fun renderIfNeeded(sceneManager: LayoutlibSceneManager, previewElement: PreviewElement, xml: String) {
+    val model = sceneManager.model
+    val lastRenderKey = lastRenderKeys.remove(model)
+    if (lastRenderKey != null &&
+        !sceneManager.renderResult.isComposeErrorResult() &&
+        lastRenderKey == renderKey(model, previewElement, xml, lastRenderKey.classFileHashes.keys)) {
+      LOG.debug("Reusing the last render of ${model.modelDisplayName}")
+      lastRenderKeys[model] = lastRenderKey
+      return
+    }
+
+    renderSemaphore.withPermit {
+      configureLayoutlibSceneManager(sceneManager,
+                                     showDecorations = previewElement.displaySettings.showDecoration,
+                                     isInteractive = isInteractive.get())
+        .requestComposeRender()
+        .await()
+    }
+
+    // The classes loaded by the render are only known once it's done.
+    if (!sceneManager.renderResult.isComposeErrorResult()) {
+      renderKey(model, previewElement, xml, null)?.let { lastRenderKeys[model] = it }
+    }
+  }
+
+  /**
+   * Renders all the [previews] concurrently, see [renderIfNeeded].
+   */
+  private suspend fun renderAllIfNeeded(previews: List<Triple<LayoutlibSceneManager, PreviewElement, String>>) = coroutineScope {
+    previews.forEach { (sceneManager, previewElement, xml) ->
+      launch { renderIfNeeded(sceneManager, previewElement, xml) }
+    }
+  }
+
   /**
    * Refresh the preview surfaces. This will retrieve all the Preview annotations and render those elements.
    * The call will block until all the given [PreviewElement]s have completed rendering.
@@ -539,13 +639,7 @@ class ComposePreviewRepresentation(psiFile: PsiFile,
     // Now we generate all the models (or reuse) for the PreviewElements.
     val models = instantiatedElementProvider
       .previewElements
-      .map {
-        val xmlOutput = it.toPreviewXml()
-          // Whether to paint the debug boundaries or not
-          .toolsAttribute("paintBounds", showDebugBoundaries.toString())
-          .buildString()
-        Pair(it, xmlOutput)
-      }
+      .map { Pair(it, it.toPreviewXmlString()) }
       .map {
         val (previewElement, fileContents) = it
 
@@ -567,10 +661,7 @@ class ComposePreviewRepresentation(psiFile: PsiFile,
           configureExistingModel(reusedModel,
                                  previewElement.displaySettings.name,
                                  ModelDataContext(this, previewElement),
-                                 previewElement.displaySettings.showDecoration,
-                                 isInteractive.get(),
-                                 fileContents,
-                                 surface)
+                                 fileContents)
         }
         else {
           val now = System.currentTimeMillis()
@@ -594,7 +685,7 @@ class ComposePreviewRepresentation(psiFile: PsiFile,
 
         previewElement.configuration.applyTo(model.configuration)
 
-        model to previewElement
+        Triple(model, previewElement, fileContents)
       }
       .toList()
 
@@ -604,20 +695,14 @@ class ComposePreviewRepresentation(psiFile: PsiFile,
     existingModels.forEach { surface.removeModel(it) }
     val newSceneManagers = models
       .map {
-        val (model, previewElement) = it
-        // We call addModel even though the model might not be new. If we try to add an existing model,
-        // this will trigger a new render which is exactly what we want.
-        configureLayoutlibSceneManager(surface.addModelWithoutRender(model) as LayoutlibSceneManager,
-                                       showDecorations = previewElement.displaySettings.showDecoration,
-                                       isInteractive = isInteractive.get())
+        val (model, previewElement, fileContents) = it
+        // We call addModel even though the model might not be new. The scene managers are configured by renderIfNeeded.
+        Triple(surface.addModelWithoutRender(model) as LayoutlibSceneManager, previewElement, fileContents)
       }
 
     surface.repaint()
     if (newSceneManagers.isNotEmpty()) {
-      CompletableFuture.allOf(*newSceneManagers
-        .map { it.requestComposeRender() }
-        .toTypedArray())
-        .await()
+      renderAllIfNeeded(newSceneManagers)
       hasRenderedAtLeastOnce.set(true)
     }
     else {
@@ -688,22 +773,15 @@ class ComposePreviewRepresentation(psiFile: PsiFile,
         // In this case, there are no new previews. We need to make sure that the surface is still correctly
         // configured and that we are showing the right size for components. For example, if the user switches on/off
         // decorations, that will not generate/remove new PreviewElements but will change the surface settings.
+        // Previews whose XML, configuration and compiled classes didn't change keep their last image.
         uniqueRefreshLauncher.launch {
-          surface.models
+          val previews = surface.models
             .mapNotNull {
               val sceneManager = surface.getSceneManager(it) as? LayoutlibSceneManager ?: return@mapNotNull null
               val previewElement = it.dataContext.getData(COMPOSE_PREVIEW_ELEMENT) ?: return@mapNotNull null
-              previewElement to sceneManager
-            }
-            .forEach {
-              val (previewElement, sceneManager) = it
-              // When showing decorations, show the full device size
-              configureLayoutlibSceneManager(sceneManager,
-                                             showDecorations = previewElement.displaySettings.showDecoration,
-                                             isInteractive = isInteractive.get())
-                .requestComposeRender()
-                .await()
+              Triple(sceneManager, previewElement, previewElement.toPreviewXmlString())
             }
+          renderAllIfNeeded(previews)
         }.join()
       }
       else {
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.dagger
+
+import com.intellij.ide.highlighter.JavaFileType
+import com.intellij.openapi.project.Project
+import com.intellij.psi.JavaRecursiveElementWalkingVisitor
+import com.intellij.psi.PsiAnnotation
+import com.intellij.psi.PsiArrayType
+import com.intellij.psi.PsiClassType
+import com.intellij.psi.PsiField
+import com.intellij.psi.PsiJavaFile
+import com.intellij.psi.PsiManager
+import com.intellij.psi.PsiMethod
+import com.intellij.psi.PsiModifierList
+import com.intellij.psi.PsiParameter
+import com.intellij.psi.PsiPrimitiveType
+import com.intellij.psi.PsiType
+import com.intellij.psi.PsiTypeElement
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.psi.search.ProjectScope
+import com.intellij.util.indexing.DataIndexer
+import com.intellij.util.indexing.DefaultFileTypeSpecificInputFilter
+import com.intellij.util.indexing.FileBasedIndex
+import com.intellij.util.indexing.FileContent
+import com.intellij.util.indexing.ID
+import com.intellij.util.indexing.ScalarIndexExtension
+import com.intellij.util.io.EnumeratorStringDescriptor
+import com.intellij.util.io.KeyDescriptor
+import org.jetbrains.kotlin.idea.KotlinFileType
+import org.jetbrains.kotlin.psi.KtAnnotated
+import org.jetbrains.kotlin.psi.KtConstructor
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi.KtNamedFunction
+import org.jetbrains.kotlin.psi.KtNullableType
+import org.jetbrains.kotlin.psi.KtParameter
+import org.jetbrains.kotlin.psi.KtPrimaryConstructor
+import org.jetbrains.kotlin.psi.KtProperty
+import org.jetbrains.kotlin.psi.KtSecondaryConstructor
+import org.jetbrains.kotlin.psi.KtTreeVisitorVoid
+import org.jetbrains.kotlin.psi.KtTypeAlias
+import org.jetbrains.kotlin.psi.KtTypeReference
+import org.jetbrains.kotlin.psi.KtUserType
+import java.util.ArrayDeque
+
+/**
+ * Index of the Java and Kotlin files declaring Dagger bindings, by binding kind and simple name of the bound type.
+ *
+ * The keys are "<kind>:<simple type name>" where kind is [PROVIDER_KIND] for @Provides/@Binds methods and @BindsInstance methods and
+ * parameters, and [CONSUMER_KIND] for @Inject fields and parameters of @Inject/@Provides/@Binds methods and constructors.
+ * Declarations whose type isn't written in the source (e.g. Kotlin functions with an expression body) are indexed with [ANY_TYPE].
+ * Kotlin typealiases are indexed as [ALIAS_KIND] with the simple name of the type they expand to, so that the bindings declared with an
+ * alias of a type can be found as well. Kotlin annotations and types written with an `import ... as` alias are indexed by the simple name
+ * they import.
+ *
+ * Nothing is resolved while indexing, so the index only narrows down the files to search: qualifiers, boxing and the actual types are
+ * still checked on the PSI of these files, see [getSearchScope].
+ */
+class DaggerBindingIndex : ScalarIndexExtension<String>() {
+  companion object {
+    @JvmField
+    val NAME: ID<String, Void> = ID.create("DaggerBindingIndex")
+
+    const val PROVIDER_KIND = "p"
+    const val CONSUMER_KIND = "c"
+    const val ALIAS_KIND = "a"
+    const val ANY_TYPE = "*"
+
+    private val PROVIDER_ANNOTATIONS = setOf(DAGGER_PROVIDES_ANNOTATION, DAGGER_BINDS_ANNOTATION).map { it.substringAfterLast('.') }
+    private val BINDS_INSTANCE_ANNOTATION = DAGGER_BINDS_INSTANCE_ANNOTATION.substringAfterLast('.')
+    private val INJECT = INJECT_ANNOTATION.substringAfterLast('.')
+    private val INDEXED_WORDS = PROVIDER_ANNOTATIONS + BINDS_INSTANCE_ANNOTATION + INJECT + "typealias"
+
+    /** Kotlin names of Java primitive types */
+    private val PRIMITIVE_KOTLIN_NAMES = mapOf(
+      "boolean" to "Boolean",
+      "byte" to "Byte",
+      "char" to "Char",
+      "short" to "Short",
+      "int" to "Int",
+      "long" to "Long",
+      "float" to "Float",
+      "double" to "Double"
+    )
+
+    /** Kotlin names of Java collection types, which Kotlin sources may use instead of the Java ones */
+    private val COLLECTION_KOTLIN_NAMES = mapOf(
+      "Object" to "Any",
+      "Collection" to "MutableCollection",
+      "Iterable" to "MutableIterable",
+      "Iterator" to "MutableIterator",
+      "List" to "MutableList",
+      "ListIterator" to "MutableListIterator",
+      "Set" to "MutableSet",
+      "Map" to "MutableMap",
+      "Entry" to "MutableEntry"
+    )
+
+    /**
+     * Returns the part of [scope] where bindings of [kind] for [type] can be declared: the source files of the index that may declare one,
+     * and the libraries, which are not indexed.
+     */
+    fun getSearchScope(kind: String, type: PsiType, scope: GlobalSearchScope): GlobalSearchScope {
+      val project = scope.project ?: return scope
+      val names = getIndexNames(type).toMutableSet()
+      addTypeAliasNames(project, names)
+      val files = names.flatMapTo(mutableSetOf()) { name ->
+        FileBasedIndex.getInstance().getContainingFiles(NAME, "$kind:$name", scope)
+      }
+      return GlobalSearchScope.filesScope(project, files).uniteWith(scope.intersectWith(ProjectScope.getLibrariesScope(project)))
+    }
+
+    /**
+     * Adds to [names] the names of the Kotlin typealiases of the types named so, including the aliases of these aliases.
+     */
+    private fun addTypeAliasNames(project: Project, names: MutableSet<String>) {
+      val psiManager = PsiManager.getInstance(project)
+      val namesToResolve = ArrayDeque(names - ANY_TYPE)
+      while (namesToResolve.isNotEmpty()) {
+        val name = namesToResolve.removeFirst()
+        for (file in FileBasedIndex.getInstance().getContainingFiles(NAME, "$ALIAS_KIND:$name", GlobalSearchScope.allScope(project))) {
+          val ktFile = psiManager.findFile(file) as? KtFile ?: continue
+          val aliases = ktFile.importAliases()
+          ktFile.declarations.asSequence()
+            .filterIsInstance<KtTypeAlias>()
+            .filter { it.getTypeReference().indexName(aliases) == name }
+            .mapNotNull { it.name }
+            .filter { names.add(it) }
+            .forEach { namesToResolve.add(it) }
+        }
+      }
+    }
+
+    /**
+     * Returns the simple names [type] can be written with in a Java or Kotlin source, ignoring boxing.
+     */
+    private fun getIndexNames(type: PsiType): Set<String> {
+      val names = mutableSetOf(ANY_TYPE)
+      when (type) {
+        is PsiArrayType -> {
+          names.addAll(getIndexNames(type.deepComponentType))
+          names.add("Array")
+          (type.componentType as? PsiPrimitiveType)?.let { names.add(PRIMITIVE_KOTLIN_NAMES[it.name] + "Array") }
+        }
+        is PsiPrimitiveType -> {
+          names.add(type.name)
+          type.boxedTypeName?.let { names.add(it.substringAfterLast('.')) }
+          PRIMITIVE_KOTLIN_NAMES[type.name]?.let { names.add(it) }
+        }
+        is PsiClassType -> {
+          val name = type.className ?: return names
+          names.add(name)
+          COLLECTION_KOTLIN_NAMES[name]?.let { names.add(it) }
+          PsiPrimitiveType.getUnboxedType(type)?.let { names.addAll(getIndexNames(it)) }
+        }
+      }
+      return names
+    }
+
+    private fun PsiTypeElement?.indexName(): String {
+      if (this == null) return ANY_TYPE
+      innermostComponentReferenceElement?.referenceName?.let { return it }
+      return (type as? PsiPrimitiveType)?.name ?: ANY_TYPE
+    }
+
+    private fun KtTypeReference?.indexName(aliases: Map<String, String>): String {
+      var element = this?.typeElement
+      while (element is KtNullableType) {
+        element = element.innerType
+      }
+      val name = (element as? KtUserType)?.referencedName ?: return ANY_TYPE
+      return aliases[name] ?: name
+    }
+
+    /** Returns the imported simple names by their aliases in `import ... as` directives */
+    private fun KtFile.importAliases(): Map<String, String> = importDirectives.mapNotNull { directive ->
+      val alias = directive.aliasName ?: return@mapNotNull null
+      val importedName = directive.importedFqName?.shortName()?.asString() ?: return@mapNotNull null
+      alias to importedName
+    }.toMap()
+
+    private fun PsiAnnotation.shortName() = nameReferenceElement?.referenceName
+
+    /** Whether one of the annotations has one of the given simple names, written directly or through an `import ... as` alias */
+    private fun KtAnnotated.hasAnnotation(shortNames: Collection<String>, aliases: Map<String, String>) =
+      annotationEntries.any { entry -> entry.shortName?.asString()?.let { aliases[it] ?: it } in shortNames }
+
+    private fun KtAnnotated.hasAnnotation(shortName: String, aliases: Map<String, String>) = hasAnnotation(listOf(shortName), aliases)
+  }
+
+  override fun getName(): ID<String, Void> = NAME
+
+  override fun getIndexer(): DataIndexer<String, Void, FileContent> = DataIndexer { content ->
+    val text = content.contentAsText
+    if (INDEXED_WORDS.none { text.contains(it) }) {
+      return@DataIndexer emptyMap()
+    }
+    val keys = mutableSetOf<String>()
+    when (val file = content.psiFile) {
+      is PsiJavaFile -> indexJavaFile(file, keys)
+      is KtFile -> indexKotlinFile(file, keys)
+    }
+    keys.associateWith { null }
+  }
+
+  private fun indexJavaFile(file: PsiJavaFile, keys: MutableSet<String>) {
+    file.accept(object : JavaRecursiveElementWalkingVisitor() {
+      override fun visitAnnotation(annotation: PsiAnnotation) {
+        val shortName = annotation.shortName()
+        val owner = (annotation.owner as? PsiModifierList)?.parent
+        when {
+          owner is PsiMethod && (shortName in PROVIDER_ANNOTATIONS || shortName == INJECT) -> {
+            if (shortName != INJECT) {
+              keys.add("$PROVIDER_KIND:${owner.returnTypeElement.indexName()}")
+            }
+            owner.parameterList.parameters.forEach { keys.add("$CONSUMER_KIND:${it.typeElement.indexName()}") }
+          }
+          owner is PsiMethod && shortName == BINDS_INSTANCE_ANNOTATION -> {
+            keys.add("$PROVIDER_KIND:${owner.returnTypeElement.indexName()}")
+          }
+          owner is PsiParameter && shortName == BINDS_INSTANCE_ANNOTATION -> {
+            keys.add("$PROVIDER_KIND:${owner.typeElement.indexName()}")
+          }
+          owner is PsiField && shortName == INJECT -> {
+            keys.add("$CONSUMER_KIND:${owner.typeElement.indexName()}")
+          }
+        }
+      }
+    })
+  }
+
+  private fun indexKotlinFile(file: KtFile, keys: MutableSet<String>) {
+    val aliases = file.importAliases()
+
+    file.accept(object : KtTreeVisitorVoid() {
+      override fun visitTypeAlias(typeAlias: KtTypeAlias) {
+        super.visitTypeAlias(typeAlias)
+        keys.add("$ALIAS_KIND:${typeAlias.getTypeReference().indexName(aliases)}")
+      }
+
+      override fun visitNamedFunction(function: KtNamedFunction) {
+        super.visitNamedFunction(function)
+        if (function.hasAnnotation(PROVIDER_ANNOTATIONS, aliases) || function.hasAnnotation(BINDS_INSTANCE_ANNOTATION, aliases)) {
+          keys.add("$PROVIDER_KIND:${function.typeReference.indexName(aliases)}")
+        }
+        if (function.hasAnnotation(PROVIDER_ANNOTATIONS, aliases) || function.hasAnnotation(INJECT, aliases)) {
+          function.valueParameters.forEach { keys.add("$CONSUMER_KIND:${it.typeReference.indexName(aliases)}") }
+        }
+      }
+
+      override fun visitPrimaryConstructor(constructor: KtPrimaryConstructor) {
+        super.visitPrimaryConstructor(constructor)
+        indexConstructor(constructor)
+      }
+
+      override fun visitSecondaryConstructor(constructor: KtSecondaryConstructor) {
+        super.visitSecondaryConstructor(constructor)
+        indexConstructor(constructor)
+      }
+
+      private fun indexConstructor(constructor: KtConstructor<*>) {
+        if (constructor.hasAnnotation(INJECT, aliases)) {
+          constructor.valueParameters.forEach { keys.add("$CONSUMER_KIND:${it.typeReference.indexName(aliases)}") }
+        }
+      }
+
+      override fun visitParameter(parameter: KtParameter) {
+        super.visitParameter(parameter)
+        if (parameter.hasAnnotation(BINDS_INSTANCE_ANNOTATION, aliases)) {
+          keys.add("$PROVIDER_KIND:${parameter.typeReference.indexName(aliases)}")
+        }
+      }
+
+      override fun visitProperty(property: KtProperty) {
+        super.visitProperty(property)
+        if (property.hasAnnotation(INJECT, aliases)) {
+          keys.add("$CONSUMER_KIND:${property.typeReference.indexName(aliases)}")
+        }
+      }
+    })
+  }
+
+  override fun getKeyDescriptor(): KeyDescriptor<String> = EnumeratorStringDescriptor.INSTANCE
+
+  override fun getVersion() = 2
+
+  override fun getInputFilter(): FileBasedIndex.InputFilter =
+    DefaultFileTypeSpecificInputFilter(JavaFileType.INSTANCE, KotlinFileType.INSTANCE)
+
+  override fun dependsOnFileContent() = true
+}
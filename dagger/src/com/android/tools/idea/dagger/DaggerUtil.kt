@@ -84,9 +84,11 @@ private fun getClassesWithAnnotation(project: Project, annotationName: String, s
  * Null [qualifierInfo] means that binding has not qualifier or has more then one.
  */
 private fun getDaggerProviders(type: PsiType, qualifierInfo: QualifierInfo?, scope: GlobalSearchScope): Collection<PsiModifierListOwner> {
-  return getDaggerProvidesMethodsForType(type, scope).filterByQualifier(qualifierInfo) +
-         getDaggerBindsMethodsForType(type, scope).filterByQualifier(qualifierInfo) +
-         getDaggerBindsInstanceMethodsAndParametersForType(type, scope).filterByQualifier(qualifierInfo) +
+  // Only search the files that may declare a provider for the type.
+  val providersScope = DaggerBindingIndex.getSearchScope(DaggerBindingIndex.PROVIDER_KIND, type, scope)
+  return getDaggerProvidesMethodsForType(type, providersScope).filterByQualifier(qualifierInfo) +
+         getDaggerBindsMethodsForType(type, providersScope).filterByQualifier(qualifierInfo) +
+         getDaggerBindsInstanceMethodsAndParametersForType(type, providersScope).filterByQualifier(qualifierInfo) +
          getDaggerInjectedConstructorsForType(type)
 }
 
@@ -116,7 +118,8 @@ fun getDaggerProvidersFor(element: PsiElement): Collection<PsiModifierListOwner>
  */
 private fun getInjectedFieldsForType(type: PsiType, scope: GlobalSearchScope): Collection<PsiField> {
   val project = scope.project ?: return emptyList()
-  val annotationClass = JavaPsiFacade.getInstance(project).findClass(INJECT_ANNOTATION, scope) ?: return emptyList()
+  val annotationClass = JavaPsiFacade.getInstance(project).findClass(INJECT_ANNOTATION, GlobalSearchScope.allScope(project))
+                        ?: return emptyList()
   return AnnotatedElementsSearch.searchPsiFields(annotationClass, scope).filter { it.type.unboxed == type.unboxed }
 }
 
@@ -136,8 +139,10 @@ private fun getParamsOfDaggerProvidersForType(type: PsiType, scope: GlobalSearch
  * Null [qualifierInfo] means that binding has not qualifier or has more then one.
  */
 private fun getDaggerConsumers(type: PsiType, qualifierInfo: QualifierInfo?, scope: GlobalSearchScope): Collection<PsiVariable> {
-  return getInjectedFieldsForType(type, scope).filterByQualifier(qualifierInfo) +
-         getParamsOfDaggerProvidersForType(type, scope).filterByQualifier(qualifierInfo)
+  // Only search the files that may declare a consumer of the type.
+  val consumersScope = DaggerBindingIndex.getSearchScope(DaggerBindingIndex.CONSUMER_KIND, type, scope)
+  return getInjectedFieldsForType(type, consumersScope).filterByQualifier(qualifierInfo) +
+         getParamsOfDaggerProvidersForType(type, consumersScope).filterByQualifier(qualifierInfo)
 }
 
 /**
@@ -187,7 +192,8 @@ private fun getDaggerBindsMethodsForType(type: PsiType, scope: GlobalSearchScope
  */
 private fun getMethodsWithAnnotation(annotationName: String, scope: GlobalSearchScope): Query<PsiMethod> {
   val project = scope.project ?: return EmptyQuery()
-  val annotationClass = JavaPsiFacade.getInstance(project).findClass(annotationName, scope) ?: return EmptyQuery()
+  val annotationClass = JavaPsiFacade.getInstance(project).findClass(annotationName, GlobalSearchScope.allScope(project))
+                        ?: return EmptyQuery()
   return AnnotatedElementsSearch.searchPsiMethods(annotationClass, scope)
 }
 
@@ -196,7 +202,8 @@ private fun getMethodsWithAnnotation(annotationName: String, scope: GlobalSearch
  */
 private fun getParametersWithAnnotation(annotationName: String, scope: GlobalSearchScope): Query<PsiParameter> {
   val project = scope.project ?: return EmptyQuery()
-  val annotationClass = JavaPsiFacade.getInstance(project).findClass(annotationName, scope) ?: return EmptyQuery()
+  val annotationClass = JavaPsiFacade.getInstance(project).findClass(annotationName, GlobalSearchScope.allScope(project))
+                        ?: return EmptyQuery()
   return AnnotatedElementsSearch.searchPsiParameters(annotationClass, scope)
 }
 
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.dagger
+
+import com.google.common.truth.Truth.assertThat
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.PsiNamedElement
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.util.indexing.FileBasedIndex
+
+class DaggerBindingIndexTest : DaggerTestCase() {
+
+  private fun getFiles(key: String): Collection<VirtualFile> {
+    return FileBasedIndex.getInstance().getContainingFiles(DaggerBindingIndex.NAME, key, GlobalSearchScope.projectScope(project))
+  }
+
+  fun testJavaBindings() {
+    val file = myFixture.addFileToProject(
+      "test/MyModule.java",
+      //language=JAVA
+      """
+        package test;
+
+        import dagger.Binds;
+        import dagger.Module;
+        import dagger.Provides;
+        import javax.inject.Inject;
+
+        @Module
+        class MyModule {
+          @Inject java.util.List<String> injectedList;
+
+          @Inject MyModule(Integer consumedInteger) {}
+
+          @Provides String provider(int consumedInt) {}
+          @Binds CharSequence binder(String consumedString) {}
+        }
+      """.trimIndent()
+    ).virtualFile
+
+    assertThat(getFiles("p:String")).containsExactly(file)
+    assertThat(getFiles("p:CharSequence")).containsExactly(file)
+    assertThat(getFiles("c:List")).containsExactly(file)
+    assertThat(getFiles("c:Integer")).containsExactly(file)
+    assertThat(getFiles("c:int")).containsExactly(file)
+    assertThat(getFiles("c:String")).containsExactly(file)
+    assertThat(getFiles("p:MyModule")).isEmpty()
+    assertThat(getFiles("p:int")).isEmpty()
+  }
+
+  fun testKotlinBindings() {
+    val file = myFixture.addFileToProject(
+      "test/MyModule.kt",
+      //language=kotlin
+      """
+        package test
+
+        import dagger.BindsInstance
+        import dagger.Module
+        import dagger.Provides
+        import javax.inject.Inject
+        import java.io.File as JavaFile
+
+        class MyClass @Inject constructor(consumedInt: Int?) {
+          @Inject lateinit var injectedFile: JavaFile
+        }
+
+        @Module
+        object MyModule {
+          @Provides fun provider(): String? = ""
+          @Provides fun inferredProvider() = 1
+        }
+
+        interface MyComponentBuilder {
+          fun bindLong(@BindsInstance value: Long): MyComponentBuilder
+        }
+      """.trimIndent()
+    ).virtualFile
+
+    assertThat(getFiles("c:Int")).containsExactly(file)
+    assertThat(getFiles("c:File")).containsExactly(file)
+    assertThat(getFiles("p:String")).containsExactly(file)
+    assertThat(getFiles("p:*")).containsExactly(file)
+    assertThat(getFiles("p:Long")).containsExactly(file)
+    assertThat(getFiles("p:MyComponentBuilder")).isEmpty()
+  }
+
+  fun testProvidersAreFoundThroughTheIndex() {
+    myFixture.addFileToProject(
+      "test/MyModule.kt",
+      //language=kotlin
+      """
+        package test
+
+        import dagger.Module
+        import dagger.Provides
+
+        @Module
+        object MyModule {
+          @Provides fun intProvider(): Int = 1
+          @Provides fun stringProvider(): String = ""
+          @Provides fun listProvider(): MutableList<String> = mutableListOf()
+        }
+      """.trimIndent()
+    )
+    myFixture.configureByText(
+      "MyClass.java",
+      //language=JAVA
+      """
+        import javax.inject.Inject;
+
+        class MyClass {
+          @Inject Integer injectedInteger;
+          @Inject java.util.List<String> injectedList;
+        }
+      """.trimIndent()
+    )
+
+    val injectedInteger = myFixture.findClass("MyClass").findFieldByName("injectedInteger", false)!!
+    assertThat(getDaggerProvidersFor(injectedInteger).map { (it as PsiNamedElement).name }).containsExactly("intProvider")
+    val injectedList = myFixture.findClass("MyClass").findFieldByName("injectedList", false)!!
+    assertThat(getDaggerProvidersFor(injectedList).map { (it as PsiNamedElement).name }).containsExactly("listProvider")
+  }
+
+  fun testProvidersAreFoundThroughTypeAliases() {
+    val aliasFile = myFixture.addFileToProject(
+      "test/Aliases.kt",
+      //language=kotlin
+      """
+        package test
+
+        typealias Count = Int
+        typealias Total = Count
+      """.trimIndent()
+    ).virtualFile
+    myFixture.addFileToProject(
+      "test/MyModule.kt",
+      //language=kotlin
+      """
+        package test
+
+        import dagger.Module
+        import dagger.Provides
+
+        @Module
+        object MyModule {
+          @Provides fun totalProvider(): Total = 1
+          @Provides fun stringProvider(): String = ""
+        }
+      """.trimIndent()
+    )
+    myFixture.configureByText(
+      "MyClass.java",
+      //language=JAVA
+      """
+        import javax.inject.Inject;
+
+        class MyClass {
+          @Inject Integer injectedInteger;
+        }
+      """.trimIndent()
+    )
+
+    assertThat(getFiles("a:Int")).containsExactly(aliasFile)
+    assertThat(getFiles("a:Count")).containsExactly(aliasFile)
+    val injectedInteger = myFixture.findClass("MyClass").findFieldByName("injectedInteger", false)!!
+    assertThat(getDaggerProvidersFor(injectedInteger).map { (it as PsiNamedElement).name }).containsExactly("totalProvider")
+  }
+
+  fun testAnnotationsImportedWithAnAliasAreIndexed() {
+    val file = myFixture.addFileToProject(
+      "test/MyModule.kt",
+      //language=kotlin
+      """
+        package test
+
+        import dagger.Module
+        import dagger.Provides as P
+        import javax.inject.Inject as I
+
+        class MyClass @I constructor(consumedLong: Long)
+
+        @Module
+        object MyModule {
+          @P fun provider(): String = ""
+        }
+      """.trimIndent()
+    ).virtualFile
+    myFixture.configureByText(
+      "MyClass.java",
+      //language=JAVA
+      """
+        import javax.inject.Inject;
+
+        class MyJavaClass {
+          @Inject String injectedString;
+        }
+      """.trimIndent()
+    )
+
+    assertThat(getFiles("p:String")).containsExactly(file)
+    assertThat(getFiles("c:Long")).containsExactly(file)
+    val injectedString = myFixture.findClass("MyJavaClass").findFieldByName("injectedString", false)!!
+    assertThat(getDaggerProvidersFor(injectedString).map { (it as PsiNamedElement).name }).containsExactly("provider")
+  }
+}
@@ -39,8 +39,10 @@ import org.jetbrains.annotations.SystemIndependent;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.android.tools.idea.gradle.dsl.GradleUtil.FN_GRADLE_PROPERTIES;
 import static com.android.tools.idea.gradle.dsl.parser.build.SubProjectsDslElement.SUBPROJECTS;
@@ -76,6 +78,8 @@ public final class BuildModelContext {
   private final Map<GradleDslFile, ClassToInstanceMap<BuildModelNotification>> myNotifications = new HashMap<>();
   @NotNull
   private final DependencyManager myDependencyManager;
+  @NotNull
+  private final Set<GradleBuildFile> myAppliedFiles = new HashSet<>();
   @Nullable
   private GradleDslFile myRootProjectFile;
 
@@ -185,24 +189,34 @@ public final class BuildModelContext {
                                         @NotNull String moduleName,
                                         boolean isApplied) {
     GradleBuildFile buildDslFile = new GradleBuildFile(file, project, moduleName, this);
+    if (isApplied) {
+      myAppliedFiles.add(buildDslFile);
+    }
     ApplicationManager.getApplication().runReadAction(() -> {
-      if (!isApplied) {
-        populateWithParentModuleSubProjectsProperties(buildDslFile);
-      }
-      populateSiblingDslFileWithGradlePropertiesFile(buildDslFile);
+      populateBuildFile(buildDslFile);
       buildDslFile.parse();
     });
     return buildDslFile;
   }
 
+  /**
+   * Populates a build file before it is parsed, or parsed again by {@link GradleBuildFile#reparse()}: with the properties found in the
+   * subprojects block of its parent module, unless it was parsed as an applied file, and with its sibling gradle.properties file.
+   */
+  public void populateBuildFile(@NotNull GradleBuildFile buildDslFile) {
+    if (!myAppliedFiles.contains(buildDslFile)) {
+      populateWithParentModuleSubProjectsProperties(buildDslFile);
+    }
+    populateSiblingDslFileWithGradlePropertiesFile(buildDslFile);
+  }
+
   public GradleBuildFile parseProjectBuildFile(@NotNull Project project, @Nullable VirtualFile file) {
     // First parse the main project build file.
     GradleBuildFile result = file != null ? new GradleBuildFile(file, project, ":", this) : null;
     if (result != null) {
       setRootProjectFile(result);
       ApplicationManager.getApplication().runReadAction(() -> {
-        populateWithParentModuleSubProjectsProperties(result);
-        populateSiblingDslFileWithGradlePropertiesFile(result);
+        populateBuildFile(result);
         result.parse();
       });
       putBuildFile(file.getUrl(), result);
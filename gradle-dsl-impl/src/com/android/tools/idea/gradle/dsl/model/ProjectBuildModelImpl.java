@@ -21,12 +21,15 @@ import com.android.tools.idea.gradle.dsl.api.ProjectBuildModel;
 import com.android.tools.idea.gradle.dsl.parser.files.GradleBuildFile;
 import com.android.tools.idea.gradle.dsl.parser.files.GradleDslFile;
 import com.android.tools.idea.gradle.dsl.parser.files.GradleSettingsFile;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -125,10 +128,69 @@ public final class ProjectBuildModelImpl implements ProjectBuildModel {
 
   @Override
   public void reparse() {
-    // myBuildModelContext has all the files removed when reset() is called. We need to ensure we collect the files before calling reset.
-    List<GradleDslFile> files = myBuildModelContext.getAllRequestedFiles();
-    myBuildModelContext.reset();
-    files.forEach(GradleDslFile::reparse);
+    reparseFiles(true);
+  }
+
+  @Override
+  public void reparseChangedFiles() {
+    reparseFiles(false);
+  }
+
+  /**
+   * Reparses all the files, or only the changed ones and the ones depending on them, each after the files it depends on. The files are
+   * reparsed in place, through {@link GradleDslFile#reparse()}, so that build files get again the properties of the subprojects block of
+   * their parent module.
+   */
+  private void reparseFiles(boolean all) {
+    ApplicationManager.getApplication().runReadAction(() -> {
+      List<GradleDslFile> files = myBuildModelContext.getAllRequestedFiles();
+      // Settings and properties files affect how every build file is parsed, so they are parsed first and a change to one of them
+      // reparses everything.
+      boolean reparseAll = all || files.stream().anyMatch(file -> !(file instanceof GradleBuildFile) && file.isChangedSinceParse());
+      Map<GradleDslFile, Boolean> reparsedFiles = new HashMap<>();
+      if (reparseAll) {
+        files.stream().filter(file -> !(file instanceof GradleBuildFile)).forEach(file -> {
+          file.reparse();
+          reparsedFiles.put(file, true);
+        });
+      }
+      files.forEach(file -> reparseIfChanged(file, reparseAll, reparsedFiles));
+    });
+  }
+
+  /**
+   * Reparses {@code file} if {@code all} is true or it changed, or if a file it depends on was reparsed: a file it applies, its parent
+   * module file or a module file one of its references was resolved in. These are reparsed first, so that {@code file} picks up their
+   * new content.
+   *
+   * @return whether {@code file} was reparsed
+   */
+  private static boolean reparseIfChanged(@NotNull GradleDslFile file, boolean all, @NotNull Map<GradleDslFile, Boolean> reparsedFiles) {
+    Boolean reparsed = reparsedFiles.get(file);
+    if (reparsed != null) {
+      return reparsed;
+    }
+    // Guards against circular dependencies.
+    reparsedFiles.put(file, false);
+
+    boolean changed = all || file.isChangedSinceParse();
+    for (GradleDslFile appliedFile : file.getApplyDslElement()) {
+      changed |= reparseIfChanged(appliedFile, all, reparsedFiles);
+    }
+    GradleDslFile parentModuleFile = file.getParentModuleDslFile();
+    if (parentModuleFile != null) {
+      changed |= reparseIfChanged(parentModuleFile, all, reparsedFiles);
+    }
+    // Copied, as reparsing other files can resolve the pending references of this one.
+    for (GradleDslFile referencedFile : new ArrayList<>(file.getReferencedProjectFiles())) {
+      changed |= reparseIfChanged(referencedFile, all, reparsedFiles);
+    }
+
+    if (changed) {
+      file.reparse();
+    }
+    reparsedFiles.put(file, changed);
+    return changed;
   }
 
   @NotNull
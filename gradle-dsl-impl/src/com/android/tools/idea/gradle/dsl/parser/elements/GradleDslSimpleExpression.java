@@ -332,7 +332,12 @@ public abstract class GradleDslSimpleExpression extends GradleDslElementImpl imp
       if (dslFile == null) {
         return null;
       }
-      return findDslFile(dslFile, moduleDirectory); // root module dsl File.
+      GradleDslFile projectDslFile = findDslFile(dslFile, moduleDirectory); // root module dsl File.
+      if (projectDslFile != null) {
+        // The referencing file has to be parsed again when the referenced one changes.
+        startElement.getDslFile().addReferencedProjectFile(projectDslFile);
+      }
+      return projectDslFile;
     }
     return null;
   }
@@ -30,6 +30,7 @@ import com.android.tools.idea.gradle.dsl.parser.elements.GradleNameElement;
 import com.android.tools.idea.gradle.dsl.parser.java.JavaDslElement;
 import com.android.tools.idea.gradle.dsl.parser.semantics.ModelEffectDescription;
 import com.android.tools.idea.gradle.dsl.parser.semantics.ModelPropertyDescription;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
@@ -42,6 +43,19 @@ public class GradleBuildFile extends GradleDslFile {
     super(file, project, moduleName, context);
   }
 
+  /**
+   * Parses the file again the way {@link BuildModelContext#parseBuildFile} first parsed it, so that it gets again the properties of the
+   * subprojects block of its parent module.
+   */
+  @Override
+  public void reparse() {
+    ApplicationManager.getApplication().runReadAction(() -> {
+      clear();
+      getContext().populateBuildFile(this);
+      parse();
+    });
+  }
+
   @Override
   public void addParsedElement(@NotNull GradleDslElement element) {
     if (APPLY_BLOCK_NAME.equals(element.getFullName())) {
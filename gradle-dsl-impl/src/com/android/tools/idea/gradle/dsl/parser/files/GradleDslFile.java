@@ -69,6 +69,7 @@ public abstract class GradleDslFile extends GradlePropertiesDslElement {
   @NotNull private final VirtualFile myFile;
   @NotNull private final Project myProject;
   @NotNull private final Set<GradleDslFile> myChildModuleDslFiles = new HashSet<>();
+  @NotNull private final Set<GradleDslFile> myReferencedProjectFiles = new HashSet<>();
   @NotNull private final GradleDslWriter myGradleDslWriter;
   @NotNull private final GradleDslParser myGradleDslParser;
 
@@ -77,6 +78,7 @@ public abstract class GradleDslFile extends GradlePropertiesDslElement {
 
   @Nullable private ApplyDslElement myApplyDslElement;
   @NotNull private final BuildModelContext myBuildModelContext;
+  private long myParsedModificationStamp;
 
   public static final ImmutableMap<String, PropertiesElementDescription> CHILD_PROPERTIES_ELEMENTS_MAP = Stream.of(new Object[][]{
     {"android", AndroidDslElement.ANDROID},
@@ -133,6 +135,7 @@ public abstract class GradleDslFile extends GradlePropertiesDslElement {
       myGradleDslWriter = new GradleDslWriter.Adapter();
     }
     populateGlobalProperties();
+    myParsedModificationStamp = getModificationStamp();
   }
 
   private void populateGlobalProperties() {
@@ -180,12 +183,27 @@ public abstract class GradleDslFile extends GradlePropertiesDslElement {
   }
 
   public void parse() {
+    myParsedModificationStamp = getModificationStamp();
+    myReferencedProjectFiles.clear();
     myGradleDslParser.parse();
     // we might have textually-forward references that are nevertheless valid because of the prioritization of the buildscript block:
     // attempt resolution once more after the whole of the file is parsed.
     getContext().getDependencyManager().resolveAllIn(this, true);
   }
 
+  /**
+   * Returns whether the content of this file changed since it was parsed, either in its {@link PsiFile} or on disk for files without one.
+   * Files applied by this file or parent module files are not checked. Must be called from a read action.
+   */
+  public boolean isChangedSinceParse() {
+    return getModificationStamp() != myParsedModificationStamp;
+  }
+
+  private long getModificationStamp() {
+    PsiElement element = getPsiElement();
+    return element instanceof PsiFile ? ((PsiFile)element).getModificationStamp() : myFile.getModificationStamp();
+  }
+
   @NotNull
   public Project getProject() {
     return myProject;
@@ -221,6 +239,23 @@ public abstract class GradleDslFile extends GradlePropertiesDslElement {
     return myChildModuleDslFiles;
   }
 
+  /**
+   * Records that a reference in this file, e.g. {@code project(':lib').ext.version}, was resolved in the module file {@code dslFile}.
+   */
+  public void addReferencedProjectFile(@NotNull GradleDslFile dslFile) {
+    if (dslFile != this) {
+      myReferencedProjectFiles.add(dslFile);
+    }
+  }
+
+  /**
+   * Returns the module files, other than the parent ones, that references in this file were resolved in since it was last parsed.
+   */
+  @NotNull
+  public Collection<GradleDslFile> getReferencedProjectFiles() {
+    return myReferencedProjectFiles;
+  }
+
   /**
    * Sets the sibling dsl file of this file.
    *
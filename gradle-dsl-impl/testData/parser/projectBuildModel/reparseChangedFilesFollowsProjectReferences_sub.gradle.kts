@@ -0,0 +1,3 @@
+android {
+  compileSdkVersion = project(":lib").android.compileSdkVersion
+}
@@ -0,0 +1,3 @@
+subprojects {
+  extra["x"] = 1
+}
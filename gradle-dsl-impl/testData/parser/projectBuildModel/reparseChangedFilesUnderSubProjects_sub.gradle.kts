@@ -0,0 +1,3 @@
+android {
+  compileSdkVersion = "android-28"
+}
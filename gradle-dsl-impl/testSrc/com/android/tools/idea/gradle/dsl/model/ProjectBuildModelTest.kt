@@ -154,6 +154,68 @@ class ProjectBuildModelTest : GradleFileModelTestCase() {
     }
   }
 
+  @Test
+  fun testReparseChangedFiles() {
+    writeToBuildFile(TestFile.MULTIPLE_MODELS_PERSIST_CHANGES)
+    writeToSubModuleBuildFile(TestFile.MULTIPLE_MODELS_PERSIST_CHANGES_SUB)
+
+    val projectModel = projectBuildModel
+    val parentModel = projectModel.projectBuildModel!!
+    val childModel = projectModel.getModuleBuildModel(mySubModule)!!
+    verifyPropertyModel(childModel.ext().findProperty("prop1").resolve(), STRING_TYPE, "boo", STRING, REGULAR, 0)
+
+    // Change the parent model without applying the change, and the child file on disk.
+    parentModel.ext().findProperty("prop").dependencies[0].setValue(false)
+    writeToSubModuleBuildFile(TestFile.MULTIPLE_MODELS_PERSIST_CHANGES_SUB_EXPECTED)
+
+    projectModel.reparseChangedFiles()
+
+    // Only the changed file was parsed again: the pending change of the other file is kept.
+    assertTrue(parentModel.isModified)
+    verifyPropertyModel(parentModel.ext().findProperty("prop").resolve(), STRING_TYPE, "Hello i am false!", STRING, REGULAR, 1)
+    assertFalse(childModel.isModified)
+    verifyPropertyModel(childModel.ext().findProperty("prop1").resolve(), STRING_TYPE, "ood", STRING, REGULAR, 0)
+  }
+
+  @Test
+  fun testReparseChangedFilesKeepsSubProjectsProperties() {
+    writeToBuildFile(TestFile.REPARSE_CHANGED_FILES_UNDER_SUB_PROJECTS)
+    writeToSubModuleBuildFile(TestFile.REPARSE_CHANGED_FILES_UNDER_SUB_PROJECTS_SUB)
+    writeToSettingsFile(subModuleSettingsText)
+
+    val projectModel = projectBuildModel
+    val childModel = projectModel.getModuleBuildModel(mySubModule)!!
+    verifyPropertyModel(childModel.ext().findProperty("x").resolve(), INTEGER_TYPE, 1, INTEGER, REGULAR, 0)
+    assertEquals("compileSdkVersion", "android-28", childModel.android().compileSdkVersion())
+
+    writeToSubModuleBuildFile(TestFile.REPARSE_CHANGED_FILES_UNDER_SUB_PROJECTS_SUB_CHANGED)
+    projectModel.reparseChangedFiles()
+
+    // The properties of the subprojects block of the root project are injected again in the reparsed module file.
+    assertEquals("compileSdkVersion", "android-29", childModel.android().compileSdkVersion())
+    verifyPropertyModel(childModel.ext().findProperty("x").resolve(), INTEGER_TYPE, 1, INTEGER, REGULAR, 0)
+  }
+
+  @Test
+  fun testReparseChangedFilesFollowsProjectReferences() {
+    writeToBuildFile(TestFile.REPARSE_CHANGED_FILES_UNDER_SUB_PROJECTS)
+    writeToSubModuleBuildFile(TestFile.REPARSE_CHANGED_FILES_FOLLOWS_PROJECT_REFERENCES_SUB)
+    writeToSettingsFile(subModuleSettingsText + getSubModuleSettingsText("lib"))
+    val libModule = writeToNewSubModule("lib", TestFile.REPARSE_CHANGED_FILES_FOLLOWS_PROJECT_REFERENCES_LIB, "")
+
+    val projectModel = projectBuildModel
+    val libModel = projectModel.getModuleBuildModel(libModule)!!
+    val childModel = projectModel.getModuleBuildModel(mySubModule)!!
+    assertEquals("compileSdkVersion", "android-28", childModel.android().compileSdkVersion())
+
+    libModel.android().compileSdkVersion().setValue("android-29")
+    applyChanges(libModel)
+    projectModel.reparseChangedFiles()
+
+    // The module file was parsed again, as one of its references is resolved in the changed file.
+    assertEquals("compileSdkVersion", "android-29", childModel.android().compileSdkVersion())
+  }
+
   @Test
   fun testApplyResolvesCorrectFile() {
     // The sub-module applies a sub-module Gradle file which in turn applies a Gradle file from the root project directory.
@@ -313,6 +375,11 @@ class ProjectBuildModelTest : GradleFileModelTestCase() {
     RESOLVES_CORRECT_FILE_APPLIED("applyResolvesCorrectFileApplied"),
     RESOLVES_CORRECT_FILE_APPLIED_SUB("applyResolvesCorrectFileApplied_sub"),
     RESOLVES_CORRECT_FILE_SUB("applyResolvesCorrectFile_sub"),
+    REPARSE_CHANGED_FILES_UNDER_SUB_PROJECTS("reparseChangedFilesUnderSubProjects"),
+    REPARSE_CHANGED_FILES_UNDER_SUB_PROJECTS_SUB("reparseChangedFilesUnderSubProjects_sub"),
+    REPARSE_CHANGED_FILES_UNDER_SUB_PROJECTS_SUB_CHANGED("reparseChangedFilesUnderSubProjects_subChanged"),
+    REPARSE_CHANGED_FILES_FOLLOWS_PROJECT_REFERENCES_SUB("reparseChangedFilesFollowsProjectReferences_sub"),
+    REPARSE_CHANGED_FILES_FOLLOWS_PROJECT_REFERENCES_LIB("reparseChangedFilesFollowsProjectReferences_lib"),
     ;
 
     override fun toFile(basePath: @SystemDependent String, extension: String): File {
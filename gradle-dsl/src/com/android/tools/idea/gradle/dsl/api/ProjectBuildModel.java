@@ -131,6 +131,15 @@ public interface ProjectBuildModel {
    */
   void reparse();
 
+  /**
+   * Reparses the {@link GradleBuildModel}s whose build files changed since they were parsed, along with the ones depending on them through
+   * applied files, parent modules or references such as {@code project(':lib').ext.version}. The others keep their state, including changes that weren't applied. If a settings or properties
+   * file changed, everything is reparsed as with {@link #reparse()}.
+   * <p>
+   * This method should never be called on the UI thread, it can cause the parsing of Gradle build files which can take a long time.
+   */
+  void reparseChangedFiles();
+
   /**
    * This method may miss files that should be included in the build if we can't correctly parse the Gradle settings file,
    * this method will parse any files that have not yet been parsed.
@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.lint.common;
+
+import com.android.tools.lint.detector.api.Issue;
+import com.intellij.codeInspection.InspectionProfile;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.NotNullLazyKey;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.profile.ProfileChangeAdapter;
+import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiModificationTracker;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * State shared by the on-the-fly lint runs of {@link LintExternalAnnotator} on the files of a module, which survives edits.
+ * <p>
+ * It keeps:
+ * <ul>
+ *   <li>the set of enabled issues of each file, which only changes when an inspection profile changes;</li>
+ *   <li>the problems found in each file, which are reused as long as no PSI and the project model didn't change;</li>
+ *   <li>a {@link LintIdeClient}, which is reused by the runs until the project model changes;</li>
+ *   <li>how long each detector takes, measured on the files lint is slow on when {@link #PROFILE_DETECTORS_KEY} is set, so that slow
+ *   checks can be found.</li>
+ * </ul>
+ */
+public final class LintEditorSession {
+  private static final Logger LOG = Logger.getInstance(LintEditorSession.class);
+
+  private static final NotNullLazyKey<LintEditorSession, Module> SESSION_KEY =
+    NotNullLazyKey.create("lint.editor.session", LintEditorSession::new);
+
+  /** Maximum number of files whose enabled issues and problems are kept */
+  private static final int MAX_CACHED_FILES = 200;
+
+  /** Maximum number of detectors logged by {@link #logSlowestDetectors} */
+  private static final int MAX_LOGGED_DETECTORS = 5;
+
+  /** Lint runs taking longer than this are logged, and the detectors run on the file are timed if {@link #PROFILE_DETECTORS_KEY} is set */
+  private static final long SLOW_RUN_THRESHOLD_MS = 1000;
+
+  /** Registry key enabling the timing of the detectors on the files lint is slow on, which runs lint again once per detector */
+  static final String PROFILE_DETECTORS_KEY = "android.lint.profile.detectors";
+
+  /**
+   * The state of a file, of the rest of the PSI and of the project model when lint read that file. Detectors resolve into other files and
+   * into resources, so the problems found in a file can only be reused for as long as its {@link FileState} is the same.
+   */
+  public static final class FileState {
+    private final long myFileModificationStamp;
+    private final long myPsiModificationCount;
+    private final long myProjectModelModificationCount;
+    @NotNull private final Set<Issue> myIssues;
+
+    FileState(long fileModificationStamp, long psiModificationCount, long projectModelModificationCount, @NotNull Set<Issue> issues) {
+      myFileModificationStamp = fileModificationStamp;
+      myPsiModificationCount = psiModificationCount;
+      myProjectModelModificationCount = projectModelModificationCount;
+      myIssues = issues;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof FileState)) return false;
+      FileState state = (FileState)o;
+      return myFileModificationStamp == state.myFileModificationStamp &&
+             myPsiModificationCount == state.myPsiModificationCount &&
+             myProjectModelModificationCount == state.myProjectModelModificationCount &&
+             // Sets of enabled issues are cached, so they are usually the same instance.
+             (myIssues == state.myIssues || myIssues.equals(state.myIssues));
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myFileModificationStamp, myPsiModificationCount, myProjectModelModificationCount);
+    }
+  }
+
+  /** How long the runs of one detector took */
+  public static final class RunTimings {
+    private int myRunCount;
+    private long myTotalTimeMs;
+    private long myMaxTimeMs;
+
+    private RunTimings() {
+    }
+
+    private RunTimings(@NotNull RunTimings timings) {
+      myRunCount = timings.myRunCount;
+      myTotalTimeMs = timings.myTotalTimeMs;
+      myMaxTimeMs = timings.myMaxTimeMs;
+    }
+
+    public int getRunCount() {
+      return myRunCount;
+    }
+
+    public long getTotalTimeMs() {
+      return myTotalTimeMs;
+    }
+
+    public long getMaxTimeMs() {
+      return myMaxTimeMs;
+    }
+
+    public long getAverageTimeMs() {
+      return myRunCount > 0 ? myTotalTimeMs / myRunCount : 0;
+    }
+  }
+
+  private static final class CachedIssues {
+    @Nullable private final InspectionProfile myProfile;
+    private final long myProfileModificationCount;
+    @NotNull private final Set<Issue> myIssues;
+
+    private CachedIssues(@Nullable InspectionProfile profile, long profileModificationCount, @NotNull Set<Issue> issues) {
+      myProfile = profile;
+      myProfileModificationCount = profileModificationCount;
+      myIssues = issues;
+    }
+  }
+
+  private static final class ReusableClient {
+    @NotNull private final LintIdeClient myClient;
+    private final long myProjectModelModificationCount;
+
+    private ReusableClient(@NotNull LintIdeClient client, long projectModelModificationCount) {
+      myClient = client;
+      myProjectModelModificationCount = projectModelModificationCount;
+    }
+  }
+
+  private static final class CachedProblems {
+    @NotNull private final FileState myState;
+    @NotNull private final List<LintProblemData> myProblems;
+
+    private CachedProblems(@NotNull FileState state, @NotNull List<LintProblemData> problems) {
+      myState = state;
+      myProblems = problems;
+    }
+  }
+
+  @NotNull private final Module myModule;
+
+  /** Incremented whenever an inspection profile changes or another profile is activated */
+  private final AtomicLong myProfileModificationCount = new AtomicLong();
+
+  // The fields below are guarded by this.
+  private final Map<VirtualFile, CachedIssues> myIssuesByFile = createLruMap();
+  private final Map<VirtualFile, CachedProblems> myProblemsByFile = createLruMap();
+  private final Map<VirtualFile, Boolean> myProfiledFiles = createLruMap();
+  private final Map<String, RunTimings> myTimingsByDetector = new TreeMap<>();
+  /** The client used by the last run, unless another run is using it */
+  @Nullable private ReusableClient myIdleClient;
+  /** The clients in use by runs, with the project model modification count when they were created */
+  private final Map<LintIdeClient, Long> myClientsInUse = new IdentityHashMap<>();
+
+  private LintEditorSession(@NotNull Module module) {
+    myModule = module;
+    Disposer.register(module, () -> {
+      ReusableClient idleClient;
+      synchronized (this) {
+        idleClient = myIdleClient;
+        myIdleClient = null;
+      }
+      if (idleClient != null) {
+        Disposer.dispose(idleClient.myClient);
+      }
+    });
+    module.getProject().getMessageBus().connect(module).subscribe(ProfileChangeAdapter.TOPIC, new ProfileChangeAdapter() {
+      @Override
+      public void profileChanged(@NotNull InspectionProfile profile) {
+        myProfileModificationCount.incrementAndGet();
+      }
+
+      @Override
+      public void profileActivated(@Nullable InspectionProfile oldProfile, @Nullable InspectionProfile profile) {
+        myProfileModificationCount.incrementAndGet();
+      }
+    });
+  }
+
+  @NotNull
+  public static LintEditorSession get(@NotNull Module module) {
+    return SESSION_KEY.getValue(module);
+  }
+
+  /**
+   * Returns the issues enabled for {@code file}. They are only computed again after an inspection profile changes.
+   * Must be called from a read action.
+   */
+  @NotNull
+  public Set<Issue> getEnabledIssues(@NotNull PsiFile file) {
+    VirtualFile vFile = file.getVirtualFile();
+    InspectionProfile profile = InspectionProjectProfileManager.getInstance(myModule.getProject()).getCurrentProfile();
+    long profileModificationCount = myProfileModificationCount.get();
+    synchronized (this) {
+      CachedIssues cached = vFile != null ? myIssuesByFile.get(vFile) : null;
+      if (cached != null && cached.myProfile == profile && cached.myProfileModificationCount == profileModificationCount) {
+        return cached.myIssues;
+      }
+    }
+
+    Set<Issue> issues = Collections.unmodifiableSet(LintExternalAnnotator.getIssuesFromInspections(myModule.getProject(), file));
+    if (vFile != null) {
+      synchronized (this) {
+        myIssuesByFile.put(vFile, new CachedIssues(profile, profileModificationCount, issues));
+      }
+    }
+    return issues;
+  }
+
+  /**
+   * Returns the current {@link FileState} of {@code file}. Must be called from a read action.
+   */
+  @NotNull
+  public FileState getFileState(@NotNull PsiFile file, @NotNull Set<Issue> issues) {
+    long psiModificationCount = PsiModificationTracker.SERVICE.getInstance(myModule.getProject()).getModificationCount();
+    return new FileState(file.getModificationStamp(), psiModificationCount, getProjectModelModificationCount(), issues);
+  }
+
+  private long getProjectModelModificationCount() {
+    return LintIdeSupport.get().getProjectModelModificationCount(myModule.getProject());
+  }
+
+  /**
+   * Returns a client reporting to {@code lintResult}, which must be given back to {@link #releaseClient} after the run. The client of the
+   * previous run is reused unless it's in use or the project model changed since it was created.
+   */
+  @NotNull
+  public LintIdeClient acquireClient(@NotNull LintEditorResult lintResult) {
+    long projectModelModificationCount = getProjectModelModificationCount();
+    ReusableClient idleClient;
+    synchronized (this) {
+      idleClient = myIdleClient;
+      myIdleClient = null;
+    }
+    if (idleClient != null && idleClient.myProjectModelModificationCount != projectModelModificationCount) {
+      Disposer.dispose(idleClient.myClient);
+      idleClient = null;
+    }
+
+    LintIdeClient client;
+    if (idleClient != null) {
+      client = idleClient.myClient;
+      client.setLintResult(lintResult);
+    }
+    else {
+      client = LintIdeSupport.get().createEditorClient(lintResult);
+    }
+    synchronized (this) {
+      myClientsInUse.put(client, projectModelModificationCount);
+    }
+    return client;
+  }
+
+  /**
+   * Gives back a client returned by {@link #acquireClient}. It is kept for the next run, or disposed if another client already is.
+   */
+  public void releaseClient(@NotNull LintIdeClient client) {
+    // Don't keep the result of the run alive.
+    client.setLintResult(new LintIgnoredResult());
+    synchronized (this) {
+      Long projectModelModificationCount = myClientsInUse.remove(client);
+      if (myIdleClient == null && projectModelModificationCount != null && !myModule.isDisposed()) {
+        myIdleClient = new ReusableClient(client, projectModelModificationCount);
+        return;
+      }
+    }
+    Disposer.dispose(client);
+  }
+
+  /**
+   * Returns the problems found the last time lint ran on {@code file} in the given {@code state}, or null if lint didn't run in that state.
+   */
+  @Nullable
+  public synchronized List<LintProblemData> getProblems(@NotNull VirtualFile file, @NotNull FileState state) {
+    CachedProblems cached = myProblemsByFile.get(file);
+    return cached != null && cached.myState.equals(state) ? cached.myProblems : null;
+  }
+
+  /**
+   * Records the {@code problems} found by lint on {@code file} in the given {@code state}, and logs how long it took.
+   */
+  public void recordRun(@NotNull VirtualFile file, @Nullable FileState state, @NotNull List<LintProblemData> problems, long durationMs) {
+    if (state != null) {
+      synchronized (this) {
+        myProblemsByFile.put(file, new CachedProblems(state, new ArrayList<>(problems)));
+      }
+    }
+
+    if (durationMs > SLOW_RUN_THRESHOLD_MS && LOG.isDebugEnabled()) {
+      LOG.debug("Lint took " + durationMs + "ms to analyze " + file.getName() + " with " + (state != null ? state.myIssues.size() : "all") +
+               " issues enabled");
+    }
+    else if (LOG.isDebugEnabled()) {
+      LOG.debug("Lint took " + durationMs + "ms to analyze " + file.getName());
+    }
+  }
+
+  /**
+   * Returns true if the detectors should be timed on {@code file}, because {@link #PROFILE_DETECTORS_KEY} is set, lint took
+   * {@code durationMs} to run on it and the detectors weren't timed on it yet.
+   */
+  public synchronized boolean shouldProfileDetectors(@NotNull VirtualFile file, long durationMs) {
+    return durationMs > SLOW_RUN_THRESHOLD_MS && Registry.is(PROFILE_DETECTORS_KEY) && myProfiledFiles.put(file, Boolean.TRUE) == null;
+  }
+
+  /**
+   * Records that running lint with only the issues of {@code detector} took {@code durationMs}.
+   */
+  public synchronized void recordDetectorRun(@NotNull String detector, long durationMs) {
+    RunTimings timings = myTimingsByDetector.computeIfAbsent(detector, key -> new RunTimings());
+    timings.myRunCount++;
+    timings.myTotalTimeMs += durationMs;
+    timings.myMaxTimeMs = Math.max(timings.myMaxTimeMs, durationMs);
+  }
+
+  /**
+   * Logs the detectors that took the longest on average, after they were timed on {@code file}.
+   */
+  public void logSlowestDetectors(@NotNull VirtualFile file) {
+    if (!LOG.isDebugEnabled()) {
+      return;
+    }
+    String slowest = getTimings().entrySet().stream()
+      .sorted(Comparator.comparingLong((Map.Entry<String, RunTimings> entry) -> entry.getValue().getAverageTimeMs()).reversed())
+      .limit(MAX_LOGGED_DETECTORS)
+      .map(entry -> entry.getKey() + " " + entry.getValue().getAverageTimeMs() + "ms")
+      .collect(Collectors.joining(", "));
+    LOG.debug("Slowest lint detectors after timing them on " + file.getName() + ": " + slowest);
+  }
+
+  /**
+   * Returns how long the runs of each detector took so far, by detector class name.
+   */
+  @NotNull
+  public synchronized Map<String, RunTimings> getTimings() {
+    Map<String, RunTimings> timings = new TreeMap<>();
+    myTimingsByDetector.forEach((detector, detectorTimings) -> timings.put(detector, new RunTimings(detectorTimings)));
+    return timings;
+  }
+
+  @NotNull
+  private static <V> Map<VirtualFile, V> createLruMap() {
+    return new LinkedHashMap<VirtualFile, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<VirtualFile, V> eldest) {
+        return size() > MAX_CACHED_FILES;
+      }
+    };
+  }
+}
@@ -52,13 +52,13 @@ import com.intellij.lang.annotation.AnnotationHolder;
 import com.intellij.lang.annotation.ExternalAnnotator;
 import com.intellij.lang.annotation.HighlightSeverity;
 import com.intellij.lang.properties.PropertiesFileType;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleUtilCore;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Iconable;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.TextRange;
@@ -70,8 +70,11 @@ import com.intellij.util.IncorrectOperationException;
 import com.intellij.xml.util.XmlStringUtil;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import javax.swing.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -113,76 +116,140 @@ public class LintExternalAnnotator extends ExternalAnnotator<LintEditorResult, L
       return null;
     }
 
-    final Set<Issue> issues = getIssuesFromInspections(file.getProject(), file);
-    return new LintEditorResult(module, vFile, file.getText(), issues);
+    LintEditorSession session = LintEditorSession.get(module);
+    final Set<Issue> issues = session.getEnabledIssues(file);
+    return new LintEditorResult(module, vFile, file.getText(), issues, session.getFileState(file, issues));
   }
 
   @Override
   public LintEditorResult doAnnotate(final LintEditorResult lintResult) {
     long startTime = System.currentTimeMillis();
 
-    final LintIdeClient client = LintIdeSupport.get().createEditorClient(lintResult);
+    LintEditorSession session = LintEditorSession.get(lintResult.getModule());
+    LintEditorSession.FileState fileState = lintResult.getFileState();
+    List<LintProblemData> previousProblems = fileState != null ? session.getProblems(lintResult.getMainFile(), fileState) : null;
+    if (previousProblems != null) {
+      // Neither the PSI, the project model nor the enabled issues changed since the last run.
+      lintResult.getProblems().addAll(previousProblems);
+      return lintResult;
+    }
+
+    final LintIdeClient client = session.acquireClient(lintResult);
     try {
-      EnumSet<Scope> scope;
-      VirtualFile mainFile = lintResult.getMainFile();
-      final FileType fileType = mainFile.getFileType();
-      String name = mainFile.getName();
-      if (fileType == XmlFileType.INSTANCE) {
-        if (name.equals(ANDROID_MANIFEST_XML)) {
-          scope = Scope.MANIFEST_SCOPE;
-        }
-        else if (name.endsWith(DOT_XML)) {
-          scope = Scope.RESOURCE_FILE_SCOPE;
-        }
-        else {
-          // Something else, like svg
-          return lintResult;
-        }
-      }
-      else if (fileType == JavaFileType.INSTANCE || fileType == KotlinFileType.INSTANCE) {
-        scope = Scope.JAVA_FILE_SCOPE;
-        if (name.endsWith(DOT_KTS)) {
-          scope = EnumSet.of(Scope.GRADLE_FILE, Scope.JAVA_FILE);
-        }
-      }
-      else if (name.equals(OLD_PROGUARD_FILE) || name.equals(FN_PROJECT_PROGUARD_FILE)) {
-        scope = EnumSet.of(Scope.PROGUARD_FILE);
+      LintDriver lint = analyze(client, lintResult);
+      if (lint == null) {
+        return lintResult;
       }
-      else if (fileType == GroovyFileType.GROOVY_FILE_TYPE) {
-        scope = Scope.GRADLE_SCOPE;
+
+      lint.setAnalysisStartTime(startTime);
+      LintIdeSupport.get().logSession(lint, lintResult);
+    }
+    finally {
+      session.releaseClient(client);
+    }
+
+    // Problems found while other files were being modified can't be reused.
+    LintEditorSession.FileState reusableState = lintResult.isDirty() ? null : fileState;
+    long durationMs = System.currentTimeMillis() - startTime;
+    session.recordRun(lintResult.getMainFile(), reusableState, lintResult.getProblems(), durationMs);
+    if (session.shouldProfileDetectors(lintResult.getMainFile(), durationMs)) {
+      ApplicationManager.getApplication().executeOnPooledThread(() -> profileDetectors(session, lintResult));
+    }
+    return lintResult;
+  }
+
+  /**
+   * Runs lint with {@code client} on the main file of {@code lintResult}.
+   *
+   * @return the driver that ran, or null if lint can't run on the file
+   */
+  @Nullable
+  private static LintDriver analyze(@NotNull LintIdeClient client, @NotNull LintEditorResult lintResult) {
+    EnumSet<Scope> scope;
+    VirtualFile mainFile = lintResult.getMainFile();
+    final FileType fileType = mainFile.getFileType();
+    String name = mainFile.getName();
+    if (fileType == XmlFileType.INSTANCE) {
+      if (name.equals(ANDROID_MANIFEST_XML)) {
+        scope = Scope.MANIFEST_SCOPE;
       }
-      else if (fileType == PropertiesFileType.INSTANCE) {
-        scope = Scope.PROPERTY_SCOPE;
+      else if (name.endsWith(DOT_XML)) {
+        scope = Scope.RESOURCE_FILE_SCOPE;
       }
       else {
-        // #collectionInformation above should have prevented this
-        assert false : fileType;
-        return lintResult;
-      }
-
-      Project project = lintResult.getModule().getProject();
-      if (project.isDisposed()) {
-        return lintResult;
+        // Something else, like svg
+        return null;
       }
-      if (DumbService.isDumb(project)) {
-        return lintResult; // Lint cannot run in dumb mode.
+    }
+    else if (fileType == JavaFileType.INSTANCE || fileType == KotlinFileType.INSTANCE) {
+      scope = Scope.JAVA_FILE_SCOPE;
+      if (name.endsWith(DOT_KTS)) {
+        scope = EnumSet.of(Scope.GRADLE_FILE, Scope.JAVA_FILE);
       }
+    }
+    else if (name.equals(OLD_PROGUARD_FILE) || name.equals(FN_PROJECT_PROGUARD_FILE)) {
+      scope = EnumSet.of(Scope.PROGUARD_FILE);
+    }
+    else if (fileType == GroovyFileType.GROOVY_FILE_TYPE) {
+      scope = Scope.GRADLE_SCOPE;
+    }
+    else if (fileType == PropertiesFileType.INSTANCE) {
+      scope = Scope.PROPERTY_SCOPE;
+    }
+    else {
+      // #collectionInformation above should have prevented this
+      assert false : fileType;
+      return null;
+    }
 
-      List<VirtualFile> files = Collections.singletonList(mainFile);
-      LintRequest request = new LintIdeRequest(client, project, files,
-                                               Collections.singletonList(lintResult.getModule()), true /* incremental */);
-      request.setScope(scope);
+    Project project = lintResult.getModule().getProject();
+    if (project.isDisposed()) {
+      return null;
+    }
+    if (DumbService.isDumb(project)) {
+      return null; // Lint cannot run in dumb mode.
+    }
 
-      LintDriver lint = client.createDriver(request);
-      lint.analyze();
+    List<VirtualFile> files = Collections.singletonList(mainFile);
+    LintRequest request = new LintIdeRequest(client, project, files,
+                                             Collections.singletonList(lintResult.getModule()), true /* incremental */);
+    request.setScope(scope);
 
-      lint.setAnalysisStartTime(startTime);
-      LintIdeSupport.get().logSession(lint, lintResult);
+    LintDriver lint = client.createDriver(request);
+    lint.analyze();
+    return lint;
+  }
+
+  /**
+   * Runs lint on the main file of {@code lintResult} once for the issues of each detector, to find out which detectors are slow. Lint has
+   * no hook around each detector, so they are timed one at a time. The problems found are discarded.
+   */
+  private static void profileDetectors(@NotNull LintEditorSession session, @NotNull LintEditorResult lintResult) {
+    Map<String, Set<Issue>> issuesByDetector = new TreeMap<>();
+    for (Issue issue : lintResult.getIssues()) {
+      String detector = issue.getImplementation().getDetectorClass().getSimpleName();
+      issuesByDetector.computeIfAbsent(detector, key -> new HashSet<>()).add(issue);
     }
-    finally {
-      Disposer.dispose(client);
+
+    for (Map.Entry<String, Set<Issue>> entry : issuesByDetector.entrySet()) {
+      if (lintResult.getModule().isDisposed()) {
+        return;
+      }
+      LintEditorResult detectorResult =
+        new LintEditorResult(lintResult.getModule(), lintResult.getMainFile(), lintResult.getMainFileContent(), entry.getValue());
+      long startTime = System.currentTimeMillis();
+      LintIdeClient client = session.acquireClient(detectorResult);
+      try {
+        if (analyze(client, detectorResult) == null) {
+          return;
+        }
+      }
+      finally {
+        session.releaseClient(client);
+      }
+      session.recordDetectorRun(entry.getKey(), System.currentTimeMillis() - startTime);
     }
-    return lintResult;
+    session.logSlowestDetectors(lintResult.getMainFile());
   }
 
   @NotNull
@@ -109,7 +109,7 @@ public class LintIdeClient extends LintClient implements Disposable {
   @NonNull protected Project myProject;
   @Nullable protected Map<com.android.tools.lint.detector.api.Project, Module> myModuleMap;
 
-  protected final LintResult myLintResult;
+  protected LintResult myLintResult;
 
   public LintIdeClient(@NonNull Project project, @NotNull LintResult lintResult) {
     super(CLIENT_STUDIO);
@@ -117,6 +117,14 @@ public class LintIdeClient extends LintClient implements Disposable {
     myLintResult = lintResult;
   }
 
+  /**
+   * Makes this client report the problems of its next run to {@code lintResult}, so that it can be reused for several runs.
+   * See {@link LintEditorSession}.
+   */
+  void setLintResult(@NotNull LintResult lintResult) {
+    myLintResult = lintResult;
+  }
+
   public LintDriver createDriver(@NonNull LintRequest request) {
     return createDriver(request, LintIdeSupport.get().getIssueRegistry());
   }
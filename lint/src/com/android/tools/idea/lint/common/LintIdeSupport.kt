@@ -31,6 +31,7 @@ import com.intellij.openapi.extensions.ExtensionPointName
 import com.intellij.openapi.fileTypes.FileTypes
 import com.intellij.openapi.module.Module
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.roots.ProjectRootModificationTracker
 import com.intellij.openapi.util.Pair
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.psi.PsiElement
@@ -107,6 +108,13 @@ abstract class LintIdeSupport {
     return true
   }
 
+  /**
+   * Returns a count that changes whenever the model of [project] changes, e.g. its modules, their dependencies or their build
+   * configuration. The lint results of a file are not reused once it changes, see [LintEditorSession].
+   */
+  open fun getProjectModelModificationCount(project: Project): Long =
+    ProjectRootModificationTracker.getInstance(project).modificationCount
+
   // Creating projects
   /** Creates a set of projects for the given IntelliJ modules */
   open fun createProject(client: LintIdeClient,
@@ -45,10 +45,15 @@ data class LintBatchResult(val project: Project,
     return issues
   }
 }
-class LintEditorResult constructor(private val myModule: Module,
-                                            val mainFile: VirtualFile,
-                                            val mainFileContent: String,
-                                            private val myIssues: Set<Issue>) : LintResult() {
+/**
+ * @param fileState the state of [mainFile] and of the project when [mainFileContent] was read, see [LintEditorSession]. Null when the
+ * problems found must not be reused.
+ */
+class LintEditorResult @JvmOverloads constructor(private val myModule: Module,
+                                                 val mainFile: VirtualFile,
+                                                 val mainFileContent: String,
+                                                 private val myIssues: Set<Issue>,
+                                                 val fileState: LintEditorSession.FileState? = null) : LintResult() {
   val problems: List<LintProblemData> = ArrayList()
 
   @Volatile
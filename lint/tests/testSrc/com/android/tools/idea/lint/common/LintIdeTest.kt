@@ -37,8 +37,11 @@ import com.intellij.openapi.module.Module
 import com.intellij.openapi.module.ModuleManager
 import com.intellij.openapi.module.ModuleTypeId
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.TextRange
 import com.intellij.openapi.util.io.FileUtil
+import com.intellij.openapi.util.registry.Registry
 import com.intellij.openapi.vfs.newvfs.impl.VfsRootAccess
+import com.intellij.psi.PsiDocumentManager
 import com.intellij.testFramework.InspectionTestUtil
 import com.intellij.testFramework.UsefulTestCase
 import com.intellij.testFramework.builders.JavaModuleFixtureBuilder
@@ -115,6 +118,57 @@ class LintIdeTest : UsefulTestCase() {
     assertThat(lintClient.module).isSameAs(module)
   }
 
+  fun testLintEditorSessionReusesEnabledIssuesAndProblems() {
+    val psiFile = myFixture.addFileToProject("src/p1/p2/WhySoSerious.java", "package p1.p2; public class WhySoSerious {}")
+    val module = ModuleManager.getInstance(myFixture.project).modules[0]
+    val session = LintEditorSession.get(module)
+
+    val issues = session.getEnabledIssues(psiFile)
+    assertThat(session.getEnabledIssues(psiFile)).isSameAs(issues)
+
+    val state = session.getFileState(psiFile, issues)
+    assertThat(session.getProblems(psiFile.virtualFile, state)).isNull()
+    val problems = listOf(LintProblemData(CommentDetector.EASTER_EGG, "message", TextRange(0, 7), null, null))
+    session.recordRun(psiFile.virtualFile, state, problems, 10)
+    assertThat(session.getProblems(psiFile.virtualFile, session.getFileState(psiFile, issues))).isEqualTo(problems)
+    // Detectors are only timed when enabled in the registry.
+    assertThat(session.shouldProfileDetectors(psiFile.virtualFile, 2000)).isFalse()
+    Registry.get(LintEditorSession.PROFILE_DETECTORS_KEY).setValue(true, testRootDisposable)
+    assertThat(session.shouldProfileDetectors(psiFile.virtualFile, 10)).isFalse()
+    assertThat(session.shouldProfileDetectors(psiFile.virtualFile, 2000)).isTrue()
+    assertThat(session.shouldProfileDetectors(psiFile.virtualFile, 2000)).isFalse()
+    session.recordDetectorRun("CommentDetector", 10)
+    session.recordDetectorRun("CommentDetector", 30)
+    assertThat(session.getTimings()["CommentDetector"]!!.averageTimeMs).isEqualTo(20)
+
+    val lintResult = LintEditorResult(module, psiFile.virtualFile, psiFile.text, issues)
+    val client = session.acquireClient(lintResult)
+    val otherClient = session.acquireClient(lintResult)
+    assertThat(otherClient).isNotSameAs(client)
+    session.releaseClient(client)
+    // Only one client is kept, the other one is disposed.
+    session.releaseClient(otherClient)
+    val reusedClient = session.acquireClient(lintResult)
+    assertThat(reusedClient).isSameAs(client)
+    session.releaseClient(reusedClient)
+
+    // Problems can't be reused after a change to another file, which detectors may resolve into.
+    val otherFile = myFixture.addFileToProject("src/p1/p2/Other.java", "package p1.p2; public class Other {}")
+    assertThat(session.getProblems(psiFile.virtualFile, session.getFileState(psiFile, issues))).isNull()
+    session.recordRun(psiFile.virtualFile, session.getFileState(psiFile, issues), problems, 10)
+    WriteCommandAction.runWriteCommandAction(project) {
+      otherFile.viewProvider.document!!.insertString(0, "// Comment\n")
+      PsiDocumentManager.getInstance(project).commitAllDocuments()
+    }
+    assertThat(session.getProblems(psiFile.virtualFile, session.getFileState(psiFile, issues))).isNull()
+
+    WriteCommandAction.runWriteCommandAction(project) {
+      psiFile.viewProvider.document!!.insertString(0, "// Comment\n")
+      PsiDocumentManager.getInstance(project).commitAllDocuments()
+    }
+    assertThat(session.getProblems(psiFile.virtualFile, session.getFileState(psiFile, issues))).isNull()
+  }
+
   fun testUseValueOf() {
     doTestWithFix(AndroidLintUseValueOfInspection(),
                   "Replace with valueOf()", "/src/test/pkg/UseValueOf.java", "java")
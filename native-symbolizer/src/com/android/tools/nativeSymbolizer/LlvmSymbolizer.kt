@@ -18,6 +18,7 @@ package com.android.tools.nativeSymbolizer
 import com.intellij.openapi.Disposable
 import java.io.*
 import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * Implementation of NativeSymbolizer that uses llvm-symbolizer.
@@ -33,63 +34,171 @@ import java.util.concurrent.*
  * TestSimpleMethodCall(_JNIEnv*, _jobject*)
  * /usr/local/google/home/ezemtsov/projects/android-apps/sum/app/src/main/cpp/native-lib.cpp:36:7
  *
+ * Responses come back in the order requests were written, so a batch of requests is pipelined: one thread keeps
+ * writing requests to stdin while another reads responses from stdout. Large batches are spread over a pool of
+ * up to [poolSize] llvm-symbolizer processes, and responses are kept in an LRU cache keyed by (symbol file, offset).
+ *
  * More info about llvm-symbolizer: https://llvm.org/docs/CommandGuide/llvm-symbolizer.html
  */
 class LlvmSymbolizer(private val symbolizerExe: String,
                      private val symLocator: SymbolFilesLocator,
-                     private val timeoutMsc: Long = 5000) : NativeSymbolizer {
+                     private val timeoutMsc: Long = 5000,
+                     private val poolSize: Int = DEFAULT_POOL_SIZE,
+                     cacheSize: Int = DEFAULT_CACHE_SIZE) : NativeSymbolizer {
+
+  companion object {
+    val DEFAULT_POOL_SIZE = Math.min(4, Runtime.getRuntime().availableProcessors())
+    const val DEFAULT_CACHE_SIZE = 100_000
+
+    // Don't bother starting another process for fewer requests than this, a single process chews through them quickly.
+    private const val MIN_REQUESTS_PER_PROCESS = 256
+  }
 
-  private var procHolder : ProcessHolder? = null
-  private val executor : ExecutorService = Executors.newSingleThreadExecutor()
+  private val procHolders = arrayOfNulls<ProcessHolder>(poolSize)
+  // Every process in the pool needs one thread writing its requests and one reading its responses.
+  private val executor : ExecutorService = Executors.newFixedThreadPool(poolSize * 2)
+  private val responseCache = ResponseCache(cacheSize)
 
   override fun symbolize(abiArch: String, module: String, offset: Long): Symbol? {
-    val symFiles = symLocator.findSymbolFiles(abiArch, module)
+    return symbolize(listOf(SymbolRequest(abiArch, module, offset))).first()
+  }
 
-    for (symFile in symFiles) {
-      val request = formatRequest(symFile, offset)
+  @Synchronized
+  override fun symbolize(requests: List<SymbolRequest>): List<Symbol?> {
+    val results = arrayOfNulls<Symbol>(requests.size)
+    val symFiles = requests.map { symLocator.findSymbolFiles(it.abiArch, it.module) }
 
-      val holder = getProcHolder()
-      val future = executor.submit( Callable<List<String>> {
-        holder.stdin.write(request)
-        holder.stdin.flush()
+    // A module can have several candidate symbol files. Try the first candidate for every request, then the second
+    // candidate for the requests that are still unresolved, and so on.
+    var candidate = 0
+    var unresolved = requests.indices.filter { symFiles[it].isNotEmpty() }
+    while (unresolved.isNotEmpty()) {
+      val keys = unresolved.map { SymbolFileOffset(symFiles[it][candidate], requests[it].offset) }
+      val responses = fetchResponses(keys.distinct())
 
-        val response: MutableList<String> = mutableListOf()
-        var responseLine: String?
-        while (true) {
-          responseLine = holder.stdout.readLine()
-          if (responseLine == null || responseLine.isEmpty()) {
-            break
-          }
-          response.add(responseLine)
+      val stillUnresolved = mutableListOf<Int>()
+      for ((i, index) in unresolved.withIndex()) {
+        val result = responses[keys[i]]?.let { parseResponse(it, requests[index].module) }
+        if (result != null) {
+          results[index] = result
         }
-        response
-      })
-      val response : List<String>
-      try {
-        response = future.get(timeoutMsc, TimeUnit.MILLISECONDS)
+        else if (candidate + 1 < symFiles[index].size) {
+          stillUnresolved.add(index)
+        }
+      }
+      unresolved = stillUnresolved
+      candidate++
+    }
+
+    return results.asList()
+  }
+
+  /**
+   * Returns raw llvm-symbolizer responses for the given keys. Keys whose responses couldn't be obtained (e.g. because
+   * the process timed out) are absent from the result.
+   */
+  private fun fetchResponses(keys: List<SymbolFileOffset>): Map<SymbolFileOffset, List<String>> {
+    val result = HashMap<SymbolFileOffset, List<String>>()
+    val misses = mutableListOf<SymbolFileOffset>()
+    for (key in keys) {
+      val cached = responseCache[key]
+      if (cached != null) {
+        result[key] = cached
+      }
+      else {
+        misses.add(key)
+      }
+    }
+    if (misses.isEmpty()) {
+      return result
+    }
+
+    // Keep requests for the same symbol file together, so each process only has to load the files of its own chunk.
+    misses.sortWith(compareBy({ it.symFile.path }, { it.offset }))
+    val processCount = Math.max(1, Math.min(poolSize, misses.size / MIN_REQUESTS_PER_PROCESS))
+    val chunks = misses.chunked((misses.size + processCount - 1) / processCount)
+
+    // Start the processes on the calling thread, so a missing executable is reported to the caller as an IOException.
+    val holders = chunks.indices.map { getProcHolder(it) }
+    val exchanges = chunks.mapIndexed { i, chunk -> startExchange(holders[i], chunk) }
+    for ((i, exchange) in exchanges.withIndex()) {
+      val responses = try {
+        exchange.await()
       } catch (e: TimeoutException) {
         getLogger().warn("llvm-symbolizer timed out", e)
-        stop()
+        stop(i)
         continue
       } catch (e: ExecutionException) {
         getLogger().warn("llvm-symbolizer communication failed", e)
-        stop()
+        stop(i)
         continue
       }
 
-      val result = parseResponse(response, module)
-      if (result != null)
-        return result
+      for ((key, response) in chunks[i].zip(responses)) {
+        result[key] = response
+        responseCache[key] = response
+      }
     }
+    return result
+  }
 
-    return null
+  private fun startExchange(holder: ProcessHolder, chunk: List<SymbolFileOffset>): Exchange {
+    val progress = AtomicInteger()
+    executor.submit {
+      try {
+        for (key in chunk) {
+          holder.stdin.write(formatRequest(key.symFile, key.offset))
+        }
+        holder.stdin.flush()
+      } catch (e: IOException) {
+        // The process died or was stopped, the reading side will report it.
+      }
+    }
+    val future = executor.submit(Callable<List<List<String>>> {
+      val responses = ArrayList<List<String>>(chunk.size)
+      while (responses.size < chunk.size) {
+        val response: MutableList<String> = mutableListOf()
+        while (true) {
+          val responseLine = holder.stdout.readLine() ?: throw EOFException("llvm-symbolizer closed its output")
+          if (responseLine.isEmpty()) {
+            break
+          }
+          response.add(responseLine)
+        }
+        responses.add(response)
+        progress.incrementAndGet()
+      }
+      responses
+    })
+    return Exchange(future, progress)
   }
 
-  private fun getProcHolder() : ProcessHolder {
-    var holder = procHolder
+  /**
+   * A batch of requests in flight on a single process. The timeout applies to each response rather than to the
+   * whole batch: as long as responses keep coming, a large batch is allowed to take as long as it needs.
+   */
+  private inner class Exchange(val future: Future<List<List<String>>>, val progress: AtomicInteger) {
+    fun await(): List<List<String>> {
+      var lastProgress = 0
+      while (true) {
+        try {
+          return future.get(timeoutMsc, TimeUnit.MILLISECONDS)
+        } catch (e: TimeoutException) {
+          val currentProgress = progress.get()
+          if (currentProgress == lastProgress) {
+            throw e
+          }
+          lastProgress = currentProgress
+        }
+      }
+    }
+  }
+
+  private fun getProcHolder(slot: Int) : ProcessHolder {
+    var holder = procHolders[slot]
     if (holder == null || !holder.process.isAlive) {
-      start()
-      holder = procHolder!! // procHolder must't be null after start()
+      start(slot)
+      holder = procHolders[slot]!! // procHolder must't be null after start()
     }
     return holder
   }
@@ -126,9 +235,9 @@ class LlvmSymbolizer(private val symbolizerExe: String,
     return Symbol(name, module, sourceFile, lineNumber)
   }
 
-  private fun start() {
-    if (procHolder != null)
-      stop()
+  private fun start(slot: Int) {
+    if (procHolders[slot] != null)
+      stop(slot)
 
     val builder = ProcessBuilder(symbolizerExe)
     val process = builder.start()
@@ -138,12 +247,27 @@ class LlvmSymbolizer(private val symbolizerExe: String,
 
     val stdin = OutputStreamWriter(process.outputStream, Charsets.UTF_8)
     val stdout = BufferedReader(InputStreamReader(process.inputStream, Charsets.UTF_8))
-    procHolder = ProcessHolder(process, stdout, stdin)
+    procHolders[slot] = ProcessHolder(process, stdout, stdin)
+  }
+
+  private fun stop(slot: Int) {
+    procHolders[slot]?.dispose()
+    procHolders[slot] = null
   }
 
   override fun stop() {
-    procHolder?.dispose()
-    procHolder = null
+    for (slot in procHolders.indices) {
+      stop(slot)
+    }
+  }
+
+  private data class SymbolFileOffset(val symFile: File, val offset: Long)
+
+  private class ResponseCache(private val maxSize: Int)
+    : LinkedHashMap<SymbolFileOffset, List<String>>(16, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<SymbolFileOffset, List<String>>?): Boolean {
+      return size > maxSize
+    }
   }
 
   private class ProcessHolder(val process: Process,
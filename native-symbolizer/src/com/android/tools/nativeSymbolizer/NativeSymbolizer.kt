@@ -25,6 +25,11 @@ import java.nio.file.Paths
 
 data class Symbol(val name: String, val module: String, val sourceFile: String = "", val lineNumber: Int = 0)
 
+/**
+ * A single (module, offset) pair to be resolved as part of a batch, see [NativeSymbolizer.symbolize].
+ */
+data class SymbolRequest(val abiArch: String, val module: String, val offset: Long)
+
 /**
  * Components that can fetch information about native symbols by a module and an offset.
  */
@@ -39,6 +44,17 @@ interface NativeSymbolizer {
    */
   @Throws(IOException::class)
   fun symbolize(abiArch: String, module: String, offset: Long): Symbol?
+
+  /**
+   * Obtains information about many functions at once. Implementations are free to reorder, deduplicate and parallelize
+   * the work, so callers with a lot of addresses should prefer this to calling [symbolize] in a loop.
+   * @return a list of the same size as [requests], holding the symbol for each request or null if it can't be found
+   */
+  @Throws(IOException::class)
+  fun symbolize(requests: List<SymbolRequest>): List<Symbol?> {
+    return requests.map { symbolize(it.abiArch, it.module, it.offset) }
+  }
+
   fun stop()
 }
 
@@ -26,6 +26,7 @@ import com.intellij.openapi.module.ModuleManager
 import com.intellij.openapi.project.Project
 import java.io.File
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Given a map of possible symbols locations finds symbol files
@@ -33,12 +34,19 @@ import java.util.*
  */
 class SymbolFilesLocator(private val cpuToSymbolDirs: Map<String, Set<File>>) {
 
+  // Keyed by (CPU arch, module base name). Symbol directories are fixed for the lifetime of the locator,
+  // so the same device module always maps to the same files.
+  private val symbolFilesCache = ConcurrentHashMap<Pair<String, String>, List<File>>()
+
   fun findSymbolFiles(cpuArch: String, module: String): List<File> {
-    // TODO (ezemetsov): Add a cache
+    val baseModuleName = File(File(module).name).nameWithoutExtension
+    return symbolFilesCache.computeIfAbsent(Pair(cpuArch, baseModuleName)) { lookUpSymbolFiles(cpuArch, baseModuleName) }
+  }
+
+  private fun lookUpSymbolFiles(cpuArch: String, baseModuleName: String): List<File> {
     // Just look in all dirs from the map and find files with the same
     // basename as a given device module.
     val symDirs = cpuToSymbolDirs.getOrDefault(cpuArch, setOf<File>()).toList()
-    val baseModuleName = File(File(module).name).nameWithoutExtension
     val symNameCandidates = arrayListOf(baseModuleName + ".so", baseModuleName + ".dwo")
     val result = mutableListOf<File>()
     for (dir in symDirs) {
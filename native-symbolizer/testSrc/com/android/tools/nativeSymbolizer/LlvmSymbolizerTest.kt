@@ -117,6 +117,38 @@ class LlvmSymbolizerTest {
     }
   }
 
+  @Test
+  fun testSymbolizeBatch() {
+    val requests = mutableListOf<SymbolRequest>()
+    val expectedNames = mutableListOf<String?>()
+    for (arch in architectures) {
+      val expectedSymbolsFile = Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile()
+      for (line in expectedSymbolsFile.readLines()) {
+        val symParts = line.split('|')
+        val offset = symParts[0].toLong(16)
+        // Ask for every address twice, so that duplicates within a batch are covered too.
+        for (i in 0..1) {
+          requests.add(SymbolRequest(arch, "/path/to/device/modules/" + LIB_FILE_NAME, offset + 1))
+          expectedNames.add(symParts[1])
+        }
+      }
+      requests.add(SymbolRequest(arch, "/p/libnotexists.so", 12345))
+      expectedNames.add(null)
+    }
+
+    // Results must not depend on how requests get spread over the process pool.
+    val symbolizer = LlvmSymbolizer(getLlvmSymbolizerPath(), SymbolFilesLocator(getSymDirMap()), poolSize = 3)
+    for (attempt in 0..1) {
+      // The second attempt is answered from the cache.
+      val symbols = symbolizer.symbolize(requests)
+      Assert.assertEquals(requests.size, symbols.size)
+      for ((index, symbol) in symbols.withIndex()) {
+        Assert.assertEquals(expectedNames[index], symbol?.name)
+      }
+    }
+    symbolizer.stop()
+  }
+
   @Test
   fun testExeRestart() {
     val symbolizer = createSymbolizer()
@@ -27,9 +27,10 @@ import com.android.tools.idea.nav.safeargs.safeArgsModeTracker
 import com.android.tools.idea.res.ResourceRepositoryManager
 import com.android.tools.idea.res.getSourceAsVirtualFile
 import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.fileEditor.FileDocumentManager
 import com.intellij.openapi.module.Module
 import com.intellij.openapi.project.DumbService
-import net.jcip.annotations.GuardedBy
+import com.intellij.openapi.vfs.VirtualFile
 import net.jcip.annotations.ThreadSafe
 import org.jetbrains.android.dom.manifest.getPackageName
 import org.jetbrains.android.facet.AndroidFacet
@@ -44,6 +45,29 @@ import org.jetbrains.android.facet.AndroidFacet
 @ThreadSafe
 class SafeArgsCacheModuleService private constructor(private val module: Module) {
   private class NavEntry(val resource: ResourceItem, val data: NavXmlData)
+
+  /**
+   * The light classes generated from a single navigation file.
+   *
+   * @param contentStamp the modification stamp of the navigation file content the classes were generated from
+   */
+  private class NavFileClasses(val contentStamp: Long,
+                               val directions: List<LightDirectionsClass>,
+                               val args: List<LightArgsClass>)
+
+  /**
+   * An immutable set of light classes, published as a whole so that readers never see a partially updated set.
+   *
+   * @param modificationCount the [ModuleNavigationResourcesModificationTracker] modification count the classes are up to date with
+   * @param modulePackage the package of the module the classes were generated for
+   */
+  private class SafeArgsClasses(val modificationCount: Long,
+                                val modulePackage: String?,
+                                val classesByFile: Map<VirtualFile, NavFileClasses>) {
+    val directions: List<LightDirectionsClass> = classesByFile.values.flatMap { it.directions }
+    val args: List<LightArgsClass> = classesByFile.values.flatMap { it.args }
+  }
+
   private val LOG = Logger.getInstance(SafeArgsCacheModuleService::class.java)
 
   companion object {
@@ -54,68 +78,76 @@ class SafeArgsCacheModuleService private constructor(private val module: Module)
     }
   }
 
+  /**
+   * Serializes the regeneration of the light classes. Readers of up to date classes don't need it.
+   */
   private val lock = Any()
 
-
   /**
-   * A modification tracker for module resources.
-   *
-   * We keep track of it to know when to regenerate [LightDirectionsClass] instances, since they depend on
-   * resources.
+   * The last generated light classes. Only replaced while holding [lock].
    */
-  @GuardedBy("lock")
-  private var lastResourcesModificationCount = Long.MIN_VALUE
+  @Volatile
+  private var classes = SafeArgsClasses(Long.MIN_VALUE, null, emptyMap())
 
-  @GuardedBy("lock")
-  private var _directions = emptyList<LightDirectionsClass>()
   val directions: List<LightDirectionsClass>
-    get() {
-      refreshSafeArgsLightClassesIfNecessary()
-      return _directions
-    }
+    get() = refreshSafeArgsLightClassesIfNecessary().directions
 
-  @GuardedBy("lock")
-  private var _args = emptyList<LightArgsClass>()
   val args: List<LightArgsClass>
-    get() {
-      refreshSafeArgsLightClassesIfNecessary()
-      return _args
-    }
+    get() = refreshSafeArgsLightClassesIfNecessary().args
 
-  private fun refreshSafeArgsLightClassesIfNecessary() {
-    val facet = AndroidFacet.getInstance(module)?.takeIf { it.isSafeArgsEnabled() } ?: return
-    val modulePackage = getPackageName(facet) ?: return
+  private fun refreshSafeArgsLightClassesIfNecessary(): SafeArgsClasses {
+    val currentClasses = classes
+    val facet = AndroidFacet.getInstance(module)?.takeIf { it.isSafeArgsEnabled() } ?: return currentClasses
+    val modulePackage = getPackageName(facet) ?: return currentClasses
 
     if (DumbService.getInstance(module.project).isDumb) {
       LOG.warn("Safe Arg classes may by temporarily stale due to indices not being ready right now.")
-      return
+      return currentClasses
     }
 
-    synchronized(lock) {
-      val modificationCount = ModuleNavigationResourcesModificationTracker.getInstance(module).modificationCount
+    val modificationCount = ModuleNavigationResourcesModificationTracker.getInstance(module).modificationCount
+    if (currentClasses.isUpToDate(modificationCount, modulePackage)) return currentClasses
 
-      if (modificationCount != lastResourcesModificationCount) {
-        val moduleResources = ResourceRepositoryManager.getModuleResources(facet)
-        val navResources = moduleResources.getResources(ResourceNamespace.RES_AUTO, ResourceType.NAVIGATION)
-
-        val entries = navResources.values()
-          .mapNotNull { resource ->
-            val file = resource.getSourceAsVirtualFile() ?: return@mapNotNull null
-            val data = NavXmlIndex.getDataForFile(facet.module.project, file) ?: return@mapNotNull null
-            NavEntry(resource, data)
-          }
+    synchronized(lock) {
+      val previousClasses = classes
+      if (previousClasses.isUpToDate(modificationCount, modulePackage)) return previousClasses
+
+      // Light classes depend on the module package, they can only be reused if it didn't change.
+      val reusableClasses = if (previousClasses.modulePackage == modulePackage) previousClasses.classesByFile else emptyMap()
+      val moduleResources = ResourceRepositoryManager.getModuleResources(facet)
+      val navResources = moduleResources.getResources(ResourceNamespace.RES_AUTO, ResourceType.NAVIGATION)
+
+      val classesByFile = LinkedHashMap<VirtualFile, NavFileClasses>()
+      for (resource in navResources.values()) {
+        val file = resource.getSourceAsVirtualFile() ?: continue
+        val contentStamp = getContentStamp(file)
+        val reusable = reusableClasses[file]
+        if (reusable != null && reusable.contentStamp == contentStamp) {
+          classesByFile[file] = reusable
+          continue
+        }
+
+        val data = NavXmlIndex.getDataForFile(facet.module.project, file) ?: continue
+        val entry = NavEntry(resource, data)
+        classesByFile[file] = NavFileClasses(contentStamp,
+                                             createLightDirectionsClasses(facet, modulePackage, entry).toList(),
+                                             createLightArgsClasses(facet, modulePackage, entry).toList())
+      }
 
-        _directions = entries
-          .flatMap { entry -> createLightDirectionsClasses(facet, modulePackage, entry) }
-          .toList()
+      val newClasses = SafeArgsClasses(modificationCount, modulePackage, classesByFile)
+      classes = newClasses
+      return newClasses
+    }
+  }
 
-        _args = entries
-          .flatMap { entry -> createLightArgsClasses(facet, modulePackage, entry) }
-          .toList()
+  private fun SafeArgsClasses.isUpToDate(modificationCount: Long, modulePackage: String) =
+    this.modificationCount == modificationCount && this.modulePackage == modulePackage
 
-        lastResourcesModificationCount = modificationCount
-      }
-    }
+  /**
+   * Returns a stamp that changes whenever the content of [file] changes, including unsaved changes.
+   */
+  private fun getContentStamp(file: VirtualFile): Long {
+    return FileDocumentManager.getInstance().getCachedDocument(file)?.modificationStamp ?: file.modificationStamp
   }
 
   private fun createLightDirectionsClasses(facet: AndroidFacet, modulePackage: String, entry: NavEntry): Collection<LightDirectionsClass> {
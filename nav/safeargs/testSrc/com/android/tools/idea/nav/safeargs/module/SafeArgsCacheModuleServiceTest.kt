@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.nav.safeargs.module
+
+import com.android.tools.idea.nav.safeargs.SafeArgsRule
+import com.android.tools.idea.nav.safeargs.extensions.replaceWithSaving
+import com.android.tools.idea.nav.safeargs.project.NavigationResourcesModificationListener
+import com.google.common.truth.Truth.assertThat
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.testFramework.RunsInEdt
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+
+@RunsInEdt
+class SafeArgsCacheModuleServiceTest {
+  @get:Rule
+  val safeArgsRule = SafeArgsRule()
+
+  @Before
+  fun setUp() {
+    NavigationResourcesModificationListener.ensureSubscribed(safeArgsRule.project)
+  }
+
+  @Test
+  fun onlyClassesOfModifiedNavigationFileAreRegenerated() {
+    val mainFile = safeArgsRule.fixture.addFileToProject("res/navigation/main.xml", navXml("main", "fragment1", "arg1"))
+    safeArgsRule.fixture.addFileToProject("res/navigation/other.xml", navXml("other", "fragment2", "arg2"))
+
+    val moduleCache = SafeArgsCacheModuleService.getInstance(safeArgsRule.androidFacet)
+    val argsBefore = moduleCache.args
+    assertThat(argsBefore.map { it.name }).containsExactly("Fragment1Args", "Fragment2Args")
+
+    WriteCommandAction.runWriteCommandAction(safeArgsRule.project) {
+      mainFile.virtualFile.replaceWithSaving("arg1", "renamedArg1", safeArgsRule.project)
+    }
+
+    val argsAfter = moduleCache.args
+    assertThat(argsAfter.map { it.name }).containsExactly("Fragment1Args", "Fragment2Args")
+    // The classes of the unmodified file are reused, the ones of the modified file are regenerated.
+    assertThat(argsAfter.single { it.name == "Fragment2Args" }).isSameAs(argsBefore.single { it.name == "Fragment2Args" })
+    assertThat(argsAfter.single { it.name == "Fragment1Args" }).isNotSameAs(argsBefore.single { it.name == "Fragment1Args" })
+    assertThat(argsAfter.single { it.name == "Fragment1Args" }.fragment.arguments.map { it.name }).containsExactly("renamedArg1")
+  }
+
+  @Test
+  fun classesAreReusedWhenNothingChanged() {
+    safeArgsRule.fixture.addFileToProject("res/navigation/main.xml", navXml("main", "fragment1", "arg1"))
+
+    val moduleCache = SafeArgsCacheModuleService.getInstance(safeArgsRule.androidFacet)
+
+    assertThat(moduleCache.args).isSameAs(moduleCache.args)
+  }
+
+  private fun navXml(id: String, fragmentId: String, argumentName: String): String {
+    val fragmentClass = fragmentId.capitalize()
+    //language=XML
+    return """
+      <?xml version="1.0" encoding="utf-8"?>
+      <navigation xmlns:android="http://schemas.android.com/apk/res/android"
+          xmlns:app="http://schemas.android.com/apk/res-auto" android:id="@+id/$id"
+          app:startDestination="@id/$fragmentId">
+
+        <fragment
+            android:id="@+id/$fragmentId"
+            android:name="test.safeargs.$fragmentClass"
+            android:label="$fragmentClass">
+
+            <argument
+                android:name="$argumentName"
+                app:argType="string" />
+        </fragment>
+      </navigation>
+    """.trimIndent()
+  }
+}
@@ -20,7 +20,11 @@ import static com.google.common.truth.Truth.assertThat;
 
 import com.android.tools.nativeSymbolizer.NativeSymbolizer;
 import com.android.tools.nativeSymbolizer.Symbol;
+import com.android.tools.nativeSymbolizer.SymbolRequest;
 import com.android.tools.profiler.proto.Memory.NativeCallStack;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.junit.Test;
@@ -58,6 +62,24 @@ public class IntelliJNativeFrameSymbolizerTest {
     assertThat(symbolizedFrame2).isEqualTo(expectedSymbolizedFrame2);
   }
 
+  @Test
+  public void testSymbolizeBatch() {
+    IntelliJNativeFrameSymbolizer frameSymbolizer = new IntelliJNativeFrameSymbolizer(new FakeNativeSymbolizer());
+
+    NativeCallStack.NativeFrame frameToSymbolize1 =
+      NativeCallStack.NativeFrame.newBuilder().setModuleName("test").setModuleOffset(100).build();
+    NativeCallStack.NativeFrame frameToSymbolize2 =
+      NativeCallStack.NativeFrame.newBuilder().setModuleName("test2").setModuleOffset(200).build();
+    List<NativeCallStack.NativeFrame> symbolizedFrames =
+      frameSymbolizer.symbolize("arm", Arrays.asList(frameToSymbolize1, frameToSymbolize2));
+
+    // Batch results match single-frame results, in the same order.
+    assertThat(symbolizedFrames).containsExactly(frameSymbolizer.symbolize("arm", frameToSymbolize1),
+                                                 frameSymbolizer.symbolize("arm", frameToSymbolize2)).inOrder();
+    assertThat(frameSymbolizer.symbolize("arm64", Arrays.asList(frameToSymbolize1)).get(0).getSymbolName())
+      .isEqualTo(String.format("0x%x", 100 - 1));
+  }
+
   private static class FakeNativeSymbolizer implements NativeSymbolizer {
     @Nullable
     @Override
@@ -71,6 +93,12 @@ public class IntelliJNativeFrameSymbolizerTest {
       }
     }
 
+    @NotNull
+    @Override
+    public List<Symbol> symbolize(@NotNull List<SymbolRequest> requests) {
+      return requests.stream().map(r -> symbolize(r.getAbiArch(), r.getModule(), r.getOffset())).collect(Collectors.toList());
+    }
+
     @Override
     public void stop() {
     }
@@ -24,6 +24,8 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
 import org.jetbrains.annotations.NotNull;
@@ -42,6 +44,19 @@ public class BaseCpuCapture implements CpuCapture {
   @NotNull
   private final Map<Integer, CaptureNode> myThreadIdToNode;
 
+  /**
+   * The roots of the capture trees, the only nodes {@link #getDurationsByFullName} indexes the trees of.
+   */
+  @NotNull
+  private final Set<CaptureNode> myRoots = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /**
+   * Durations of the nodes of each capture tree by full name, built the first time the durations of a tree are asked for, so that
+   * selecting a node doesn't require a traversal of its whole tree to compute the statistics of its occurrences.
+   */
+  @NotNull
+  private final Map<CaptureNode, CaptureNodeDurationIndex> myDurationIndexByRoot = new IdentityHashMap<>();
+
   /**
    * The CPU capture has its own {@link Timeline} for the purpose of exposing a variety of {@link Range}s.
    */
@@ -84,6 +99,7 @@ public class BaseCpuCapture implements CpuCapture {
       // Fill out DataStructures.
       availableThreadsBuilder.add(entry.getKey());
       threadIdToNodesBuilder.put(entry.getKey().getId(), entry.getValue());
+      myRoots.add(entry.getValue());
 
       // Try to find the main thread.
       if (mainThreadId == null && entry.getKey().isMainThread()) {
@@ -138,6 +154,19 @@ public class BaseCpuCapture implements CpuCapture {
     return myThreadIdToNode.values();
   }
 
+  @Override
+  @Nullable
+  public long[] getDurationsByFullName(@NotNull CaptureNode root, @NotNull String fullName) {
+    if (!myRoots.contains(root)) {
+      return null;
+    }
+    CaptureNodeDurationIndex index;
+    synchronized (myDurationIndexByRoot) {
+      index = myDurationIndexByRoot.computeIfAbsent(root, CaptureNodeDurationIndex::build);
+    }
+    return index.getDurations(fullName, myClockType);
+  }
+
   @Override
   public boolean containsThread(int threadId) {
     return getCaptureNode(threadId) != null;
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.perflib.vmtrace.ClockType;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Durations of the nodes of a capture tree, by full name, so that the statistics of all the occurrences of a node can be computed without
+ * traversing the whole tree. Both the global and the thread durations are indexed, as the clock type of a capture can be changed.
+ */
+public final class CaptureNodeDurationIndex {
+  private static final long[] NO_DURATIONS = new long[0];
+
+  @NotNull private final Map<String, Durations> myDurationsByFullName;
+
+  private static final class Durations {
+    private long[] myGlobal = new long[4];
+    private long[] myThread = new long[4];
+    private int mySize;
+
+    private void add(@NotNull CaptureNode node) {
+      if (mySize == myGlobal.length) {
+        myGlobal = Arrays.copyOf(myGlobal, mySize * 2);
+        myThread = Arrays.copyOf(myThread, mySize * 2);
+      }
+      myGlobal[mySize] = node.getEndGlobal() - node.getStartGlobal();
+      myThread[mySize] = node.getEndThread() - node.getStartThread();
+      mySize++;
+    }
+
+    private void trim() {
+      myGlobal = Arrays.copyOf(myGlobal, mySize);
+      myThread = Arrays.copyOf(myThread, mySize);
+    }
+  }
+
+  private CaptureNodeDurationIndex(@NotNull Map<String, Durations> durationsByFullName) {
+    myDurationsByFullName = durationsByFullName;
+  }
+
+  /**
+   * Indexes {@code root} and all its descendants.
+   */
+  @NotNull
+  public static CaptureNodeDurationIndex build(@NotNull CaptureNode root) {
+    Map<String, Durations> durationsByFullName = new HashMap<>();
+    // Iterative traversal, as trees can be deep enough to overflow the stack of a recursive one.
+    Deque<CaptureNode> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      CaptureNode node = stack.pop();
+      durationsByFullName.computeIfAbsent(node.getData().getFullName(), name -> new Durations()).add(node);
+      for (CaptureNode child : node.getChildren()) {
+        stack.push(child);
+      }
+    }
+    durationsByFullName.values().forEach(Durations::trim);
+    return new CaptureNodeDurationIndex(durationsByFullName);
+  }
+
+  /**
+   * @return the durations, under {@code clockType}, of the nodes named {@code fullName}, in no particular order. The returned array must
+   * not be modified.
+   */
+  @NotNull
+  public long[] getDurations(@NotNull String fullName, @NotNull ClockType clockType) {
+    Durations durations = myDurationsByFullName.get(fullName);
+    if (durations == null) {
+      return NO_DURATIONS;
+    }
+    return clockType == ClockType.THREAD ? durations.myThread : durations.myGlobal;
+  }
+}
@@ -104,6 +104,15 @@ public interface CpuCapture extends ConfigurableDurationData {
   @NotNull
   Collection<CaptureNode> getCaptureNodes();
 
+  /**
+   * Returns the durations, under the current clock type, of the nodes named {@code fullName} in the tree of {@code root}, or null if they
+   * aren't indexed and the tree has to be traversed to find them.
+   */
+  @Nullable
+  default long[] getDurationsByFullName(@NotNull CaptureNode root, @NotNull String fullName) {
+    return null;
+  }
+
   // Extended Capture Information - CPU data
   // These might not be available on all profiling technologies.
 
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.profiler.proto.Common;
+import com.android.tools.profiler.proto.Cpu;
+import com.android.tools.profiler.proto.Transport.EventGroup;
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
+import com.android.tools.profiler.proto.Transport.GetEventGroupsResponse;
+import com.android.tools.profiler.proto.TransportServiceGrpc;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Cache of the thread states of a process, shared by the {@link CpuThreadStateDataSeries} of its threads so that they don't query the
+ * unified pipeline one thread at a time: the states of all the threads are fetched with a single request.
+ * <p>
+ * The cache covers one time range, which is extended with just the missing part when a series asks for data outside of it, e.g. as the
+ * live range advances. The states of each thread are kept sorted by timestamp in primitive arrays.
+ */
+public class CpuThreadStateCache {
+  /**
+   * Extending the cached range to later timestamps fetches again the end of the range, as the states of a thread can reach the datastore
+   * after the ones of other threads with later timestamps.
+   */
+  private static final long REFETCH_MARGIN_NS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  @NotNull private final TransportServiceGrpc.TransportServiceBlockingStub myClient;
+  private final long myStreamId;
+  private final int myPid;
+
+  @NotNull private final Map<Integer, ThreadStates> myStatesByThreadId = new HashMap<>();
+
+  /**
+   * The range, in nanoseconds, all the thread states of which are cached. Empty when nothing is cached.
+   */
+  private long myCachedMinNs = Long.MAX_VALUE;
+  private long myCachedMaxNs = Long.MIN_VALUE;
+
+  /**
+   * The state transitions of a thread, sorted by timestamp.
+   */
+  private static final class ThreadStates {
+    private long[] myTimestampsNs = new long[INITIAL_CAPACITY];
+    private int[] myStates = new int[INITIAL_CAPACITY];
+    private int mySize;
+    /** Whether the last state is the end of the thread, in which case it isn't returned for ranges after it. */
+    private boolean myEnded;
+
+    /**
+     * Adds the {@code events} that are before the first cached state or after the last one, the others being already cached.
+     */
+    private void merge(@NotNull List<Common.Event> events) {
+      int prefixSize = 0;
+      if (mySize > 0) {
+        while (prefixSize < events.size() && events.get(prefixSize).getTimestamp() < myTimestampsNs[0]) {
+          prefixSize++;
+        }
+      }
+      if (prefixSize > 0) {
+        long[] timestampsNs = new long[prefixSize + myTimestampsNs.length];
+        int[] states = new int[prefixSize + myStates.length];
+        System.arraycopy(myTimestampsNs, 0, timestampsNs, prefixSize, mySize);
+        System.arraycopy(myStates, 0, states, prefixSize, mySize);
+        myTimestampsNs = timestampsNs;
+        myStates = states;
+        for (int i = 0; i < prefixSize; i++) {
+          set(i, events.get(i));
+        }
+        mySize += prefixSize;
+      }
+      for (Common.Event event : events.subList(prefixSize, events.size())) {
+        if (mySize == 0 || event.getTimestamp() > myTimestampsNs[mySize - 1]) {
+          if (mySize == myTimestampsNs.length) {
+            myTimestampsNs = Arrays.copyOf(myTimestampsNs, mySize * 2);
+            myStates = Arrays.copyOf(myStates, mySize * 2);
+          }
+          set(mySize++, event);
+          myEnded = event.getIsEnded();
+        }
+      }
+    }
+
+    private void set(int index, @NotNull Common.Event event) {
+      myTimestampsNs[index] = event.getTimestamp();
+      myStates[index] = event.getCpuThread().getStateValue();
+    }
+  }
+
+  /**
+   * The states of a thread in a range: the ones within the range, the one the thread is in at the start of the range and the first one
+   * after the range. The underlying arrays are shared with the cache, which never modifies the part of them exposed here.
+   */
+  public static final class ThreadStateRange {
+    private static final ThreadStateRange EMPTY = new ThreadStateRange(new long[0], new int[0], 0, 0);
+
+    @NotNull private final long[] myTimestampsNs;
+    @NotNull private final int[] myStates;
+    private final int myFrom;
+    private final int myTo;
+
+    private ThreadStateRange(@NotNull long[] timestampsNs, @NotNull int[] states, int from, int to) {
+      myTimestampsNs = timestampsNs;
+      myStates = states;
+      myFrom = from;
+      myTo = to;
+    }
+
+    public int size() {
+      return myTo - myFrom;
+    }
+
+    public long getTimestampNs(int index) {
+      return myTimestampsNs[myFrom + index];
+    }
+
+    @NotNull
+    public Cpu.CpuThreadData.State getState(int index) {
+      Cpu.CpuThreadData.State state = Cpu.CpuThreadData.State.forNumber(myStates[myFrom + index]);
+      return state != null ? state : Cpu.CpuThreadData.State.UNRECOGNIZED;
+    }
+  }
+
+  public CpuThreadStateCache(@NotNull TransportServiceGrpc.TransportServiceBlockingStub client, long streamId, int pid) {
+    myClient = client;
+    myStreamId = streamId;
+    myPid = pid;
+  }
+
+  /**
+   * Returns the states of the thread {@code threadId} from {@code minNs} to {@code maxNs}, fetching the states of all the threads for the
+   * part of the range that isn't cached yet.
+   */
+  @NotNull
+  public synchronized ThreadStateRange getStates(int threadId, long minNs, long maxNs) {
+    if (minNs > maxNs) {
+      return ThreadStateRange.EMPTY;
+    }
+    extendCachedRange(minNs, maxNs);
+
+    ThreadStates states = myStatesByThreadId.get(threadId);
+    if (states == null) {
+      return ThreadStateRange.EMPTY;
+    }
+    // Same as the datastore: include the state at the start of the range, unless the thread ended before it, and the next state after it.
+    int from = lowerBound(states.myTimestampsNs, states.mySize, minNs);
+    if (from > 0 && (from < states.mySize || !states.myEnded)) {
+      from--;
+    }
+    int to = upperBound(states.myTimestampsNs, states.mySize, maxNs);
+    if (to > 0 && to < states.mySize) {
+      to++;
+    }
+    return new ThreadStateRange(states.myTimestampsNs, states.myStates, from, to);
+  }
+
+  private void extendCachedRange(long minNs, long maxNs) {
+    if (myCachedMinNs > myCachedMaxNs || maxNs < myCachedMinNs || minNs > myCachedMaxNs) {
+      // Nothing cached is of use for the new range.
+      myStatesByThreadId.clear();
+      fetch(minNs, maxNs);
+      myCachedMinNs = minNs;
+      myCachedMaxNs = maxNs;
+      return;
+    }
+    if (minNs < myCachedMinNs) {
+      fetch(minNs, myCachedMinNs);
+      myCachedMinNs = minNs;
+    }
+    if (maxNs > myCachedMaxNs) {
+      fetch(Math.max(myCachedMinNs, myCachedMaxNs - REFETCH_MARGIN_NS), maxNs);
+      myCachedMaxNs = maxNs;
+    }
+  }
+
+  private void fetch(long minNs, long maxNs) {
+    GetEventGroupsResponse response = myClient.getEventGroups(
+      GetEventGroupsRequest.newBuilder()
+        .setStreamId(myStreamId)
+        .setPid(myPid)
+        .setKind(Common.Event.Kind.CPU_THREAD)
+        .setFromTimestamp(minNs)
+        .setToTimestamp(maxNs)
+        .build());
+    for (EventGroup group : response.getGroupsList()) {
+      if (group.getEventsCount() > 0) {
+        int threadId = group.getEvents(0).getCpuThread().getTid();
+        myStatesByThreadId.computeIfAbsent(threadId, id -> new ThreadStates()).merge(group.getEventsList());
+      }
+    }
+  }
+
+  /**
+   * @return the index of the first of the {@code size} first {@code timestamps} that is not less than {@code value}.
+   */
+  private static int lowerBound(@NotNull long[] timestamps, int size, long value) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (timestamps[mid] < value) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the index of the first of the {@code size} first {@code timestamps} that is greater than {@code value}.
+   */
+  private static int upperBound(@NotNull long[] timestamps, int size, long value) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (timestamps[mid] <= value) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
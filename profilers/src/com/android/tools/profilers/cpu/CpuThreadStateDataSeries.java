@@ -20,9 +20,6 @@ import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Cpu;
-import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
-import com.android.tools.profiler.proto.Transport.GetEventGroupsResponse;
-import com.android.tools.profiler.proto.TransportServiceGrpc;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -31,22 +28,15 @@ import org.jetbrains.annotations.Nullable;
 
 /**
  * This class is responsible for querying CPU thread data from unified pipeline {@link Common.Event} and extract a single thread data.
+ * The events are fetched for all the threads at once by a {@link CpuThreadStateCache}.
  */
 public class CpuThreadStateDataSeries implements DataSeries<ThreadState> {
-  @NotNull private final TransportServiceGrpc.TransportServiceBlockingStub myClient;
-  private final long myStreamId;
-  private final int myPid;
+  @NotNull private final CpuThreadStateCache myCache;
   private final int myThreadId;
   @Nullable private final CpuCapture mySelectedCapture;
 
-  public CpuThreadStateDataSeries(@NotNull TransportServiceGrpc.TransportServiceBlockingStub client,
-                                  long streamId,
-                                  int pid,
-                                  int threadId,
-                                  @Nullable CpuCapture selectedCapture) {
-    myClient = client;
-    myStreamId = streamId;
-    myPid = pid;
+  public CpuThreadStateDataSeries(@NotNull CpuThreadStateCache cache, int threadId, @Nullable CpuCapture selectedCapture) {
+    myCache = cache;
     myThreadId = threadId;
     mySelectedCapture = selectedCapture;
   }
@@ -56,34 +46,20 @@ public class CpuThreadStateDataSeries implements DataSeries<ThreadState> {
     List<SeriesData<ThreadState>> series = new ArrayList<>();
     long minNs = TimeUnit.MICROSECONDS.toNanos((long)rangeUs.getMin());
     long maxNs = TimeUnit.MICROSECONDS.toNanos((long)rangeUs.getMax());
-    GetEventGroupsResponse response = myClient.getEventGroups(
-      GetEventGroupsRequest.newBuilder()
-        .setStreamId(myStreamId)
-        .setPid(myPid)
-        .setKind(Common.Event.Kind.CPU_THREAD)
-        .setGroupId(myThreadId)
-        .setFromTimestamp(minNs)
-        .setToTimestamp(maxNs)
-        .build());
-    // We don't expect more than one data group for the given group ID.
-    assert response.getGroupsCount() <= 1;
-    if (response.getGroupsCount() == 1) {
+    CpuThreadStateCache.ThreadStateRange states = myCache.getStates(myThreadId, minNs, maxNs);
+    if (states.size() > 0) {
       // Merges information from traces and samples:
-      ArrayList<Double> captureTimes = new ArrayList<>(2);
-      if (mySelectedCapture != null && mySelectedCapture.containsThread(myThreadId)) {
-        captureTimes.add(mySelectedCapture.getRange().getMin());
-        captureTimes.add(mySelectedCapture.getRange().getMax());
-      }
+      long[] captureTimes = mySelectedCapture != null && mySelectedCapture.containsThread(myThreadId)
+                            ? new long[]{(long)mySelectedCapture.getRange().getMin(), (long)mySelectedCapture.getRange().getMax()}
+                            : new long[0];
 
       int i = 0;
       int j = 0;
       boolean inCapture = false;
       Cpu.CpuThreadData.State state = Cpu.CpuThreadData.State.UNSPECIFIED;
-      List<Common.Event> events = response.getGroups(0).getEventsList();
-      while (i < events.size()) {
-        Common.Event event = events.get(i);
-        long timestamp = TimeUnit.NANOSECONDS.toMicros(event.getTimestamp());
-        long captureTime = j < captureTimes.size() ? captureTimes.get(j).longValue() : Long.MAX_VALUE;
+      while (i < states.size()) {
+        long timestamp = TimeUnit.NANOSECONDS.toMicros(states.getTimestampNs(i));
+        long captureTime = j < captureTimes.length ? captureTimes[j] : Long.MAX_VALUE;
 
         long time;
         if (captureTime < timestamp) {
@@ -92,7 +68,7 @@ public class CpuThreadStateDataSeries implements DataSeries<ThreadState> {
           j++;
         }
         else {
-          state = event.getCpuThread().getState();
+          state = states.getState(i);
           time = timestamp;
           i++;
         }
@@ -101,9 +77,9 @@ public class CpuThreadStateDataSeries implements DataSeries<ThreadState> {
           series.add(new SeriesData<>(time, CpuThreadsModel.getState(state, inCapture)));
         }
       }
-      while (j < captureTimes.size()) {
+      while (j < captureTimes.length) {
         inCapture = !inCapture;
-        series.add(new SeriesData<>(captureTimes.get(j).longValue(), CpuThreadsModel.getState(state, inCapture)));
+        series.add(new SeriesData<>(captureTimes[j], CpuThreadsModel.getState(state, inCapture)));
         j++;
       }
     }
@@ -56,6 +56,11 @@ public class CpuThreadsModel extends DragAndDropListModel<CpuThreadsModel.Ranged
 
   private final boolean myIsImportedTrace;
 
+  /**
+   * Thread states of the threads of the session, shared by their data series. Null when the states are fetched from the legacy pipeline.
+   */
+  @Nullable private final CpuThreadStateCache myThreadStateCache;
+
   @VisibleForTesting
   protected final HashMap<Integer, RangedCpuThread> myThreadIdToCpuThread;
 
@@ -69,6 +74,10 @@ public class CpuThreadsModel extends DragAndDropListModel<CpuThreadsModel.Ranged
     myAspectObserver = new AspectObserver();
     myThreadIdToCpuThread = new HashMap<>();
     myIsImportedTrace = isImportedTrace;
+    myThreadStateCache =
+      myProfilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()
+      ? new CpuThreadStateCache(myProfilers.getClient().getTransportClient(), mySession.getStreamId(), mySession.getPid())
+      : null;
     myRange.addDependency(myAspectObserver)
       .onChange(Range.Aspect.RANGE, myIsImportedTrace ? this::importRangeChanged : this::nonImportRangeChanged);
 
@@ -258,12 +267,8 @@ public class CpuThreadsModel extends DragAndDropListModel<CpuThreadsModel.Ranged
         }
       }
       else {
-        mySeries = myProfilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled() ?
-                   new CpuThreadStateDataSeries(myProfilers.getClient().getTransportClient(),
-                                                mySession.getStreamId(),
-                                                mySession.getPid(),
-                                                threadId,
-                                                capture) :
+        mySeries = myThreadStateCache != null ?
+                   new CpuThreadStateDataSeries(myThreadStateCache, threadId, capture) :
                    new LegacyCpuThreadStateDataSeries(myProfilers.getClient().getCpuClient(), mySession, threadId, capture);
         // If we have an Atrace capture selected then we need to create a MergeCaptureDataSeries
         if (capture != null && capture.getType() == Cpu.CpuTraceType.ATRACE) {
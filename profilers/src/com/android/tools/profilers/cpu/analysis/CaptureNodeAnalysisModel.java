@@ -58,6 +58,10 @@ public class CaptureNodeAnalysisModel implements CpuAnalyzable<CaptureNodeAnalys
    */
   @NotNull
   public CaptureNodeAnalysisStats getAllOccurrenceStats() {
+    long[] durations = myCapture.getDurationsByFullName(myNode.findRootNode(), myNode.getData().getFullName());
+    if (durations != null && durations.length > 0) {
+      return CaptureNodeAnalysisStats.Companion.fromDurations(durations);
+    }
     List<CaptureNode> allOccurrences = myNode.findRootNode().getDescendantsStream()
       .filter(this::matchesFullName)
       .collect(Collectors.toList());
@@ -42,20 +42,22 @@ class CaptureNodeAnalysisStats private constructor() {
     /**
      * Takes a list of [CaptureNode]s and compute their statistics, e.g. standard deviation.
      */
-    fun fromNodes(nodes: List<CaptureNode>) = CaptureNodeAnalysisStats().apply {
+    fun fromNodes(nodes: List<CaptureNode>) = fromDurations(LongArray(nodes.size) { nodes[it].duration })
+
+    /**
+     * Takes the durations of nodes and compute their statistics, e.g. standard deviation.
+     */
+    fun fromDurations(durations: LongArray) = CaptureNodeAnalysisStats().apply {
       // First pass to compute count, min, max and average.
-      nodes.forEach {
-        val duration = it.duration
+      durations.forEach {
         count++
-        sum += duration
-        min = min(min, duration)
-        max = max(max, duration)
+        sum += it
+        min = min(min, it)
+        max = max(max, it)
       }
       // Second pass to compute standard deviation.
       val avg = average
-      val sumOfSquareDiff = nodes.asSequence()
-        .map { (it.duration - avg) * (it.duration - avg) }
-        .sum()
+      val sumOfSquareDiff = durations.sumByDouble { (it - avg) * (it - avg) }
       standardDeviation = sqrt(sumOfSquareDiff / count)
     }
   }
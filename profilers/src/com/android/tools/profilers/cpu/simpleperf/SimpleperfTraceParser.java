@@ -28,7 +28,6 @@ import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.NoSymbolModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Lists;
 import com.intellij.openapi.diagnostic.Logger;
 import java.io.File;
 import java.io.FileInputStream;
@@ -37,12 +36,14 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -83,9 +84,16 @@ public class SimpleperfTraceParser implements TraceParser {
   private final Map<Integer, SimpleperfReport.Thread> myThreads;
 
   /**
-   * List of samples containing method trace data.
+   * Maps a thread id to the samples of that thread containing method trace data, in the order they were read. They are only kept until
+   * the method call trees are built.
    */
-  @VisibleForTesting final List<SimpleperfReport.Sample> mySamples;
+  private final Map<Integer, ThreadSamples> mySamplesByThread;
+
+  /**
+   * Method models by call chain entry. Call chains share most of their entries, so the models are shared by all the nodes of all the
+   * method call trees corresponding to the same method called from the same place.
+   */
+  private final ConcurrentMap<MethodKey, CaptureNodeModel> myMethodModels;
 
   /**
    * Maps a {@link CpuThreadInfo} to its correspondent method call tree.
@@ -102,6 +110,13 @@ public class SimpleperfTraceParser implements TraceParser {
    */
   private long myLostSampleCount;
 
+  /**
+   * Number of samples actually read from the trace file, and timestamps of the first and last ones.
+   */
+  private long myReadSampleCount;
+  private long myFirstSampleTimestamp;
+  private long myLastSampleTimestamp;
+
   /**
    * Capture range in absolute time, measured in microseconds.
    */
@@ -122,7 +137,8 @@ public class SimpleperfTraceParser implements TraceParser {
 
   public SimpleperfTraceParser() {
     myFiles = new HashMap<>();
-    mySamples = new ArrayList<>();
+    mySamplesByThread = new HashMap<>();
+    myMethodModels = new ConcurrentHashMap<>();
     myCaptureTrees = new HashMap<>();
     myThreads = new HashMap<>();
   }
@@ -135,15 +151,18 @@ public class SimpleperfTraceParser implements TraceParser {
     return splitPath[splitPath.length - 1];
   }
 
-  private static boolean equals(SimpleperfReport.Sample.CallChainEntry c1, SimpleperfReport.Sample.CallChainEntry c2) {
-    boolean isSameFileAndSymbolId = c1.getFileId() == c2.getFileId() && c1.getSymbolId() == c2.getSymbolId();
+  /**
+   * Returns whether the call chain entries {@code i1} and {@code i2} of {@code samples} are equal.
+   */
+  private static boolean equals(ThreadSamples samples, int i1, int i2) {
+    boolean isSameFileAndSymbolId = samples.myFileIds[i1] == samples.myFileIds[i2] && samples.mySymbolIds[i1] == samples.mySymbolIds[i2];
     if (!isSameFileAndSymbolId) {
       // Call chain entries need to be obtained from the same file and have the same symbol id in order to be equal.
       return false;
     }
-    if (c1.getSymbolId() == -1) {
+    if (samples.mySymbolIds[i1] == INVALID_SYMBOL_ID) {
       // Symbol is invalid, fallback to vaddress
-      return c1.getVaddrInFile() == c2.getVaddrInFile();
+      return samples.myVAddresses[i1] == samples.myVAddresses[i2];
     }
     // Both file and symbol id match, and symbol is valid
     return true;
@@ -201,7 +220,8 @@ public class SimpleperfTraceParser implements TraceParser {
    * message Record(record_N) (having record_size_N bytes)
    * LittleEndian32(0)
    * <p>
-   * Parsed data is stored in {@link #myFiles} and {@link #mySamples}.
+   * Parsed data is stored in {@link #myFiles} and {@link #mySamplesByThread}. Records are decoded one at a time from the mapped file, and
+   * samples are added to the samples of their thread as soon as they are decoded.
    */
   @VisibleForTesting
   void parseTraceFile(File trace) throws IOException {
@@ -215,9 +235,10 @@ public class SimpleperfTraceParser implements TraceParser {
     // 0 is used to indicate the end of the trace
     while (recordSize != 0) {
       // The next recordSize bytes should represent the record
-      byte[] recordBytes = new byte[recordSize];
-      buffer.get(recordBytes);
-      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(recordBytes);
+      ByteBuffer recordBuffer = buffer.slice();
+      recordBuffer.limit(recordSize);
+      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(recordBuffer);
+      buffer.position(buffer.position() + recordSize);
 
       switch (record.getRecordDataCase()) {
         case FILE:
@@ -232,7 +253,11 @@ public class SimpleperfTraceParser implements TraceParser {
           break;
         case SAMPLE:
           SimpleperfReport.Sample sample = record.getSample();
-          mySamples.add(sample);
+          if (myReadSampleCount++ == 0) {
+            myFirstSampleTimestamp = sample.getTime();
+          }
+          myLastSampleTimestamp = sample.getTime();
+          mySamplesByThread.computeIfAbsent(sample.getThreadId(), threadId -> new ThreadSamples()).add(sample);
           break;
         case THREAD:
           SimpleperfReport.Thread thread = record.getThread();
@@ -252,7 +277,7 @@ public class SimpleperfTraceParser implements TraceParser {
       recordSize = buffer.getInt();
     }
 
-    if (mySamples.size() != mySampleCount) {
+    if (myReadSampleCount != mySampleCount) {
       // TODO: create a trace file to test this exception is thrown when it should.
       throw new IllegalStateException("Samples count doesn't match the number of samples read.");
     }
@@ -278,39 +303,32 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   /**
-   * Parses the data from {@link #mySamples} into a map of tid -> {@link CaptureNode}.
+   * Parses the data from {@link #mySamplesByThread} into a map of tid -> {@link CaptureNode}. The trees of the threads are built in
+   * parallel.
    */
   private void parseSampleData() {
-    if (mySamples.isEmpty()) {
+    if (myReadSampleCount == 0) {
       return;
     }
     // Set the capture range
-    long startTimestamp = mySamples.get(0).getTime();
-    long endTimestamp = mySamples.get(mySamples.size() - 1).getTime();
-    myRange = new Range(TimeUnit.NANOSECONDS.toMicros(startTimestamp), TimeUnit.NANOSECONDS.toMicros(endTimestamp));
+    myRange = new Range(TimeUnit.NANOSECONDS.toMicros(myFirstSampleTimestamp), TimeUnit.NANOSECONDS.toMicros(myLastSampleTimestamp));
 
-    // Split the samples per thread.
-    Map<Integer, List<SimpleperfReport.Sample>> threadSamples = splitSamplesPerThread();
+    for (int threadId : mySamplesByThread.keySet()) {
+      if (!myThreads.containsKey(threadId)) {
+        throw new IllegalStateException("Malformed trace file: thread with id " + threadId + " not found.");
+      }
+    }
 
     // Process the samples for each thread
-    for (Map.Entry<Integer, List<SimpleperfReport.Sample>> threadSamplesEntry : threadSamples.entrySet()) {
-      parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue());
-    }
+    myCaptureTrees.putAll(mySamplesByThread.entrySet().parallelStream().collect(
+      Collectors.toMap(entry -> createThreadInfo(entry.getKey()), entry -> parseThreadSamples(entry.getKey(), entry.getValue()))));
+    mySamplesByThread.clear();
   }
 
-  /**
-   * Group the samples collected by thread.
-   */
-  private Map<Integer, List<SimpleperfReport.Sample>> splitSamplesPerThread() {
-    Map<Integer, List<SimpleperfReport.Sample>> threadSamples = new HashMap<>();
-    for (SimpleperfReport.Sample sample : mySamples) {
-      int threadId = sample.getThreadId();
-      if (!threadSamples.containsKey(threadId)) {
-        threadSamples.put(threadId, new ArrayList<>());
-      }
-      threadSamples.get(threadId).add(sample);
-    }
-    return threadSamples;
+  @NotNull
+  private CpuThreadInfo createThreadInfo(int threadId) {
+    SimpleperfReport.Thread thread = myThreads.get(threadId);
+    return new CpuThreadInfo(threadId, thread.getThreadName(), threadId == thread.getProcessId());
   }
 
   // TODO: support thread time
@@ -326,47 +344,38 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   /**
-   * Parses the list of samples of a thread into a {@link CaptureNode} tree.
+   * Parses the samples of a thread into a {@link CaptureNode} tree, and returns its root.
    */
-  private void parseThreadSamples(int threadId, List<SimpleperfReport.Sample> threadSamples) {
-    if (threadSamples.isEmpty()) {
-      getLog().warn(String.format("Warning: No samples read for thread %s (%d)", myThreads.get(threadId), threadId));
-      return;
-    }
-
-    if (!myThreads.containsKey(threadId)) {
-      throw new IllegalStateException("Malformed trace file: thread with id " + threadId + " not found.");
-    }
-
+  @NotNull
+  private CaptureNode parseThreadSamples(int threadId, @NotNull ThreadSamples threadSamples) {
     // Add a root node to represent the thread itself.
-    long firstTimestamp = threadSamples.get(0).getTime();
-    SimpleperfReport.Thread thread = myThreads.get(threadId);
-    CaptureNode root = createCaptureNode(new SingleNameModel(thread.getThreadName()), firstTimestamp);
+    long firstTimestamp = threadSamples.myTimestamps[0];
+    CaptureNode root = createCaptureNode(new SingleNameModel(myThreads.get(threadId).getThreadName()), firstTimestamp);
     root.setDepth(0);
-    myCaptureTrees.put(new CpuThreadInfo(threadId, thread.getThreadName(), threadId == thread.getProcessId()), root);
-
-    // Parse the first call chain so we have a value for lastCallchain
-    List<SimpleperfReport.Sample.CallChainEntry> previousCallChain = Lists.reverse(threadSamples.get(0).getCallchainList());
-    // Node used to traverse the tree. In the first traversal we pass an empty list as previous call chain and root as last visited node.
-    CaptureNode lastVisitedNode = parseCallChain(previousCallChain, Collections.emptyList(), threadSamples.get(0).getTime(), root);
-
-    // Now parse all the rest of the samples collected for this thread
-    for (int i = 1; i < threadSamples.size(); i++) {
-      SimpleperfReport.Sample sample = threadSamples.get(i);
-      // Reverse the call chain order because simpleperf returns the call chains ordered from leaf to root,
-      // so reversing it makes the traversal easier.
-      List<SimpleperfReport.Sample.CallChainEntry> callChain = Lists.reverse(sample.getCallchainList());
+
+    // Node used to traverse the tree. In the first traversal we pass an empty call chain as previous call chain and root as last visited
+    // node.
+    CaptureNode lastVisitedNode = root;
+    int previousCallChainStart = 0;
+    int previousCallChainEnd = 0;
+
+    for (int i = 0; i < threadSamples.mySampleCount; i++) {
+      // Call chains are stored from root to leaf, which makes the traversal easier.
+      int callChainStart = threadSamples.getCallChainStart(i);
+      int callChainEnd = threadSamples.myCallChainEnds[i];
       // TODO: when --trace-offcpu is supported, we will need to call updateAncestorsEndTime if sample has a "schedule" out event.
-      lastVisitedNode = parseCallChain(callChain, previousCallChain, sample.getTime(), lastVisitedNode);
-      previousCallChain = callChain;
+      lastVisitedNode = parseCallChain(threadSamples, callChainStart, callChainEnd, previousCallChainStart, previousCallChainEnd,
+                                       threadSamples.myTimestamps[i], lastVisitedNode);
+      previousCallChainStart = callChainStart;
+      previousCallChainEnd = callChainEnd;
     }
 
     // Finally, update the end timestamp of the nodes in the last sample of the thread, which should be the last sample's timestamp.
     // TODO: when --trace-offcpu is supported, we need to check if the last sample has a "schedule" out event before updating the end time.
-    long lastTimestamp = mySamples.get(mySamples.size() - 1).getTime();
-    updateAncestorsEndTime(lastTimestamp, lastVisitedNode);
+    updateAncestorsEndTime(myLastSampleTimestamp, lastVisitedNode);
     // update the root timestamp
-    setNodeEndTime(root, lastTimestamp);
+    setNodeEndTime(root, myLastSampleTimestamp);
+    return root;
   }
 
   /**
@@ -382,33 +391,35 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   /**
-   * Given a {@link SimpleperfReport.Sample.CallChainEntry} and the previous one, add the new method calls as nodes to the tree and set
-   * their start time to the given timestamp. Also, check which methods are not on the call chain anymore and update their end time.
-   * Receives a {@link CaptureNode} as a starting point to traverse the tree when adding new nodes or visiting existing ones. Returns the
-   * last visited node.
+   * Given the call chain of a sample and the previous one, as ranges of the call chain entries of {@code samples}, add the new method calls
+   * as nodes to the tree and set their start time to the given timestamp. Also, check which methods are not on the call chain anymore and
+   * update their end time. Receives a {@link CaptureNode} as a starting point to traverse the tree when adding new nodes or visiting
+   * existing ones. Returns the last visited node.
    */
-  private CaptureNode parseCallChain(List<SimpleperfReport.Sample.CallChainEntry> callChain,
-                                     List<SimpleperfReport.Sample.CallChainEntry> previousCallChain,
+  private CaptureNode parseCallChain(ThreadSamples samples, int callChainStart, int callChainEnd,
+                                     int previousCallChainStart, int previousCallChainEnd,
                                      long sampleTimestamp, CaptureNode lastVisitedNode) {
     // Node used to traverse the tree when adding new nodes or going up to find the divergent node ancestor.
     CaptureNode traversalNode = lastVisitedNode;
+    int callChainSize = callChainEnd - callChainStart;
+    int previousCallChainSize = previousCallChainEnd - previousCallChainStart;
 
     // Find the node where the current call chain diverge from the previous one
     int divergenceIndex = 0;
-    while (divergenceIndex < callChain.size() && divergenceIndex < previousCallChain.size() &&
-           equals(previousCallChain.get(divergenceIndex), callChain.get(divergenceIndex))) {
+    while (divergenceIndex < callChainSize && divergenceIndex < previousCallChainSize &&
+           equals(samples, previousCallChainStart + divergenceIndex, callChainStart + divergenceIndex)) {
       divergenceIndex++;
     }
 
     // If there is a divergence, we update the end time of the traversal node and go up in the tree until we find the divergent node parent.
-    if (divergenceIndex < previousCallChain.size()) {
-      int divergenceCount = previousCallChain.size() - divergenceIndex;
+    if (divergenceIndex < previousCallChainSize) {
+      int divergenceCount = previousCallChainSize - divergenceIndex;
       traversalNode = findDivergenceAndUpdateEndTime(divergenceCount, sampleTimestamp, traversalNode);
     }
 
     // We add the new nodes (if any) present in the new call chain as descendants of the parent of the first divergent node.
-    if (divergenceIndex < callChain.size()) {
-      traversalNode = addNewNodes(callChain, traversalNode, divergenceIndex, sampleTimestamp);
+    if (divergenceIndex < callChainSize) {
+      traversalNode = addNewNodes(samples, callChainStart, callChainEnd, traversalNode, callChainStart + divergenceIndex, sampleTimestamp);
     }
 
     // Finally, return the traversal node.
@@ -430,16 +441,17 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   /**
-   * Given a list of call chain entries and a start index, convert them to {@link CaptureNode} and add them as descendants of a given node.
+   * Given a range of call chain entries and a start index, convert them to {@link CaptureNode} and add them as descendants of a given node.
    * Returns the last visited (added) node.
    */
-  private CaptureNode addNewNodes(List<SimpleperfReport.Sample.CallChainEntry> callChain,
+  private CaptureNode addNewNodes(ThreadSamples samples, int callChainStart, int callChainEnd,
                                   CaptureNode node, int startIndex, long startTimestamp) {
     assert node != null;
-    for (int i = startIndex; i < callChain.size(); i++) {
+    for (int i = startIndex; i < callChainEnd; i++) {
       // Get the parent function vAddress. That corresponds to the line of the parent function where the current function is called.
-      long parentVAddress = i > 0 ? callChain.get(i - 1).getVaddrInFile() : -1;
-      CaptureNode child = createCaptureNode(methodModelFromCallchainEntry(callChain.get(i), parentVAddress), startTimestamp);
+      long parentVAddress = i > callChainStart ? samples.myVAddresses[i - 1] : -1;
+      CaptureNode child = createCaptureNode(getMethodModel(samples.myFileIds[i], samples.mySymbolIds[i], samples.myVAddresses[i],
+                                                           parentVAddress), startTimestamp);
       node.addChild(child);
       child.setDepth(node.getDepth() + 1);
       node = child;
@@ -448,15 +460,28 @@ public class SimpleperfTraceParser implements TraceParser {
     return node;
   }
 
-  private CaptureNodeModel methodModelFromCallchainEntry(SimpleperfReport.Sample.CallChainEntry callChainEntry, long parentVAddress) {
-    int symbolId = callChainEntry.getSymbolId();
-    SimpleperfReport.File symbolFile = myFiles.get(callChainEntry.getFileId());
+  /**
+   * Returns the model of the method of a call chain entry, creating it the first time the method is seen called from
+   * {@code parentVAddress}.
+   */
+  private CaptureNodeModel getMethodModel(int fileId, int symbolId, long vAddress, long parentVAddress) {
+    // Models of methods without symbol only depend on their address, the other ones on the address they are called from.
+    MethodKey key = new MethodKey(fileId, symbolId, symbolId == INVALID_SYMBOL_ID ? vAddress : parentVAddress);
+    CaptureNodeModel model = myMethodModels.get(key);
+    if (model == null) {
+      model = myMethodModels.computeIfAbsent(key, k -> createMethodModel(fileId, symbolId, vAddress, parentVAddress));
+    }
+    return model;
+  }
+
+  private CaptureNodeModel createMethodModel(int fileId, int symbolId, long vAddress, long parentVAddress) {
+    SimpleperfReport.File symbolFile = myFiles.get(fileId);
     if (symbolFile == null) {
-      throw new IllegalStateException("Symbol file with id \"" + callChainEntry.getFileId() + "\" not found.");
+      throw new IllegalStateException("Symbol file with id \"" + fileId + "\" not found.");
     }
     if (symbolId == INVALID_SYMBOL_ID) {
       // if symbol_id is -1, we report the method as fileName+vAddress (e.g. program.so+0x3039)
-      String hexAddress = "0x" + Long.toHexString(callChainEntry.getVaddrInFile());
+      String hexAddress = "0x" + Long.toHexString(vAddress);
       String methodName = fileNameFromPath(symbolFile.getPath()) + "+" + hexAddress;
       return new NoSymbolModel(methodName);
     }
@@ -465,4 +490,81 @@ public class SimpleperfTraceParser implements TraceParser {
     boolean isUserWritten = symbolFile.getPath().startsWith(myAppDataFolderPrefix);
     return NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId), isUserWritten, symbolFile.getPath(), parentVAddress);
   }
+
+  /**
+   * Identifies the model of the method of a call chain entry, see {@link #getMethodModel}.
+   */
+  private static final class MethodKey {
+    private final int myFileId;
+    private final int mySymbolId;
+    private final long myVAddress;
+
+    private MethodKey(int fileId, int symbolId, long vAddress) {
+      myFileId = fileId;
+      mySymbolId = symbolId;
+      myVAddress = vAddress;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof MethodKey)) return false;
+      MethodKey key = (MethodKey)o;
+      return myFileId == key.myFileId && mySymbolId == key.mySymbolId && myVAddress == key.myVAddress;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * myFileId + mySymbolId) + Long.hashCode(myVAddress);
+    }
+  }
+
+  /**
+   * The samples of a thread, with their call chains stored from root to leaf in primitive arrays. This takes a fraction of the memory of
+   * the {@link SimpleperfReport.Sample} messages, which are dropped as soon as they are read.
+   */
+  private static final class ThreadSamples {
+    private long[] myTimestamps = new long[16];
+    /**
+     * The call chain of sample i is made of the entries from {@link #getCallChainStart} (inclusive) to {@code myCallChainEnds[i]}
+     * (exclusive).
+     */
+    private int[] myCallChainEnds = new int[16];
+    private int mySampleCount;
+
+    // Call chain entries of all the samples.
+    private int[] myFileIds = new int[256];
+    private int[] mySymbolIds = new int[256];
+    private long[] myVAddresses = new long[256];
+    private int myEntryCount;
+
+    private void add(@NotNull SimpleperfReport.Sample sample) {
+      if (mySampleCount == myTimestamps.length) {
+        myTimestamps = Arrays.copyOf(myTimestamps, mySampleCount * 2);
+        myCallChainEnds = Arrays.copyOf(myCallChainEnds, mySampleCount * 2);
+      }
+      int callChainSize = sample.getCallchainCount();
+      if (myEntryCount + callChainSize > myFileIds.length) {
+        int capacity = Math.max(myFileIds.length * 2, myEntryCount + callChainSize);
+        myFileIds = Arrays.copyOf(myFileIds, capacity);
+        mySymbolIds = Arrays.copyOf(mySymbolIds, capacity);
+        myVAddresses = Arrays.copyOf(myVAddresses, capacity);
+      }
+      // Reverse the call chain order because simpleperf returns the call chains ordered from leaf to root.
+      for (int i = callChainSize - 1; i >= 0; i--) {
+        SimpleperfReport.Sample.CallChainEntry entry = sample.getCallchain(i);
+        myFileIds[myEntryCount] = entry.getFileId();
+        mySymbolIds[myEntryCount] = entry.getSymbolId();
+        myVAddresses[myEntryCount] = entry.getVaddrInFile();
+        myEntryCount++;
+      }
+      myTimestamps[mySampleCount] = sample.getTime();
+      myCallChainEnds[mySampleCount] = myEntryCount;
+      mySampleCount++;
+    }
+
+    private int getCallChainStart(int sample) {
+      return sample == 0 ? 0 : myCallChainEnds[sample - 1];
+    }
+  }
 }
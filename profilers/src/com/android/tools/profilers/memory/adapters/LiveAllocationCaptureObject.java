@@ -55,6 +55,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.intellij.openapi.diagnostic.Logger;
 import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TLongHashSet;
 import gnu.trove.TLongObjectHashMap;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -714,10 +715,11 @@ public class LiveAllocationCaptureObject implements CaptureObject {
       return NativeCallStack.getDefaultInstance();
     }
 
-
-    NativeCallStack.Builder builder = NativeCallStack.newBuilder();
+    // Symbolize the frames that weren't seen before in one batch, so the symbolizer can pipeline its requests.
+    List<NativeCallStack.NativeFrame> unsymbolizedFrames = new ArrayList<>();
+    TLongHashSet unsymbolizedAddresses = new TLongHashSet();
     for (long address : backtrace.getAddressesList()) {
-      if (!myNativeFrameMap.containsKey(address)) {
+      if (!myNativeFrameMap.containsKey(address) && unsymbolizedAddresses.add(address)) {
         String module = "";
         long offset = 0;
         Memory.MemoryMap.MemoryRegion region = getRegionByAddress(address);
@@ -727,13 +729,20 @@ public class LiveAllocationCaptureObject implements CaptureObject {
           offset = region.getFileOffset() + (address - region.getStartAddress());
         }
 
-        NativeCallStack.NativeFrame unsymbolizedFrame = NativeCallStack.NativeFrame.newBuilder()
-          .setAddress(address).setModuleName(module).setModuleOffset(offset).build();
-        NativeCallStack.NativeFrame symbolizedFrame = myStage.getStudioProfilers().getIdeServices().getNativeFrameSymbolizer()
-          .symbolize(myStage.getStudioProfilers().getSessionsManager().getSelectedSessionMetaData().getProcessAbi(), unsymbolizedFrame);
-        myNativeFrameMap.put(address, symbolizedFrame);
+        unsymbolizedFrames.add(NativeCallStack.NativeFrame.newBuilder()
+                                 .setAddress(address).setModuleName(module).setModuleOffset(offset).build());
+      }
+    }
+    if (!unsymbolizedFrames.isEmpty()) {
+      List<NativeCallStack.NativeFrame> symbolizedFrames = myStage.getStudioProfilers().getIdeServices().getNativeFrameSymbolizer()
+        .symbolize(myStage.getStudioProfilers().getSessionsManager().getSelectedSessionMetaData().getProcessAbi(), unsymbolizedFrames);
+      for (int i = 0; i < unsymbolizedFrames.size(); i++) {
+        myNativeFrameMap.put(unsymbolizedFrames.get(i).getAddress(), symbolizedFrames.get(i));
       }
+    }
 
+    NativeCallStack.Builder builder = NativeCallStack.newBuilder();
+    for (long address : backtrace.getAddressesList()) {
       builder.addFrames(myNativeFrameMap.get(address));
     }
     return builder.build();
@@ -338,36 +338,46 @@ public abstract class ClassifierSet implements MemoryObject {
   }
 
   /**
-   * O(N) search through all descendant ClassifierSet.
-   * Note - calling this method would cause the full ClassifierSet tree to be built if it has not been done already, and all InstanceObjects
-   * would be partitioned into their corresponding leaf ClassifierSet.
+   * Finds the descendant ClassifierSet that contains the {@code target}. The classifiers are asked which child the {@code target} belongs
+   * to, so only the ClassifierSets on the path from this set to the {@code target} are visited, and partitioned if they haven't been yet.
    *
    * @return the set that contains the {@code target}, or null otherwise.
    */
   @Nullable
   public ClassifierSet findContainingClassifierSet(@NotNull InstanceObject target) {
-    boolean instancesContainsTarget =
-      Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).anyMatch(target::equals);
-    if (instancesContainsTarget && myClassifier != null) {
-      return this;
-    }
-    else if (instancesContainsTarget || myClassifier != null) {
-      List<ClassifierSet> childrenClassifierSets = getChildrenClassifierSets();
-      // mySnapshotInstances/myDeltaInstances can be updated after getChildrenClassiferSets so rebuild the stream.
-      boolean stillContainsTarget =
-        Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).anyMatch(target::equals);
-      if (instancesContainsTarget && stillContainsTarget) {
-        return this; // If after the partition the target still falls within the instances within this set, then return this set.
-      }
-      for (ClassifierSet set : childrenClassifierSets) {
-        ClassifierSet result = set.findContainingClassifierSet(target);
-        if (result != null) {
-          return result;
+    ClassifierSet set = this;
+    while (true) {
+      if (set.containsInstance(target)) {
+        if (set.myClassifier != null) {
+          return set;
+        }
+        set.ensurePartition();
+        if (set.containsInstance(target)) {
+          return set; // If after the partition the target still falls within the instances within this set, then return this set.
         }
       }
+      else if (set.myClassifier == null) {
+        return null;
+      }
+
+      assert set.myClassifier != null;
+      if (set.myClassifier.isTerminalClassifier()) {
+        return null;
+      }
+      ClassifierSet child = set.myClassifier.getClassifierSet(target, false);
+      // Only the children that are not filtered out are searched.
+      if (child == null || !set.getChildrenClassifierSets().contains(child)) {
+        return null;
+      }
+      set = child;
     }
+  }
 
-    return null;
+  /**
+   * @return true if the {@code instance} is held by this set itself, and not by one of its descendants.
+   */
+  private boolean containsInstance(@NotNull InstanceObject instance) {
+    return mySnapshotInstances.contains(instance) || myDeltaInstances.contains(instance);
   }
 
   /**
@@ -17,21 +17,50 @@ package com.android.tools.profilers.network.httpdata;
 
 import com.android.tools.profilers.network.NetworkConnectionsModel;
 import com.android.tools.idea.protobuf.ByteString;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 
 /**
  * A class for fetching the payload data associated with an {@link HttpData} instance.
+ * <p>
+ * Decoded payloads are kept in a cache shared by all the connections, limited to {@link #MAX_CACHED_BYTES}, and evicted least recently
+ * used first. The cache doesn't keep the {@link NetworkConnectionsModel}s alive, and the payloads of a model are dropped once it is
+ * garbage collected. Payloads can also be read as a stream with {@link #openStream()}, which decodes them lazily and doesn't cache them.
  */
 public abstract class Payload {
+  /** Maximum size of the decoded payloads kept in {@link #ourDecodedBytesCache} */
+  private static final long MAX_CACHED_BYTES = Math.min(Runtime.getRuntime().maxMemory() / 16, 64 * 1024 * 1024);
+
+  /** Approximate size of a cache entry besides its bytes, so that the number of entries is bounded too */
+  private static final int CACHE_ENTRY_OVERHEAD = 128;
+
+  private static final Cache<CacheKey, ByteString> ourDecodedBytesCache = CacheBuilder.newBuilder()
+    .maximumWeight(MAX_CACHED_BYTES)
+    .<CacheKey, ByteString>weigher((key, bytes) -> CACHE_ENTRY_OVERHEAD + bytes.size())
+    .build();
+
+  /** Unique id of each {@link NetworkConnectionsModel} with payloads, which identifies them in {@link #ourDecodedBytesCache} */
+  private static final Cache<NetworkConnectionsModel, Long> ourModelIds = CacheBuilder.newBuilder()
+    .weakKeys()
+    .<NetworkConnectionsModel, Long>removalListener(notification -> invalidateModel(notification.getValue()))
+    .build();
+
+  private static final AtomicLong ourNextModelId = new AtomicLong();
+
   @NotNull private final NetworkConnectionsModel myModel;
-  @Nullable private ByteString myCachedBytes;
+  private final long myModelId;
+  @Nullable private ByteString myRawBytes;
 
   /**
    * Construct this class using {@link #newRequestPayload(NetworkConnectionsModel, HttpData)}
@@ -39,6 +68,16 @@ public abstract class Payload {
    */
   private Payload(@NotNull NetworkConnectionsModel model) {
     myModel = model;
+    myModelId = ourModelIds.asMap().computeIfAbsent(model, key -> ourNextModelId.incrementAndGet());
+  }
+
+  /**
+   * Drops the decoded payloads of the model with the given id, which was garbage collected.
+   */
+  private static void invalidateModel(@Nullable Long modelId) {
+    if (modelId != null) {
+      ourDecodedBytesCache.asMap().keySet().removeIf(key -> key.myModelId == modelId);
+    }
   }
 
   @NotNull
@@ -83,15 +122,16 @@ public abstract class Payload {
    */
   @NotNull
   public final ByteString getBytes() {
-    if (myCachedBytes != null) {
-      return myCachedBytes;
+    CacheKey key = new CacheKey(myModelId, getId(), isGzipEncoded());
+    ByteString cached = ourDecodedBytesCache.getIfPresent(key);
+    if (cached != null) {
+      return cached;
     }
 
-    myCachedBytes = myModel.requestBytes(getId());
-    String contentEncoding = getHeader().getContentEncoding();
-    if (StringUtil.toLowerCase(contentEncoding).contains("gzip")) {
-      try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(myCachedBytes.toByteArray()))) {
-        myCachedBytes = ByteString.copyFrom(FileUtil.loadBytes(inputStream));
+    ByteString bytes = getRawBytes();
+    if (key.myIsGzipEncoded) {
+      try (GZIPInputStream inputStream = new GZIPInputStream(bytes.newInput())) {
+        bytes = ByteString.copyFrom(FileUtil.loadBytes(inputStream));
       }
       catch (IOException ignored) {
         // If we got here, it means we failed to unzip data that was supposedly zipped. Just
@@ -99,11 +139,107 @@ public abstract class Payload {
       }
     }
 
-    return myCachedBytes;
+    // An empty payload may just not be available yet.
+    if (!bytes.isEmpty()) {
+      ourDecodedBytesCache.put(key, bytes);
+    }
+    return bytes;
+  }
+
+  /**
+   * Opens a stream on the decoded payload. Unlike {@link #getBytes()}, a gzip encoded payload is inflated as the stream is read, so
+   * viewers can start with the first bytes of a large payload without decoding all of it.
+   * <p>
+   * If the payload is not valid gzip data, the stream returns the content directly. Data that is corrupted after a valid gzip header
+   * makes reading the stream fail instead.
+   */
+  @NotNull
+  public final InputStream openStream() {
+    ByteString cached = ourDecodedBytesCache.getIfPresent(new CacheKey(myModelId, getId(), isGzipEncoded()));
+    if (cached != null) {
+      return cached.newInput();
+    }
+
+    ByteString bytes = getRawBytes();
+    if (isGzipEncoded()) {
+      try {
+        return new GZIPInputStream(bytes.newInput());
+      }
+      catch (IOException ignored) {
+        // Not gzip data, fallback and return the content directly.
+      }
+    }
+    return bytes.newInput();
+  }
+
+  /**
+   * Returns at most the first {@code maxSize} bytes of the decoded payload, see {@link #openStream()}.
+   */
+  @NotNull
+  public final ByteString getFirstBytes(int maxSize) {
+    try (InputStream inputStream = openStream()) {
+      return ByteString.readFrom(ByteStreams.limit(inputStream, maxSize));
+    }
+    catch (IOException ignored) {
+      // The payload is corrupted after a valid gzip header, fallback to what getBytes returns in that case.
+      ByteString bytes = getRawBytes();
+      return bytes.substring(0, Math.min(maxSize, bytes.size()));
+    }
+  }
+
+  /**
+   * Returns whether the decoded payload is empty, without decoding all of it.
+   */
+  public final boolean isEmpty() {
+    return getFirstBytes(1).isEmpty();
+  }
+
+  /**
+   * Returns the payload as it was sent, fetched once per {@link Payload} instance.
+   */
+  @NotNull
+  private ByteString getRawBytes() {
+    if (myRawBytes == null) {
+      myRawBytes = myModel.requestBytes(getId());
+    }
+    return myRawBytes;
+  }
+
+  private boolean isGzipEncoded() {
+    return StringUtil.toLowerCase(getHeader().getContentEncoding()).contains("gzip");
   }
 
   @NotNull
   public HttpData.ContentType getContentType() {
     return getHeader().getContentType();
   }
+
+  /**
+   * Identifies a decoded payload. Payload ids are only unique within a {@link NetworkConnectionsModel}, so the key includes the id of the
+   * model, which doesn't keep the model alive.
+   */
+  private static final class CacheKey {
+    private final long myModelId;
+    @NotNull private final String myId;
+    private final boolean myIsGzipEncoded;
+
+    private CacheKey(long modelId, @Nullable String id, boolean isGzipEncoded) {
+      myModelId = modelId;
+      myId = StringUtil.notNullize(id);
+      myIsGzipEncoded = isGzipEncoded;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof CacheKey)) return false;
+      CacheKey key = (CacheKey)o;
+      return myModelId == key.myModelId && myId.equals(key.myId) && myIsGzipEncoded == key.myIsGzipEncoded;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myModelId, myId, myIsGzipEncoded);
+    }
+  }
 }
@@ -16,6 +16,8 @@
 package com.android.tools.profilers.stacktrace;
 
 import com.android.tools.profiler.proto.Memory.NativeCallStack;
+import java.util.List;
+import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -24,4 +26,13 @@ import org.jetbrains.annotations.NotNull;
 public interface NativeFrameSymbolizer {
   @NotNull
   NativeCallStack.NativeFrame symbolize(String abi, NativeCallStack.NativeFrame unsymbolizedFrame);
+
+  /**
+   * Resolves many frames at once. Returns a list of the same size and in the same order as {@code unsymbolizedFrames}.
+   * Implementations backed by an external process should override this to batch their requests.
+   */
+  @NotNull
+  default List<NativeCallStack.NativeFrame> symbolize(String abi, @NotNull List<NativeCallStack.NativeFrame> unsymbolizedFrames) {
+    return unsymbolizedFrames.stream().map(frame -> symbolize(abi, frame)).collect(Collectors.toList());
+  }
 }
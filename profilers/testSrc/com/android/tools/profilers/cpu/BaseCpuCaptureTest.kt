@@ -32,6 +32,35 @@ class BaseCpuCaptureTest {
     assertClockType(capture.captureNodes, ClockType.THREAD)
   }
 
+  @Test
+  fun durationsByFullNameFollowClockType() {
+    val root = CaptureNode(SingleNameModel("foo")).apply {
+      startGlobal = 0
+      endGlobal = 100
+      startThread = 0
+      endThread = 50
+      addChild(CaptureNode(SingleNameModel("bar")).apply {
+        startGlobal = 10
+        endGlobal = 30
+        startThread = 5
+        endThread = 10
+      })
+      addChild(CaptureNode(SingleNameModel("bar")).apply {
+        startGlobal = 40
+        endGlobal = 90
+        startThread = 20
+        endThread = 40
+      })
+    }
+    val capture = BaseCpuCapture(42, Cpu.CpuTraceType.ART, Range(0.0, 100.0), mapOf(CpuThreadInfo(1, "main", true) to root))
+    assertThat(capture.getDurationsByFullName(root, "bar")!!.asList()).containsExactly(20L, 50L)
+    assertThat(capture.getDurationsByFullName(root, "baz")!!.asList()).isEmpty()
+    assertThat(capture.getDurationsByFullName(root.children[0], "bar")).isNull()
+
+    capture.updateClockType(ClockType.THREAD)
+    assertThat(capture.getDurationsByFullName(root, "bar")!!.asList()).containsExactly(5L, 20L)
+  }
+
   /**
    * Recursively asserts the clock type of the given nodes and their children nodes.
    */
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu
+
+import com.android.tools.adtui.model.FakeTimer
+import com.android.tools.idea.transport.faketransport.FakeGrpcChannel
+import com.android.tools.idea.transport.faketransport.FakeTransportService
+import com.android.tools.profiler.proto.Cpu
+import com.android.tools.profilers.ProfilerClient
+import com.android.tools.profilers.ProfilersTestData
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class CpuThreadStateCacheTest {
+  private val timer = FakeTimer()
+  private val transportService = FakeTransportService(timer)
+
+  @get:Rule
+  var grpcChannel = FakeGrpcChannel("CpuThreadStateCacheTest", transportService)
+
+  private lateinit var cache: CpuThreadStateCache
+
+  @Before
+  fun setUp() {
+    ProfilersTestData.populateThreadData(transportService, ProfilersTestData.SESSION_DATA.streamId)
+    cache = CpuThreadStateCache(ProfilerClient(grpcChannel.channel).transportClient, ProfilersTestData.SESSION_DATA.streamId,
+                                ProfilersTestData.SESSION_DATA.pid)
+  }
+
+  @Test
+  fun statesOfAllThreadsAreFetchedOnce() {
+    assertThat(getStates(2, 1, 15)).containsExactly(
+      Cpu.CpuThreadData.State.RUNNING, Cpu.CpuThreadData.State.STOPPED, Cpu.CpuThreadData.State.SLEEPING,
+      Cpu.CpuThreadData.State.WAITING, Cpu.CpuThreadData.State.DEAD).inOrder()
+
+    // States added within the cached range are not fetched again.
+    addState(14, 3, Cpu.CpuThreadData.State.RUNNING)
+    assertThat(getStates(1, 1, 15)).containsExactly(Cpu.CpuThreadData.State.RUNNING, Cpu.CpuThreadData.State.DEAD).inOrder()
+    assertThat(getStates(3, 1, 15)).isEmpty()
+  }
+
+  @Test
+  fun cachedRangeIsExtended() {
+    // The first state after the range is included.
+    assertThat(getStates(2, 7, 9)).containsExactly(
+      Cpu.CpuThreadData.State.RUNNING, Cpu.CpuThreadData.State.STOPPED, Cpu.CpuThreadData.State.SLEEPING).inOrder()
+
+    addState(20, 3, Cpu.CpuThreadData.State.RUNNING)
+    addState(22, 3, Cpu.CpuThreadData.State.SLEEPING)
+    assertThat(getStates(3, 7, 25)).containsExactly(Cpu.CpuThreadData.State.RUNNING, Cpu.CpuThreadData.State.SLEEPING).inOrder()
+    assertThat(getStates(2, 0, 25)).containsExactly(
+      Cpu.CpuThreadData.State.RUNNING, Cpu.CpuThreadData.State.STOPPED, Cpu.CpuThreadData.State.SLEEPING,
+      Cpu.CpuThreadData.State.WAITING, Cpu.CpuThreadData.State.DEAD).inOrder()
+    assertThat(getStates(1, 0, 25)).containsExactly(Cpu.CpuThreadData.State.RUNNING, Cpu.CpuThreadData.State.DEAD).inOrder()
+  }
+
+  @Test
+  fun endedThreadHasNoStatesAfterItsEnd() {
+    // The state at the start of the range is included.
+    assertThat(getStates(1, 5, 10)).containsExactly(Cpu.CpuThreadData.State.RUNNING, Cpu.CpuThreadData.State.DEAD).inOrder()
+    assertThat(getStates(1, 9, 10)).isEmpty()
+  }
+
+  private fun getStates(threadId: Int, minSeconds: Long, maxSeconds: Long): List<Cpu.CpuThreadData.State> {
+    val states = cache.getStates(threadId, TimeUnit.SECONDS.toNanos(minSeconds), TimeUnit.SECONDS.toNanos(maxSeconds))
+    return List(states.size()) { states.getState(it) }
+  }
+
+  private fun addState(timestampSeconds: Long, threadId: Int, state: Cpu.CpuThreadData.State) {
+    val event = ProfilersTestData.generateCpuThreadEvent(timestampSeconds, threadId, "Thread $threadId", state).build()
+    transportService.addEventToStream(ProfilersTestData.SESSION_DATA.streamId, event)
+  }
+}
@@ -181,9 +181,9 @@ public class CpuThreadStateDataSeriesTest {
 
   private DataSeries<ThreadState> createThreadSeries(int tid) {
     return myIsUnifiedPipeline
-           ? new CpuThreadStateDataSeries(myProfilerStage.getStudioProfilers().getClient().getTransportClient(),
-                                          ProfilersTestData.SESSION_DATA.getStreamId(),
-                                          ProfilersTestData.SESSION_DATA.getPid(),
+           ? new CpuThreadStateDataSeries(new CpuThreadStateCache(myProfilerStage.getStudioProfilers().getClient().getTransportClient(),
+                                                                  ProfilersTestData.SESSION_DATA.getStreamId(),
+                                                                  ProfilersTestData.SESSION_DATA.getPid()),
                                           tid,
                                           myProfilerStage.getCapture())
            : new LegacyCpuThreadStateDataSeries(myProfilerStage.getStudioProfilers().getClient().getCpuClient(),
@@ -17,8 +17,10 @@ package com.android.tools.profilers.cpu.analysis
 
 import com.android.tools.adtui.model.Range
 import com.android.tools.profiler.proto.Cpu
+import com.android.tools.profilers.cpu.BaseCpuCapture
 import com.android.tools.profilers.cpu.CaptureNode
 import com.android.tools.profilers.cpu.CpuCapture
+import com.android.tools.profilers.cpu.CpuThreadInfo
 import com.android.tools.profilers.cpu.analysis.CpuAnalysisTabModel.Type
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel
 import com.google.common.truth.Truth.assertThat
@@ -60,6 +62,17 @@ class CaptureNodeAnalysisModelTest {
     assertThat(stats.standardDeviation).isWithin(EPSILON).of(11.873)
   }
 
+  @Test
+  fun getAllOccurrencesStatsFromIndexedCapture() {
+    val capture = BaseCpuCapture(1, Cpu.CpuTraceType.PERFETTO, Range(0.0, 99.0), mapOf(CpuThreadInfo(1, "main", true) to ROOT_NODE))
+    val stats = CaptureNodeAnalysisModel(BAR_11, capture).allOccurrenceStats
+    assertThat(stats.count).isEqualTo(5)
+    assertThat(stats.average).isWithin(EPSILON).of(13.2)
+    assertThat(stats.max).isEqualTo(35)
+    assertThat(stats.min).isEqualTo(1)
+    assertThat(stats.standardDeviation).isWithin(EPSILON).of(11.873)
+  }
+
   companion object {
     private const val EPSILON = 0.001
     /**
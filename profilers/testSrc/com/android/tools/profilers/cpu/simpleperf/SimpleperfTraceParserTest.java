@@ -19,6 +19,7 @@ import static com.android.tools.profilers.cpu.CpuProfilerTestUtils.traceFileToBy
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -28,14 +29,20 @@ import com.android.tools.profiler.proto.SimpleperfReport;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.CppFunctionModel;
 import com.google.common.collect.Lists;
 import com.intellij.openapi.util.io.FileUtil;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
@@ -154,7 +161,7 @@ public class SimpleperfTraceParserTest {
 
     int mainThread = 7056;
     SimpleperfReport.Sample mainFirstSample =
-      myParser.mySamples.stream().filter((sample -> sample.getThreadId() == mainThread)).findFirst().orElse(null);
+      readSamples(trace).stream().filter((sample -> sample.getThreadId() == mainThread)).findFirst().orElse(null);
     assertNotNull(mainFirstSample);
 
     CaptureNode mainThreadTree = capture.getCaptureNode(mainFirstSample.getThreadId());
@@ -216,13 +223,57 @@ public class SimpleperfTraceParserTest {
   @Test
   public void rangeShouldBeFromFirstToLastTimestamp() throws IOException {
     CpuCapture capture = myParser.parse(myTraceFile, 0);
-    long startTimeUs = TimeUnit.NANOSECONDS.toMicros(myParser.mySamples.get(0).getTime());
-    long endTimeUs = TimeUnit.NANOSECONDS.toMicros(myParser.mySamples.get(myParser.mySamples.size() - 1).getTime());
+    List<SimpleperfReport.Sample> samples = readSamples(myTraceFile);
+    long startTimeUs = TimeUnit.NANOSECONDS.toMicros(samples.get(0).getTime());
+    long endTimeUs = TimeUnit.NANOSECONDS.toMicros(samples.get(samples.size() - 1).getTime());
     Range expected = new Range(startTimeUs, endTimeUs);
     assertEquals(expected.getMin(), capture.getRange().getMin(), 0);
     assertEquals(expected.getMax(), capture.getRange().getMax(), 0);
   }
 
+  @Test
+  public void methodModelsAreSharedByTreeNodes() throws IOException {
+    CpuCapture capture = myParser.parse(myTraceFile, 0);
+
+    Map<String, CaptureNodeModel> modelsById = new HashMap<>();
+    int nodeCount = 0;
+    for (CaptureNode tree : capture.getCaptureNodes()) {
+      List<CaptureNode> nodes = new ArrayList<>(tree.getChildren());
+      while (!nodes.isEmpty()) {
+        CaptureNode node = nodes.remove(nodes.size() - 1);
+        nodes.addAll(node.getChildren());
+        nodeCount++;
+        if (!(node.getData() instanceof CppFunctionModel)) {
+          continue;
+        }
+        // C++ models include the address they are called from in their id, so equal ids mean the same method called from the same place.
+        CaptureNodeModel model = modelsById.computeIfAbsent(node.getData().getId() + "@" + ((CppFunctionModel)node.getData()).getVAddress(),
+                                                            id -> node.getData());
+        assertSame(model, node.getData());
+      }
+    }
+    assertTrue(modelsById.size() < nodeCount);
+  }
+
+  /**
+   * Reads the samples of a trace file, in the order they appear in the file.
+   */
+  private static List<SimpleperfReport.Sample> readSamples(File trace) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(trace.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    // Skip the magic string and the version.
+    buffer.position("SIMPLEPERF".length() + Short.BYTES);
+    List<SimpleperfReport.Sample> samples = new ArrayList<>();
+    for (int recordSize = buffer.getInt(); recordSize != 0; recordSize = buffer.getInt()) {
+      byte[] recordBytes = new byte[recordSize];
+      buffer.get(recordBytes);
+      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(recordBytes);
+      if (record.hasSample()) {
+        samples.add(record.getSample());
+      }
+    }
+    return samples;
+  }
+
   /**
    * Checks that a {@link CaptureNode} tree starts with "__start_thread -> __pthread_start", then verifies the node just after then.
    */
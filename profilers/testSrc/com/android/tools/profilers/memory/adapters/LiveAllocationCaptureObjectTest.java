@@ -44,6 +44,7 @@ import com.android.tools.profilers.memory.adapters.classifiers.HeapSet;
 import com.android.tools.profilers.memory.CaptureSelectionAspect;
 import com.android.tools.profilers.stacktrace.NativeFrameSymbolizer;
 import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
@@ -52,6 +53,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
 import org.junit.Rule;
@@ -708,6 +710,45 @@ public class LiveAllocationCaptureObjectTest {
       verifyClassifierResult(heapSet, expected_0_to_4, 0);
     }
 
+    @Test
+    public void testNativeBacktraceIsSymbolizedInOneBatch() {
+      List<List<Memory.NativeCallStack.NativeFrame>> batches = new ArrayList<>();
+      myIdeProfilerServices.setNativeFrameSymbolizer(new NativeFrameSymbolizer() {
+        @NotNull
+        @Override
+        public Memory.NativeCallStack.NativeFrame symbolize(String abi, Memory.NativeCallStack.NativeFrame unsymbolizedFrame) {
+          throw new AssertionError("Frames should be symbolized in batches");
+        }
+
+        @NotNull
+        @Override
+        public List<Memory.NativeCallStack.NativeFrame> symbolize(String abi,
+                                                                  @NotNull List<Memory.NativeCallStack.NativeFrame> unsymbolizedFrames) {
+          batches.add(unsymbolizedFrames);
+          return unsymbolizedFrames.stream().map(frame -> FAKE_SYMBOLIZER.symbolize(abi, frame)).collect(Collectors.toList());
+        }
+      });
+      LiveAllocationCaptureObject capture = new LiveAllocationCaptureObject(myProfilerClient,
+                                                                            ProfilersTestData.SESSION_DATA,
+                                                                            CAPTURE_START_TIME,
+                                                                            LOAD_SERVICE,
+                                                                            myStage);
+
+      long address1 = ProfilersTestData.NATIVE_ADDRESSES_BASE;
+      long address2 = ProfilersTestData.NATIVE_ADDRESSES_BASE + 1;
+      Memory.NativeCallStack callStack = capture.resolveNativeBacktrace(
+        Memory.NativeBacktrace.newBuilder().addAddresses(address1).addAddresses(address2).addAddresses(address1).build());
+      assertThat(callStack.getFramesList().stream().map(Memory.NativeCallStack.NativeFrame::getSymbolName).collect(Collectors.toList()))
+        .containsExactly(ProfilersTestData.FAKE_NATIVE_FUNCTION_NAMES.get(0), ProfilersTestData.FAKE_NATIVE_FUNCTION_NAMES.get(1),
+                         ProfilersTestData.FAKE_NATIVE_FUNCTION_NAMES.get(0)).inOrder();
+      // Each address is only symbolized once, all in the same batch.
+      assertThat(batches).hasSize(1);
+      assertThat(batches.get(0)).hasSize(2);
+
+      // Frames that were symbolized before are reused.
+      capture.resolveNativeBacktrace(Memory.NativeBacktrace.newBuilder().addAddresses(address2).build());
+      assertThat(batches).hasSize(1);
+    }
 
     @Test
     public void testSelectionWithJaveMethodFilter() throws Exception {
@@ -15,6 +15,7 @@
  */
 package com.android.tools.profilers.memory.adapters.classifiers
 
+import com.android.tools.profilers.memory.ClassGrouping
 import com.android.tools.profilers.memory.adapters.FakeCaptureObject
 import com.android.tools.profilers.memory.adapters.FakeInstanceObject
 import com.google.common.truth.Truth.assertThat
@@ -32,4 +33,27 @@ class HeapSetTest {
     h.removeAddedDeltaInstanceObject(inst1)
     assertThat(h.totalRemainingSize).isEqualTo(inst2.shallowSize)
   }
-}
\ No newline at end of file
+
+  @Test
+  fun `containing set is found for each grouping`() {
+    val capture = FakeCaptureObject.Builder().build()
+    val foo = FakeInstanceObject.Builder(capture, 1, "com.example.Foo").setShallowSize(4).build()
+    val bar = FakeInstanceObject.Builder(capture, 2, "com.example.other.Bar").setShallowSize(8).build()
+    val notInHeap = FakeInstanceObject.Builder(capture, 3, "com.example.Baz").build()
+    val h = HeapSet(capture, "Fake", 42)
+    h.addSnapshotInstanceObject(foo)
+    h.addDeltaInstanceObject(bar)
+
+    for (grouping in listOf(ClassGrouping.ARRANGE_BY_CLASS, ClassGrouping.ARRANGE_BY_PACKAGE, ClassGrouping.ARRANGE_BY_CALLSTACK)) {
+      h.classGrouping = grouping
+      assertThat((h.findContainingClassifierSet(foo) as ClassSet).classEntry.className).isEqualTo("com.example.Foo")
+      assertThat((h.findContainingClassifierSet(bar) as ClassSet).classEntry.className).isEqualTo("com.example.other.Bar")
+      assertThat(h.findContainingClassifierSet(notInHeap)).isNull()
+    }
+
+    // Newly added instances are found in the existing tree
+    val foo2 = FakeInstanceObject.Builder(capture, 4, "com.example.Foo").build()
+    h.addDeltaInstanceObject(foo2)
+    assertThat(h.findContainingClassifierSet(foo2)).isSameAs(h.findContainingClassifierSet(foo))
+  }
+}
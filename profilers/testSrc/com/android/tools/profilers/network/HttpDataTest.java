@@ -23,9 +23,14 @@ import com.android.tools.profilers.network.httpdata.HttpData;
 import com.android.tools.profilers.network.httpdata.Payload;
 import com.android.tools.profilers.network.httpdata.StackTrace;
 import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
@@ -270,8 +275,66 @@ public class HttpDataTest {
     assertThat(data.getResponseHeader().getStatusCode()).isEqualTo(200);
   }
 
+  @Test
+  public void decodedPayloadIsSharedByPayloadsOfTheSameConnection() throws IOException {
+    String content = "Unzipped payload";
+    FakeNetworkConnectionsModel connectionsModel = new FakeNetworkConnectionsModel();
+    connectionsModel.addBytes("gzipPayloadId", gzip(content));
+    HttpData data = TestHttpData.newBuilder(1)
+      .setResponsePayloadId("gzipPayloadId")
+      .setResponseFields("null  =  HTTP/1.1 200 OK \n content-encoding=gzip \n")
+      .build();
+
+    assertThat(Payload.newResponsePayload(connectionsModel, data).getBytes().toStringUtf8()).isEqualTo(content);
+    assertThat(Payload.newResponsePayload(connectionsModel, data).getBytes().toStringUtf8()).isEqualTo(content);
+    assertThat(connectionsModel.myRequestCount).isEqualTo(1);
+  }
+
+  @Test
+  public void payloadIsDecodedLazilyWhenStreamed() throws IOException {
+    String content = "Unzipped payload";
+    FakeNetworkConnectionsModel connectionsModel = new FakeNetworkConnectionsModel();
+    connectionsModel.addBytes("streamedPayloadId", gzip(content));
+    HttpData data = TestHttpData.newBuilder(1)
+      .setResponsePayloadId("streamedPayloadId")
+      .setResponseFields("null  =  HTTP/1.1 200 OK \n content-encoding=gzip \n")
+      .build();
+
+    Payload payload = Payload.newResponsePayload(connectionsModel, data);
+    assertThat(payload.isEmpty()).isFalse();
+    assertThat(payload.getFirstBytes(8).toStringUtf8()).isEqualTo("Unzipped");
+    assertThat(payload.getFirstBytes(1000).toStringUtf8()).isEqualTo(content);
+    try (InputStream inputStream = payload.openStream()) {
+      assertThat(ByteString.readFrom(inputStream).toStringUtf8()).isEqualTo(content);
+    }
+    // The raw bytes are only fetched once per payload.
+    assertThat(connectionsModel.myRequestCount).isEqualTo(1);
+  }
+
+  @Test
+  public void emptyPayloadIsNotCached() {
+    FakeNetworkConnectionsModel connectionsModel = new FakeNetworkConnectionsModel();
+    HttpData data = TestHttpData.newBuilder(1).setResponsePayloadId("notYetAvailablePayloadId").build();
+
+    assertThat(Payload.newResponsePayload(connectionsModel, data).isEmpty()).isTrue();
+    assertThat(Payload.newResponsePayload(connectionsModel, data).getBytes()).isEqualTo(ByteString.EMPTY);
+
+    connectionsModel.addBytes("notYetAvailablePayloadId", ByteString.copyFromUtf8("payload"));
+    assertThat(Payload.newResponsePayload(connectionsModel, data).getBytes().toStringUtf8()).isEqualTo("payload");
+  }
+
+  @NotNull
+  private static ByteString gzip(@NotNull String content) throws IOException {
+    ByteArrayOutputStream zippedBytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream compressor = new GZIPOutputStream(zippedBytes)) {
+      compressor.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return ByteString.copyFrom(zippedBytes.toByteArray());
+  }
+
   private static final class FakeNetworkConnectionsModel implements NetworkConnectionsModel {
     private static final Map<String, ByteString> myBytesCache = new HashMap<>();
+    private int myRequestCount;
 
     public void addBytes(@NotNull String id, @NotNull ByteString bytes) {
       myBytesCache.put(id, bytes);
@@ -286,6 +349,7 @@ public class HttpDataTest {
     @NotNull
     @Override
     public ByteString requestBytes(@NotNull String id) {
+      myRequestCount++;
       return myBytesCache.getOrDefault(id, ByteString.EMPTY);
     }
   }
@@ -15,60 +15,31 @@
  */
 package com.android.tools.idea.gradle.structure.model.repositories.search
 
-import com.android.ide.common.repository.GradleVersion
 import com.google.wireless.android.sdk.stats.PSDEvent.PSDRepositoryUsage.PSDRepository.PROJECT_STRUCTURE_DIALOG_REPOSITORY_LOCAL
 import com.intellij.openapi.diagnostic.Logger
 import java.io.File
-import java.nio.file.FileVisitResult
-import java.nio.file.Files.walkFileTree
-import java.nio.file.Path
-import java.nio.file.SimpleFileVisitor
-import java.nio.file.attribute.BasicFileAttributes
 
 data class LocalMavenRepository(val rootLocation: File, override val name: String) :
   ArtifactRepository(PROJECT_STRUCTURE_DIALOG_REPOSITORY_LOCAL) {
-  private val rootLocationPath: Path = rootLocation.toPath()
   override val isRemote: Boolean = false
 
   override fun doSearch(request: SearchRequest): SearchResult {
-    val foundArtifacts = mutableListOf<FoundArtifact>()
     val groupIdPredicate = request.query.groupId?.toWildcardMatchingPredicate() ?: { true }
     val artifactNamePredicate = request.query.artifactName?.toWildcardMatchingPredicate() ?: { true }
 
-    try {
-      walkFileTree(rootLocationPath, object : SimpleFileVisitor<Path>() {
-        override fun preVisitDirectory(dir: Path, attrs: BasicFileAttributes): FileVisitResult {
-          val visitedDirFile: File = dir.toFile()
-          val repositoryRelativeDirectory = visitedDirFile.relativeTo(rootLocation)
-          if (repositoryRelativeDirectory.parentFile == null) return FileVisitResult.CONTINUE
-          val groupIdProbe = repositoryRelativeDirectory.parentFile.path.replace(File.separatorChar, '.')
-          val artifactNameProbe = visitedDirFile.name
-
-          if (groupIdPredicate(groupIdProbe) && artifactNamePredicate(artifactNameProbe)) {
-            val versions =
-              visitedDirFile
-                .listFiles()
-                ?.mapNotNull {
-                  val versionProbe = it.name
-                  val expectedPomFileName = "$artifactNameProbe-$versionProbe.pom"
-                  if (it.isDirectory && it.resolve(expectedPomFileName).isFile) GradleVersion.tryParse(versionProbe) else null
-                }
-                .orEmpty()
-            if (versions.isNotEmpty()) {
-              foundArtifacts.add(FoundArtifact(name, groupIdProbe, artifactNameProbe, versions))
-              return FileVisitResult.SKIP_SUBTREE
-            }
-          }
-          return FileVisitResult.CONTINUE
-        }
-      })
+    val artifacts = try {
+      LocalMavenRepositoryIndex.getInstance(rootLocation).getArtifacts()
     }
     catch (e: Throwable) {
-      val msg = "Failed to search local repository $rootLocationPath"
+      val msg = "Failed to search local repository $rootLocation"
       Logger.getInstance(LocalMavenRepository::class.java).warn(msg, e)
+      emptyList<LocalMavenRepositoryIndex.Artifact>()
     }
 
-    return SearchResult(foundArtifacts.sortedWith(compareBy<FoundArtifact> { it.groupId }.thenBy { it.name }))
+    // The artifacts of the index are sorted by group id and name.
+    return SearchResult(artifacts
+                          .filter { groupIdPredicate(it.groupId) && artifactNamePredicate(it.name) }
+                          .map { FoundArtifact(name, it.groupId, it.name, it.versions) })
   }
 
   private data class Match internal constructor(internal val artifactName: String, internal val groupId: String)
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.gradle.structure.model.repositories.search
+
+import com.android.ide.common.repository.GradleVersion
+import com.google.common.annotations.VisibleForTesting
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.util.concurrency.AppExecutorUtil
+import java.io.File
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Index of the group ids, artifact names and versions of a local Maven repository.
+ *
+ * The index is shared by all the [LocalMavenRepository] instances with the same root, and dropped once the repository hasn't been
+ * searched for [UNUSED_INDEX_EXPIRATION_MINUTES]. Only the first search waits for the repository to be indexed. After that, the index is
+ * checked at most once every [refreshIntervalMs] on [refreshExecutor], and searches get the last index while it is checked. Adding or
+ * removing a file or directory changes the modification time of the directory containing it, so checking the index only compares the
+ * modification times of the indexed directories, and the repository is indexed again if one of them changed.
+ */
+class LocalMavenRepositoryIndex @VisibleForTesting constructor(
+  private val rootLocation: File,
+  private val refreshIntervalMs: Long = DEFAULT_REFRESH_INTERVAL_MS,
+  private val refreshExecutor: Executor = AppExecutorUtil.getAppExecutorService()
+) {
+  companion object {
+    /** Searches typed in a row are answered without checking the repository again. */
+    private const val DEFAULT_REFRESH_INTERVAL_MS = 5_000L
+    private const val UNUSED_INDEX_EXPIRATION_MINUTES = 10L
+
+    private val LOG = Logger.getInstance(LocalMavenRepositoryIndex::class.java)
+
+    private val indexes: Cache<File, LocalMavenRepositoryIndex> =
+      CacheBuilder.newBuilder().expireAfterAccess(UNUSED_INDEX_EXPIRATION_MINUTES, TimeUnit.MINUTES).build()
+
+    fun getInstance(rootLocation: File): LocalMavenRepositoryIndex = indexes.get(rootLocation) { LocalMavenRepositoryIndex(rootLocation) }
+  }
+
+  data class Artifact(val groupId: String, val name: String, val versions: List<GradleVersion>)
+
+  /** The [artifacts] of the repository, and the modification time of each of its [directories] when they were listed. */
+  private class Snapshot(val directories: Array<File>, val lastModified: LongArray, val artifacts: List<Artifact>) {
+    fun isUpToDate(): Boolean = directories.indices.all { directories[it].lastModified() == lastModified[it] }
+  }
+
+  @Volatile private var snapshot: Snapshot? = null
+  @Volatile private var lastRefreshTimeMs = 0L
+  private val refreshScheduled = AtomicBoolean()
+
+  /**
+   * Returns the artifacts of the repository, sorted by group id and name.
+   */
+  fun getArtifacts(): List<Artifact> {
+    snapshot ?: return refresh().artifacts
+    if (System.currentTimeMillis() - lastRefreshTimeMs >= refreshIntervalMs && refreshScheduled.compareAndSet(false, true)) {
+      refreshExecutor.execute {
+        try {
+          refresh()
+        }
+        catch (e: Exception) {
+          LOG.warn("Failed to index local repository $rootLocation", e)
+        }
+        finally {
+          refreshScheduled.set(false)
+        }
+      }
+    }
+    return snapshot!!.artifacts
+  }
+
+  /** Indexes the repository again, unless none of its directories changed since it was last indexed. */
+  @Synchronized
+  private fun refresh(): Snapshot {
+    val now = System.currentTimeMillis()
+    val previous = snapshot
+    val newSnapshot = if (previous != null && previous.isUpToDate()) previous else Indexer().index(rootLocation)
+    snapshot = newSnapshot
+    lastRefreshTimeMs = now
+    return newSnapshot
+  }
+
+  private class Indexer {
+    private val directories = mutableListOf<File>()
+    private val lastModified = mutableListOf<Long>()
+    private val artifacts = mutableListOf<Artifact>()
+
+    fun index(rootLocation: File): Snapshot {
+      // Directories right under the root are groups, not artifacts.
+      list(rootLocation).filter { it.isDirectory }.forEach { index(it, list(it), null) }
+      return Snapshot(directories.toTypedArray(), lastModified.toLongArray(),
+                      artifacts.sortedWith(compareBy<Artifact> { it.groupId }.thenBy { it.name }))
+    }
+
+    /** Lists [directory], recording its modification time first so that changes made while it is listed are seen by the next check. */
+    private fun list(directory: File): Array<File> {
+      directories.add(directory)
+      lastModified.add(directory.lastModified())
+      return directory.listFiles().orEmpty()
+    }
+
+    /**
+     * Indexes [directory], whose [files] were just listed and whose group id is [groupId] if it is an artifact, null if it can't be one.
+     * A directory is an artifact if it contains version directories, i.e. directories containing the pom file of that version of the
+     * artifact. The subdirectories of version directories are not indexed, as artifacts are not searched in there.
+     */
+    private fun index(directory: File, files: Array<File>, groupId: String?) {
+      val subdirectories = files.filter { it.isDirectory }.associateWith { list(it) }
+      val versions = subdirectories
+        .filter { (subdirectory, subdirectoryFiles) ->
+          subdirectoryFiles.any { it.name == "${directory.name}-${subdirectory.name}.pom" && it.isFile }
+        }
+        .mapNotNull { (subdirectory, _) -> GradleVersion.tryParse(subdirectory.name) }
+        .sorted()
+      if (versions.isNotEmpty()) {
+        if (groupId != null) {
+          artifacts.add(Artifact(groupId, directory.name, versions))
+        }
+        return
+      }
+      val subdirectoryGroupId = if (groupId == null) directory.name else "$groupId.${directory.name}"
+      subdirectories.forEach { (subdirectory, subdirectoryFiles) -> index(subdirectory, subdirectoryFiles, subdirectoryGroupId) }
+    }
+  }
+}
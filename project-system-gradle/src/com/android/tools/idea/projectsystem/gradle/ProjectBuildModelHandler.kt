@@ -17,7 +17,6 @@ package com.android.tools.idea.projectsystem.gradle
 
 import com.android.tools.idea.gradle.dsl.api.ProjectBuildModel
 import com.google.common.annotations.VisibleForTesting
-import com.android.tools.idea.gradle.project.sync.GradleFiles
 import com.android.tools.idea.gradle.project.sync.GradleSyncState
 import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.components.Service
@@ -30,7 +29,8 @@ import kotlin.concurrent.withLock
 
 /**
  * Provides an api to use a [ProjectBuildModel] while refreshing the model if the Gradle build files change,
- * this means that both [read] or [modify] could result in reparsing the Gradle build files.
+ * this means that both [read] or [modify] could result in reparsing the Gradle build files. Only the files that changed since the
+ * last call, and the ones depending on them, are parsed again.
  *
  * Also provides synchronization by using a [ReentrantReadWriteLock] to guard both [read] and [modify].
  * These methods should not be called from the UI thread.
@@ -81,14 +81,21 @@ class ProjectBuildModelHandler(val project: Project) {
   }
 
   /**
-   * Returns the [ProjectBuildModel], refreshes it if it falls out of date.
+   * Returns the [ProjectBuildModel], refreshes it if it falls out of date: the build files that changed since they were parsed are parsed
+   * again, and a new model is created after a sync.
    */
   private fun projectModel(): ProjectBuildModel {
     val lastKnownSyncTime = GradleSyncState.getInstance(project).lastSyncFinishedTimeStamp
 
-    return projectBuildModel?.takeUnless {
-      GradleFiles.getInstance(project).areGradleFilesModified() || modelSyncTime != lastKnownSyncTime
-    } ?: ProjectBuildModel.get(project).also { modelSyncTime = lastKnownSyncTime }
+    val model = projectBuildModel?.takeIf { modelSyncTime == lastKnownSyncTime }
+    if (model != null) {
+      model.reparseChangedFiles()
+      return model
+    }
+    return ProjectBuildModel.get(project).also {
+      projectBuildModel = it
+      modelSyncTime = lastKnownSyncTime
+    }
   }
 
   /**
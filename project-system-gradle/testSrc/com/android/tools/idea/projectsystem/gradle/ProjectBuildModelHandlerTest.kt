@@ -16,7 +16,6 @@
 package com.android.tools.idea.projectsystem.gradle
 
 import com.android.tools.idea.gradle.dsl.api.ProjectBuildModel
-import com.android.tools.idea.gradle.project.sync.GradleFiles
 import com.android.tools.idea.gradle.project.sync.GradleSyncState
 import com.intellij.openapi.application.ApplicationManager
 import org.jetbrains.android.AndroidTestCase
@@ -25,6 +24,7 @@ import org.junit.Test
 import org.mockito.Mock
 import org.mockito.Mockito.`when`
 import org.mockito.Mockito.mock
+import org.mockito.Mockito.times
 import org.mockito.Mockito.verify
 
 class ProjectBuildModelHandlerTest : AndroidTestCase() {
@@ -42,16 +42,9 @@ class ProjectBuildModelHandlerTest : AndroidTestCase() {
     replaceProjectService(GradleSyncState::class.java, gradleSyncState)
   }
 
-  private fun setupGradleFiles(modified: Boolean) {
-    val gradleFiles = mock(GradleFiles::class.java)
-    `when`(gradleFiles.areGradleFilesModified()).thenReturn(modified)
-    replaceProjectService(GradleFiles::class.java, gradleFiles)
-  }
-
   @Test
   fun testReuseExistingModel() {
     setupGradleSyncState(3L)
-    setupGradleFiles(false)
     val handler = ProjectBuildModelHandler(project, projectBuildModel, 3L)
     val buildModel = projectBuildModel
     handler.read {
@@ -63,30 +56,32 @@ class ProjectBuildModelHandlerTest : AndroidTestCase() {
   }
 
   @Test
-  fun testRecreateModelOnFilesModified() {
+  fun testReparseChangedFilesOfExistingModel() {
     setupGradleSyncState(4L)
-    setupGradleFiles(true)
     val handler = ProjectBuildModelHandler(project, projectBuildModel, 4L)
-    var buildModel = projectBuildModel
+    val buildModel = projectBuildModel
     handler.modify {
-      assertFalse(buildModel === this)
-      buildModel = this
+      assertTrue(buildModel === this)
     }
     handler.read {
-      assertFalse(buildModel === this)
+      assertTrue(buildModel === this)
     }
+    verify(projectBuildModel, times(2)).reparseChangedFiles()
   }
 
   @Test
   fun testRecreateModelOnNewSync() {
     setupGradleSyncState(5L)
-    setupGradleFiles(false)
     val handler = ProjectBuildModelHandler(project, projectBuildModel, 4L)
     var buildModel = projectBuildModel
     handler.read {
       assertFalse(buildModel === this)
       buildModel = this
     }
+    // The new model is kept until the next sync.
+    handler.read {
+      assertTrue(buildModel === this)
+    }
     setupGradleSyncState(6L)
     handler.modify {
       assertFalse(buildModel === this)
@@ -96,7 +91,6 @@ class ProjectBuildModelHandlerTest : AndroidTestCase() {
   @Test
   fun testForWriteAppliesModel() {
     setupGradleSyncState(6L)
-    setupGradleFiles(false)
     val handler = ProjectBuildModelHandler(project, projectBuildModel, 6L)
     `when`(projectBuildModel.applyChanges()).then {
       ApplicationManager.getApplication().assertWriteAccessAllowed()